@@ -0,0 +1,154 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops sending requests to a service that keeps failing.
+ * After a number of consecutive failures the breaker opens and refuses all requests for a while.
+ * Then a single trial request is let through: if it succeeds the breaker closes again, if it fails it stays open.
+ */
+public class CircuitBreaker
+{
+	public enum State
+	{
+		CLOSED,         // Requests are sent
+		OPEN,           // Requests are refused
+		HALF_OPEN       // A trial request is running, other requests are refused
+	}
+
+	private Logger log;
+	private String name;
+	private int failureThreshold;
+	private long openTime;              // In ms
+
+	private State state;
+	private int consecutiveFailures;
+	private long openedAt;              // In ms
+
+	private AtomicLong numSuccesses;
+	private AtomicLong numFailures;
+	private AtomicLong numRejected;
+
+	/**
+	 * Stops sending requests to a service that keeps failing.
+	 *
+	 * @param name              Name of the service or endpoint, used in logs.
+	 * @param failureThreshold  Number of consecutive failures after which the breaker opens.
+	 * @param openTime          Time the breaker stays open before a trial request is allowed, in ms.
+	 */
+	public CircuitBreaker(String name, int failureThreshold, long openTime)
+	{
+		this.log = LoggerFactory.getLogger(CircuitBreaker.class);
+		this.name = name;
+		this.failureThreshold = Math.max(failureThreshold, 1);
+		this.openTime = openTime;
+
+		this.state = State.CLOSED;
+		this.consecutiveFailures = 0;
+		this.openedAt = 0;
+
+		this.numSuccesses = new AtomicLong(0);
+		this.numFailures = new AtomicLong(0);
+		this.numRejected = new AtomicLong(0);
+	}
+
+	/**
+	 * Check whether a request may be sent. Every allowed request has to be followed by
+	 * recordSuccess() or recordFailure().
+	 * @return
+	 */
+	public synchronized boolean allowRequest()
+	{
+		switch (this.state)
+		{
+			case CLOSED:
+				return true;
+
+			case OPEN:
+				if (System.currentTimeMillis() - this.openedAt >= this.openTime)
+				{
+					this.log.info("Circuit breaker of " + this.name + " is half-open, sending a trial request.");
+					this.state = State.HALF_OPEN;
+					return true;
+				}
+				break;
+
+			default:
+				break;
+		}
+
+		this.numRejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Record that a request succeeded.
+	 */
+	public synchronized void recordSuccess()
+	{
+		this.numSuccesses.incrementAndGet();
+		this.consecutiveFailures = 0;
+
+		if (this.state != State.CLOSED)
+		{
+			this.log.info("Circuit breaker of " + this.name + " closed, the service is responding again.");
+			this.state = State.CLOSED;
+		}
+	}
+
+	/**
+	 * Record that a request failed.
+	 */
+	public synchronized void recordFailure()
+	{
+		this.numFailures.incrementAndGet();
+		++this.consecutiveFailures;
+
+		if ((this.state == State.HALF_OPEN) || ((this.state == State.CLOSED) && (this.consecutiveFailures >= this.failureThreshold)))
+		{
+			this.log.warn("Circuit breaker of " + this.name + " opened after " + this.consecutiveFailures + " consecutive failures, "
+					+ "refusing requests for " + this.openTime + "ms.");
+			this.state = State.OPEN;
+			this.openedAt = System.currentTimeMillis();
+		}
+	}
+
+	public String getName()
+	{
+		return this.name;
+	}
+
+	public synchronized State getState()
+	{
+		return this.state;
+	}
+
+	public long getNumSuccesses()
+	{
+		return this.numSuccesses.get();
+	}
+
+	public long getNumFailures()
+	{
+		return this.numFailures.get();
+	}
+
+	/**
+	 * Return the number of requests that were refused because the breaker was open.
+	 * @return
+	 */
+	public long getNumRejected()
+	{
+		return this.numRejected.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CircuitBreaker " + this.name + ": " + this.getState() + ", " + this.getNumSuccesses() + " successes, "
+				+ this.getNumFailures() + " failures, " + this.getNumRejected() + " rejected";
+	}
+}
@@ -0,0 +1,34 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Thrown instead of sending a request to a service whose circuit breaker is open.
+ */
+public class CircuitBreakerOpenException extends ProcessingException
+{
+	public CircuitBreakerOpenException(String message)
+	{
+		super(message);
+	}
+
+	/**
+	 * Check whether an exception, or one of its causes, is a CircuitBreakerOpenException.
+	 * @param throwable
+	 * @return
+	 */
+	public static boolean isCause(Throwable throwable)
+	{
+		while (throwable != null)
+		{
+			if (throwable instanceof CircuitBreakerOpenException)
+			{
+				return true;
+			}
+
+			throwable = throwable.getCause();
+		}
+
+		return false;
+	}
+}
@@ -47,6 +47,26 @@ public class Cost
 		this.idVehicle = idVehicle;
 	}
 
+	/**
+	 * Get the status of the vehicle being requested. Available means true, already on a route means false.
+	 *
+	 * @return The status of the vehicle being requested.
+	 */
+	public boolean getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * Get the ID of the vehicle being requested.
+	 *
+	 * @return The ID of the vehicle being requested, null if it wasn't set.
+	 */
+	public Long getIdVehicle()
+	{
+		return idVehicle;
+	}
+
 	/**
 	 * Get the weight between the current position and the start position of the route. In seconds.
 	 *
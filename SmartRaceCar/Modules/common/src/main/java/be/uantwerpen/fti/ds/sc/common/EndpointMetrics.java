@@ -0,0 +1,83 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+/**
+ * Snapshot of the state of a REST endpoint called through ResilientRESTUtils.
+ */
+public class EndpointMetrics
+{
+	private String service;
+	private String endpoint;
+	private CircuitBreaker.State state;
+	private long numSuccesses;
+	private long numFailures;
+	private long numRejected;
+	private long numRetries;
+	private long numHedges;
+	private long latencyP50;        // In ms
+	private long latencyP99;        // In ms
+
+	public EndpointMetrics(String service, String endpoint, CircuitBreaker.State state, long numSuccesses, long numFailures,
+			long numRejected, long numRetries, long numHedges, long latencyP50, long latencyP99)
+	{
+		this.service = service;
+		this.endpoint = endpoint;
+		this.state = state;
+		this.numSuccesses = numSuccesses;
+		this.numFailures = numFailures;
+		this.numRejected = numRejected;
+		this.numRetries = numRetries;
+		this.numHedges = numHedges;
+		this.latencyP50 = latencyP50;
+		this.latencyP99 = latencyP99;
+	}
+
+	public String getService()
+	{
+		return this.service;
+	}
+
+	public String getEndpoint()
+	{
+		return this.endpoint;
+	}
+
+	public CircuitBreaker.State getState()
+	{
+		return this.state;
+	}
+
+	public long getNumSuccesses()
+	{
+		return this.numSuccesses;
+	}
+
+	public long getNumFailures()
+	{
+		return this.numFailures;
+	}
+
+	public long getNumRejected()
+	{
+		return this.numRejected;
+	}
+
+	public long getNumRetries()
+	{
+		return this.numRetries;
+	}
+
+	public long getNumHedges()
+	{
+		return this.numHedges;
+	}
+
+	public long getLatencyP50()
+	{
+		return this.latencyP50;
+	}
+
+	public long getLatencyP99()
+	{
+		return this.latencyP99;
+	}
+}
@@ -1,21 +1,59 @@
 package be.uantwerpen.fti.ds.sc.common;
 
 import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Help functions to deal with JSON messages. Uses Google GSON library.
+ * Messages are read and written as a stream, without building an intermediate tree of JSON elements.
  */
 public class JSONUtils
 {
 
 	private static final Gson gson = new Gson(); // GSON object to use the library functions.
+	private static final Map<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();  // Adapters per type, looked up once
+
+	@SuppressWarnings("unchecked")
+	private static <T> TypeAdapter<T> getAdapter(Type t)
+	{
+		return (TypeAdapter<T>) adapters.computeIfAbsent(t, type -> gson.getAdapter(TypeToken.get(type)));
+	}
+
+	private static JsonReader createReader(String jsonInString)
+	{
+		// Lenient, like Gson's own parsing
+		JsonReader reader = new JsonReader(new StringReader(jsonInString));
+		reader.setLenient(true);
+		return reader;
+	}
+
+	/**
+	 * Position the reader on the value after the keyword.
+	 *
+	 * @param reader Reader at the start of a JSON object.
+	 * @return The keyword, null if the object is empty.
+	 * @throws IOException If the message isn't a valid JSON object.
+	 */
+	private static String readKeyWord(JsonReader reader) throws IOException
+	{
+		reader.beginObject();
+		return reader.hasNext() ? reader.nextName() : null;
+	}
 
 	/**
 	 * Method to verify if string is a valid JSON string.
@@ -27,9 +65,17 @@ public class JSONUtils
 	{
 		try
 		{
-			gson.fromJson(jsonInString, Object.class);
+			// Only scan the string, nothing is converted
+			JsonReader reader = createReader(jsonInString);
+			reader.skipValue();
+
+			if (reader.peek() != JsonToken.END_DOCUMENT)
+			{
+				throw new MalformedJsonException("JSON document was not fully consumed.");
+			}
+
 			return true;
-		} catch (com.google.gson.JsonSyntaxException ex)
+		} catch (IOException | IllegalStateException ex)
 		{
 			Logger log = LoggerFactory.getLogger(JSONUtils.class);
 			log.warn("Not a valid JSON string." + jsonInString + "." + ex);
@@ -45,15 +91,51 @@ public class JSONUtils
 	 */
 	public static String getFirst(String jsonInString)
 	{
-		JsonParser parser = new JsonParser();
-		JsonElement element = parser.parse(jsonInString);
-		JsonObject object = element.getAsJsonObject();
-		Set<Map.Entry<String, JsonElement>> entries = object.entrySet();
-		for (Map.Entry<String, JsonElement> entry : entries)
+		try
+		{
+			// Only the start of the message is read
+			String keyword = readKeyWord(createReader(jsonInString));
+			return (keyword != null) ? keyword : jsonInString;
+		}
+		catch (IOException ioe)
+		{
+			throw new JsonSyntaxException(ioe);
+		}
+	}
+
+	/**
+	 * Get the keyword of a JSON message and verify the rest of the message, in a single pass.
+	 *
+	 * @param jsonInString String to be searched for the keyword.
+	 * @return The keyword, null if the string isn't a valid JSON object with a keyword.
+	 */
+	public static String getFirstIfValid(String jsonInString)
+	{
+		try
+		{
+			JsonReader reader = createReader(jsonInString);
+			String keyword = readKeyWord(reader);
+
+			while (reader.hasNext())
+			{
+				reader.skipValue();
+			}
+
+			reader.endObject();
+
+			if (reader.peek() != JsonToken.END_DOCUMENT)
+			{
+				throw new MalformedJsonException("JSON document was not fully consumed.");
+			}
+
+			return keyword;
+		}
+		catch (IOException | IllegalStateException ex)
 		{
-			return entry.getKey();
+			Logger log = LoggerFactory.getLogger(JSONUtils.class);
+			log.warn("Not a valid JSON message." + jsonInString + "." + ex);
+			return null;
 		}
-		return jsonInString;
 	}
 
 	/**
@@ -66,15 +148,21 @@ public class JSONUtils
 	 */
 	public static Object getObjectWithKeyWord(String jsonInString, Type t)
 	{
-		JsonParser parser = new JsonParser();
-		JsonElement element = parser.parse(jsonInString);
-		JsonObject object = element.getAsJsonObject();
-		Set<Map.Entry<String, JsonElement>> entries = object.entrySet();
-		for (Map.Entry<String, JsonElement> entry : entries)
+		try
 		{
-			return gson.fromJson(entry.getValue(), t);
+			JsonReader reader = createReader(jsonInString);
+
+			if (readKeyWord(reader) == null)
+			{
+				return null;
+			}
+
+			return getAdapter(t).read(reader);
+		}
+		catch (IOException ioe)
+		{
+			throw new JsonSyntaxException(ioe);
 		}
-		return null;
 	}
 
 	/**
@@ -99,9 +187,47 @@ public class JSONUtils
 	 */
 	public static String objectToJSONStringWithKeyWord(String keyword, Object object)
 	{
-		JsonObject jsonObject = new JsonObject();
-		jsonObject.add(keyword, gson.toJsonTree(object));
-		return jsonObject.toString();
+		StringWriter stringWriter = new StringWriter();
+		writeWithKeyWord(stringWriter, keyword, object);
+		return stringWriter.toString();
+	}
+
+	/**
+	 * Writes a Java object of a specific type as JSON with a keyword as first element, directly to a stream.
+	 *
+	 * @param out     Stream to write to.
+	 * @param keyword Keyword to be used at start of the JSON string to identify the string.
+	 * @param object  Object to be written.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void writeWithKeyWord(Writer out, String keyword, Object object)
+	{
+		try
+		{
+			JsonWriter writer = new JsonWriter(out);
+			writer.setLenient(true);
+			writer.beginObject();
+			writer.name(keyword);
+
+			if (object == null)
+			{
+				writer.nullValue();
+			}
+			else
+			{
+				// Fields that are null are left out, like Gson does by default
+				writer.setSerializeNulls(false);
+				((TypeAdapter<Object>) getAdapter(object.getClass())).write(writer, object);
+				writer.setSerializeNulls(true);
+			}
+
+			writer.endObject();
+			writer.flush();
+		}
+		catch (IOException ioe)
+		{
+			throw new JsonIOException(ioe);
+		}
 	}
 
 	/**
@@ -113,9 +239,7 @@ public class JSONUtils
 	 */
 	public static String arrayToJSONStringWithKeyWord(String keyword, List<?> arrayList)
 	{
-		JsonObject jsonObject = new JsonObject();
-		jsonObject.add(keyword, gson.toJsonTree(arrayList));
-		return jsonObject.toString();
+		return objectToJSONStringWithKeyWord(keyword, arrayList);
 	}
 
 	/**
@@ -148,9 +272,22 @@ public class JSONUtils
 	 */
 	public static String keywordToJSONString(String keyword)
 	{
-		JsonObject parentData = new JsonObject();
-		JsonObject childData = new JsonObject();
-		parentData.add(keyword, childData);
-		return parentData.toString();
+		StringWriter stringWriter = new StringWriter();
+
+		try
+		{
+			JsonWriter writer = new JsonWriter(stringWriter);
+			writer.beginObject();
+			writer.name(keyword);
+			writer.beginObject();
+			writer.endObject();
+			writer.endObject();
+		}
+		catch (IOException ioe)
+		{
+			throw new JsonIOException(ioe);
+		}
+
+		return stringWriter.toString();
 	}
 }
\ No newline at end of file
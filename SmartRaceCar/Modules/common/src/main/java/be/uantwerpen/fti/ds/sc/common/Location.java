@@ -59,6 +59,26 @@ public class Location
 		this.percentage = percentage;
 	}
 
+	/**
+	 * Get the ID of the vehicle.
+	 *
+	 * @return ID of the vehicle.
+	 */
+	public long getIdVehicle()
+	{
+		return idVehicle;
+	}
+
+	/**
+	 * Get the start ID of the route.
+	 *
+	 * @return Waypoint ID of the starting location of the route.
+	 */
+	public long getIdStart()
+	{
+		return idStart;
+	}
+
 	/**
 	 * Get the end ID of the route.
 	 *
@@ -0,0 +1,237 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Hands MQTT messages to a listener on worker threads, so a slow listener doesn't block the MQTT client.
+ * Every message is assigned to a worker based on a key derived from its topic (a vehicle ID for example),
+ * messages with the same key are always handled by the same worker, in the order they arrived.
+ * Paho acknowledges a message as soon as it is dispatched, so control messages (jobs, route updates, registrations...)
+ * are always queued, they would be lost for good if they were dropped here.
+ * Telemetry (heartbeats and progress updates) is superseded by the next update, so it is dropped
+ * once its worker's queue holds the configured number of messages, which keeps a slow listener from
+ * piling up an unbounded backlog of stale telemetry.
+ * Dispatching runs on Paho's callback thread, which also completes deliveries, so it never waits.
+ */
+public class MQTTDispatcher
+{
+	private static final int METRICS_INTERVAL = 1000;  // Log metrics every this many messages
+
+	/**
+	 * A worker thread with its own queue.
+	 */
+	private class Worker implements Runnable
+	{
+		private final BlockingQueue<Runnable> queue;
+
+		public Worker()
+		{
+			this.queue = new LinkedBlockingQueue<>();
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (!Thread.currentThread().isInterrupted())
+				{
+					this.queue.take().run();
+				}
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private Logger log;
+	private String name;
+	private Function<String, ?> keyFunction;
+	private int queueCapacity;
+	private Worker[] workers;
+	private Thread[] threads;
+
+	private AtomicLong numProcessed;
+	private AtomicLong totalProcessingTime;     // In nanoseconds
+	private AtomicLong maxProcessingTime;       // In nanoseconds
+	private AtomicLong maxQueueDepth;
+	private AtomicLong numDropped;
+
+	/**
+	 * Hands MQTT messages to a listener on worker threads.
+	 *
+	 * @param name          Name of the dispatcher, used to name its threads.
+	 * @param numThreads    Number of worker threads.
+	 * @param queueCapacity Number of messages waiting for a worker above which its telemetry is dropped.
+	 * @param keyFunction   Derives the key of a message from its topic, messages with equal keys are handled in order.
+	 */
+	public MQTTDispatcher(String name, int numThreads, int queueCapacity, Function<String, ?> keyFunction)
+	{
+		this.log = LoggerFactory.getLogger(MQTTDispatcher.class);
+		this.name = name;
+		this.keyFunction = keyFunction;
+		this.queueCapacity = queueCapacity;
+		this.workers = new Worker[numThreads];
+		this.threads = new Thread[numThreads];
+
+		this.numProcessed = new AtomicLong(0);
+		this.totalProcessingTime = new AtomicLong(0);
+		this.maxProcessingTime = new AtomicLong(0);
+		this.maxQueueDepth = new AtomicLong(0);
+		this.numDropped = new AtomicLong(0);
+
+		for (int i = 0; i < numThreads; ++i)
+		{
+			this.workers[i] = new Worker();
+			this.threads[i] = new Thread(this.workers[i], name + "-" + i);
+			this.threads[i].setDaemon(true);
+			this.threads[i].start();
+		}
+	}
+
+	/**
+	 * Hands all messages to a single worker thread, so they're handled in the order they arrived.
+	 *
+	 * @param name          Name of the dispatcher, used to name its thread.
+	 * @param queueCapacity Number of messages waiting above which telemetry is dropped.
+	 */
+	public MQTTDispatcher(String name, int queueCapacity)
+	{
+		this(name, 1, queueCapacity, topic -> 0);
+	}
+
+	private void process(MQTTListener listener, String topic, String message)
+	{
+		long start = System.nanoTime();
+
+		try
+		{
+			listener.parseMQTT(topic, message);
+		}
+		catch (Exception e)
+		{
+			// Don't let one bad message kill the worker
+			this.log.error("Failed to handle message \"" + message + "\" on topic \"" + topic + "\".", e);
+		}
+
+		long processingTime = System.nanoTime() - start;
+		long numProcessed = this.numProcessed.incrementAndGet();
+		this.totalProcessingTime.addAndGet(processingTime);
+		this.maxProcessingTime.accumulateAndGet(processingTime, Math::max);
+
+		if (numProcessed % METRICS_INTERVAL == 0)
+		{
+			this.log.debug(this.toString());
+		}
+	}
+
+	/**
+	 * Queue a message for a listener.
+	 * Telemetry is dropped when the queue of the message's worker is full, other messages are always queued.
+	 *
+	 * @param listener  The listener that should handle the message.
+	 * @param topic     Topic the message was published on.
+	 * @param message   The message.
+	 */
+	public void dispatch(MQTTListener listener, String topic, String message)
+	{
+		Object key = this.keyFunction.apply(topic);
+		Worker worker = this.workers[Math.floorMod((key != null) ? key.hashCode() : 0, this.workers.length)];
+
+		if (MQTTUtils.isTelemetry(topic) && (worker.queue.size() >= this.queueCapacity))
+		{
+			this.numDropped.incrementAndGet();
+			this.log.warn("MQTTDispatcher " + this.name + " dropped telemetry \"" + message + "\" on topic \"" + topic + "\", its worker's queue is full.");
+			return;
+		}
+
+		worker.queue.add(() -> this.process(listener, topic, message));
+
+		this.maxQueueDepth.accumulateAndGet(worker.queue.size(), Math::max);
+	}
+
+	/**
+	 * Return the number of messages waiting to be handled.
+	 * @return
+	 */
+	public int getQueueDepth()
+	{
+		int depth = 0;
+
+		for (Worker worker: this.workers)
+		{
+			depth += worker.queue.size();
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Return the largest number of messages that were waiting for a single worker.
+	 * @return
+	 */
+	public long getMaxQueueDepth()
+	{
+		return this.maxQueueDepth.get();
+	}
+
+	/**
+	 * Return the number of telemetry messages that were dropped because their worker's queue was full.
+	 * @return
+	 */
+	public long getNumDropped()
+	{
+		return this.numDropped.get();
+	}
+
+	public long getNumProcessed()
+	{
+		return this.numProcessed.get();
+	}
+
+	/**
+	 * Return the average time the listener took to handle a message, in nanoseconds.
+	 * @return
+	 */
+	public long getAverageProcessingTime()
+	{
+		long numProcessed = this.numProcessed.get();
+		return (numProcessed == 0) ? 0 : this.totalProcessingTime.get() / numProcessed;
+	}
+
+	/**
+	 * Return the longest time the listener took to handle a message, in nanoseconds.
+	 * @return
+	 */
+	public long getMaxProcessingTime()
+	{
+		return this.maxProcessingTime.get();
+	}
+
+	/**
+	 * Stop the worker threads, messages that are still queued are dropped.
+	 */
+	public void shutdown()
+	{
+		for (Thread thread: this.threads)
+		{
+			thread.interrupt();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "MQTTDispatcher " + this.name + ": " + this.getNumProcessed() + " messages handled, " + this.getNumDropped() + " dropped, "
+				+ this.getQueueDepth() + " queued (max " + this.getMaxQueueDepth() + " per thread), "
+				+ "processing time " + (this.getAverageProcessingTime() / 1000) + "us average, " + (this.getMaxProcessingTime() / 1000) + "us max.";
+	}
+}
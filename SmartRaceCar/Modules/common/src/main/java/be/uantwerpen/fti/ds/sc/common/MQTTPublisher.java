@@ -0,0 +1,264 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes messages on an asynchronous MQTT client without blocking the caller.
+ * Messages are queued and handed to the client by a single sender thread, in the order they were published.
+ * The sender takes messages from the queue in batches, so it only has to wake up once for a burst of messages.
+ * At most a window of messages is in flight, the sender waits for acknowledgements before sending more.
+ * When the queue is full, publishing waits a limited time for room and throws if there is none.
+ *
+ * Paho hands incoming messages and acknowledgements to the same callback thread, so nothing here may depend on it:
+ * a completer thread waits on the delivery tokens to release the window and complete our tokens.
+ * A listener that blocks the callback thread therefore can't deadlock the publisher, it only delays acknowledgements.
+ */
+class MQTTPublisher
+{
+	private static final int BATCH_SIZE = 64;
+	private static final long QUEUE_TIMEOUT = 5000;         // Time to wait for room in the queue before failing a message (in ms)
+	private static final long COMPLETION_TIMEOUT = 1000;    // Time to wait for an acknowledgement before checking for shutdown (in ms)
+
+	/**
+	 * A message waiting to be sent, or waiting to be acknowledged once its delivery token is set.
+	 */
+	private static class Pending
+	{
+		private final String topic;
+		private final MqttMessage message;
+		private final MQTTToken token;
+		private IMqttDeliveryToken deliveryToken;
+
+		public Pending(String topic, MqttMessage message, MQTTToken token)
+		{
+			this.topic = topic;
+			this.message = message;
+			this.token = token;
+		}
+	}
+
+	private Logger log;
+	private IMqttAsyncClient client;
+	private BlockingQueue<Pending> queue;
+	private BlockingQueue<Pending> inflight;        // Sent messages in the order they were sent
+	private Semaphore window;
+	private Thread sender;
+	private Thread completer;
+	private volatile boolean running;
+
+	/**
+	 * Publishes messages on an asynchronous MQTT client.
+	 *
+	 * @param client        The client to publish on.
+	 * @param maxInflight   Maximum number of messages sent, but not yet acknowledged.
+	 * @param queueCapacity Maximum number of messages waiting to be sent.
+	 */
+	public MQTTPublisher(IMqttAsyncClient client, int maxInflight, int queueCapacity)
+	{
+		this.log = LoggerFactory.getLogger(MQTTPublisher.class);
+		this.client = client;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.inflight = new LinkedBlockingQueue<>();
+		this.window = new Semaphore(maxInflight);
+		this.running = true;
+
+		this.sender = new Thread(this::send, "MQTTPublisher-" + client.getClientId());
+		this.sender.setDaemon(true);
+		this.sender.start();
+
+		this.completer = new Thread(this::complete, "MQTTPublisher-" + client.getClientId() + "-ack");
+		this.completer.setDaemon(true);
+		this.completer.start();
+	}
+
+	private void send()
+	{
+		Queue<Pending> batch = new ArrayDeque<>(BATCH_SIZE);
+
+		try
+		{
+			while (!Thread.currentThread().isInterrupted())
+			{
+				batch.add(this.queue.take());
+				this.queue.drainTo(batch, BATCH_SIZE - 1);
+
+				while (!batch.isEmpty())
+				{
+					this.window.acquire();
+					this.send(batch.poll());
+				}
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		// Nothing is sent after shutting down, fail whatever is left
+		batch.addAll(this.queue);
+
+		for (Pending pending: batch)
+		{
+			pending.token.complete(new MqttException(MqttException.REASON_CODE_CLIENT_CLOSED));
+		}
+	}
+
+	private void send(Pending pending) throws InterruptedException
+	{
+		while (true)
+		{
+			try
+			{
+				pending.deliveryToken = this.client.publish(pending.topic, pending.message);
+				this.inflight.add(pending);
+				return;
+			}
+			catch (MqttException me)
+			{
+				// The client frees an in-flight slot shortly after the acknowledgement came in, try again
+				if (me.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT)
+				{
+					try
+					{
+						Thread.sleep(1);
+					}
+					catch (InterruptedException ie)
+					{
+						this.window.release();
+						pending.token.complete(me);
+						throw ie;
+					}
+
+					continue;
+				}
+
+				this.window.release();
+				this.log.error("Could not Publish \"" + pending.token.getMessage() + "\" to \"" + pending.topic + "\".", me);
+				pending.token.complete(me);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Wait for the acknowledgement of every sent message, in the order they were sent.
+	 * Messages are acknowledged in order, so waiting on the oldest one first doesn't delay the others.
+	 */
+	private void complete()
+	{
+		while (this.running)
+		{
+			Pending pending;
+
+			try
+			{
+				pending = this.inflight.poll(COMPLETION_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException ie)
+			{
+				break;
+			}
+
+			if (pending == null)
+			{
+				continue;
+			}
+
+			while (true)
+			{
+				try
+				{
+					pending.deliveryToken.waitForCompletion(COMPLETION_TIMEOUT);
+					pending.token.complete(null);
+					break;
+				}
+				catch (MqttException me)
+				{
+					if ((me.getReasonCode() == MqttException.REASON_CODE_CLIENT_TIMEOUT) && this.running)
+					{
+						continue;
+					}
+
+					this.log.error("Could not Publish \"" + pending.token.getMessage() + "\" to \"" + pending.topic + "\".", me);
+					pending.token.complete(me);
+					break;
+				}
+			}
+
+			this.window.release();
+		}
+
+		// Nothing is acknowledged after shutting down, fail whatever is left
+		for (Pending pending: this.inflight)
+		{
+			pending.token.complete(new MqttException(MqttException.REASON_CODE_CLIENT_CLOSED));
+		}
+	}
+
+	/**
+	 * Queue a message to be published.
+	 * Waits a limited time while the queue is full.
+	 * The token is only completed if the message was queued, otherwise the caller gets an exception.
+	 *
+	 * @param topic   The topic to publish on.
+	 * @param message The message.
+	 * @param token   Token that is completed once the message was delivered.
+	 * @throws MqttException        If the publisher was shut down, or there still was no room in the queue.
+	 * @throws InterruptedException If the calling thread was interrupted while waiting for room in the queue.
+	 */
+	public void publish(String topic, MqttMessage message, MQTTToken token) throws MqttException, InterruptedException
+	{
+		if (!this.sender.isAlive())
+		{
+			throw new MqttException(MqttException.REASON_CODE_CLIENT_CLOSED);
+		}
+
+		if (!this.queue.offer(new Pending(topic, message, token), QUEUE_TIMEOUT, TimeUnit.MILLISECONDS))
+		{
+			this.log.error("Could not Publish \"" + token.getMessage() + "\" to \"" + topic + "\", the publish queue is full.");
+			throw new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT);
+		}
+	}
+
+	/**
+	 * Return the number of messages waiting to be sent.
+	 * @return
+	 */
+	public int getQueueDepth()
+	{
+		return this.queue.size();
+	}
+
+	/**
+	 * Stop sending, messages that are still queued or waiting for an acknowledgement fail.
+	 */
+	public void shutdown()
+	{
+		this.sender.interrupt();
+
+		try
+		{
+			// Stop the completer once nothing new can be sent
+			this.sender.join();
+			this.running = false;
+			this.completer.join();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -1,21 +1,40 @@
 package be.uantwerpen.fti.ds.sc.common;
 
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttToken;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Tracks the delivery of a message published through MQTTUtils.
+ * The token is handed out as soon as the message is queued, it's completed once the broker acknowledged the message.
+ */
 public class MQTTToken implements MessageToken
 {
 	private String message;
-	private MqttToken token;
+	private CompletableFuture<MessageToken> delivery;
 
-	public MQTTToken(String message, MqttToken token)
+	public MQTTToken(String message)
 	{
 		this.message = message;
-		this.token = token;
+		this.delivery = new CompletableFuture<>();
+	}
+
+	/**
+	 * Mark the message as delivered, or as failed if a cause is given.
+	 * @param cause The reason delivery failed, null if the message was delivered.
+	 */
+	void complete(Throwable cause)
+	{
+		if (cause == null)
+		{
+			this.delivery.complete(this);
+		}
+		else
+		{
+			this.delivery.completeExceptionally(new IOException(cause.getMessage(), cause));
+		}
 	}
 
 	@Override
@@ -29,12 +48,28 @@ public class MQTTToken implements MessageToken
 	{
 		try
 		{
-			this.token.waitForCompletion(timeout * 1000);   // Timeout is given in seconds, but Paho takes milliseconds
+			this.delivery.get(timeout, TimeUnit.SECONDS);
 		}
-		catch (MqttException me)
+		catch (ExecutionException ee)
 		{
-			IOException ioe = new IOException(me.getMessage(), me.getCause());
-			throw ioe;
+			// The future is only ever completed exceptionally with an IOException
+			throw (IOException) ee.getCause();
 		}
+		catch (TimeoutException te)
+		{
+			throw new IOException("\"" + this.message + "\" wasn't delivered within " + timeout + "s.", te);
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for delivery of \"" + this.message + "\".", ie);
+		}
+	}
+
+	@Override
+	public CompletableFuture<MessageToken> getDeliveryFuture()
+	{
+		// Every caller gets its own future, so completing it (on a timeout for example) doesn't affect the token.
+		return this.delivery.thenApply(token -> token);
 	}
 }
@@ -1,22 +1,33 @@
 package be.uantwerpen.fti.ds.sc.common;
 
+import be.uantwerpen.fti.ds.sc.common.configuration.MqttAspect;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Help model to deal with MQTT. Uses Paho library.
  * Can subscribe and publish on various topics chosen.
  */
-public class MQTTUtils implements MqttCallback, MessageQueueClient
+public class MQTTUtils implements MqttCallbackExtended, MessageQueueClient
 {
-	private static final int DEFAULT_QoS = 2;
+	// Topics of telemetry, losing one of these messages is harmless because the next one supersedes it.
+	private static final String[] TELEMETRY_TOPICS = {MqttMessages.Topics.Core.HEARTBEAT, MqttMessages.Topics.Core.PERCENTAGE};
 
 	private Logger log;
 
-	private MqttClient client; // The MQTT client
+	private MqttAsyncClient client; // The MQTT client
+	private MQTTPublisher publisher; // Queues published messages and hands them to the client without blocking
 	private MQTTListener listener; // Through the interface this is capable of triggering methods in classes that have this interface implemented.
+	private MQTTDispatcher dispatcher; // Hands messages to the listener on other threads, null if the listener is called on the MQTT client's thread.
+	private int qos;
+	private int telemetryQos;
+	private ConcurrentHashMap<String, Integer> subscriptions; // Topics and their QoS, subscribed to again after reconnecting.
 
 	/**
 	 * Help model to deal with MQTT. Uses Paho library.
@@ -28,15 +39,93 @@ public class MQTTUtils implements MqttCallback, MessageQueueClient
 	 * @param listener  Interface listener to trigger methods in classes implementing the MQTT interface.
 	 */
 	public MQTTUtils(String brokerURL, String username, String password, MQTTListener listener) throws MqttException
+	{
+		this(brokerURL, username, password, listener, null);
+	}
+
+	/**
+	 * Help model to deal with MQTT. Uses Paho library.
+	 * Incoming messages are handed to the listener by a dispatcher, so a slow listener doesn't hold up the MQTT client.
+	 *
+	 * @param brokerURL  URL to the MQTT broker server.
+	 * @param username   Username to log in on the MQTT broker.
+	 * @param password   Password to log in on the MQTT broker.
+	 * @param listener   Interface listener to trigger methods in classes implementing the MQTT interface.
+	 * @param dispatcher Dispatcher that calls the listener, null to call it on the MQTT client's thread.
+	 */
+	public MQTTUtils(String brokerURL, String username, String password, MQTTListener listener, MQTTDispatcher dispatcher) throws MqttException
+	{
+		this(new MqttAspect(brokerURL, username, password, ""), listener, dispatcher);
+	}
+
+	/**
+	 * Help model to deal with MQTT. Uses Paho library.
+	 * Broker, credentials, QoS and persistence are taken from the configuration.
+	 *
+	 * @param mqttAspect MQTT configuration.
+	 * @param listener   Interface listener to trigger methods in classes implementing the MQTT interface.
+	 */
+	public MQTTUtils(MqttAspect mqttAspect, MQTTListener listener) throws MqttException
+	{
+		this(mqttAspect, listener, null, "");
+	}
+
+	/**
+	 * Help model to deal with MQTT. Uses Paho library.
+	 * Broker, credentials, QoS and persistence are taken from the configuration.
+	 *
+	 * @param mqttAspect MQTT configuration.
+	 * @param listener   Interface listener to trigger methods in classes implementing the MQTT interface.
+	 * @param clientName Name of this client, unique within the component. See MQTTUtils(MqttAspect, MQTTListener, MQTTDispatcher, String).
+	 */
+	public MQTTUtils(MqttAspect mqttAspect, MQTTListener listener, String clientName) throws MqttException
+	{
+		this(mqttAspect, listener, null, clientName);
+	}
+
+	/**
+	 * Help model to deal with MQTT. Uses Paho library.
+	 * Broker, credentials, QoS and persistence are taken from the configuration.
+	 *
+	 * @param mqttAspect MQTT configuration.
+	 * @param listener   Interface listener to trigger methods in classes implementing the MQTT interface.
+	 * @param dispatcher Dispatcher that calls the listener, null to call it on the MQTT client's thread.
+	 */
+	public MQTTUtils(MqttAspect mqttAspect, MQTTListener listener, MQTTDispatcher dispatcher) throws MqttException
+	{
+		this(mqttAspect, listener, dispatcher, "");
+	}
+
+	/**
+	 * Help model to deal with MQTT. Uses Paho library.
+	 * Broker, credentials, QoS and persistence are taken from the configuration.
+	 * The client reconnects automatically when the connection is lost and subscribes to its topics again.
+	 * Persisted messages belong to a client ID, so with persistence the ID must be the same after a restart:
+	 * it's the configured client ID followed by the client's name, which must be unique within the component.
+	 * Clients without a name keep their in-flight messages in memory.
+	 *
+	 * @param mqttAspect MQTT configuration.
+	 * @param listener   Interface listener to trigger methods in classes implementing the MQTT interface.
+	 * @param dispatcher Dispatcher that calls the listener, null to call it on the MQTT client's thread.
+	 * @param clientName Name of this client, unique within the component, empty if it has none.
+	 */
+	public MQTTUtils(MqttAspect mqttAspect, MQTTListener listener, MQTTDispatcher dispatcher, String clientName) throws MqttException
 	{
 		this.log = LoggerFactory.getLogger(this.getClass());
 
 		MqttConnectOptions options = new MqttConnectOptions();
 		this.listener = listener;
+		this.dispatcher = dispatcher;
+		this.qos = mqttAspect.getQos();
+		this.telemetryQos = mqttAspect.getTelemetryQos();
+		this.subscriptions = new ConcurrentHashMap<>();
+
+		options.setMaxInflight(mqttAspect.getMaxInflight());
+		options.setKeepAliveInterval(mqttAspect.getKeepAlive());
+		options.setAutomaticReconnect(true);
 
-		options.setCleanSession(true);
-		options.setMaxInflight(100);
-		options.setKeepAliveInterval(0);
+		String username = mqttAspect.getUsername();
+		String password = mqttAspect.getPassword();
 
 		if (!username.equals("") && !password.equals(""))
 		{
@@ -44,16 +133,43 @@ public class MQTTUtils implements MqttCallback, MessageQueueClient
 			options.setPassword(password.toCharArray());
 		}
 
+		String clientId = MqttAsyncClient.generateClientId();
+		MqttClientPersistence persistence = new MemoryPersistence();
+
+		if (!mqttAspect.getPersistence().equals(""))
+		{
+			if (mqttAspect.getClientId().equals("") || clientName.equals(""))
+			{
+				this.log.warn("MQTT persistence requires a client ID and client name, keeping in-flight messages of this client in memory.");
+			}
+			else
+			{
+				// Persisted messages belong to a client ID and session, so both have to survive a restart.
+				clientId = mqttAspect.getClientId() + "-" + clientName;
+				persistence = new MqttDefaultFilePersistence(mqttAspect.getPersistence());
+			}
+		}
+
+		options.setCleanSession(persistence instanceof MemoryPersistence);
+
 		try
 		{
-			this.client = new MqttClient(brokerURL, MqttClient.generateClientId(), new MemoryPersistence());
+			this.client = new MqttAsyncClient(mqttAspect.getBroker(), clientId, persistence);
 			this.client.setCallback(this);
-			this.client.connectWithResult(options);
-			this.log.info("Connected to '" + brokerURL + "'.");
+
+			// Messages published while reconnecting are kept until the connection is back
+			DisconnectedBufferOptions bufferOptions = new DisconnectedBufferOptions();
+			bufferOptions.setBufferEnabled(true);
+			bufferOptions.setBufferSize(mqttAspect.getMaxInflight());
+			this.client.setBufferOpts(bufferOptions);
+
+			this.client.connect(options).waitForCompletion();
+			this.publisher = new MQTTPublisher(this.client, mqttAspect.getMaxInflight(), mqttAspect.getPublishQueueCapacity());
+			this.log.info("Connected to '" + mqttAspect.getBroker() + "' as '" + clientId + "'.");
 		}
 		catch (MqttException e)
 		{
-			String errorString = "Could not connect to '" + brokerURL + "': " + e.getMessage();
+			String errorString = "Could not connect to '" + mqttAspect.getBroker() + "': " + e.getMessage();
 			this.log.error(errorString, e);
 			throw e;
 		}
@@ -61,16 +177,82 @@ public class MQTTUtils implements MqttCallback, MessageQueueClient
 
 	/**
 	 * This method is called when the connection to the server is lost.
+	 * The client keeps trying to reconnect in the background.
 	 *
 	 * @param t the reason behind the loss of connection.
 	 */
 	@Override
 	public void connectionLost(Throwable t)
 	{
-		String errorString = "Connection lost.";
+		String errorString = "Connection lost, reconnecting.";
 		this.log.error(errorString, t);
 	}
 
+	/**
+	 * This method is called when a connection to the server was made, including automatic reconnects.
+	 * After a reconnect, all topics are subscribed to again, as a clean session loses its subscriptions.
+	 *
+	 * @param reconnect True if the connection was made by an automatic reconnect.
+	 * @param serverURI The server the client connected to.
+	 */
+	@Override
+	public void connectComplete(boolean reconnect, String serverURI)
+	{
+		if (!reconnect)
+		{
+			return;
+		}
+
+		this.log.info("Reconnected to '" + serverURI + "', subscribing to " + this.subscriptions.size() + " topics.");
+
+		// Don't wait for the subscriptions to complete, this runs on the client's callback thread
+		for (java.util.Map.Entry<String, Integer> subscription: this.subscriptions.entrySet())
+		{
+			try
+			{
+				this.client.subscribe(subscription.getKey(), subscription.getValue());
+			}
+			catch (MqttException me)
+			{
+				this.log.error("Could not subscribe to topic '" + subscription.getKey() + "' with QoS " + subscription.getValue() + ".", me);
+			}
+		}
+	}
+
+	/**
+	 * Return the QoS used for a topic.
+	 * Telemetry is sent at the telemetry QoS, everything else at the default QoS.
+	 *
+	 * @param topic The topic, or a topic filter.
+	 * @return
+	 */
+	public int getQoS(String topic)
+	{
+		return isTelemetry(topic) ? this.telemetryQos : this.qos;
+	}
+
+	/**
+	 * Check whether a topic carries telemetry, which is superseded by the next update and may be lost.
+	 *
+	 * @param topic The topic, or a topic filter.
+	 * @return
+	 */
+	public static boolean isTelemetry(String topic)
+	{
+		for (String level: topic.split("/"))
+		{
+			for (String telemetryTopic: TELEMETRY_TOPICS)
+			{
+				if (level.equals(telemetryTopic))
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * This method is called when a message arrives from the server.
 	 * This method is invoked synchronously by the MQTT client.
@@ -87,6 +269,7 @@ public class MQTTUtils implements MqttCallback, MessageQueueClient
 	 * an acknowledgment for the message being processed, and a deadlock will occur.
 	 * <p>
 	 * Will trigger a link on the interface to call on the class implementing the interface to parse the message.
+	 * If a dispatcher was given, the message is only queued here.
 	 *
 	 * @param topic       Name of the topic on the message was published to.
 	 * @param mqttMessage The actual message.
@@ -95,9 +278,17 @@ public class MQTTUtils implements MqttCallback, MessageQueueClient
 	@Override
 	public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception
 	{
-		String message = new String(mqttMessage.getPayload());
+		String message = new String(mqttMessage.getPayload(), StandardCharsets.UTF_8);
 		this.log.debug("message arrived. Topic:" + topic + " | Message:" + message);
-		this.listener.parseMQTT(topic, message);
+
+		if (this.dispatcher != null)
+		{
+			this.dispatcher.dispatch(this.listener, topic, message);
+		}
+		else
+		{
+			this.listener.parseMQTT(topic, message);
+		}
 	}
 
 	/**
@@ -127,46 +318,78 @@ public class MQTTUtils implements MqttCallback, MessageQueueClient
 	}
 
 	/**
-	 * Subscribe to a chosen topic.
+	 * Subscribe to a chosen topic, with the QoS for that topic.
 	 *
 	 * @param topic The topic to subscribe on.
 	 */
 	public void subscribe(String topic)
 	{
+		this.subscribe(topic, this.getQoS(topic));
+	}
+
+	/**
+	 * Subscribe to a chosen topic.
+	 * The subscription is remembered, so it's restored after a reconnect, even if subscribing fails now.
+	 *
+	 * @param topic The topic to subscribe on.
+	 * @param qos   The maximum QoS at which messages are received.
+	 */
+	public void subscribe(String topic, int qos)
+	{
+		this.subscriptions.put(topic, qos);
+
 		try
 		{
-			this.client.subscribe(topic, DEFAULT_QoS);
-			this.log.debug("Subscribed to topic '" + topic + "' with QoS " + DEFAULT_QoS + ".");
+			this.client.subscribe(topic, qos).waitForCompletion();
+			this.log.debug("Subscribed to topic '" + topic + "' with QoS " + qos + ".");
 		}
 		catch (Exception e)
 		{
-			this.log.error("Could not subscribe to topic '" + topic + "' with QoS " + DEFAULT_QoS + ".", e);
+			this.log.error("Could not subscribe to topic '" + topic + "' with QoS " + qos + ".", e);
 		}
 	}
 
 	/**
-	 * Publish a message on a chosen topic.
+	 * Publish a message on a chosen topic, with the QoS for that topic.
 	 *
 	 * @param topic   The topic to publish on.
 	 * @param message The message to be published.
 	 */
 	public MQTTToken publish(String topic, String message) throws MqttException
 	{
-		MqttMessage mqttMessage = new MqttMessage(message.getBytes());
+		return this.publish(topic, message, this.getQoS(topic));
+	}
+
+	/**
+	 * Publish a message on a chosen topic.
+	 * The message is queued and sent in the background, the returned token tells when it's delivered.
+	 * Only waits (a limited time) when too many messages are waiting to be sent.
+	 *
+	 * @param topic   The topic to publish on.
+	 * @param message The message to be published.
+	 * @param qos     The QoS of the message.
+	 * @throws MqttException If the message couldn't be queued, because the client is closed or the publish queue stayed full.
+	 */
+	public MQTTToken publish(String topic, String message, int qos) throws MqttException
+	{
+		MqttMessage mqttMessage = new MqttMessage(message.getBytes(StandardCharsets.UTF_8));
 		mqttMessage.setRetained(false);
-		mqttMessage.setQos(DEFAULT_QoS);
+		mqttMessage.setQos(qos);
 		this.log.debug("Publishing. Topic:" + topic + " | Message:" + message + " | QoS: " + mqttMessage.getQos());
-		MqttTopic mqttTopic = this.client.getTopic(topic);
+
+		MQTTToken token = new MQTTToken(message);
 
 		try
 		{
-			return new MQTTToken(message, mqttTopic.publish(mqttMessage));
+			this.publisher.publish(topic, mqttMessage, token);
+			return token;
 		}
-		catch (MqttException me)
+		catch (InterruptedException ie)
 		{
 			// Catch, log and re-throw
-			this.log.error("Could not Publish \"" + message + "\" to \"" + topic + "\".", me);
-			throw me;
+			Thread.currentThread().interrupt();
+			this.log.error("Interrupted while publishing \"" + message + "\" to \"" + topic + "\".", ie);
+			throw new MqttException(MqttException.REASON_CODE_CLIENT_EXCEPTION, ie);
 		}
 	}
 
@@ -177,7 +400,8 @@ public class MQTTUtils implements MqttCallback, MessageQueueClient
 	{
 		try
 		{
-			this.client.disconnect();
+			this.publisher.shutdown();
+			this.client.disconnect().waitForCompletion();
 			this.client.close();
 		}
 		catch (MqttException e)
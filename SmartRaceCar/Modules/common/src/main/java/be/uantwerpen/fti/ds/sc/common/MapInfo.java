@@ -0,0 +1,95 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+/**
+ * Model of a map as listed in the backend's map catalog.
+ * Hashes are hex encoded SHA-256 hashes of the file contents,
+ * so a Core can tell whether its local copy of a map is up to date.
+ */
+public class MapInfo
+{
+	private String name;            // Name of the map
+	private String image;           // Image file referenced by the map's YAML file
+	private long yamlSize;          // Size of the YAML file in bytes
+	private String yamlHash;        // Hash of the YAML file
+	private long pgmSize;           // Size of the PGM file in bytes, 0 if there is no PGM file
+	private String pgmHash;         // Hash of the PGM file, null if there is no PGM file
+	private int width;              // Width of the map in pixels
+	private int height;             // Height of the map in pixels
+	private float resolution;       // Size of a pixel in meters
+
+	/**
+	 * Model of a map as listed in the backend's map catalog.
+	 *
+	 * @param name       Name of the map.
+	 * @param image      Image file referenced by the map's YAML file.
+	 * @param yamlSize   Size of the YAML file in bytes.
+	 * @param yamlHash   Hash of the YAML file.
+	 * @param pgmSize    Size of the PGM file in bytes, 0 if there is no PGM file.
+	 * @param pgmHash    Hash of the PGM file, null if there is no PGM file.
+	 * @param width      Width of the map in pixels.
+	 * @param height     Height of the map in pixels.
+	 * @param resolution Size of a pixel in meters.
+	 */
+	public MapInfo(String name, String image, long yamlSize, String yamlHash, long pgmSize, String pgmHash, int width, int height, float resolution)
+	{
+		this.name = name;
+		this.image = image;
+		this.yamlSize = yamlSize;
+		this.yamlHash = yamlHash;
+		this.pgmSize = pgmSize;
+		this.pgmHash = pgmHash;
+		this.width = width;
+		this.height = height;
+		this.resolution = resolution;
+	}
+
+	public String getName()
+	{
+		return this.name;
+	}
+
+	public String getImage()
+	{
+		return this.image;
+	}
+
+	public long getYamlSize()
+	{
+		return this.yamlSize;
+	}
+
+	public String getYamlHash()
+	{
+		return this.yamlHash;
+	}
+
+	public long getPgmSize()
+	{
+		return this.pgmSize;
+	}
+
+	public String getPgmHash()
+	{
+		return this.pgmHash;
+	}
+
+	public boolean hasPgm()
+	{
+		return this.pgmHash != null;
+	}
+
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+	public float getResolution()
+	{
+		return this.resolution;
+	}
+}
@@ -1,6 +1,7 @@
 package be.uantwerpen.fti.ds.sc.common;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 public interface MessageToken
 {
@@ -12,4 +13,12 @@ public interface MessageToken
 	 * @throws IOException
 	 */
 	public void waitForDelivery(long timeout) throws IOException;
+
+	/**
+	 * Get a future that completes once the message has been delivered.
+	 * If delivery fails, the future completes exceptionally with an IOException.
+	 * This doesn't block the calling thread.
+	 * @return
+	 */
+	public CompletableFuture<MessageToken> getDeliveryFuture();
 }
@@ -13,6 +13,7 @@ public class RESTMessages
 		public static final String GET_MAP_NAME = "getmapname";
 		public static final String GET_MAP_PGM = "getmappgm";
 		public static final String GET_MAP_YAML = "getmapyaml";
+		public static final String GET_MAP_CATALOG = "getmapcatalog";
 	}
 
 	/**
@@ -1,42 +1,98 @@
 package be.uantwerpen.fti.ds.sc.common;
 
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.*;
 import javax.ws.rs.client.*;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
 
 import static javax.ws.rs.core.MediaType.*;
 
 /**
  * Help model to deal with REST client requests. Uses Jersey library.
+ * All RESTUtils of a REST service share one client, which keeps a pool of connections open to the service.
+ * Every request has a blocking and an asynchronous variant, the asynchronous ones run on the client's own threads.
  */
 public class RESTUtils
 {
+	private static final int FILE_BUFFER_SIZE = 64 * 1024;     // Buffer size used when decompressing downloaded files (in bytes)
+
+	// One client per REST service, for the whole process. The settings of the first RESTUtils of a service are used.
+	private static final java.util.Map<String, Client> clients = new ConcurrentHashMap<>();
+
 	private Logger log;
 	private WebTarget webTarget; // URL to the domain of the REST service that is being connected to.
 
 
 	/**
 	 * Help model to deal with REST client requests. Uses Jersey library.
+	 * Uses the default pool size and timeouts.
 	 *
 	 * @param URL to the REST service that is being connected to.
 	 */
 	public RESTUtils(String URL)
+	{
+		this(URL, new RestAspect());
+	}
+
+	/**
+	 * Help model to deal with REST client requests. Uses Jersey library.
+	 *
+	 * @param URL        to the REST service that is being connected to.
+	 * @param restAspect Pool size and timeouts of the client.
+	 */
+	public RESTUtils(String URL, RestAspect restAspect)
 	{
 		this.log = LoggerFactory.getLogger(this.getClass());
 
-		Client client = ClientBuilder.newClient();
+		Client client = clients.computeIfAbsent(URL, url -> createClient(restAspect));
 		this.webTarget = client.target(URL);
 	}
 
+	private static Client createClient(RestAspect restAspect)
+	{
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(restAspect.getPoolSize());
+		connectionManager.setDefaultMaxPerRoute(restAspect.getPoolSize());
+
+		ClientConfig config = new ClientConfig();
+		config.connectorProvider(new ApacheConnectorProvider());
+		config.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+		config.property(ClientProperties.CONNECT_TIMEOUT, restAspect.getConnectTimeout());
+		config.property(ClientProperties.READ_TIMEOUT, restAspect.getReadTimeout());
+		// Asynchronous requests block one of these threads while they wait, more threads than connections is useless
+		config.property(ClientProperties.ASYNC_THREADPOOL_SIZE, restAspect.getPoolSize());
+		// Send requests with a content length, like the default connector, not every service accepts chunked requests
+		config.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.BUFFERED);
+
+		return ClientBuilder.newClient(config);
+	}
+
 	/**
 	 * Perform GET request, expecting a textual answer (Can be anything non-binary such as HTML, JSON, plaintext, ...)
 	 * @param endpoint
@@ -61,10 +117,18 @@ public class RESTUtils
 			throw pe;
 		}
 
-		this.checkForError(response, resourceWebTarget.getUri());
-		String responseString = response.readEntity(String.class);
-		this.log.debug("Text Returned from request '" + endpoint + "' is: " + responseString);
-		return responseString;
+		// Closing the response hands the connection back to the pool
+		try
+		{
+			this.checkForError(response, resourceWebTarget.getUri());
+			String responseString = response.readEntity(String.class);
+			this.log.debug("Text Returned from request '" + endpoint + "' is: " + responseString);
+			return responseString;
+		}
+		finally
+		{
+			response.close();
+		}
 	}
 
 	/**
@@ -88,7 +152,14 @@ public class RESTUtils
 			throw pe;
 		}
 
-		this.checkForError(response, resourceWebTarget.getUri());
+		try
+		{
+			this.checkForError(response, resourceWebTarget.getUri());
+		}
+		finally
+		{
+			response.close();
+		}
 	}
 
 	/**
@@ -109,32 +180,7 @@ public class RESTUtils
 
 		try
 		{
-			if (payloadType == APPLICATION_JSON_TYPE)
-			{
-				response = invocationBuilder.put(Entity.json(payload));
-			}
-			else if ((payloadType == APPLICATION_XML_TYPE) || (payloadType == TEXT_XML_TYPE))
-			{
-				response = invocationBuilder.put(Entity.xml(payload));
-			}
-			else if (payloadType == APPLICATION_XHTML_XML_TYPE)
-			{
-				response = invocationBuilder.put(Entity.xhtml(payload));
-			}
-			else if (payloadType == TEXT_HTML_TYPE)
-			{
-				response = invocationBuilder.put(Entity.html(payload));
-			}
-			else if (payloadType == TEXT_PLAIN_TYPE)
-			{
-				response = invocationBuilder.put(Entity.text(payload));
-			}
-			else
-			{
-				String errorString = "Got unsupported payload type: " + payloadType;
-				this.log.error(errorString);
-				throw new ProcessingException (errorString);
-			}
+			response = invocationBuilder.put(this.toEntity(payload, payloadType));
 		}
 		catch (ProcessingException e)
 		{
@@ -143,10 +189,17 @@ public class RESTUtils
 			throw new IOException(errorString);
 		}
 
-		this.checkForError(response, resourceWebTarget.getUri());
-		String responseString = response.readEntity(String.class);
-		this.log.info("JSON Returned from request '" + endpoint + "' is: " + responseString);
-		return responseString;
+		try
+		{
+			this.checkForError(response, resourceWebTarget.getUri());
+			String responseString = response.readEntity(String.class);
+			this.log.info("JSON Returned from request '" + endpoint + "' is: " + responseString);
+			return responseString;
+		}
+		finally
+		{
+			response.close();
+		}
 	}
 
 	/**
@@ -165,13 +218,20 @@ public class RESTUtils
 
 		Response response = invocationBuilder.post(Entity.text(""));
 
-		checkForError(response, resourceWebTarget.getUri());
+		try
+		{
+			checkForError(response, resourceWebTarget.getUri());
 
-		String responseString = response.readEntity(String.class);
+			String responseString = response.readEntity(String.class);
 
-		this.log.debug("POST Request got response: \"" + responseString + "\"");
+			this.log.debug("POST Request got response: \"" + responseString + "\"");
 
-		return responseString;
+			return responseString;
+		}
+		finally
+		{
+			response.close();
+		}
 	}
 
 	/**
@@ -190,17 +250,27 @@ public class RESTUtils
 
 		Response response = invocationBuilder.delete();
 
-		checkForError(response, resourceWebTarget.getUri());
+		try
+		{
+			checkForError(response, resourceWebTarget.getUri());
 
-		String responseString = response.readEntity(String.class);
+			String responseString = response.readEntity(String.class);
 
-		this.log.debug("DELETE Request got response \"" + responseString + "\"");
+			this.log.debug("DELETE Request got response \"" + responseString + "\"");
 
-		return responseString;
+			return responseString;
+		}
+		finally
+		{
+			response.close();
+		}
 	}
 
 	/**
 	 * REST GET request of the receive a response of the Octet-stream to download a file.
+	 * The server may send the file gzipped, it's decompressed while it's written to disk.
+	 * The file is first downloaded next to its destination and only moved in place once complete,
+	 * so an interrupted download never leaves a truncated file behind.
 	 *
 	 * @param URL           Path of the GET request.
 	 * @param folder        The path to download the file towards.
@@ -209,19 +279,17 @@ public class RESTUtils
 	 */
 	public void getFile(String URL, String folder, String fileName, String fileExtention) throws ProcessingException, IOException
 	{
-		java.nio.file.Path out = Paths.get(folder + "/" + fileName + "." + fileExtention);
+		Path out = Paths.get(folder + "/" + fileName + "." + fileExtention);
+		Path partial = Paths.get(folder + "/" + fileName + "." + fileExtention + ".part");
 		WebTarget resourceWebTarget = this.webTarget.path(URL);
-		Invocation.Builder invocationBuilder = resourceWebTarget.request("application/octet-stream");
-		Response response;
+		Invocation.Builder invocationBuilder = resourceWebTarget.request("application/octet-stream").header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		Response response = null;
 		this.log.info("Attempting GET(file) request with URL: " + resourceWebTarget.getUri());
+		long startTime = System.currentTimeMillis();
 		try
 		{
 			response = invocationBuilder.get();
-			checkForError(response, resourceWebTarget.getUri());
-			InputStream in = response.readEntity(InputStream.class);
-			Files.copy(in, out, StandardCopyOption.REPLACE_EXISTING);
-			in.close();
-			this.log.info("Downloaded file '" + fileName + "." + fileExtention + "'.");
+			this.saveFile(response, resourceWebTarget.getUri(), partial, out, startTime);
 		}
 		catch (ProcessingException pe)
 		{
@@ -231,8 +299,339 @@ public class RESTUtils
 		catch (IOException ioe)
 		{
 			this.log.error("Could not store file '" + fileName + "." + fileExtention + "' after download.", ioe);
+			Files.deleteIfExists(partial);
 			throw ioe;
 		}
+		finally
+		{
+			if (response != null)
+			{
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Asynchronous variant of get(endpoint, expectedResponseType).
+	 * @param endpoint
+	 * @param expectedResponseType
+	 * @return Future completed with the answer, or with a ProcessingException or WebApplicationException.
+	 */
+	public CompletableFuture<String> getAsync(String endpoint, MediaType expectedResponseType)
+	{
+		WebTarget resourceWebTarget = this.webTarget.path(endpoint);
+		this.log.debug("Attempting asynchronous GET request: " + resourceWebTarget.getUri());
+
+		return this.requestAsync(resourceWebTarget, resourceWebTarget.request(expectedResponseType).async(), HttpMethod.GET, null);
+	}
+
+	/**
+	 * Asynchronous variant of post(endpoint, payload, payloadType).
+	 * @param endpoint
+	 * @param payload
+	 * @param payloadType
+	 * @return Future completed with the answer, or with an IOException if the service can't be reached or a WebApplicationException.
+	 */
+	public CompletableFuture<String> postAsync(String endpoint, String payload, MediaType payloadType)
+	{
+		WebTarget resourceWebTarget = this.webTarget.path(endpoint);
+		this.log.debug("Attempting asynchronous POST request: " + resourceWebTarget.getUri());
+
+		CompletableFuture<String> future = new CompletableFuture<>();
+
+		try
+		{
+			Entity<String> entity = this.toEntity(payload, payloadType);
+
+			this.requestAsync(resourceWebTarget, resourceWebTarget.request("application/json").async(), HttpMethod.PUT, entity).whenComplete((answer, throwable) -> {
+				if (throwable == null)
+				{
+					future.complete(answer);
+				}
+				else if (throwable instanceof ProcessingException)
+				{
+					future.completeExceptionally(new IOException("Cannot connect to REST service (URL: \"" + resourceWebTarget.getUri() + "\")", throwable));
+				}
+				else
+				{
+					future.completeExceptionally(throwable);
+				}
+			});
+		}
+		catch (ProcessingException pe)
+		{
+			future.completeExceptionally(new IOException(pe.getMessage(), pe));
+		}
+
+		return future;
+	}
+
+	/**
+	 * Asynchronous variant of post(endpoint).
+	 * @param endpoint
+	 * @return Future completed with the answer, or with a ProcessingException or WebApplicationException.
+	 */
+	public CompletableFuture<String> postAsync(String endpoint)
+	{
+		WebTarget resourceWebTarget = this.webTarget.path(endpoint);
+		this.log.debug("Attempting asynchronous POST request: " + resourceWebTarget.getUri());
+
+		return this.requestAsync(resourceWebTarget, resourceWebTarget.request().async(), HttpMethod.POST, Entity.text(""));
+	}
+
+	/**
+	 * Asynchronous variant of delete(endpoint).
+	 * @param endpoint
+	 * @return Future completed with the answer, or with a ProcessingException or WebApplicationException.
+	 */
+	public CompletableFuture<String> deleteAsync(String endpoint)
+	{
+		WebTarget resourceWebTarget = this.webTarget.path(endpoint);
+		this.log.debug("Attempting asynchronous DELETE request: " + resourceWebTarget.getUri());
+
+		return this.requestAsync(resourceWebTarget, resourceWebTarget.request().async(), HttpMethod.DELETE, null);
+	}
+
+	/**
+	 * Asynchronous variant of getFile(URL, folder, fileName, fileExtention).
+	 *
+	 * @param URL           Path of the GET request.
+	 * @param folder        The path to download the file towards.
+	 * @param fileName      Filename the downloaded file should get.
+	 * @param fileExtention File extention the downloaded file should get.
+	 * @return Future completed once the file is stored, or with a ProcessingException, WebApplicationException or IOException.
+	 */
+	public CompletableFuture<Void> getFileAsync(String URL, String folder, String fileName, String fileExtention)
+	{
+		Path out = Paths.get(folder + "/" + fileName + "." + fileExtention);
+		Path partial = Paths.get(folder + "/" + fileName + "." + fileExtention + ".part");
+		WebTarget resourceWebTarget = this.webTarget.path(URL);
+		AsyncInvoker invoker = resourceWebTarget.request("application/octet-stream").header(HttpHeaders.ACCEPT_ENCODING, "gzip").async();
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		this.log.info("Attempting asynchronous GET(file) request with URL: " + resourceWebTarget.getUri());
+		long startTime = System.currentTimeMillis();
+
+		invoker.get(new InvocationCallback<Response>()
+		{
+			@Override
+			public void completed(Response response)
+			{
+				try
+				{
+					RESTUtils.this.saveFile(response, resourceWebTarget.getUri(), partial, out, startTime);
+					future.complete(null);
+				}
+				catch (IOException ioe)
+				{
+					RESTUtils.this.log.error("Could not store file '" + out.getFileName() + "' after download.", ioe);
+					RESTUtils.this.deletePartialFile(partial);
+					future.completeExceptionally(ioe);
+				}
+				catch (RuntimeException re)
+				{
+					RESTUtils.this.deletePartialFile(partial);
+					future.completeExceptionally(re);
+				}
+				finally
+				{
+					response.close();
+				}
+			}
+
+			@Override
+			public void failed(Throwable throwable)
+			{
+				RESTUtils.this.log.error("Cannot connect to REST service.", throwable);
+				future.completeExceptionally(throwable);
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Run a request for every item, with at most maxConcurrent requests in flight at the same time.
+	 * The returned future completes with the results in the order of the items,
+	 * or exceptionally as soon as one of the requests fails. Requests that weren't started yet are skipped then.
+	 *
+	 * @param items         The items to run a request for.
+	 * @param request       Starts the request for an item.
+	 * @param maxConcurrent Maximum number of requests running at the same time.
+	 * @param <T>           Type of the items.
+	 * @param <R>           Type of the results.
+	 * @return
+	 */
+	public static <T, R> CompletableFuture<List<R>> fanOut(List<T> items, Function<T, CompletableFuture<R>> request, int maxConcurrent)
+	{
+		CompletableFuture<List<R>> result = new CompletableFuture<>();
+		Object[] results = new Object[items.size()];
+		AtomicInteger next = new AtomicInteger(0);
+		AtomicInteger remaining = new AtomicInteger(items.size());
+
+		if (items.isEmpty())
+		{
+			result.complete(new ArrayList<>());
+			return result;
+		}
+
+		for (int i = 0; i < Math.min(Math.max(maxConcurrent, 1), items.size()); ++i)
+		{
+			startNext(items, request, results, next, remaining, result);
+		}
+
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T, R> void startNext(List<T> items, Function<T, CompletableFuture<R>> request, Object[] results, AtomicInteger next, AtomicInteger remaining, CompletableFuture<List<R>> result)
+	{
+		int index = next.getAndIncrement();
+
+		if ((index >= items.size()) || result.isDone())
+		{
+			return;
+		}
+
+		CompletableFuture<R> future;
+
+		try
+		{
+			future = request.apply(items.get(index));
+		}
+		catch (RuntimeException re)
+		{
+			result.completeExceptionally(re);
+			return;
+		}
+
+		future.whenComplete((value, throwable) -> {
+			if (throwable != null)
+			{
+				result.completeExceptionally(throwable);
+				return;
+			}
+
+			results[index] = value;
+
+			if (remaining.decrementAndGet() == 0)
+			{
+				result.complete((List<R>) new ArrayList<>(Arrays.asList(results)));
+			}
+			else
+			{
+				// This request's slot is free again
+				startNext(items, request, results, next, remaining, result);
+			}
+		});
+	}
+
+	private CompletableFuture<String> requestAsync(WebTarget resourceWebTarget, AsyncInvoker invoker, String method, Entity<?> entity)
+	{
+		CompletableFuture<String> future = new CompletableFuture<>();
+		URI uri = resourceWebTarget.getUri();
+
+		InvocationCallback<Response> callback = new InvocationCallback<Response>()
+		{
+			@Override
+			public void completed(Response response)
+			{
+				try
+				{
+					RESTUtils.this.checkForError(response, uri);
+					String responseString = response.readEntity(String.class);
+					RESTUtils.this.log.debug(method + " request to " + uri + " got response \"" + responseString + "\"");
+					future.complete(responseString);
+				}
+				catch (RuntimeException re)
+				{
+					future.completeExceptionally(re);
+				}
+				finally
+				{
+					response.close();
+				}
+			}
+
+			@Override
+			public void failed(Throwable throwable)
+			{
+				RESTUtils.this.log.error("Cannot connect to REST service (URI: " + uri + ")", throwable);
+				future.completeExceptionally(throwable);
+			}
+		};
+
+		if (entity == null)
+		{
+			invoker.method(method, callback);
+		}
+		else
+		{
+			invoker.method(method, entity, callback);
+		}
+
+		return future;
+	}
+
+	private Entity<String> toEntity(String payload, MediaType payloadType) throws ProcessingException
+	{
+		if (payloadType == APPLICATION_JSON_TYPE)
+		{
+			return Entity.json(payload);
+		}
+		else if ((payloadType == APPLICATION_XML_TYPE) || (payloadType == TEXT_XML_TYPE))
+		{
+			return Entity.xml(payload);
+		}
+		else if (payloadType == APPLICATION_XHTML_XML_TYPE)
+		{
+			return Entity.xhtml(payload);
+		}
+		else if (payloadType == TEXT_HTML_TYPE)
+		{
+			return Entity.html(payload);
+		}
+		else if (payloadType == TEXT_PLAIN_TYPE)
+		{
+			return Entity.text(payload);
+		}
+		else
+		{
+			String errorString = "Got unsupported payload type: " + payloadType;
+			this.log.error(errorString);
+			throw new ProcessingException (errorString);
+		}
+	}
+
+	/**
+	 * Write a downloaded file to disk, decompressing it if the server gzipped it.
+	 */
+	private void saveFile(Response response, URI uri, Path partial, Path out, long startTime) throws IOException, WebApplicationException
+	{
+		this.checkForError(response, uri);
+		boolean compressed = "gzip".equalsIgnoreCase(response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+
+		try (InputStream in = compressed ? new GZIPInputStream(response.readEntity(InputStream.class), FILE_BUFFER_SIZE) : response.readEntity(InputStream.class))
+		{
+			Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		Files.move(partial, out, StandardCopyOption.REPLACE_EXISTING);
+
+		this.log.info("Downloaded file '" + out.getFileName() + "' in " + (System.currentTimeMillis() - startTime) + "ms, "
+				+ "received " + ((response.getLength() >= 0) ? response.getLength() + " bytes" : "unknown number of bytes") + (compressed ? " (gzipped)" : "")
+				+ ", wrote " + Files.size(out) + " bytes.");
+	}
+
+	private void deletePartialFile(Path partial)
+	{
+		try
+		{
+			Files.deleteIfExists(partial);
+		}
+		catch (IOException ioe)
+		{
+			this.log.warn("Could not delete partial download " + partial, ioe);
+		}
 	}
 
 	/**
@@ -242,7 +641,7 @@ public class RESTUtils
 	 * @param response The REST response.
 	 * @param url      The URL that was being reached.
 	 */
-	private void checkForError(Response response, java.net.URI url) throws WebApplicationException
+	private void checkForError(Response response, URI url) throws WebApplicationException
 	{
 		if (response.getStatus() != Response.Status.OK.getStatusCode())
 		{
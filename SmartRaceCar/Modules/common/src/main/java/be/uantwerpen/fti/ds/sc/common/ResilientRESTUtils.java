@@ -0,0 +1,449 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Wraps RESTUtils to deal with slow or failing services.
+ * Every endpoint of a service has its own circuit breaker, shared by the whole process. While a breaker is open,
+ * requests fail right away with a CircuitBreakerOpenException instead of waiting for a service that's down.
+ * Idempotent requests (GET, PUT and DELETE) that failed because of a connection problem or a server error are retried
+ * a limited number of times, with a growing, random delay. Reads can be hedged: when the answer takes longer than
+ * a percentile of the recent latencies of the endpoint, the request is sent a second time and the first answer wins.
+ * POST requests are never retried or hedged, as the service could act on them twice.
+ */
+public class ResilientRESTUtils
+{
+	private static final int LATENCY_WINDOW_SIZE = 128;     // Number of recent latencies kept per endpoint
+	private static final int MIN_HEDGE_SAMPLES = 20;        // Number of latencies needed before requests are hedged
+	private static final Pattern ID_SEGMENT = Pattern.compile("(^|/)-?\\d+(?=/|$)");
+
+	// Endpoints of all services, so they share their breaker no matter which ResilientRESTUtils calls them
+	private static final java.util.Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ResilientRESTUtils - Scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Circuit breaker and statistics of a single endpoint.
+	 */
+	private static class Endpoint
+	{
+		private final String service;
+		private final String name;
+		private final CircuitBreaker breaker;
+		private final AtomicLong numRetries;
+		private final AtomicLong numHedges;
+		private final long[] latencies;         // Most recent latencies of successful requests (in ns), used as a ring buffer
+		private int numLatencies;
+		private int latencyHead;
+
+		public Endpoint(String service, String name, RestAspect restAspect)
+		{
+			this.service = service;
+			this.name = name;
+			this.breaker = new CircuitBreaker(service + "/" + name, restAspect.getBreakerThreshold(), restAspect.getBreakerOpenTime());
+			this.numRetries = new AtomicLong(0);
+			this.numHedges = new AtomicLong(0);
+			this.latencies = new long[LATENCY_WINDOW_SIZE];
+			this.numLatencies = 0;
+			this.latencyHead = 0;
+		}
+
+		public synchronized void addLatency(long latency)
+		{
+			this.latencies[this.latencyHead] = latency;
+			this.latencyHead = (this.latencyHead + 1) % LATENCY_WINDOW_SIZE;
+			this.numLatencies = Math.min(this.numLatencies + 1, LATENCY_WINDOW_SIZE);
+		}
+
+		public synchronized int getNumLatencies()
+		{
+			return this.numLatencies;
+		}
+
+		/**
+		 * Return a percentile of the recent latencies, in ns.
+		 */
+		public synchronized long getLatency(int percentile)
+		{
+			if (this.numLatencies == 0)
+			{
+				return 0;
+			}
+
+			long[] samples = Arrays.copyOf(this.latencies, this.numLatencies);
+			Arrays.sort(samples);
+
+			int index = Math.round((percentile / 100.0f) * (this.numLatencies - 1));
+			return samples[Math.max(0, Math.min(this.numLatencies - 1, index))];
+		}
+
+		public EndpointMetrics getMetrics()
+		{
+			return new EndpointMetrics(this.service, this.name, this.breaker.getState(), this.breaker.getNumSuccesses(),
+					this.breaker.getNumFailures(), this.breaker.getNumRejected(), this.numRetries.get(), this.numHedges.get(),
+					TimeUnit.NANOSECONDS.toMillis(this.getLatency(50)), TimeUnit.NANOSECONDS.toMillis(this.getLatency(99)));
+		}
+	}
+
+	private Logger log;
+	private String URL;
+	private RESTUtils restUtils;
+	private RestAspect restAspect;
+
+	/**
+	 * Wraps RESTUtils to deal with slow or failing services.
+	 *
+	 * @param URL        to the REST service that is being connected to.
+	 * @param restAspect Pool size, timeouts, retries, circuit breaker and hedging settings.
+	 */
+	public ResilientRESTUtils(String URL, RestAspect restAspect)
+	{
+		this.log = LoggerFactory.getLogger(ResilientRESTUtils.class);
+		this.URL = URL;
+		this.restUtils = new RESTUtils(URL, restAspect);
+		this.restAspect = restAspect;
+	}
+
+	/**
+	 * Return the metrics of all endpoints that were called so far, of all services.
+	 * @return
+	 */
+	public static List<EndpointMetrics> getMetrics()
+	{
+		List<EndpointMetrics> metrics = new ArrayList<>();
+
+		for (Endpoint endpoint: endpoints.values())
+		{
+			metrics.add(endpoint.getMetrics());
+		}
+
+		return metrics;
+	}
+
+	/**
+	 * Return the state of the circuit breaker of an endpoint of this service.
+	 * @param endpoint
+	 * @return
+	 */
+	public CircuitBreaker.State getState(String endpoint)
+	{
+		return this.getEndpoint(endpoint).breaker.getState();
+	}
+
+	/**
+	 * Perform GET request, expecting a textual answer.
+	 * @param endpoint
+	 * @param expectedResponseType
+	 * @return
+	 * @throws ProcessingException          If the service can't be reached, or its circuit breaker is open.
+	 * @throws WebApplicationException
+	 */
+	public String get(String endpoint, MediaType expectedResponseType) throws ProcessingException, WebApplicationException
+	{
+		return await(this.getAsync(endpoint, expectedResponseType));
+	}
+
+	/**
+	 * Asynchronous variant of get(endpoint, expectedResponseType).
+	 * @param endpoint
+	 * @param expectedResponseType
+	 * @return
+	 */
+	public CompletableFuture<String> getAsync(String endpoint, MediaType expectedResponseType)
+	{
+		return this.execute(endpoint, true, true, () -> this.restUtils.getAsync(endpoint, expectedResponseType));
+	}
+
+	/**
+	 * Perform a request with the given payload. Like RESTUtils this is sent as a PUT request.
+	 * @param endpoint
+	 * @param payload
+	 * @param payloadType
+	 * @return
+	 * @throws IOException                  If the service can't be reached, or its circuit breaker is open.
+	 * @throws WebApplicationException
+	 */
+	public String post(String endpoint, String payload, MediaType payloadType) throws IOException, WebApplicationException
+	{
+		try
+		{
+			return await(this.postAsync(endpoint, payload, payloadType));
+		}
+		catch (ProcessingException pe)
+		{
+			if (pe.getCause() instanceof IOException)
+			{
+				throw (IOException) pe.getCause();
+			}
+
+			throw new IOException(pe.getMessage(), pe);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of post(endpoint, payload, payloadType).
+	 * @param endpoint
+	 * @param payload
+	 * @param payloadType
+	 * @return
+	 */
+	public CompletableFuture<String> postAsync(String endpoint, String payload, MediaType payloadType)
+	{
+		return this.execute(endpoint, true, true, () -> this.restUtils.postAsync(endpoint, payload, payloadType));
+	}
+
+	/**
+	 * Send a POST request without expecting an answer. It isn't retried.
+	 * @param endpoint
+	 * @return
+	 * @throws ProcessingException          If the service can't be reached, or its circuit breaker is open.
+	 * @throws WebApplicationException
+	 */
+	public String post(String endpoint) throws ProcessingException, WebApplicationException
+	{
+		return await(this.postAsync(endpoint));
+	}
+
+	/**
+	 * Asynchronous variant of post(endpoint).
+	 * @param endpoint
+	 * @return
+	 */
+	public CompletableFuture<String> postAsync(String endpoint)
+	{
+		return this.execute(endpoint, false, false, () -> this.restUtils.postAsync(endpoint));
+	}
+
+	/**
+	 * Send a DELETE request without expecting an answer.
+	 * @param endpoint
+	 * @return
+	 * @throws ProcessingException          If the service can't be reached, or its circuit breaker is open.
+	 * @throws WebApplicationException
+	 */
+	public String delete(String endpoint) throws ProcessingException, WebApplicationException
+	{
+		return await(this.deleteAsync(endpoint));
+	}
+
+	/**
+	 * Asynchronous variant of delete(endpoint).
+	 * @param endpoint
+	 * @return
+	 */
+	public CompletableFuture<String> deleteAsync(String endpoint)
+	{
+		return this.execute(endpoint, true, false, () -> this.restUtils.deleteAsync(endpoint));
+	}
+
+	/**
+	 * Endpoints that only differ in IDs share a breaker, so "jobs/complete/3" and "jobs/complete/4" are the same endpoint.
+	 */
+	private Endpoint getEndpoint(String endpoint)
+	{
+		String name = ID_SEGMENT.matcher(endpoint).replaceAll("$1{id}");
+
+		if (name.startsWith("/"))
+		{
+			name = name.substring(1);
+		}
+
+		String endpointName = name;
+		return endpoints.computeIfAbsent(this.URL + " " + endpointName, key -> new Endpoint(this.URL, endpointName, this.restAspect));
+	}
+
+	private <T> CompletableFuture<T> execute(String endpointPath, boolean retry, boolean hedge, Supplier<CompletableFuture<T>> request)
+	{
+		Endpoint endpoint = this.getEndpoint(endpointPath);
+		CompletableFuture<T> result = new CompletableFuture<>();
+
+		this.attempt(endpoint, endpointPath, retry, hedge, request, 0, result);
+
+		return result;
+	}
+
+	private <T> void attempt(Endpoint endpoint, String endpointPath, boolean retry, boolean hedge, Supplier<CompletableFuture<T>> request,
+			int attempt, CompletableFuture<T> result)
+	{
+		if (!endpoint.breaker.allowRequest())
+		{
+			String errorString = "Not sending request to " + this.URL + "/" + endpointPath + ", the service failed too often.";
+			this.log.warn(errorString);
+			result.completeExceptionally(new CircuitBreakerOpenException(errorString));
+			return;
+		}
+
+		long start = System.nanoTime();
+		CompletableFuture<T> future;
+
+		try
+		{
+			future = hedge ? this.hedge(endpoint, request) : request.get();
+		}
+		catch (RuntimeException re)
+		{
+			endpoint.breaker.recordSuccess();   // The request couldn't be created, that's not the service's fault
+			result.completeExceptionally(re);
+			return;
+		}
+
+		future.whenComplete((value, throwable) -> {
+			if (throwable == null)
+			{
+				endpoint.addLatency(System.nanoTime() - start);
+				endpoint.breaker.recordSuccess();
+				result.complete(value);
+				return;
+			}
+
+			Throwable cause = unwrap(throwable);
+
+			if (!isServiceFailure(cause))
+			{
+				// The service answered, the request was wrong
+				endpoint.breaker.recordSuccess();
+				result.completeExceptionally(cause);
+				return;
+			}
+
+			endpoint.breaker.recordFailure();
+
+			if ((!retry) || (attempt >= this.restAspect.getRetries()))
+			{
+				result.completeExceptionally(cause);
+				return;
+			}
+
+			// Exponential backoff with full jitter, so clients that failed together don't retry together
+			long maxDelay = Math.min((long) this.restAspect.getRetryBackoff() << Math.min(attempt, 20), this.restAspect.getRetryMaxBackoff());
+			long delay = ThreadLocalRandom.current().nextLong(maxDelay + 1);
+			endpoint.numRetries.incrementAndGet();
+			this.log.warn("Request to " + this.URL + "/" + endpointPath + " failed (" + cause.getMessage() + "), retrying in " + delay + "ms.");
+
+			scheduler.schedule(() -> this.attempt(endpoint, endpointPath, retry, hedge, request, attempt + 1, result), delay, TimeUnit.MILLISECONDS);
+		});
+	}
+
+	/**
+	 * Send the request, and send it again if the first one takes longer than the configured percentile of recent latencies.
+	 * The first successful answer is used. Fails only if all requests that were sent failed.
+	 */
+	private <T> CompletableFuture<T> hedge(Endpoint endpoint, Supplier<CompletableFuture<T>> request)
+	{
+		int percentile = this.restAspect.getHedgePercentile();
+
+		if ((percentile <= 0) || (endpoint.getNumLatencies() < MIN_HEDGE_SAMPLES))
+		{
+			return request.get();
+		}
+
+		long delay = Math.max(TimeUnit.NANOSECONDS.toMillis(endpoint.getLatency(percentile)), 1);
+		CompletableFuture<T> result = new CompletableFuture<>();
+		AtomicInteger pending = new AtomicInteger(1);
+
+		BiConsumer<T, Throwable> complete = (value, throwable) -> {
+			if (throwable == null)
+			{
+				result.complete(value);
+			}
+			else if (pending.decrementAndGet() == 0)
+			{
+				result.completeExceptionally(throwable);
+			}
+		};
+
+		request.get().whenComplete(complete);
+
+		ScheduledFuture<?> hedgedRequest = scheduler.schedule(() -> {
+			if (!result.isDone())
+			{
+				pending.incrementAndGet();
+				endpoint.numHedges.incrementAndGet();
+				this.log.debug("No answer from " + endpoint.breaker.getName() + " after " + delay + "ms, sending hedged request.");
+
+				try
+				{
+					request.get().whenComplete(complete);
+				}
+				catch (RuntimeException re)
+				{
+					complete.accept(null, re);
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+
+		result.whenComplete((value, throwable) -> hedgedRequest.cancel(false));
+
+		return result;
+	}
+
+	/**
+	 * Connection problems, timeouts and server errors count as failures of the service, other errors don't.
+	 */
+	private static boolean isServiceFailure(Throwable throwable)
+	{
+		if (throwable instanceof WebApplicationException)
+		{
+			return ((WebApplicationException) throwable).getResponse().getStatus() >= 500;
+		}
+
+		return (throwable instanceof IOException) || (throwable instanceof ProcessingException);
+	}
+
+	private static Throwable unwrap(Throwable throwable)
+	{
+		while (((throwable instanceof CompletionException) || (throwable instanceof ExecutionException)) && (throwable.getCause() != null))
+		{
+			throwable = throwable.getCause();
+		}
+
+		return throwable;
+	}
+
+	/**
+	 * Wait for a request, throwing the exception it failed with.
+	 */
+	private static <T> T await(CompletableFuture<T> future) throws ProcessingException, WebApplicationException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessingException("Interrupted while waiting for a REST request.", ie);
+		}
+		catch (ExecutionException ee)
+		{
+			Throwable cause = unwrap(ee);
+
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			throw new ProcessingException(cause.getMessage(), cause);
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Long lived TCP connection between the Core and the Sim- or RosKernel.
+ * Both sides listen on their server port and send to the client port of the other side, like TCPUtils.
+ * Once framing is enabled, messages are sent as length-prefixed frames over a single connection that stays open,
+ * and is opened again when it breaks. Before that (and towards older versions that don't support framing)
+ * every message is sent as a line over a new connection.
+ * Incoming connections are recognised by their first byte, so framed and line connections can be mixed.
+ * Messages are written in the order sendUpdate was called, but there are no acknowledgements:
+ * a message written to a connection the other side already dropped can be lost without an error,
+ * and around a reconnect the old and new connection are read by different threads, so messages can be handled out of order.
+ * Messages that must arrive have to be confirmed by the protocol on top of the channel.
+ */
+public class TCPChannel extends Thread
+{
+	public static final String FRAMED = "framed/1";
+	public static final String LINES = "lines";
+
+	private static final int PREAMBLE = 0;              // First byte of a framed connection, never the start of a line
+	private static final int VERSION = 1;
+	private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+	private static final long RECONNECT_DELAY = 1000;   // Time to wait before connecting again, in ms
+
+	private Logger log;
+	private int clientPort; // Port to send messages to.
+	private int serverPort; // Port to receive messages on.
+	private TCPListener listener;
+	private volatile ServerSocket serverSocket;
+	private Set<Socket> connections;     // Incoming framed connections
+	private volatile boolean framed;
+	private volatile boolean closed;
+
+	// The outgoing connection, only used while holding the lock
+	private final Object sendLock;
+	private Socket socket;
+	private DataOutputStream out;
+
+	/**
+	 * Long lived TCP connection between the Core and the Sim- or RosKernel.
+	 *
+	 * @param clientPort Port to send messages to.
+	 * @param serverPort Port to listen for messages on.
+	 * @param listener   Interface listener to trigger methods in classes implementing the TCP interface.
+	 */
+	public TCPChannel(int clientPort, int serverPort, TCPListener listener)
+	{
+		this.log = LoggerFactory.getLogger(TCPChannel.class);
+		this.clientPort = clientPort;
+		this.serverPort = serverPort;
+		this.listener = listener;
+		this.framed = false;
+		this.closed = false;
+		this.connections = ConcurrentHashMap.newKeySet();
+		this.sendLock = new Object();
+		this.socket = null;
+		this.out = null;
+		super.setName("TCPChannel - Client Port: " + clientPort + ", Server Port: " + serverPort);  // Give the thread a sensible name
+	}
+
+	/**
+	 * Send frames over a single connection, once the other side is known to support it.
+	 *
+	 * @param framed True to send framed messages, false to send a line per connection.
+	 */
+	public void setFramed(boolean framed)
+	{
+		if (this.framed != framed)
+		{
+			this.log.info("Sending messages " + (framed ? "framed over a single connection." : "as a line per connection."));
+		}
+
+		this.framed = framed;
+	}
+
+	public boolean isFramed()
+	{
+		return this.framed;
+	}
+
+	/**
+	 * Accept incoming connections. Framed connections are read by their own thread,
+	 * line connections carry a single message and are read and closed right away.
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			this.serverSocket = new ServerSocket(this.serverPort);
+		}
+		catch (IOException ioe)
+		{
+			this.log.error("failed to create serversocket on port " + this.serverPort, ioe);
+			return;
+		}
+
+		while (!this.closed)
+		{
+			try
+			{
+				Socket connection = this.serverSocket.accept();
+				InputStream in = new BufferedInputStream(connection.getInputStream());
+
+				in.mark(1);
+
+				if (in.read() == PREAMBLE)
+				{
+					this.connections.add(connection);
+					Thread reader = new Thread(() -> this.readFrames(connection, in), this.getName() + " - Reader");
+					reader.setDaemon(true);
+					reader.start();
+				}
+				else
+				{
+					in.reset();
+					this.readLine(connection, in);
+				}
+			}
+			catch (IOException ioe)
+			{
+				if (!this.closed)
+				{
+					this.log.error("Cannot receive data.", ioe);
+				}
+			}
+		}
+	}
+
+	private void readLine(Socket connection, InputStream in)
+	{
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			String line = reader.readLine();
+
+			if (line != null)
+			{
+				this.receive(line);
+			}
+		}
+		catch (IOException ioe)
+		{
+			this.log.error("Cannot receive data.", ioe);
+		}
+		finally
+		{
+			this.close(connection);
+		}
+	}
+
+	private void readFrames(Socket connection, InputStream in)
+	{
+		try
+		{
+			DataInputStream dataIn = new DataInputStream(in);
+			int version = dataIn.readUnsignedByte();
+
+			if (version != VERSION)
+			{
+				throw new IOException("Unsupported frame version " + version + ", expected " + VERSION + ".");
+			}
+
+			while (true)
+			{
+				int length;
+
+				try
+				{
+					length = dataIn.readInt();
+				}
+				catch (EOFException eofe)
+				{
+					// The other side closed the connection between frames
+					return;
+				}
+
+				if ((length < 0) || (length > MAX_FRAME_SIZE))
+				{
+					throw new IOException("Invalid frame size " + length + ".");
+				}
+
+				byte[] frame = new byte[length];
+				dataIn.readFully(frame);
+				this.receive(new String(frame, StandardCharsets.UTF_8));
+			}
+		}
+		catch (IOException ioe)
+		{
+			if (!this.closed)
+			{
+				this.log.warn("Framed connection from " + connection.getRemoteSocketAddress() + " broke.", ioe);
+			}
+		}
+		finally
+		{
+			this.connections.remove(connection);
+			this.close(connection);
+		}
+	}
+
+	private void receive(String message)
+	{
+		this.log.debug("data received: " + message);
+
+		try
+		{
+			this.listener.parseTCP(message);
+		}
+		catch (IOException ioe)
+		{
+			this.log.error("Failed to handle message: " + message, ioe);
+		}
+	}
+
+	private void close(Socket connection)
+	{
+		try
+		{
+			connection.close();
+		}
+		catch (IOException ioe)
+		{
+			this.log.warn("Could not close Socket connection.", ioe);
+		}
+	}
+
+	private void send(String data) throws IOException
+	{
+		if (!this.framed)
+		{
+			try (Socket lineSocket = new Socket("localhost", this.clientPort))
+			{
+				OutputStream lineOut = lineSocket.getOutputStream();
+				lineOut.write((data + "\n").getBytes(StandardCharsets.UTF_8));
+				lineOut.flush();
+			}
+
+			return;
+		}
+
+		if (this.socket == null)
+		{
+			this.socket = new Socket("localhost", this.clientPort);
+			this.socket.setTcpNoDelay(true);
+			this.socket.setKeepAlive(true);     // Notice a dropped connection eventually, even while idle
+			this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+			this.out.writeByte(PREAMBLE);
+			this.out.writeByte(VERSION);
+			this.log.info("Opened framed connection to port " + this.clientPort + ".");
+		}
+
+		byte[] frame = data.getBytes(StandardCharsets.UTF_8);
+		this.out.writeInt(frame.length);
+		this.out.write(frame);
+		this.out.flush();
+	}
+
+	private void disconnect()
+	{
+		if (this.socket != null)
+		{
+			this.close(this.socket);
+			this.socket = null;
+			this.out = null;
+		}
+	}
+
+	/**
+	 * Send a message on the clientPort. Will continue to try until the message is written,
+	 * a broken connection is opened again and the message is written before any later message.
+	 * Returning doesn't mean the other side received the message.
+	 *
+	 * @param data The message that has to be send.
+	 */
+	public void sendUpdate(String data)
+	{
+		synchronized (this.sendLock)
+		{
+			while (!this.closed)
+			{
+				try
+				{
+					this.send(data);
+					this.log.debug("Data Sent:" + data);
+					return;
+				}
+				catch (IOException ioe)
+				{
+					this.log.warn("Cannot send " + data + " to port " + this.clientPort + ". Trying again. Error:" + ioe);
+					this.disconnect();
+				}
+
+				try
+				{
+					Thread.sleep(RECONNECT_DELAY);
+				}
+				catch (InterruptedException ie)
+				{
+					this.log.warn("Interrupted while sending " + data + ".");
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the connection and stop listening.
+	 */
+	public void closeTCP()
+	{
+		this.closed = true;
+
+		synchronized (this.sendLock)
+		{
+			this.disconnect();
+		}
+
+		try
+		{
+			if (this.serverSocket != null)
+			{
+				this.serverSocket.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			this.log.error("Could not close Socket connection. IOException:  " + ioe);
+		}
+
+		for (Socket connection: this.connections)
+		{
+			this.close(connection);
+		}
+	}
+}
@@ -0,0 +1,425 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.TcpServerAspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking TCP server for the line based command protocol: every line a client sends is a command,
+ * the listener's answer is sent back as a line.
+ * A single thread accepts clients and does all reading and writing, commands are handled by a pool of workers.
+ * The commands of one client are handled one at a time, in the order they were sent. Clients can send any
+ * number of commands over a connection, they are disconnected when they haven't sent anything for a while.
+ */
+public class TCPServer extends Thread
+{
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	private static final long MAX_SELECT_TIME = 1000;       // Maximum time between checks for idle clients, in ms
+
+	/**
+	 * State of a connected client, only used by the selector thread.
+	 */
+	private static class Client
+	{
+		private final SocketChannel channel;
+		private final ByteArrayOutputStream line;       // The line being received
+		private final Queue<String> commands;           // Commands waiting for the previous one to finish
+		private final Queue<ByteBuffer> responses;      // Responses waiting to be written
+		private boolean busy;                           // A worker is handling a command of this client
+		private boolean inputClosed;
+		private long lastActive;
+
+		public Client(SocketChannel channel)
+		{
+			this.channel = channel;
+			this.line = new ByteArrayOutputStream();
+			this.commands = new ArrayDeque<>();
+			this.responses = new ArrayDeque<>();
+			this.busy = false;
+			this.inputClosed = false;
+			this.lastActive = System.currentTimeMillis();
+		}
+	}
+
+	private Logger log;
+	private TCPListener listener;
+	private int maxConnections;
+	private long idleTimeout;       // In ms
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private ExecutorService workers;
+	private ByteBuffer readBuffer;
+	private Queue<Runnable> tasks;  // Work for the selector thread, handed over by the workers
+	private Set<Client> clients;
+	private volatile boolean running;
+
+	/**
+	 * Non-blocking TCP server for the line based command protocol.
+	 * The server socket is opened right away, clients are served once the thread is started.
+	 *
+	 * @param tcpServerAspect Port, connection limit, idle timeout and number of workers of the server.
+	 * @param listener        Interface listener that handles the commands.
+	 * @throws IOException If the server socket can't be opened.
+	 */
+	public TCPServer(TcpServerAspect tcpServerAspect, TCPListener listener) throws IOException
+	{
+		this.log = LoggerFactory.getLogger(TCPServer.class);
+		this.listener = listener;
+		this.maxConnections = tcpServerAspect.getMaxConnections();
+		this.idleTimeout = TimeUnit.SECONDS.toMillis(tcpServerAspect.getIdleTimeout());
+
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.bind(new InetSocketAddress(tcpServerAspect.getServerPort()));
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+
+		AtomicInteger workerCount = new AtomicInteger(0);
+		int port = tcpServerAspect.getServerPort();
+		this.workers = Executors.newFixedThreadPool(tcpServerAspect.getWorkers(), runnable -> {
+			Thread worker = new Thread(runnable, "TCPServer - Port: " + port + " - Worker " + workerCount.getAndIncrement());
+			worker.setDaemon(true);
+			return worker;
+		});
+
+		this.readBuffer = ByteBuffer.allocate(8192);
+		this.tasks = new ConcurrentLinkedQueue<>();
+		this.clients = ConcurrentHashMap.newKeySet();
+		this.running = true;
+		super.setName("TCPServer - Port: " + port);  // Give the thread a sensible name
+	}
+
+	/**
+	 * Return the port the server listens on.
+	 * @return
+	 */
+	public int getPort()
+	{
+		return this.serverChannel.socket().getLocalPort();
+	}
+
+	@Override
+	public void run()
+	{
+		this.log.info("Listening for commands on port " + this.getPort());
+
+		while (this.running)
+		{
+			try
+			{
+				this.selector.select(Math.min(MAX_SELECT_TIME, this.idleTimeout));
+
+				Runnable task;
+
+				while ((task = this.tasks.poll()) != null)
+				{
+					task.run();
+				}
+
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+
+				while (keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (!key.isValid())
+					{
+						continue;
+					}
+
+					if (key.isAcceptable())
+					{
+						this.accept();
+						continue;
+					}
+
+					Client client = (Client) key.attachment();
+
+					try
+					{
+						if (key.isReadable())
+						{
+							this.read(client);
+						}
+
+						if (key.isValid() && key.isWritable())
+						{
+							this.write(client);
+						}
+					}
+					catch (IOException ioe)
+					{
+						this.log.warn("Connection with " + client.channel.socket().getRemoteSocketAddress() + " failed.", ioe);
+						this.close(client);
+					}
+				}
+
+				this.closeIdleClients();
+			}
+			catch (IOException ioe)
+			{
+				if (this.running)
+				{
+					this.log.error("IOException in socket operation", ioe);
+				}
+			}
+		}
+
+		for (Client client: this.clients)
+		{
+			this.close(client);
+		}
+
+		try
+		{
+			this.serverChannel.close();
+			this.selector.close();
+		}
+		catch (IOException ioe)
+		{
+			this.log.error("Could not close Socket connection. IOException:  " + ioe);
+		}
+
+		this.workers.shutdown();
+	}
+
+	private void accept() throws IOException
+	{
+		SocketChannel channel = this.serverChannel.accept();
+
+		if (channel == null)
+		{
+			return;
+		}
+
+		if (this.clients.size() >= this.maxConnections)
+		{
+			this.log.warn("Refusing " + channel.getRemoteAddress() + ", already serving " + this.clients.size() + " clients.");
+			channel.close();
+			return;
+		}
+
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+
+		Client client = new Client(channel);
+		channel.register(this.selector, SelectionKey.OP_READ, client);
+		this.clients.add(client);
+		this.log.debug("Accepted " + channel.getRemoteAddress() + ", serving " + this.clients.size() + " clients.");
+	}
+
+	private void read(Client client) throws IOException
+	{
+		this.readBuffer.clear();
+		int read = client.channel.read(this.readBuffer);
+		client.lastActive = System.currentTimeMillis();
+
+		if (read < 0)
+		{
+			// The client can still be waiting for the responses to the commands it sent
+			client.inputClosed = true;
+			this.updateInterest(client);
+			this.closeIfDone(client);
+			return;
+		}
+
+		this.readBuffer.flip();
+
+		while (this.readBuffer.hasRemaining())
+		{
+			byte b = this.readBuffer.get();
+
+			if (b == '\n')
+			{
+				String command = new String(client.line.toByteArray(), StandardCharsets.UTF_8);
+				client.line.reset();
+
+				if (command.endsWith("\r"))
+				{
+					command = command.substring(0, command.length() - 1);
+				}
+
+				client.commands.add(command);
+			}
+			else if (client.line.size() >= MAX_LINE_LENGTH)
+			{
+				throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes.");
+			}
+			else
+			{
+				client.line.write(b);
+			}
+		}
+
+		this.dispatch(client);
+	}
+
+	private void dispatch(Client client)
+	{
+		if (!client.busy && !client.commands.isEmpty())
+		{
+			String command = client.commands.poll();
+			client.busy = true;
+			this.workers.execute(() -> this.handle(client, command));
+		}
+
+		this.updateInterest(client);
+	}
+
+	private void handle(Client client, String command)
+	{
+		this.log.info("Data received: " + command);
+		String response = null;
+		boolean failed = false;
+
+		try
+		{
+			response = this.listener.parseTCP(command);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			this.log.error("Failed to handle \"" + command + "\".", e);
+			failed = true;
+		}
+
+		String result = response;
+		boolean close = failed;
+
+		this.tasks.add(() -> this.complete(client, result, close));
+		this.selector.wakeup();
+	}
+
+	private void complete(Client client, String response, boolean close)
+	{
+		client.busy = false;
+		// The idle time counts from the response, not from the command, or long commands would lose their response
+		client.lastActive = System.currentTimeMillis();
+
+		if (!client.channel.isOpen())
+		{
+			return;
+		}
+
+		if (close)
+		{
+			this.close(client);
+			return;
+		}
+
+		if (response != null)
+		{
+			client.responses.add(ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8)));
+			this.log.info("Data Sent:" + response);
+		}
+
+		this.dispatch(client);
+		this.closeIfDone(client);
+	}
+
+	private void write(Client client) throws IOException
+	{
+		while (!client.responses.isEmpty())
+		{
+			ByteBuffer response = client.responses.peek();
+			client.channel.write(response);
+
+			if (response.hasRemaining())
+			{
+				// The socket buffer is full, continue when it's writable again
+				return;
+			}
+
+			client.responses.poll();
+			client.lastActive = System.currentTimeMillis();
+		}
+
+		this.updateInterest(client);
+		this.closeIfDone(client);
+	}
+
+	private void updateInterest(Client client)
+	{
+		SelectionKey key = client.channel.keyFor(this.selector);
+
+		if ((key == null) || !key.isValid())
+		{
+			return;
+		}
+
+		// Only read more commands once the previous ones are handled, so a client can't queue up unlimited work
+		boolean read = !client.inputClosed && !client.busy && client.commands.isEmpty();
+		boolean write = !client.responses.isEmpty();
+
+		key.interestOps((read ? SelectionKey.OP_READ : 0) | (write ? SelectionKey.OP_WRITE : 0));
+	}
+
+	private void closeIfDone(Client client)
+	{
+		if (client.inputClosed && !client.busy && client.commands.isEmpty() && client.responses.isEmpty())
+		{
+			this.close(client);
+		}
+	}
+
+	private void closeIdleClients()
+	{
+		long now = System.currentTimeMillis();
+
+		for (Client client: this.clients)
+		{
+			// A client isn't idle while it's still waiting for responses
+			if (!client.busy && client.responses.isEmpty() && client.commands.isEmpty() && (now - client.lastActive > this.idleTimeout))
+			{
+				this.log.info("Disconnecting idle client.");
+				this.close(client);
+			}
+		}
+	}
+
+	private void close(Client client)
+	{
+		this.clients.remove(client);
+
+		try
+		{
+			client.channel.close();
+		}
+		catch (IOException ioe)
+		{
+			this.log.warn("Could not close Socket connection.", ioe);
+		}
+	}
+
+	/**
+	 * Return the number of connected clients.
+	 * @return
+	 */
+	public int getNumClients()
+	{
+		return this.clients.size();
+	}
+
+	/**
+	 * Disconnect all clients and stop listening.
+	 */
+	public void closeTCP()
+	{
+		this.running = false;
+		this.selector.wakeup();
+	}
+}
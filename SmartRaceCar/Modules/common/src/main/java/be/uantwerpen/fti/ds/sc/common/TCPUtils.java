@@ -3,6 +3,8 @@ package be.uantwerpen.fti.ds.sc.common;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import be.uantwerpen.fti.ds.sc.common.configuration.TcpServerAspect;
+
 import java.net.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -14,12 +16,10 @@ import java.util.Arrays;
 public class TCPUtils extends Thread
 {
 	private Logger log;
+	private TCPServer server; // Server handling the ACK/NACK connections.
 	private ServerSocket serverSocket; // The server socket to be used for a one way connection for the listener.
-	private Socket socket; // The duplex socket for a back and forth communication.
 	private int clientPort; // Port to send messages to.
 	private int serverPort; // Port to receive messages on.
-	private BufferedReader in; // Buffered reader to read in the message.
-	private PrintWriter out; // Writer to print the message to be send to.
 	private TCPListener listener; // Interfaced listener to call methods in the classes that implement the interface.
 	private boolean ackNack; // Boolean to see if the implementation of TCPUtils will be a duplex connection
 	// with ACK/NACK responses(Used by Simdeployer to SimWorker communication)
@@ -35,7 +35,7 @@ public class TCPUtils extends Thread
 	public TCPUtils(int port, TCPListener listener) throws IOException
 	{
 		this.log = LoggerFactory.getLogger(TCPUtils.class);
-		this.serverSocket = new ServerSocket(port);
+		this.server = new TCPServer(new TcpServerAspect(port), listener);
 		this.listener = listener;
 		this.ackNack = true;
 		super.setName("TCPUtils - Port: " + port);  // Give the thread a sensible name
@@ -74,89 +74,37 @@ public class TCPUtils extends Thread
 	}
 
 	/**
-	 * Run the threaded TCP Socket Listener. If using the ACK/NACK variant it will also send a response. Otherwise
-	 * it will trigger a callback on the listener Interface.
+	 * Run the threaded TCP Socket Listener. If using the ACK/NACK variant it will also send a response,
+	 * clients are served by a TCPServer. Otherwise it will trigger a callback on the listener Interface.
 	 */
 	public void run()
 	{
 		if (this.ackNack)
 		{
 			this.log.info("Entering ACKNACK mode");
-
-			while (true)
-			{
-				try
-				{
-					Socket server = serverSocket.accept();
-
-					try
-					{
-						this.in = new BufferedReader(new InputStreamReader(server.getInputStream()));
-						this.out = new PrintWriter(server.getOutputStream(), true);
-					}
-					catch (IOException e)
-					{
-						this.log.warn("Cannot receive data.", e);
-					}
-
-					this.log.info("Listening for messages");
-
-					try
-					{
-						//Send data back to client
-						String data = this.in.readLine();
-						this.log.info("Data received: " + data);
-
-						String response = this.listener.parseTCP(data);
-						this.out.println(response);
-						this.log.info("Data Sent:" + response);
-					}
-					catch (IOException ioe)
-					{
-						this.log.error("Cannot receive data.", ioe);
-					}
-
-					this.log.info("Left inner while loop.");
-
-					server.close();
-				}
-				catch (SocketTimeoutException ste)
-				{
-					this.log.error("Timed out.", ste);
-				}
-				catch (IOException ioe)
-				{
-					this.log.error("IOException in socket operation", ioe);
-				}
-			}
+			this.server.run();
 		}
 		else
 		{
 			this.log.info("Entering NON-ACKNACK mode");
 
-			ServerSocket echoServer = null;
 			String line;
-			BufferedReader is;
 			try
 			{
-				echoServer = new ServerSocket(this.serverPort);
+				this.serverSocket = new ServerSocket(this.serverPort);
 			}
 			catch (IOException ioe)
 			{
 				this.log.error("failed to create serversocket on port " + this.serverPort, ioe);
+				return;
 			}
 
-			boolean run = true;
-
-			while (run)
+			while (!this.serverSocket.isClosed())
 			{
-				try
+				// Every message comes in over its own connection, close it once the message is read
+				try (Socket socket = this.serverSocket.accept())
 				{
-
-					this.socket = echoServer.accept();
-
-
-					is = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
+					BufferedReader is = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 
 					line = is.readLine();
 					if (line != null)
@@ -167,11 +115,12 @@ public class TCPUtils extends Thread
 				}
 				catch (IOException ioe)
 				{
-					this.log.error("Cannot receive data.", ioe);
+					if (!this.serverSocket.isClosed())
+					{
+						this.log.error("Cannot receive data.", ioe);
+					}
 				}
 			}
-
-			this.closeTCP();
 		}
 	}
 
@@ -292,9 +241,18 @@ public class TCPUtils extends Thread
 	 */
 	public void closeTCP()
 	{
+		if (this.ackNack)
+		{
+			this.server.closeTCP();
+			return;
+		}
+
 		try
 		{
-			socket.close();
+			if (this.serverSocket != null)
+			{
+				this.serverSocket.close();
+			}
 		}
 		catch (IOException e)
 		{
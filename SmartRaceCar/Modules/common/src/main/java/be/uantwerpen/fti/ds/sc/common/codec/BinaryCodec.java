@@ -0,0 +1,312 @@
+package be.uantwerpen.fti.ds.sc.common.codec;
+
+import be.uantwerpen.fti.ds.sc.common.*;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the frequent messages on the TCP link between the Core and the Sim- or RosKernel.
+ * Every message starts with the codec version and a message type, followed by the fields of the payload.
+ * Integers are written as zigzag varints, so small IDs and percentages take a single byte,
+ * floats are written as 4 bytes, big endian.
+ * Messages without a binary layout (the map and drive commands, the connect handshake) are left to JSON.
+ */
+public class BinaryCodec
+{
+	public static final int VERSION = 1;
+	public static final String NAME = "binary/" + VERSION;
+
+	// Message types, these are part of the wire format and must never be renumbered
+	private static final byte ARRIVED_WAYPOINT = 1;
+	private static final byte EXIT = 2;
+	private static final byte PERCENTAGE = 3;
+	private static final byte COST_TIMING = 4;             // Cost, sent by the kernel
+	private static final byte COST = 5;
+	private static final byte COST_TIMING_REQUEST = 6;     // List of points, sent by the Core
+	private static final byte START_POINT = 7;
+	private static final byte NEXT_WAYPOINT = 8;
+	private static final byte CURRENT_POSITION = 9;
+
+	private static final int COST_STATUS = 1;              // Flags of a cost
+	private static final int COST_HAS_VEHICLE = 2;
+
+	/**
+	 * Growable buffer the message is written to.
+	 */
+	private static class Writer
+	{
+		private byte[] buffer = new byte[32];
+		private int size = 0;
+
+		private void ensureCapacity(int extra)
+		{
+			if (this.size + extra > this.buffer.length)
+			{
+				this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + extra));
+			}
+		}
+
+		public void writeByte(int value)
+		{
+			this.ensureCapacity(1);
+			this.buffer[this.size++] = (byte) value;
+		}
+
+		public void writeVarLong(long value)
+		{
+			long zigzag = (value << 1) ^ (value >> 63);
+			this.ensureCapacity(10);
+
+			while ((zigzag & ~0x7FL) != 0)
+			{
+				this.buffer[this.size++] = (byte) ((zigzag & 0x7F) | 0x80);
+				zigzag >>>= 7;
+			}
+
+			this.buffer[this.size++] = (byte) zigzag;
+		}
+
+		public void writeFloat(float value)
+		{
+			int bits = Float.floatToIntBits(value);
+			this.ensureCapacity(4);
+			this.buffer[this.size++] = (byte) (bits >>> 24);
+			this.buffer[this.size++] = (byte) (bits >>> 16);
+			this.buffer[this.size++] = (byte) (bits >>> 8);
+			this.buffer[this.size++] = (byte) bits;
+		}
+
+		public void writePoint(Point point)
+		{
+			this.writeFloat(point.getX());
+			this.writeFloat(point.getY());
+			this.writeFloat(point.getZ());
+			this.writeFloat(point.getW());
+		}
+
+		public void writeWayPoint(WayPoint wayPoint)
+		{
+			this.writeVarLong(wayPoint.getID());
+			this.writePoint(wayPoint);
+		}
+
+		public byte[] toByteArray()
+		{
+			return Arrays.copyOf(this.buffer, this.size);
+		}
+	}
+
+	private static long readVarLong(ByteBuffer buffer) throws IOException
+	{
+		long zigzag = 0;
+
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = buffer.get();
+			zigzag |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+			{
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+
+		throw new IOException("Varint is too long.");
+	}
+
+	private static Point readPoint(ByteBuffer buffer)
+	{
+		return new Point(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+	}
+
+	private static WayPoint readWayPoint(ByteBuffer buffer) throws IOException
+	{
+		long id = readVarLong(buffer);
+		return new WayPoint(id, buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+	}
+
+	private static void writeCost(Writer writer, byte type, Cost cost)
+	{
+		int flags = (cost.getStatus() ? COST_STATUS : 0) | ((cost.getIdVehicle() != null) ? COST_HAS_VEHICLE : 0);
+
+		writer.writeByte(type);
+		writer.writeByte(flags);
+		writer.writeFloat(cost.getWeightToStart());
+		writer.writeFloat(cost.getWeight());
+
+		if (cost.getIdVehicle() != null)
+		{
+			writer.writeVarLong(cost.getIdVehicle());
+		}
+	}
+
+	private static Cost readCost(ByteBuffer buffer) throws IOException
+	{
+		int flags = buffer.get();
+		float weightToStart = buffer.getFloat();
+		float weight = buffer.getFloat();
+		Long idVehicle = ((flags & COST_HAS_VEHICLE) != 0) ? readVarLong(buffer) : null;
+
+		return new Cost((flags & COST_STATUS) != 0, weightToStart, weight, idVehicle);
+	}
+
+	/**
+	 * Encode a message.
+	 *
+	 * @param keyword Keyword of the message, one of those in TcpMessages.
+	 * @param payload Payload of the message, null if the message only consists of the keyword.
+	 * @return The encoded message, null if this message has no binary layout.
+	 */
+	public static byte[] encode(String keyword, Object payload)
+	{
+		Writer writer = new Writer();
+		writer.writeByte(VERSION);
+
+		switch (keyword)
+		{
+			case TcpMessages.Simkernel.ARRIVED_WAYPOINT:
+				writer.writeByte(ARRIVED_WAYPOINT);
+				break;
+
+			case TcpMessages.Simkernel.EXIT:
+				writer.writeByte(EXIT);
+				break;
+
+			case TcpMessages.Simkernel.PERCENTAGE:
+				Location location = (Location) payload;
+				writer.writeByte(PERCENTAGE);
+				writer.writeVarLong(location.getIdVehicle());
+				writer.writeVarLong(location.getIdStart());
+				writer.writeVarLong(location.getIdEnd());
+				writer.writeVarLong(location.getPercentage());
+				break;
+
+			case TcpMessages.Simkernel.COST:
+				writeCost(writer, COST, (Cost) payload);
+				break;
+
+			// The Core sends a list of points under the same keyword the kernel uses for the resulting cost
+			case TcpMessages.Core.COST_TIMING:
+				if (payload instanceof Cost)
+				{
+					writeCost(writer, COST_TIMING, (Cost) payload);
+				}
+				else
+				{
+					List<?> points = (List<?>) payload;
+					writer.writeByte(COST_TIMING_REQUEST);
+					writer.writeVarLong(points.size());
+
+					for (Object point: points)
+					{
+						writer.writePoint((Point) point);
+					}
+				}
+				break;
+
+			case TcpMessages.Core.START_POINT:
+				writer.writeByte(START_POINT);
+				writer.writeWayPoint((WayPoint) payload);
+				break;
+
+			case TcpMessages.Core.NEXT_WAYPOINT:
+				writer.writeByte(NEXT_WAYPOINT);
+				writer.writeWayPoint((WayPoint) payload);
+				break;
+
+			case TcpMessages.Core.CURRENT_POSITION:
+				writer.writeByte(CURRENT_POSITION);
+				writer.writeWayPoint((WayPoint) payload);
+				break;
+
+			default:
+				return null;
+		}
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Decode a message.
+	 *
+	 * @param message The encoded message.
+	 * @return
+	 * @throws IOException If the message is malformed or was encoded with another version of the codec.
+	 */
+	public static TcpMessage decode(byte[] message) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(message);
+
+		try
+		{
+			int version = buffer.get();
+
+			if (version != VERSION)
+			{
+				throw new IOException("Unsupported binary message version " + version + ", expected " + VERSION + ".");
+			}
+
+			byte type = buffer.get();
+
+			switch (type)
+			{
+				case ARRIVED_WAYPOINT:
+					return new TcpMessage(TcpMessages.Simkernel.ARRIVED_WAYPOINT, null);
+
+				case EXIT:
+					return new TcpMessage(TcpMessages.Simkernel.EXIT, null);
+
+				case PERCENTAGE:
+					long idVehicle = readVarLong(buffer);
+					long idStart = readVarLong(buffer);
+					long idEnd = readVarLong(buffer);
+					int percentage = (int) readVarLong(buffer);
+					return new TcpMessage(TcpMessages.Simkernel.PERCENTAGE, new Location(idVehicle, idStart, idEnd, percentage));
+
+				case COST_TIMING:
+					return new TcpMessage(TcpMessages.Simkernel.COST_TIMING, readCost(buffer));
+
+				case COST:
+					return new TcpMessage(TcpMessages.Simkernel.COST, readCost(buffer));
+
+				case COST_TIMING_REQUEST:
+					int numPoints = (int) readVarLong(buffer);
+
+					if ((numPoints < 0) || (numPoints * 16L > buffer.remaining()))
+					{
+						throw new IOException("Invalid number of points: " + numPoints + ".");
+					}
+
+					ArrayList<Point> points = new ArrayList<>(numPoints);
+
+					for (int i = 0; i < numPoints; ++i)
+					{
+						points.add(readPoint(buffer));
+					}
+
+					return new TcpMessage(TcpMessages.Core.COST_TIMING, points);
+
+				case START_POINT:
+					return new TcpMessage(TcpMessages.Core.START_POINT, readWayPoint(buffer));
+
+				case NEXT_WAYPOINT:
+					return new TcpMessage(TcpMessages.Core.NEXT_WAYPOINT, readWayPoint(buffer));
+
+				case CURRENT_POSITION:
+					return new TcpMessage(TcpMessages.Core.CURRENT_POSITION, readWayPoint(buffer));
+
+				default:
+					throw new IOException("Unknown binary message type " + type + ".");
+			}
+		}
+		catch (BufferUnderflowException bue)
+		{
+			throw new IOException("Binary message is truncated.", bue);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package be.uantwerpen.fti.ds.sc.common.codec;
+
+import java.util.List;
+
+/**
+ * Payload of the connect message, lists the codecs and transports the sender can receive.
+ * Older versions send an empty connect message or leave out the transports, those lists are null then.
+ */
+class Connect
+{
+	private List<String> codecs;
+	private List<String> transports;
+
+	public Connect(List<String> codecs, List<String> transports)
+	{
+		this.codecs = codecs;
+		this.transports = transports;
+	}
+
+	public List<String> getCodecs()
+	{
+		return this.codecs;
+	}
+
+	public List<String> getTransports()
+	{
+		return this.transports;
+	}
+}
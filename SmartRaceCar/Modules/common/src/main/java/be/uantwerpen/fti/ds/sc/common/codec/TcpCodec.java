@@ -0,0 +1,126 @@
+package be.uantwerpen.fti.ds.sc.common.codec;
+
+import be.uantwerpen.fti.ds.sc.common.JSONUtils;
+import be.uantwerpen.fti.ds.sc.common.TCPChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes and decodes the messages of one TCP connection between the Core and the Sim- or RosKernel.
+ * Both sides list the codecs they support in their connect message.
+ * Once the other side is known to support the binary codec, messages that have a binary layout are sent in binary,
+ * everything else (and everything sent to older versions) is sent as JSON.
+ * The link is line based, so binary messages are sent Base64 encoded. A JSON message always starts with '{',
+ * which never starts a Base64 line, so each message can be decoded without knowing what was negotiated.
+ * The connect message also lists the transports of TCPChannel, so both sides can switch to a framed connection.
+ */
+public class TcpCodec
+{
+	public static final String JSON = "json";
+	private static final List<String> SUPPORTED_CODECS = Arrays.asList(BinaryCodec.NAME, JSON);
+	private static final List<String> SUPPORTED_TRANSPORTS = Arrays.asList(TCPChannel.FRAMED, TCPChannel.LINES);
+
+	private Logger log;
+	private volatile boolean binary;    // Whether the other side can decode binary messages
+	private volatile boolean framed;    // Whether the other side can receive framed connections
+
+	public TcpCodec()
+	{
+		this.log = LoggerFactory.getLogger(TcpCodec.class);
+		this.binary = false;
+		this.framed = false;
+	}
+
+	/**
+	 * Encode the connect message, which announces the supported codecs and transports.
+	 *
+	 * @param keyword The connect keyword of the sender.
+	 * @return
+	 */
+	public String encodeConnect(String keyword)
+	{
+		return JSONUtils.objectToJSONStringWithKeyWord(keyword, new Connect(SUPPORTED_CODECS, SUPPORTED_TRANSPORTS));
+	}
+
+	/**
+	 * Pick the codec and transport to send with, based on the connect message of the other side.
+	 *
+	 * @param connect The connect message that was received.
+	 */
+	public void negotiate(TcpMessage connect)
+	{
+		Connect payload = (Connect) connect.getPayload(Connect.class);
+		this.binary = (payload != null) && (payload.getCodecs() != null) && payload.getCodecs().contains(BinaryCodec.NAME);
+		this.framed = (payload != null) && (payload.getTransports() != null) && payload.getTransports().contains(TCPChannel.FRAMED);
+		this.log.info("Sending messages using the " + this.getName() + " codec.");
+	}
+
+	/**
+	 * Return whether the other side accepts framed connections.
+	 * @return
+	 */
+	public boolean isFramed()
+	{
+		return this.framed;
+	}
+
+	/**
+	 * Return the name of the codec used to send messages.
+	 * @return
+	 */
+	public String getName()
+	{
+		return this.binary ? BinaryCodec.NAME : JSON;
+	}
+
+	/**
+	 * Encode a message.
+	 *
+	 * @param keyword Keyword of the message, one of those in TcpMessages.
+	 * @param payload Payload of the message, null if the message only consists of the keyword.
+	 * @return The encoded message, a single line.
+	 */
+	public String encode(String keyword, Object payload)
+	{
+		if (this.binary)
+		{
+			byte[] encoded = BinaryCodec.encode(keyword, payload);
+
+			if (encoded != null)
+			{
+				return Base64.getEncoder().encodeToString(encoded);
+			}
+		}
+
+		return (payload == null) ? JSONUtils.keywordToJSONString(keyword) : JSONUtils.objectToJSONStringWithKeyWord(keyword, payload);
+	}
+
+	/**
+	 * Decode a message, either JSON or binary.
+	 *
+	 * @param message A line received from the other side.
+	 * @return
+	 * @throws IOException If the message is malformed.
+	 */
+	public TcpMessage decode(String message) throws IOException
+	{
+		if (message.startsWith("{"))
+		{
+			return TcpMessage.fromJSON(message);
+		}
+
+		try
+		{
+			return BinaryCodec.decode(Base64.getDecoder().decode(message));
+		}
+		catch (IllegalArgumentException iae)
+		{
+			throw new IOException("Message is neither JSON nor Base64: " + message, iae);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package be.uantwerpen.fti.ds.sc.common.codec;
+
+import be.uantwerpen.fti.ds.sc.common.JSONUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * A decoded message from the TCP link between the Core and the Sim- or RosKernel.
+ * Binary messages are decoded completely, JSON messages only have their keyword parsed,
+ * the payload is converted when it's requested, because only the receiver knows its type.
+ */
+public class TcpMessage
+{
+	private String keyword;
+	private Object payload;     // The payload of a decoded message
+	private String json;        // The complete JSON message, null if the payload was already decoded
+
+	/**
+	 * A decoded message.
+	 *
+	 * @param keyword Keyword of the message, one of those in TcpMessages.
+	 * @param payload Payload of the message, null if the message only consists of the keyword.
+	 */
+	public TcpMessage(String keyword, Object payload)
+	{
+		this.keyword = keyword;
+		this.payload = payload;
+		this.json = null;
+	}
+
+	private TcpMessage(String keyword, String json)
+	{
+		this.keyword = keyword;
+		this.payload = null;
+		this.json = json;
+	}
+
+	/**
+	 * Parse the keyword of a JSON message.
+	 *
+	 * @param json The message, a JSON object with the keyword as its first key.
+	 * @return
+	 * @throws IOException If the message isn't valid JSON.
+	 */
+	public static TcpMessage fromJSON(String json) throws IOException
+	{
+		String keyword = JSONUtils.getFirstIfValid(json);
+
+		if (keyword == null)
+		{
+			throw new IOException("Invalid JSON message: " + json);
+		}
+
+		return new TcpMessage(keyword, json);
+	}
+
+	public String getKeyword()
+	{
+		return this.keyword;
+	}
+
+	/**
+	 * Return the payload of the message.
+	 *
+	 * @param type Type of the payload, used to convert JSON messages.
+	 * @return
+	 */
+	public Object getPayload(Type type)
+	{
+		if (this.json != null)
+		{
+			return JSONUtils.getObjectWithKeyWord(this.json, type);
+		}
+
+		return this.payload;
+	}
+
+	@Override
+	public String toString()
+	{
+		return (this.json != null) ? this.json : this.keyword + " " + JSONUtils.objectToJSONString(this.payload);
+	}
+}
@@ -13,5 +13,6 @@ public enum AspectType
 	NAVSTACK,
 	KERNEL,
 	TCP_CLIENT,
-	COST
+	COST,
+	REST
 }
@@ -92,6 +92,10 @@ public class Configuration
 						this.aspects.put(type, new CostAspect(configFile));
 						break;
 
+					case REST:
+						this.aspects.put(type, new RestAspect(configFile));
+						break;
+
 					default:
 						this.log.warn("Ignoring unsupported aspect type: " + type);
 						break;
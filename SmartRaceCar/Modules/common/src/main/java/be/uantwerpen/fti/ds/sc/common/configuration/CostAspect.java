@@ -14,17 +14,29 @@ public class CostAspect extends Aspect
 	private static final String INCREASING_IDS = PREFIX + ".increasing_ids";
 	private static final String LOWER_RANGE = PREFIX + ".lower_range";
 	private static final String UPPER_RANGE = PREFIX + ".upper_range";
+	private static final String SOURCE = PREFIX + ".source";
+	private static final String BLEND_WEIGHT = PREFIX + ".blend_weight";
+	private static final String LEARNED_ALPHA = PREFIX + ".learned.alpha";
+	private static final String LEARNED_MIN_OBSERVATIONS = PREFIX + ".learned.min_observations";
 
-	private static final String[] KEYS = {INCREASING_IDS, LOWER_RANGE, UPPER_RANGE};
+	private static final String[] KEYS = {INCREASING_IDS, LOWER_RANGE, UPPER_RANGE, SOURCE, BLEND_WEIGHT, LEARNED_ALPHA, LEARNED_MIN_OBSERVATIONS};
 
 	private static final String DEFAULT_ROS_SERVER_INCREASING_IDS = "true";
 	private static final String DEFAULT_LOWER_RANGE = "0.0";
 	private static final String DEFAULT_UPPER_RANGE = "50.0";
+	private static final String DEFAULT_SOURCE = "ros";
+	private static final String DEFAULT_BLEND_WEIGHT = "0.5";
+	private static final String DEFAULT_LEARNED_ALPHA = "0.2";
+	private static final String DEFAULT_LEARNED_MIN_OBSERVATIONS = "3";
 
 	private Logger log;
 	private boolean increasingIds;
 	private float lowerRange;
 	private float upperRange;
+	private CostSource source;
+	private float blendWeight;
+	private float learnedAlpha;
+	private int learnedMinObservations;
 
 	public CostAspect (File configFile) throws IOException
 	{
@@ -40,10 +52,18 @@ public class CostAspect extends Aspect
 			this.increasingIds = Boolean.parseBoolean(properties.getProperty(INCREASING_IDS, DEFAULT_ROS_SERVER_INCREASING_IDS));
 			this.lowerRange = Float.parseFloat(properties.getProperty(LOWER_RANGE, DEFAULT_LOWER_RANGE));
 			this.upperRange = Float.parseFloat(properties.getProperty(UPPER_RANGE, DEFAULT_UPPER_RANGE));
+			this.source = CostSource.valueOf(properties.getProperty(SOURCE, DEFAULT_SOURCE).trim().toUpperCase());
+			this.blendWeight = Float.parseFloat(properties.getProperty(BLEND_WEIGHT, DEFAULT_BLEND_WEIGHT));
+			this.learnedAlpha = Float.parseFloat(properties.getProperty(LEARNED_ALPHA, DEFAULT_LEARNED_ALPHA));
+			this.learnedMinObservations = Integer.parseInt(properties.getProperty(LEARNED_MIN_OBSERVATIONS, DEFAULT_LEARNED_MIN_OBSERVATIONS));
 
 			this.log.debug(INCREASING_IDS + " = " + this.increasingIds);
 			this.log.debug(LOWER_RANGE + " = " + this.lowerRange);
 			this.log.debug(UPPER_RANGE + " = " + this.upperRange);
+			this.log.debug(SOURCE + " = " + this.source);
+			this.log.debug(BLEND_WEIGHT + " = " + this.blendWeight);
+			this.log.debug(LEARNED_ALPHA + " = " + this.learnedAlpha);
+			this.log.debug(LEARNED_MIN_OBSERVATIONS + " = " + this.learnedMinObservations);
 
 		}
 		catch (IOException ioe)
@@ -68,4 +88,36 @@ public class CostAspect extends Aspect
 	{
 		return this.upperRange;
 	}
+
+	public CostSource getSource()
+	{
+		return this.source;
+	}
+
+	/**
+	 * Weight of the learned travel time when blending it with the ROS cost, in [0, 1].
+	 * @return
+	 */
+	public float getBlendWeight()
+	{
+		return this.blendWeight;
+	}
+
+	/**
+	 * Smoothing factor of the exponentially weighted moving average of observed travel times, in (0, 1].
+	 * @return
+	 */
+	public float getLearnedAlpha()
+	{
+		return this.learnedAlpha;
+	}
+
+	/**
+	 * Number of observations a link needs before its learned travel time is used.
+	 * @return
+	 */
+	public int getLearnedMinObservations()
+	{
+		return this.learnedMinObservations;
+	}
 }
@@ -0,0 +1,11 @@
+package be.uantwerpen.fti.ds.sc.common.configuration;
+
+/**
+ * Where the CostCache gets the cost of a link from.
+ */
+public enum CostSource
+{
+	ROS,        // Ask the ROS server's planner
+	LEARNED,    // Use travel times observed from the vehicles, fall back to ROS for links without enough observations
+	BLENDED     // Weighted average of the observed travel time (converted into ROS cost units) and the ROS cost
+}
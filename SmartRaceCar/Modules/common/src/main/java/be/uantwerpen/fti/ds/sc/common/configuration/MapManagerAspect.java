@@ -14,16 +14,24 @@ public class MapManagerAspect extends Aspect
 	private static final String MAP_PATH_KEY = PREFIX + ".path";
 	private static final String CURRENT_MAP_KEY = PREFIX + ".current";
 	private static final String DATABASE_DEBUG_KEY = PREFIX + ".database.debug";
-	private static final String KEYS[] = {DATABASE_DEBUG_KEY, MAP_PATH_KEY, CURRENT_MAP_KEY};
+	private static final String WAYPOINT_SOURCE_KEY = PREFIX + ".waypoints.source";
+	private static final String GRAPH_NEIGHBOURS_KEY = PREFIX + ".graph.neighbours";
+	private static final String GRAPH_MAX_TABLE_SIZE_KEY = PREFIX + ".graph.max_table_size";
+	private static final String KEYS[] = {DATABASE_DEBUG_KEY, MAP_PATH_KEY, CURRENT_MAP_KEY, WAYPOINT_SOURCE_KEY, GRAPH_NEIGHBOURS_KEY, GRAPH_MAX_TABLE_SIZE_KEY};
 
 	private static final String DEFAULT_DATABASE_DEBUG = "true";
 	private static final String DEFAULT_MAP_PATH = "maps/";
 	private static final String DEFAULT_CURRENT_MAP =  "U014Circle";
+	private static final String DEFAULT_GRAPH_NEIGHBOURS = "4";
+	private static final String DEFAULT_GRAPH_MAX_TABLE_SIZE = "4096";
 
 	private Logger log;
 	private boolean databaseDebug;
 	private String mapPath;
 	private String currentMap;
+	private WaypointSource waypointSource;
+	private int graphNeighbours;
+	private int graphMaxTableSize;
 
 	public MapManagerAspect (File configFile) throws IOException
 	{
@@ -40,9 +48,18 @@ public class MapManagerAspect extends Aspect
 			this.mapPath = properties.getProperty(MAP_PATH_KEY, DEFAULT_MAP_PATH);
 			this.currentMap = properties.getProperty(CURRENT_MAP_KEY, DEFAULT_CURRENT_MAP);
 
+			// Older configuration files only have the debug flag, so the default source depends on it
+			String defaultWaypointSource = this.databaseDebug ? WaypointSource.DEBUG.toString() : WaypointSource.DATABASE.toString();
+			this.waypointSource = WaypointSource.valueOf(properties.getProperty(WAYPOINT_SOURCE_KEY, defaultWaypointSource).trim().toUpperCase());
+			this.graphNeighbours = Integer.parseInt(properties.getProperty(GRAPH_NEIGHBOURS_KEY, DEFAULT_GRAPH_NEIGHBOURS));
+			this.graphMaxTableSize = Integer.parseInt(properties.getProperty(GRAPH_MAX_TABLE_SIZE_KEY, DEFAULT_GRAPH_MAX_TABLE_SIZE));
+
 			this.log.debug(DATABASE_DEBUG_KEY + " = " + this.databaseDebug);
 			this.log.debug(MAP_PATH_KEY + " = " + this.mapPath);
 			this.log.debug(CURRENT_MAP_KEY + " = " + this.currentMap);
+			this.log.debug(WAYPOINT_SOURCE_KEY + " = " + this.waypointSource);
+			this.log.debug(GRAPH_NEIGHBOURS_KEY + " = " + this.graphNeighbours);
+			this.log.debug(GRAPH_MAX_TABLE_SIZE_KEY + " = " + this.graphMaxTableSize);
 		}
 		catch (IOException ioe)
 		{
@@ -59,10 +76,16 @@ public class MapManagerAspect extends Aspect
 		this.databaseDebug = databaseDebug;
 		this.mapPath = mapPath;
 		this.currentMap = currentMap;
+		this.waypointSource = databaseDebug ? WaypointSource.DEBUG : WaypointSource.DATABASE;
+		this.graphNeighbours = Integer.parseInt(DEFAULT_GRAPH_NEIGHBOURS);
+		this.graphMaxTableSize = Integer.parseInt(DEFAULT_GRAPH_MAX_TABLE_SIZE);
 
 		this.log.debug(DATABASE_DEBUG_KEY + " = " + this.databaseDebug);
 		this.log.debug(MAP_PATH_KEY + " = " + this.mapPath);
 		this.log.debug(CURRENT_MAP_KEY + " = " + this.currentMap);
+		this.log.debug(WAYPOINT_SOURCE_KEY + " = " + this.waypointSource);
+		this.log.debug(GRAPH_NEIGHBOURS_KEY + " = " + this.graphNeighbours);
+		this.log.debug(GRAPH_MAX_TABLE_SIZE_KEY + " = " + this.graphMaxTableSize);
 	}
 
 	public boolean isDatabaseDebug()
@@ -79,4 +102,19 @@ public class MapManagerAspect extends Aspect
 	{
 		return this.currentMap;
 	}
+
+	public WaypointSource getWaypointSource()
+	{
+		return this.waypointSource;
+	}
+
+	public int getGraphNeighbours()
+	{
+		return this.graphNeighbours;
+	}
+
+	public int getGraphMaxTableSize()
+	{
+		return this.graphMaxTableSize;
+	}
 }
@@ -16,19 +16,48 @@ public class MqttAspect extends Aspect
 	private static final String MQTT_USERNAME_KEY = PREFIX + ".username";
 	private static final String MQTT_PASSWORD_KEY = PREFIX + ".password";
 	private static final String MQTT_TOPIC_KEY = PREFIX + ".topic";
-	private static final String[] KEYS = {MQTT_BROKER_KEY, MQTT_USERNAME_KEY, MQTT_PASSWORD_KEY, MQTT_TOPIC_KEY};
+	private static final String MQTT_DISPATCH_THREADS_KEY = PREFIX + ".dispatch.threads";
+	private static final String MQTT_DISPATCH_QUEUE_CAPACITY_KEY = PREFIX + ".dispatch.queue_capacity";
+	private static final String MQTT_QOS_KEY = PREFIX + ".qos";
+	private static final String MQTT_TELEMETRY_QOS_KEY = PREFIX + ".qos.telemetry";
+	private static final String MQTT_KEEP_ALIVE_KEY = PREFIX + ".keep_alive";
+	private static final String MQTT_CLIENT_ID_KEY = PREFIX + ".client_id";
+	private static final String MQTT_PERSISTENCE_KEY = PREFIX + ".persistence";
+	private static final String MQTT_MAX_INFLIGHT_KEY = PREFIX + ".max_inflight";
+	private static final String MQTT_PUBLISH_QUEUE_CAPACITY_KEY = PREFIX + ".publish.queue_capacity";
+	private static final String[] KEYS = {MQTT_BROKER_KEY, MQTT_USERNAME_KEY, MQTT_PASSWORD_KEY, MQTT_TOPIC_KEY, MQTT_DISPATCH_THREADS_KEY, MQTT_DISPATCH_QUEUE_CAPACITY_KEY,
+			MQTT_QOS_KEY, MQTT_TELEMETRY_QOS_KEY, MQTT_KEEP_ALIVE_KEY, MQTT_CLIENT_ID_KEY, MQTT_PERSISTENCE_KEY,
+			MQTT_MAX_INFLIGHT_KEY, MQTT_PUBLISH_QUEUE_CAPACITY_KEY};
 
 	// Set of default values for each key
 	private static final String DEFAULT_MQTT_BROKER = "tcp://smartcity.ddns.net:1883";
 	private static final String DEFAULT_MQTT_USERNAME = "root";
 	private static final String DEFAULT_MQTT_PASSWORD = "smartcity";
 	private static final String DEFAULT_MQTT_TOPIC = "/racecar/";
+	private static final String DEFAULT_MQTT_DISPATCH_THREADS = "4";
+	private static final String DEFAULT_MQTT_DISPATCH_QUEUE_CAPACITY = "1024";
+	private static final String DEFAULT_MQTT_QOS = "2";
+	private static final String DEFAULT_MQTT_TELEMETRY_QOS = "0";
+	private static final String DEFAULT_MQTT_KEEP_ALIVE = "30";
+	private static final String DEFAULT_MQTT_CLIENT_ID = "";
+	private static final String DEFAULT_MQTT_PERSISTENCE = "";
+	private static final String DEFAULT_MQTT_MAX_INFLIGHT = "100";
+	private static final String DEFAULT_MQTT_PUBLISH_QUEUE_CAPACITY = "1024";
 
 	private Logger log;
 	private String broker;
 	private String username;
 	private String password;
 	private String topic;
+	private int dispatchThreads;
+	private int dispatchQueueCapacity;
+	private int qos;
+	private int telemetryQos;
+	private int keepAlive;
+	private String clientId;
+	private String persistence;
+	private int maxInflight;
+	private int publishQueueCapacity;
 
 	public MqttAspect (File configFile) throws IOException
 	{
@@ -45,11 +74,29 @@ public class MqttAspect extends Aspect
 			this.username = properties.getProperty(MQTT_USERNAME_KEY, DEFAULT_MQTT_USERNAME);
 			this.password = properties.getProperty(MQTT_PASSWORD_KEY, DEFAULT_MQTT_PASSWORD);
 			this.topic = properties.getProperty(MQTT_TOPIC_KEY, DEFAULT_MQTT_TOPIC);
+			this.dispatchThreads = Integer.parseInt(properties.getProperty(MQTT_DISPATCH_THREADS_KEY, DEFAULT_MQTT_DISPATCH_THREADS));
+			this.dispatchQueueCapacity = Integer.parseInt(properties.getProperty(MQTT_DISPATCH_QUEUE_CAPACITY_KEY, DEFAULT_MQTT_DISPATCH_QUEUE_CAPACITY));
+			this.qos = Integer.parseInt(properties.getProperty(MQTT_QOS_KEY, DEFAULT_MQTT_QOS));
+			this.telemetryQos = Integer.parseInt(properties.getProperty(MQTT_TELEMETRY_QOS_KEY, DEFAULT_MQTT_TELEMETRY_QOS));
+			this.keepAlive = Integer.parseInt(properties.getProperty(MQTT_KEEP_ALIVE_KEY, DEFAULT_MQTT_KEEP_ALIVE));
+			this.clientId = properties.getProperty(MQTT_CLIENT_ID_KEY, DEFAULT_MQTT_CLIENT_ID);
+			this.persistence = properties.getProperty(MQTT_PERSISTENCE_KEY, DEFAULT_MQTT_PERSISTENCE);
+			this.maxInflight = Integer.parseInt(properties.getProperty(MQTT_MAX_INFLIGHT_KEY, DEFAULT_MQTT_MAX_INFLIGHT));
+			this.publishQueueCapacity = Integer.parseInt(properties.getProperty(MQTT_PUBLISH_QUEUE_CAPACITY_KEY, DEFAULT_MQTT_PUBLISH_QUEUE_CAPACITY));
 
 			this.log.debug(MQTT_BROKER_KEY + " = " + this.broker);
 			this.log.debug(MQTT_USERNAME_KEY + " = " + this.username);
 			this.log.debug(MQTT_PASSWORD_KEY + " = " + this.password);
 			this.log.debug(MQTT_TOPIC_KEY + " = " + this.topic);
+			this.log.debug(MQTT_DISPATCH_THREADS_KEY + " = " + this.dispatchThreads);
+			this.log.debug(MQTT_DISPATCH_QUEUE_CAPACITY_KEY + " = " + this.dispatchQueueCapacity);
+			this.log.debug(MQTT_QOS_KEY + " = " + this.qos);
+			this.log.debug(MQTT_TELEMETRY_QOS_KEY + " = " + this.telemetryQos);
+			this.log.debug(MQTT_KEEP_ALIVE_KEY + " = " + this.keepAlive);
+			this.log.debug(MQTT_CLIENT_ID_KEY + " = " + this.clientId);
+			this.log.debug(MQTT_PERSISTENCE_KEY + " = " + this.persistence);
+			this.log.debug(MQTT_MAX_INFLIGHT_KEY + " = " + this.maxInflight);
+			this.log.debug(MQTT_PUBLISH_QUEUE_CAPACITY_KEY + " = " + this.publishQueueCapacity);
 		}
 		catch (IOException ioe)
 		{
@@ -65,6 +112,15 @@ public class MqttAspect extends Aspect
 		this.username = username;
 		this.password = password;
 		this.topic = topic;
+		this.dispatchThreads = Integer.parseInt(DEFAULT_MQTT_DISPATCH_THREADS);
+		this.dispatchQueueCapacity = Integer.parseInt(DEFAULT_MQTT_DISPATCH_QUEUE_CAPACITY);
+		this.qos = Integer.parseInt(DEFAULT_MQTT_QOS);
+		this.telemetryQos = Integer.parseInt(DEFAULT_MQTT_TELEMETRY_QOS);
+		this.keepAlive = Integer.parseInt(DEFAULT_MQTT_KEEP_ALIVE);
+		this.clientId = DEFAULT_MQTT_CLIENT_ID;
+		this.persistence = DEFAULT_MQTT_PERSISTENCE;
+		this.maxInflight = Integer.parseInt(DEFAULT_MQTT_MAX_INFLIGHT);
+		this.publishQueueCapacity = Integer.parseInt(DEFAULT_MQTT_PUBLISH_QUEUE_CAPACITY);
 	}
 
 	public String getBroker()
@@ -86,4 +142,85 @@ public class MqttAspect extends Aspect
 	{
 		return this.topic;
 	}
+
+	/**
+	 * Return the number of threads used by components that handle MQTT messages asynchronously.
+	 * @return
+	 */
+	public int getDispatchThreads()
+	{
+		return this.dispatchThreads;
+	}
+
+	/**
+	 * Return the maximum number of MQTT messages that can wait for each dispatch thread.
+	 * @return
+	 */
+	public int getDispatchQueueCapacity()
+	{
+		return this.dispatchQueueCapacity;
+	}
+
+	/**
+	 * Return the QoS used for messages that aren't telemetry.
+	 * @return
+	 */
+	public int getQos()
+	{
+		return this.qos;
+	}
+
+	/**
+	 * Return the QoS used for telemetry (heartbeats and progress updates), which is superseded by the next message anyway.
+	 * @return
+	 */
+	public int getTelemetryQos()
+	{
+		return this.telemetryQos;
+	}
+
+	/**
+	 * Return the keep-alive interval in seconds, 0 disables keep-alive.
+	 * @return
+	 */
+	public int getKeepAlive()
+	{
+		return this.keepAlive;
+	}
+
+	/**
+	 * Return the prefix of the MQTT client IDs, an empty string if client IDs are generated.
+	 * @return
+	 */
+	public String getClientId()
+	{
+		return this.clientId;
+	}
+
+	/**
+	 * Return the directory in which in-flight messages are stored, an empty string if they're only kept in memory.
+	 * @return
+	 */
+	public String getPersistence()
+	{
+		return this.persistence;
+	}
+
+	/**
+	 * Return the maximum number of published messages that can wait for an acknowledgement.
+	 * @return
+	 */
+	public int getMaxInflight()
+	{
+		return this.maxInflight;
+	}
+
+	/**
+	 * Return the maximum number of messages that can wait to be published.
+	 * @return
+	 */
+	public int getPublishQueueCapacity()
+	{
+		return this.publishQueueCapacity;
+	}
 }
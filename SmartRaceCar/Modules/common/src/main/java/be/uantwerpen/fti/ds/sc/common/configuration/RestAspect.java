@@ -0,0 +1,204 @@
+package be.uantwerpen.fti.ds.sc.common.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+public class RestAspect extends Aspect
+{
+	private static final String PREFIX = "rest";
+
+	private static final String POOL_SIZE_KEY = PREFIX + ".pool_size";
+	private static final String CONNECT_TIMEOUT_KEY = PREFIX + ".connect_timeout";
+	private static final String READ_TIMEOUT_KEY = PREFIX + ".read_timeout";
+	private static final String RETRIES_KEY = PREFIX + ".retries";
+	private static final String RETRY_BACKOFF_KEY = PREFIX + ".retry_backoff";
+	private static final String RETRY_MAX_BACKOFF_KEY = PREFIX + ".retry_max_backoff";
+	private static final String BREAKER_THRESHOLD_KEY = PREFIX + ".breaker.failure_threshold";
+	private static final String BREAKER_OPEN_TIME_KEY = PREFIX + ".breaker.open_time";
+	private static final String HEDGE_PERCENTILE_KEY = PREFIX + ".hedge_percentile";
+	private static final String[] KEYS = {POOL_SIZE_KEY, CONNECT_TIMEOUT_KEY, READ_TIMEOUT_KEY, RETRIES_KEY, RETRY_BACKOFF_KEY,
+			RETRY_MAX_BACKOFF_KEY, BREAKER_THRESHOLD_KEY, BREAKER_OPEN_TIME_KEY, HEDGE_PERCENTILE_KEY};
+
+	private static final String DEFAULT_POOL_SIZE = "20";
+	private static final String DEFAULT_CONNECT_TIMEOUT = "5000";
+	private static final String DEFAULT_READ_TIMEOUT = "30000";
+	private static final String DEFAULT_RETRIES = "2";
+	private static final String DEFAULT_RETRY_BACKOFF = "100";
+	private static final String DEFAULT_RETRY_MAX_BACKOFF = "2000";
+	private static final String DEFAULT_BREAKER_THRESHOLD = "5";
+	private static final String DEFAULT_BREAKER_OPEN_TIME = "30000";
+	private static final String DEFAULT_HEDGE_PERCENTILE = "0";
+
+	private Logger log;
+	private int poolSize;
+	private int connectTimeout;
+	private int readTimeout;
+	private int retries;
+	private int retryBackoff;
+	private int retryMaxBackoff;
+	private int breakerThreshold;
+	private int breakerOpenTime;
+	private int hedgePercentile;
+
+	public RestAspect (File configFile) throws IOException
+	{
+		super(AspectType.REST);
+		this.log = LoggerFactory.getLogger(RestAspect.class);
+
+		try
+		{
+			Properties properties = this.openPropertiesFile(configFile);
+
+			this.checkKeys(properties, KEYS);
+
+			this.poolSize = Integer.parseInt(properties.getProperty(POOL_SIZE_KEY, DEFAULT_POOL_SIZE));
+			this.connectTimeout = Integer.parseInt(properties.getProperty(CONNECT_TIMEOUT_KEY, DEFAULT_CONNECT_TIMEOUT));
+			this.readTimeout = Integer.parseInt(properties.getProperty(READ_TIMEOUT_KEY, DEFAULT_READ_TIMEOUT));
+			this.retries = Integer.parseInt(properties.getProperty(RETRIES_KEY, DEFAULT_RETRIES));
+			this.retryBackoff = Integer.parseInt(properties.getProperty(RETRY_BACKOFF_KEY, DEFAULT_RETRY_BACKOFF));
+			this.retryMaxBackoff = Integer.parseInt(properties.getProperty(RETRY_MAX_BACKOFF_KEY, DEFAULT_RETRY_MAX_BACKOFF));
+			this.breakerThreshold = Integer.parseInt(properties.getProperty(BREAKER_THRESHOLD_KEY, DEFAULT_BREAKER_THRESHOLD));
+			this.breakerOpenTime = Integer.parseInt(properties.getProperty(BREAKER_OPEN_TIME_KEY, DEFAULT_BREAKER_OPEN_TIME));
+			this.hedgePercentile = Integer.parseInt(properties.getProperty(HEDGE_PERCENTILE_KEY, DEFAULT_HEDGE_PERCENTILE));
+
+			this.logValues();
+		}
+		catch (IOException ioe)
+		{
+			this.log.error("Failed to read " + this.getClass().getName() + " from \"" + configFile.getAbsolutePath() + "\"", ioe);
+			throw ioe;
+		}
+	}
+
+	public RestAspect (int poolSize, int connectTimeout, int readTimeout, int retries, int retryBackoff, int retryMaxBackoff,
+			int breakerThreshold, int breakerOpenTime, int hedgePercentile)
+	{
+		super(AspectType.REST);
+		this.log = LoggerFactory.getLogger(RestAspect.class);
+
+		this.poolSize = poolSize;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.retries = retries;
+		this.retryBackoff = retryBackoff;
+		this.retryMaxBackoff = retryMaxBackoff;
+		this.breakerThreshold = breakerThreshold;
+		this.breakerOpenTime = breakerOpenTime;
+		this.hedgePercentile = hedgePercentile;
+
+		this.logValues();
+	}
+
+	public RestAspect (int poolSize, int connectTimeout, int readTimeout)
+	{
+		this(poolSize, connectTimeout, readTimeout, Integer.parseInt(DEFAULT_RETRIES), Integer.parseInt(DEFAULT_RETRY_BACKOFF),
+				Integer.parseInt(DEFAULT_RETRY_MAX_BACKOFF), Integer.parseInt(DEFAULT_BREAKER_THRESHOLD),
+				Integer.parseInt(DEFAULT_BREAKER_OPEN_TIME), Integer.parseInt(DEFAULT_HEDGE_PERCENTILE));
+	}
+
+	/**
+	 * Settings used when a component doesn't configure its REST client.
+	 */
+	public RestAspect ()
+	{
+		this(Integer.parseInt(DEFAULT_POOL_SIZE), Integer.parseInt(DEFAULT_CONNECT_TIMEOUT), Integer.parseInt(DEFAULT_READ_TIMEOUT));
+	}
+
+	private void logValues()
+	{
+		this.log.debug(POOL_SIZE_KEY + " = " + this.poolSize);
+		this.log.debug(CONNECT_TIMEOUT_KEY + " = " + this.connectTimeout);
+		this.log.debug(READ_TIMEOUT_KEY + " = " + this.readTimeout);
+		this.log.debug(RETRIES_KEY + " = " + this.retries);
+		this.log.debug(RETRY_BACKOFF_KEY + " = " + this.retryBackoff);
+		this.log.debug(RETRY_MAX_BACKOFF_KEY + " = " + this.retryMaxBackoff);
+		this.log.debug(BREAKER_THRESHOLD_KEY + " = " + this.breakerThreshold);
+		this.log.debug(BREAKER_OPEN_TIME_KEY + " = " + this.breakerOpenTime);
+		this.log.debug(HEDGE_PERCENTILE_KEY + " = " + this.hedgePercentile);
+	}
+
+	/**
+	 * Return the maximum number of open connections to a single REST service.
+	 * @return
+	 */
+	public int getPoolSize()
+	{
+		return this.poolSize;
+	}
+
+	/**
+	 * Return the maximum time to wait for a connection to a REST service, in ms.
+	 * @return
+	 */
+	public int getConnectTimeout()
+	{
+		return this.connectTimeout;
+	}
+
+	/**
+	 * Return the maximum time to wait for a response from a REST service, in ms.
+	 * @return
+	 */
+	public int getReadTimeout()
+	{
+		return this.readTimeout;
+	}
+
+	/**
+	 * Return the maximum number of times a failed request is retried.
+	 * @return
+	 */
+	public int getRetries()
+	{
+		return this.retries;
+	}
+
+	/**
+	 * Return the base delay before retrying a failed request, in ms. It doubles with every retry.
+	 * @return
+	 */
+	public int getRetryBackoff()
+	{
+		return this.retryBackoff;
+	}
+
+	/**
+	 * Return the maximum delay before retrying a failed request, in ms.
+	 * @return
+	 */
+	public int getRetryMaxBackoff()
+	{
+		return this.retryMaxBackoff;
+	}
+
+	/**
+	 * Return the number of consecutive failed requests after which requests to an endpoint are refused.
+	 * @return
+	 */
+	public int getBreakerThreshold()
+	{
+		return this.breakerThreshold;
+	}
+
+	/**
+	 * Return how long requests to a failing endpoint are refused before trying again, in ms.
+	 * @return
+	 */
+	public int getBreakerOpenTime()
+	{
+		return this.breakerOpenTime;
+	}
+
+	/**
+	 * Return the latency percentile after which a second, hedged request is sent. 0 disables hedging.
+	 * @return
+	 */
+	public int getHedgePercentile()
+	{
+		return this.hedgePercentile;
+	}
+}
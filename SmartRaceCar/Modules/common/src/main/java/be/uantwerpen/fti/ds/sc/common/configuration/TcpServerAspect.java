@@ -12,12 +12,21 @@ public class TcpServerAspect extends Aspect
 	private static final String PREFIX = "TcpServer";
 
 	private static final String SERVER_PORT_KEY = PREFIX + ".port";
-	private static final String[] KEYS = {SERVER_PORT_KEY};
+	private static final String MAX_CONNECTIONS_KEY = PREFIX + ".max_connections";
+	private static final String IDLE_TIMEOUT_KEY = PREFIX + ".idle_timeout";
+	private static final String WORKERS_KEY = PREFIX + ".workers";
+	private static final String[] KEYS = {SERVER_PORT_KEY, MAX_CONNECTIONS_KEY, IDLE_TIMEOUT_KEY, WORKERS_KEY};
 
 	private static final String DEFAULT_SERVER_PORT = "9999";
+	private static final String DEFAULT_MAX_CONNECTIONS = "256";
+	private static final String DEFAULT_IDLE_TIMEOUT = "300";
+	private static final String DEFAULT_WORKERS = "4";
 
 	private Logger log;
 	private int serverPort;
+	private int maxConnections;
+	private int idleTimeout;
+	private int workers;
 
 	public TcpServerAspect (File configFile) throws IOException
 	{
@@ -31,8 +40,14 @@ public class TcpServerAspect extends Aspect
 			this.checkKeys(properties, KEYS);
 
 			this.serverPort = Integer.parseInt(properties.getProperty(SERVER_PORT_KEY, DEFAULT_SERVER_PORT));
+			this.maxConnections = Integer.parseInt(properties.getProperty(MAX_CONNECTIONS_KEY, DEFAULT_MAX_CONNECTIONS));
+			this.idleTimeout = Integer.parseInt(properties.getProperty(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT));
+			this.workers = Integer.parseInt(properties.getProperty(WORKERS_KEY, DEFAULT_WORKERS));
 
 			this.log.debug(SERVER_PORT_KEY + " = " + this.serverPort);
+			this.log.debug(MAX_CONNECTIONS_KEY + " = " + this.maxConnections);
+			this.log.debug(IDLE_TIMEOUT_KEY + " = " + this.idleTimeout);
+			this.log.debug(WORKERS_KEY + " = " + this.workers);
 		}
 		catch (IOException ioe)
 		{
@@ -47,6 +62,21 @@ public class TcpServerAspect extends Aspect
 		this.log = LoggerFactory.getLogger(RacecarAspect.class);
 
 		this.serverPort = serverPort;
+		this.maxConnections = Integer.parseInt(DEFAULT_MAX_CONNECTIONS);
+		this.idleTimeout = Integer.parseInt(DEFAULT_IDLE_TIMEOUT);
+		this.workers = Integer.parseInt(DEFAULT_WORKERS);
+		this.log.debug(SERVER_PORT_KEY + " = " + this.serverPort);
+	}
+
+	public TcpServerAspect (int serverPort, int maxConnections, int idleTimeout, int workers)
+	{
+		super(AspectType.TCP_SERVER);
+		this.log = LoggerFactory.getLogger(RacecarAspect.class);
+
+		this.serverPort = serverPort;
+		this.maxConnections = maxConnections;
+		this.idleTimeout = idleTimeout;
+		this.workers = workers;
 		this.log.debug(SERVER_PORT_KEY + " = " + this.serverPort);
 	}
 
@@ -54,4 +84,31 @@ public class TcpServerAspect extends Aspect
 	{
 		return this.serverPort;
 	}
+
+	/**
+	 * Return the maximum number of clients that can be connected at once.
+	 * @return
+	 */
+	public int getMaxConnections()
+	{
+		return this.maxConnections;
+	}
+
+	/**
+	 * Return the time in seconds after which a client that doesn't send anything is disconnected.
+	 * @return
+	 */
+	public int getIdleTimeout()
+	{
+		return this.idleTimeout;
+	}
+
+	/**
+	 * Return the number of threads handling commands.
+	 * @return
+	 */
+	public int getWorkers()
+	{
+		return this.workers;
+	}
 }
@@ -0,0 +1,11 @@
+package be.uantwerpen.fti.ds.sc.common.configuration;
+
+/**
+ * Where the WaypointProvider loads the waypoints of a map from.
+ */
+public enum WaypointSource
+{
+	DATABASE,   // The points table in the database configured by spring.datasource.url
+	DEBUG,      // Hardcoded waypoints, only available for a few maps
+	FILE        // A waypoint file stored next to the map's YAML file
+}
@@ -0,0 +1,101 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import be.uantwerpen.fti.ds.sc.common.codec.TcpMessage;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+
+/**
+ * Compares time and allocation of receiving a TCP message the way JSONUtils used to (validate, find the keyword and
+ * convert the payload, each parsing the complete message) with the streaming JSONUtils TcpMessage now uses.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes:<gson jar> be.uantwerpen.fti.ds.sc.common.JSONUtilsBenchmark
+ */
+public class JSONUtilsBenchmark
+{
+	private static final int NUM_MESSAGES = 200000;
+	private static final int NUM_ROUNDS = 5;        // The first rounds warm up the JIT
+
+	private static final Gson gson = new Gson();
+
+	private interface Receiver
+	{
+		Object receive(String json, Type type);
+	}
+
+	// Three complete parses per message
+	private static Object receiveTree(String json, Type type)
+	{
+		gson.fromJson(json, Object.class);
+		new JsonParser().parse(json).getAsJsonObject().entrySet().iterator().next().getKey();
+		JsonElement payload = new JsonParser().parse(json).getAsJsonObject().entrySet().iterator().next().getValue();
+		return gson.fromJson(payload, type);
+	}
+
+	private static Object receiveStream(String json, Type type)
+	{
+		try
+		{
+			return TcpMessage.fromJSON(json).getPayload(type);
+		}
+		catch (IOException ioe)
+		{
+			return null;
+		}
+	}
+
+	private static String sendTree(String keyword, Object object)
+	{
+		JsonObject jsonObject = new JsonObject();
+		jsonObject.add(keyword, gson.toJsonTree(object));
+		return jsonObject.toString();
+	}
+
+	private static long getAllocatedBytes()
+	{
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static void run(String name, Receiver receiver, String json, Type type)
+	{
+		long bytes = getAllocatedBytes();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_MESSAGES; ++i)
+		{
+			if (receiver.receive(json, type) == null)
+			{
+				throw new IllegalStateException("Payload got lost.");
+			}
+		}
+
+		long time = System.nanoTime() - start;
+		bytes = getAllocatedBytes() - bytes;
+
+		System.out.printf("  %-24s %7.0f ns %7d bytes/message%n", name, time / (double) NUM_MESSAGES, bytes / NUM_MESSAGES);
+	}
+
+	public static void main(String[] args)
+	{
+		String location = JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Simkernel.PERCENTAGE, new Location(3, 12, 47, 65));
+		String wayPoint = JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Core.NEXT_WAYPOINT, new WayPoint(47, 12.345f, -3.25f, 0.707f, 0.707f));
+		Cost cost = new Cost(true, 12.5f, 31.75f, 3L);
+
+		for (int round = 0; round < NUM_ROUNDS; ++round)
+		{
+			System.out.println("Round " + round + ":");
+
+			run("receive percentage tree", JSONUtilsBenchmark::receiveTree, location, Location.class);
+			run("receive percentage", JSONUtilsBenchmark::receiveStream, location, Location.class);
+			run("receive waypoint tree", JSONUtilsBenchmark::receiveTree, wayPoint, WayPoint.class);
+			run("receive waypoint", JSONUtilsBenchmark::receiveStream, wayPoint, WayPoint.class);
+			run("send cost tree", (keyword, type) -> sendTree(keyword, cost), TcpMessages.Simkernel.COST_TIMING, null);
+			run("send cost", (keyword, type) -> JSONUtils.objectToJSONStringWithKeyWord(keyword, cost), TcpMessages.Simkernel.COST_TIMING, null);
+		}
+	}
+}
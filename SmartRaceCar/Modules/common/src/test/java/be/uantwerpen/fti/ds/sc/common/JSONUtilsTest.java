@@ -0,0 +1,85 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class JSONUtilsTest
+{
+	// The messages used to be built as a tree, the streamed messages have to be identical
+	private static String treeWithKeyWord(String keyword, Object object)
+	{
+		JsonObject jsonObject = new JsonObject();
+		jsonObject.add(keyword, new Gson().toJsonTree(object));
+		return jsonObject.toString();
+	}
+
+	@Test
+	public void writesSameMessagesAsTree()
+	{
+		HashMap<Long, WayPoint> wayPoints = new HashMap<>();
+		wayPoints.put(3L, new WayPoint(3, 1.5f, -2.0f, 0.0f, 1.0f));
+
+		Object[] objects = {
+				new Location(1, 2, 3, 45),
+				new Cost(true, 1.5f, 2.25f, null),
+				new Cost(false, 1.5f, 2.25f, 4L),
+				new ArrayList<>(Arrays.asList(new Point(1, 2, 3, 4), new Point(5, 6, 7, 8))),
+				wayPoints,
+				0,
+				"<a href='x'>&</a>",
+				null
+		};
+
+		for (Object object: objects)
+		{
+			assertEquals(treeWithKeyWord("key", object), JSONUtils.objectToJSONStringWithKeyWord("key", object));
+		}
+
+		assertEquals("{\"connect\":{}}", JSONUtils.keywordToJSONString("connect"));
+	}
+
+	@Test
+	public void readsKeyWordAndObject()
+	{
+		String json = JSONUtils.objectToJSONStringWithKeyWord("nextWayPoint", new WayPoint(12, 1.0f, 2.0f, 3.0f, 4.0f));
+
+		assertTrue(JSONUtils.isJSONValid(json));
+		assertEquals("nextWayPoint", JSONUtils.getFirst(json));
+
+		WayPoint wayPoint = (WayPoint) JSONUtils.getObjectWithKeyWord(json, WayPoint.class);
+		assertEquals(12, wayPoint.getID());
+		assertEquals(4.0f, wayPoint.getW(), 0.0f);
+
+		Type type = new TypeToken<HashMap<Long, WayPoint>>() {}.getType();
+		HashMap<Long, WayPoint> wayPoints = (HashMap<Long, WayPoint>) JSONUtils.getObjectWithKeyWord("{\"wayPoints\":{\"3\":{\"id\":3,\"x\":1.5}}}", type);
+		assertEquals(1.5f, wayPoints.get(3L).getX(), 0.0f);
+
+		assertNull(JSONUtils.getObjectWithKeyWord("{}", WayPoint.class));
+	}
+
+	@Test
+	public void rejectsInvalidJSON()
+	{
+		assertFalse(JSONUtils.isJSONValid("{\"percentage\":{\"idVehicle\":1"));
+		assertFalse(JSONUtils.isJSONValid("{\"exit\":{}} trailing"));
+		assertNull(JSONUtils.getFirstIfValid("{\"percentage\":{\"idVehicle\":1"));
+		assertNull(JSONUtils.getFirstIfValid("[1, 2]"));
+		assertEquals("exit", JSONUtils.getFirstIfValid("{\"exit\":{}}"));
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void throwsOnTruncatedObject()
+	{
+		JSONUtils.getObjectWithKeyWord("{\"percentage\":{\"idVehicle\":1", Location.class);
+	}
+}
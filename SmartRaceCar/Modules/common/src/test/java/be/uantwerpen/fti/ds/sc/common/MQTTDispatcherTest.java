@@ -0,0 +1,98 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MQTTDispatcherTest
+{
+	private static final long TIMEOUT = 5;      // Seconds to wait for a message
+	private static final int QUEUE_CAPACITY = 4;
+
+	private static final String PERCENTAGE_TOPIC = "racecar/" + MqttMessages.Topics.Core.PERCENTAGE + "/1";
+	private static final String ROUTE_TOPIC = "racecar/" + MqttMessages.Topics.Core.ROUTE + "/1";
+
+	private CountDownLatch blocked;
+	private BlockingQueue<String> handled;
+	private MQTTDispatcher dispatcher;
+	private MQTTListener listener;
+
+	@Before
+	public void setUp()
+	{
+		this.blocked = new CountDownLatch(1);
+		this.handled = new LinkedBlockingQueue<>();
+		this.dispatcher = new MQTTDispatcher("Test", QUEUE_CAPACITY);
+
+		// Hold up the worker on the first message, so everything after it stays queued
+		this.listener = (topic, message) -> {
+			try
+			{
+				this.blocked.await();
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			this.handled.add(message);
+		};
+	}
+
+	@After
+	public void tearDown()
+	{
+		this.blocked.countDown();
+		this.dispatcher.shutdown();
+	}
+
+	@Test
+	public void routeDoneHandledWhenQueueIsFull() throws Exception
+	{
+		for (int i = 0; i <= 2 * QUEUE_CAPACITY; ++i)
+		{
+			this.dispatcher.dispatch(this.listener, PERCENTAGE_TOPIC, Integer.toString(i));
+		}
+
+		this.dispatcher.dispatch(this.listener, ROUTE_TOPIC, MqttMessages.Messages.Core.DONE);
+		this.blocked.countDown();
+
+		String message;
+
+		do
+		{
+			message = this.handled.poll(TIMEOUT, TimeUnit.SECONDS);
+			assertNotNull("Route DONE was not handled.", message);
+		}
+		while (!message.equals(MqttMessages.Messages.Core.DONE));
+
+		assertTrue(this.dispatcher.getNumDropped() > 0);
+	}
+
+	@Test
+	public void controlMessagesNeverDropped() throws Exception
+	{
+		int numMessages = 2 * QUEUE_CAPACITY;
+
+		for (int i = 0; i < numMessages; ++i)
+		{
+			this.dispatcher.dispatch(this.listener, ROUTE_TOPIC, Integer.toString(i));
+		}
+
+		this.blocked.countDown();
+
+		for (int i = 0; i < numMessages; ++i)
+		{
+			assertEquals(Integer.toString(i), this.handled.poll(TIMEOUT, TimeUnit.SECONDS));
+		}
+
+		assertEquals(0, this.dispatcher.getNumDropped());
+	}
+}
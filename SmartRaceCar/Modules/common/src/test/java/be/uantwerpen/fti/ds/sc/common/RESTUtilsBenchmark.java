@@ -0,0 +1,145 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares sequential cost requests with a new Jersey client for every request, like RESTUtils used to do,
+ * with the shared, pooled client RESTUtils uses now. The ROS server is replaced by a local stub.
+ * Also compares the time to get the costs of all vehicles one after the other and all at once,
+ * when ROS takes a while to calculate a cost.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes:<dependencies> be.uantwerpen.fti.ds.sc.common.RESTUtilsBenchmark
+ */
+public class RESTUtilsBenchmark
+{
+	private static final int NUM_ROUNDS = 3;
+	private static final int NUM_VEHICLES = 16;
+	private static final long CALCULATION_TIME = 10;        // Time the stub takes to calculate a cost, in ms
+	private static final String POINTS = "[{\"x\":1.5,\"y\":2.5,\"z\":0.0,\"w\":1.0},{\"x\":1.5,\"y\":2.5,\"z\":0.0,\"w\":1.0},{\"x\":4.0,\"y\":-3.0,\"z\":0.0,\"w\":0.7}]";
+	private static final String COST = "{\"cost\":{\"status\":false,\"weight\":12,\"idVehicle\":0}}";
+
+	private interface Request
+	{
+		String send() throws Exception;
+	}
+
+	private static HttpServer startStub() throws Exception
+	{
+		// The stub writes headers and body separately, without this Nagle's algorithm delays every response
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			while (exchange.getRequestBody().read() != -1);
+
+			if (exchange.getRequestURI().getPath().startsWith("/slow"))
+			{
+				try
+				{
+					Thread.sleep(CALCULATION_TIME);
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			byte[] body = COST.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				out.write(body);
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(NUM_VEHICLES));
+		server.start();
+
+		return server;
+	}
+
+	private static void run(String name, Request request, int numRequests) throws Exception
+	{
+		long[] latencies = new long[numRequests];
+		long start = System.nanoTime();
+
+		for (int i = 0; i < numRequests; ++i)
+		{
+			long sent = System.nanoTime();
+			request.send();
+			latencies[i] = System.nanoTime() - sent;
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		Arrays.sort(latencies);
+
+		System.out.printf("  %-22s %7.0f runs/s | latency p50 %7.1f us, p99 %7.1f us%n", name, numRequests / seconds,
+				latencies[numRequests / 2] / 1e3, latencies[numRequests * 99 / 100] / 1e3);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		HttpServer server = startStub();
+		String url = "http://localhost:" + server.getAddress().getPort();
+		RESTUtils restUtils = new RESTUtils(url);
+
+		// What RESTUtils did before: a new client, and so a new connection, for every request
+		Request clientPerRequest = () -> {
+			Client client = ClientBuilder.newClient();
+
+			try
+			{
+				return client.target(url).path(RESTMessages.RosServer.CALC_WEIGHT).request("application/json").put(Entity.json(POINTS), String.class);
+			}
+			finally
+			{
+				client.close();
+			}
+		};
+		Request pooled = () -> restUtils.post(RESTMessages.RosServer.CALC_WEIGHT, POINTS, MediaType.APPLICATION_JSON_TYPE);
+
+		List<Integer> vehicles = new ArrayList<>();
+
+		for (int i = 0; i < NUM_VEHICLES; ++i)
+		{
+			vehicles.add(i);
+		}
+
+		String slowEndpoint = "slow/" + RESTMessages.RosServer.CALC_WEIGHT;
+		Request oneByOne = () -> {
+			for (int vehicle: vehicles)
+			{
+				restUtils.post(slowEndpoint, POINTS, MediaType.APPLICATION_JSON_TYPE);
+			}
+
+			return null;
+		};
+		Request fanOut = () -> RESTUtils.fanOut(vehicles, vehicle -> restUtils.postAsync(slowEndpoint, POINTS, MediaType.APPLICATION_JSON_TYPE), 8).join().get(0);
+
+		for (int round = 0; round < NUM_ROUNDS; ++round)
+		{
+			System.out.println("Round " + round + ", sequential cost requests:");
+			run("client per request", clientPerRequest, 200);       // Setting up a client is slow
+			run("RESTUtils, pooled", pooled, 5000);
+
+			System.out.println("Round " + round + ", costs of " + NUM_VEHICLES + " vehicles, " + CALCULATION_TIME + " ms per cost:");
+			run("one by one", oneByOne, 50);
+			run("fanOut, 8 at once", fanOut, 50);
+		}
+
+		server.stop(0);
+		System.exit(0);
+	}
+}
@@ -0,0 +1,162 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RESTUtilsTest
+{
+	private static final String COST = "{\"cost\":{\"status\":false,\"weight\":12,\"idVehicle\":0}}";
+
+	private HttpServer server;
+
+	private String start(HttpHandler handler) throws IOException
+	{
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/", handler);
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+
+		return "http://localhost:" + this.server.getAddress().getPort();
+	}
+
+	@After
+	public void tearDown()
+	{
+		this.server.stop(0);
+	}
+
+	private static void answer(HttpExchange exchange) throws IOException
+	{
+		answer(exchange, 200, COST);
+	}
+
+	private static void answer(HttpExchange exchange, int status, String answer) throws IOException
+	{
+		// Read the whole request, otherwise the connection can't be reused
+		while (exchange.getRequestBody().read() != -1);
+
+		byte[] body = answer.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(body);
+		}
+	}
+
+	@Test
+	public void reusesConnections() throws IOException
+	{
+		Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+		String url = this.start(exchange -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			answer(exchange);
+		});
+
+		RESTUtils restUtils = new RESTUtils(url, new RestAspect(4, 1000, 5000));
+
+		for (int i = 0; i < 20; ++i)
+		{
+			assertEquals(COST, restUtils.post(RESTMessages.RosServer.CALC_WEIGHT, "[]", MediaType.APPLICATION_JSON_TYPE));
+		}
+
+		// Another RESTUtils for the same service shares the connections
+		assertEquals(COST, new RESTUtils(url).post(RESTMessages.RosServer.CALC_WEIGHT, "[]", MediaType.APPLICATION_JSON_TYPE));
+
+		assertEquals(1, clientPorts.size());
+	}
+
+	@Test(expected = IOException.class)
+	public void timesOutSlowServices() throws IOException
+	{
+		String url = this.start(exchange -> {
+			try
+			{
+				Thread.sleep(2000);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			answer(exchange);
+		});
+
+		new RESTUtils(url, new RestAspect(4, 1000, 200)).post(RESTMessages.RosServer.CALC_WEIGHT, "[]", MediaType.APPLICATION_JSON_TYPE);
+	}
+
+	@Test
+	public void fanOutLimitsConcurrentRequests() throws Exception
+	{
+		AtomicInteger inFlight = new AtomicInteger(0);
+		AtomicInteger maxInFlight = new AtomicInteger(0);
+		String url = this.start(exchange -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+			try
+			{
+				Thread.sleep(100);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			inFlight.decrementAndGet();
+			answer(exchange, 200, exchange.getRequestURI().getPath());
+		});
+
+		RESTUtils restUtils = new RESTUtils(url, new RestAspect(8, 1000, 5000));
+		List<Integer> ids = new ArrayList<>();
+		List<String> expected = new ArrayList<>();
+
+		for (int i = 0; i < 12; ++i)
+		{
+			ids.add(i);
+			expected.add("/cost/" + i);
+		}
+
+		List<String> answers = RESTUtils.fanOut(ids, id -> restUtils.getAsync("cost/" + id, MediaType.APPLICATION_JSON_TYPE), 3).get(10, TimeUnit.SECONDS);
+
+		assertEquals(expected, answers);
+		assertEquals(3, maxInFlight.get());
+	}
+
+	@Test
+	public void asyncErrorsCompleteFuture() throws Exception
+	{
+		String url = this.start(exchange -> answer(exchange, 404, "No such vehicle"));
+
+		try
+		{
+			new RESTUtils(url).deleteAsync("delete/3").get(10, TimeUnit.SECONDS);
+			fail("Request should have failed.");
+		}
+		catch (ExecutionException ee)
+		{
+			assertTrue(ee.getCause() instanceof NotFoundException);
+		}
+	}
+}
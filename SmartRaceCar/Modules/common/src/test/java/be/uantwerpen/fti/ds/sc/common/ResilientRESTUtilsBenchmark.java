@@ -0,0 +1,105 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.ws.rs.core.MediaType;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the latency of cost requests with and without hedging, against a local stub of the ROS server
+ * that is slow for a small fraction of the requests.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes:<dependencies> be.uantwerpen.fti.ds.sc.common.ResilientRESTUtilsBenchmark
+ */
+public class ResilientRESTUtilsBenchmark
+{
+	private static final int NUM_ROUNDS = 2;
+	private static final int NUM_REQUESTS = 2000;
+	private static final long CALCULATION_TIME = 2;         // Usual time the stub takes to calculate a cost, in ms
+	private static final long SLOW_CALCULATION_TIME = 200;  // Time the stub takes for slow requests, in ms
+	private static final double SLOW_FRACTION = 0.03;
+	private static final String POINTS = "[{\"x\":1.5,\"y\":2.5,\"z\":0.0,\"w\":1.0},{\"x\":1.5,\"y\":2.5,\"z\":0.0,\"w\":1.0},{\"x\":4.0,\"y\":-3.0,\"z\":0.0,\"w\":0.7}]";
+	private static final String COST = "{\"cost\":{\"status\":false,\"weight\":12,\"idVehicle\":0}}";
+
+	private static HttpServer startStub() throws Exception
+	{
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			while (exchange.getRequestBody().read() != -1);
+
+			try
+			{
+				Thread.sleep((ThreadLocalRandom.current().nextDouble() < SLOW_FRACTION) ? SLOW_CALCULATION_TIME : CALCULATION_TIME);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			byte[] body = COST.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				out.write(body);
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(16));
+		server.start();
+
+		return server;
+	}
+
+	private static void run(String name, ResilientRESTUtils restUtils) throws Exception
+	{
+		long[] latencies = new long[NUM_REQUESTS];
+
+		for (int i = 0; i < NUM_REQUESTS; ++i)
+		{
+			long sent = System.nanoTime();
+			restUtils.post(RESTMessages.RosServer.CALC_WEIGHT, POINTS, MediaType.APPLICATION_JSON_TYPE);
+			latencies[i] = System.nanoTime() - sent;
+		}
+
+		Arrays.sort(latencies);
+
+		System.out.printf("  %-22s latency p50 %6.1f ms, p95 %6.1f ms, p99 %6.1f ms, max %6.1f ms%n", name, latencies[NUM_REQUESTS / 2] / 1e6,
+				latencies[NUM_REQUESTS * 95 / 100] / 1e6, latencies[NUM_REQUESTS * 99 / 100] / 1e6, latencies[NUM_REQUESTS - 1] / 1e6);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		// Separate stubs, so both get their own endpoint statistics
+		HttpServer plainServer = startStub();
+		HttpServer hedgedServer = startStub();
+
+		ResilientRESTUtils plain = new ResilientRESTUtils("http://localhost:" + plainServer.getAddress().getPort(), new RestAspect(16, 1000, 5000, 0, 100, 2000, 5, 30000, 0));
+		ResilientRESTUtils hedged = new ResilientRESTUtils("http://localhost:" + hedgedServer.getAddress().getPort(), new RestAspect(16, 1000, 5000, 0, 100, 2000, 5, 30000, 95));
+
+		System.out.println(NUM_REQUESTS + " sequential cost requests, " + (SLOW_FRACTION * 100) + "% take " + SLOW_CALCULATION_TIME + " ms instead of " + CALCULATION_TIME + " ms:");
+
+		for (int round = 0; round < NUM_ROUNDS; ++round)
+		{
+			run("no hedging", plain);
+			run("hedged after p95", hedged);
+		}
+
+		for (EndpointMetrics metrics: ResilientRESTUtils.getMetrics())
+		{
+			System.out.println("  " + metrics.getService() + "/" + metrics.getEndpoint() + ": " + metrics.getNumSuccesses() + " successes, " + metrics.getNumHedges() + " hedged requests");
+		}
+
+		plainServer.stop(0);
+		hedgedServer.stop(0);
+		System.exit(0);
+	}
+}
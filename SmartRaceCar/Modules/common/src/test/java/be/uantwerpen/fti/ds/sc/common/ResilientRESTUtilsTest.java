@@ -0,0 +1,172 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResilientRESTUtilsTest
+{
+	private interface Handler
+	{
+		void handle(HttpExchange exchange, int request) throws IOException;
+	}
+
+	private HttpServer server;
+	private AtomicInteger numRequests;
+
+	private String start(Handler handler) throws IOException
+	{
+		this.numRequests = new AtomicInteger(0);
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/", exchange -> handler.handle(exchange, this.numRequests.incrementAndGet()));
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+
+		return "http://localhost:" + this.server.getAddress().getPort();
+	}
+
+	@After
+	public void tearDown()
+	{
+		this.server.stop(0);
+	}
+
+	private static void answer(HttpExchange exchange, int status, String answer) throws IOException
+	{
+		while (exchange.getRequestBody().read() != -1);
+
+		byte[] body = answer.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, body.length);
+
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(body);
+		}
+	}
+
+	private static RestAspect aspect(int retries, int breakerThreshold, int breakerOpenTime, int hedgePercentile)
+	{
+		return new RestAspect(8, 1000, 5000, retries, 10, 50, breakerThreshold, breakerOpenTime, hedgePercentile);
+	}
+
+	@Test
+	public void retriesServerErrors() throws IOException
+	{
+		String url = this.start((exchange, request) -> answer(exchange, (request <= 2) ? 500 : 200, "cost"));
+		ResilientRESTUtils restUtils = new ResilientRESTUtils(url, aspect(2, 10, 1000, 0));
+
+		assertEquals("cost", restUtils.post("calcWeight", "[]", MediaType.APPLICATION_JSON_TYPE));
+		assertEquals(3, this.numRequests.get());
+	}
+
+	@Test
+	public void doesNotRetryClientErrors() throws IOException
+	{
+		String url = this.start((exchange, request) -> answer(exchange, 404, "No such vehicle"));
+		ResilientRESTUtils restUtils = new ResilientRESTUtils(url, aspect(2, 1, 1000, 0));
+
+		try
+		{
+			restUtils.delete("delete/3");
+			fail("Request should have failed.");
+		}
+		catch (NotFoundException nfe)
+		{
+			// Expected
+		}
+
+		assertEquals(1, this.numRequests.get());
+		assertEquals(CircuitBreaker.State.CLOSED, restUtils.getState("delete/4"));
+	}
+
+	@Test
+	public void opensBreakerAfterFailures() throws Exception
+	{
+		AtomicInteger status = new AtomicInteger(503);
+		String url = this.start((exchange, request) -> answer(exchange, status.get(), "ok"));
+		ResilientRESTUtils restUtils = new ResilientRESTUtils(url, aspect(0, 3, 300, 0));
+
+		for (int i = 0; i < 3; ++i)
+		{
+			try
+			{
+				restUtils.get("jobs/" + i, MediaType.TEXT_PLAIN_TYPE);
+				fail("Request should have failed.");
+			}
+			catch (ServiceUnavailableException sue)
+			{
+				// Expected
+			}
+		}
+
+		assertEquals(CircuitBreaker.State.OPEN, restUtils.getState("jobs/0"));
+
+		try
+		{
+			restUtils.get("jobs/3", MediaType.TEXT_PLAIN_TYPE);
+			fail("Breaker should be open.");
+		}
+		catch (CircuitBreakerOpenException cboe)
+		{
+			assertEquals(3, this.numRequests.get());
+		}
+
+		// Once the service recovers, the trial request closes the breaker
+		status.set(200);
+		Thread.sleep(400);
+
+		assertEquals("ok", restUtils.get("jobs/4", MediaType.TEXT_PLAIN_TYPE));
+		assertEquals(CircuitBreaker.State.CLOSED, restUtils.getState("jobs/4"));
+	}
+
+	@Test
+	public void hedgesSlowRequests() throws Exception
+	{
+		AtomicBoolean slowNext = new AtomicBoolean(false);
+		String url = this.start((exchange, request) -> {
+			if (slowNext.getAndSet(false))
+			{
+				try
+				{
+					Thread.sleep(3000);
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+
+				answer(exchange, 200, "slow");
+				return;
+			}
+
+			answer(exchange, 200, "fast");
+		});
+		ResilientRESTUtils restUtils = new ResilientRESTUtils(url, aspect(0, 10, 1000, 90));
+
+		// Learn the latency of the endpoint
+		for (int i = 0; i < 30; ++i)
+		{
+			restUtils.get("cost", MediaType.TEXT_PLAIN_TYPE);
+		}
+
+		slowNext.set(true);
+		long start = System.currentTimeMillis();
+		assertEquals("fast", restUtils.get("cost", MediaType.TEXT_PLAIN_TYPE));
+		assertTrue(System.currentTimeMillis() - start < 2000);
+	}
+}
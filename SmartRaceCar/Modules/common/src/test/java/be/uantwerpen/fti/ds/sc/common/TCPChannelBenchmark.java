@@ -0,0 +1,124 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Compares the messages per second and round trip latency of TCPUtils, which connects for every message,
+ * with a framed TCPChannel.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes:<dependencies> be.uantwerpen.fti.ds.sc.common.TCPChannelBenchmark
+ */
+public class TCPChannelBenchmark
+{
+	private static final int NUM_ROUNDS = 3;
+	private static final String MESSAGE = "{\"percentage\":{\"idVehicle\":3,\"idStart\":12,\"idEnd\":47,\"percentage\":65}}";
+
+	private static int findOpenPort() throws IOException
+	{
+		try (ServerSocket socket = new ServerSocket(0))
+		{
+			return socket.getLocalPort();
+		}
+	}
+
+	// One side of the link, sends with the given function
+	private static class Endpoint
+	{
+		private Consumer<String> sender;
+		private TCPListener listener;
+	}
+
+	/**
+	 * Connect two endpoints, the second one echoes every message back to the first, which releases the semaphore.
+	 */
+	private static Consumer<String> link(boolean framed, Semaphore received) throws Exception
+	{
+		int portA = findOpenPort();
+		int portB = findOpenPort();
+		Endpoint[] endpoints = {new Endpoint(), new Endpoint()};
+
+		endpoints[0].listener = message -> {
+			received.release();
+			return null;
+		};
+		endpoints[1].listener = message -> {
+			endpoints[1].sender.accept(message);
+			return null;
+		};
+
+		if (framed)
+		{
+			TCPChannel a = new TCPChannel(portB, portA, endpoints[0].listener);
+			TCPChannel b = new TCPChannel(portA, portB, endpoints[1].listener);
+			a.setFramed(true);
+			b.setFramed(true);
+			a.start();
+			b.start();
+			endpoints[0].sender = a::sendUpdate;
+			endpoints[1].sender = b::sendUpdate;
+		}
+		else
+		{
+			TCPUtils a = new TCPUtils(portB, portA, endpoints[0].listener);
+			TCPUtils b = new TCPUtils(portA, portB, endpoints[1].listener);
+			a.start();
+			b.start();
+			endpoints[0].sender = a::sendUpdate;
+			endpoints[1].sender = b::sendUpdate;
+		}
+
+		Thread.sleep(500);      // Let both sides start listening
+		return endpoints[0].sender;
+	}
+
+	private static void run(String name, Consumer<String> sender, Semaphore received, int numMessages) throws InterruptedException
+	{
+		// Throughput, send everything and wait for all echoes
+		long start = System.nanoTime();
+
+		for (int i = 0; i < numMessages; ++i)
+		{
+			sender.accept(MESSAGE);
+		}
+
+		received.acquire(numMessages);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		// Latency, one message at a time
+		long[] latencies = new long[numMessages / 10];
+
+		for (int i = 0; i < latencies.length; ++i)
+		{
+			long sent = System.nanoTime();
+			sender.accept(MESSAGE);
+			received.acquire();
+			latencies[i] = System.nanoTime() - sent;
+		}
+
+		Arrays.sort(latencies);
+
+		System.out.printf("  %-10s %8.0f round trips/s | latency p50 %6.1f us, p99 %6.1f us%n", name, numMessages / seconds,
+				latencies[latencies.length / 2] / 1e3, latencies[latencies.length * 99 / 100] / 1e3);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		Semaphore perMessage = new Semaphore(0);
+		Semaphore framed = new Semaphore(0);
+		Consumer<String> perMessageSender = link(false, perMessage);
+		Consumer<String> framedSender = link(true, framed);
+
+		for (int round = 0; round < NUM_ROUNDS; ++round)
+		{
+			System.out.println("Round " + round + ":");
+			run("TCPUtils", perMessageSender, perMessage, 2000);
+			run("TCPChannel", framedSender, framed, 20000);
+		}
+
+		System.exit(0);
+	}
+}
@@ -0,0 +1,143 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TCPChannelTest
+{
+	private static final long TIMEOUT = 5;      // Seconds to wait for a message
+
+	private int receiverPort;
+	private BlockingQueue<String> received;
+	private TCPChannel sender;
+	private TCPChannel receiver;
+
+	private static int findOpenPort() throws IOException
+	{
+		try (ServerSocket socket = new ServerSocket(0))
+		{
+			return socket.getLocalPort();
+		}
+	}
+
+	private TCPChannel startReceiver() throws Exception
+	{
+		TCPChannel receiver = new TCPChannel(findOpenPort(), this.receiverPort, message -> {
+			this.received.add(message);
+			return null;
+		});
+		receiver.start();
+
+		// Wait until it's listening
+		while (true)
+		{
+			try (Socket probe = new Socket("localhost", this.receiverPort))
+			{
+				return receiver;
+			}
+			catch (IOException ioe)
+			{
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	@Before
+	public void setup() throws Exception
+	{
+		this.receiverPort = findOpenPort();
+		this.received = new LinkedBlockingQueue<>();
+		this.receiver = this.startReceiver();
+		this.sender = new TCPChannel(this.receiverPort, findOpenPort(), message -> null);
+	}
+
+	@After
+	public void tearDown()
+	{
+		this.sender.closeTCP();
+		this.receiver.closeTCP();
+	}
+
+	private List<String> receive(int count) throws InterruptedException
+	{
+		List<String> messages = new ArrayList<>();
+
+		for (int i = 0; i < count; ++i)
+		{
+			String message = this.received.poll(TIMEOUT, TimeUnit.SECONDS);
+			assertNotNull("Message " + i + " didn't arrive.", message);
+			messages.add(message);
+		}
+
+		return messages;
+	}
+
+	@Test
+	public void sendsLinesUntilFramed() throws Exception
+	{
+		this.sender.sendUpdate("{\"connect\":{}}");
+		assertEquals("{\"connect\":{}}", this.receive(1).get(0));
+
+		// Older versions connect for every line
+		try (Socket socket = new Socket("localhost", this.receiverPort))
+		{
+			new PrintStream(socket.getOutputStream()).println("{\"exit\":{}}");
+		}
+
+		assertEquals("{\"exit\":{}}", this.receive(1).get(0));
+	}
+
+	@Test
+	public void deliversFramesInOrder() throws Exception
+	{
+		this.sender.setFramed(true);
+		List<String> sent = new ArrayList<>();
+
+		for (int i = 0; i < 1000; ++i)
+		{
+			String message = "{\"percentage\":{\"percentage\":" + i + ",\"text\":\"line\\nbreak \u00e9\"}}";
+			sent.add(message);
+			this.sender.sendUpdate(message);
+		}
+
+		assertEquals(sent, this.receive(sent.size()));
+	}
+
+	@Test
+	public void reconnectsWhenReceiverRestarts() throws Exception
+	{
+		this.sender.setFramed(true);
+		this.sender.sendUpdate("before");
+		assertEquals("before", this.receive(1).get(0));
+
+		this.receiver.closeTCP();
+		this.receiver.join();
+		this.receiver = this.startReceiver();
+
+		// A message written just before the broken connection is noticed can get lost, like with a connection per message
+		this.sender.sendUpdate("during");
+		this.sender.sendUpdate("after");
+
+		String message = this.received.poll(TIMEOUT, TimeUnit.SECONDS);
+
+		if ("during".equals(message))
+		{
+			message = this.received.poll(TIMEOUT, TimeUnit.SECONDS);
+		}
+
+		assertEquals("after", message);
+	}
+}
@@ -0,0 +1,149 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.TcpServerAspect;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the ACK/NACK server TCPUtils used to run, a single thread serving one connection at a time,
+ * with TCPServer, for a number of concurrent clients.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes:<dependencies> be.uantwerpen.fti.ds.sc.common.TCPServerBenchmark
+ */
+public class TCPServerBenchmark
+{
+	private static final int NUM_CLIENTS = 32;
+	private static final int NUM_COMMANDS = 200;        // Per client
+	private static final long COMMAND_TIME = 1;         // Time a command takes to handle, in ms (starting a simulation takes far longer)
+
+	private static final TCPListener listener = message -> {
+		try
+		{
+			Thread.sleep(COMMAND_TIME);
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		return "ACK";
+	};
+
+	/**
+	 * The blocking server TCPUtils used to run: accept, read a line, answer, close.
+	 */
+	private static int startBlockingServer() throws IOException
+	{
+		ServerSocket serverSocket = new ServerSocket(0);
+		Thread thread = new Thread(() -> {
+			while (true)
+			{
+				try (Socket server = serverSocket.accept())
+				{
+					BufferedReader in = new BufferedReader(new InputStreamReader(server.getInputStream()));
+					PrintWriter out = new PrintWriter(server.getOutputStream(), true);
+					out.println(listener.parseTCP(in.readLine()));
+				}
+				catch (IOException ioe)
+				{
+					// Ignore, the client will notice
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+
+		return serverSocket.getLocalPort();
+	}
+
+	private interface Client
+	{
+		void run(int port) throws IOException;
+	}
+
+	// A connection per command, the only thing the blocking server supports
+	private static void connectPerCommand(int port) throws IOException
+	{
+		for (int i = 0; i < NUM_COMMANDS; ++i)
+		{
+			try (Socket socket = new Socket("localhost", port))
+			{
+				new PrintWriter(socket.getOutputStream(), true).println("ping");
+				new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine();
+			}
+		}
+	}
+
+	private static void persistent(int port) throws IOException
+	{
+		try (Socket socket = new Socket("localhost", port))
+		{
+			PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+			for (int i = 0; i < NUM_COMMANDS; ++i)
+			{
+				out.println("ping");
+				in.readLine();
+			}
+		}
+	}
+
+	private static void run(String name, int port, Client client) throws InterruptedException
+	{
+		AtomicInteger failures = new AtomicInteger(0);
+		List<Thread> threads = new ArrayList<>();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_CLIENTS; ++i)
+		{
+			Thread thread = new Thread(() -> {
+				try
+				{
+					client.run(port);
+				}
+				catch (IOException ioe)
+				{
+					failures.incrementAndGet();
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+
+		for (Thread thread: threads)
+		{
+			thread.join();
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("  %-36s %7.0f commands/s (%d clients failed)%n", name, NUM_CLIENTS * NUM_COMMANDS / seconds, failures.get());
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int blockingPort = startBlockingServer();
+		TCPServer server = new TCPServer(new TcpServerAspect(0, 256, 60, 16), listener);
+		server.start();
+
+		System.out.println(NUM_CLIENTS + " clients, " + NUM_COMMANDS + " commands each, " + COMMAND_TIME + " ms per command:");
+
+		for (int round = 0; round < 2; ++round)
+		{
+			run("blocking, connection per command", blockingPort, TCPServerBenchmark::connectPerCommand);
+			run("TCPServer, connection per command", server.getPort(), TCPServerBenchmark::connectPerCommand);
+			run("TCPServer, persistent connection", server.getPort(), TCPServerBenchmark::persistent);
+		}
+
+		server.closeTCP();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,163 @@
+package be.uantwerpen.fti.ds.sc.common;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.TcpServerAspect;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TCPServerTest
+{
+	private TCPServer server;
+
+	private void start(int maxConnections, int idleTimeout, TCPListener listener) throws IOException
+	{
+		this.server = new TCPServer(new TcpServerAspect(0, maxConnections, idleTimeout, 4), listener);
+		this.server.start();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException
+	{
+		this.server.closeTCP();
+		this.server.join();
+	}
+
+	private Socket connect() throws IOException
+	{
+		Socket socket = new Socket("localhost", this.server.getPort());
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	@Test
+	public void answersCommandsInOrder() throws IOException
+	{
+		this.start(8, 60, message -> "echo " + message);
+
+		try (Socket socket = this.connect())
+		{
+			PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+			// Send several commands at once
+			out.print("ping\r\ncreate 1\nrun 1\n");
+			out.flush();
+
+			assertEquals("echo ping", in.readLine());
+			assertEquals("echo create 1", in.readLine());
+			assertEquals("echo run 1", in.readLine());
+		}
+	}
+
+	@Test
+	public void answersAfterClientStoppedSending() throws IOException
+	{
+		// Clients of the previous server could close their output after the command
+		this.start(8, 60, message -> "ACK");
+
+		try (Socket socket = this.connect())
+		{
+			socket.getOutputStream().write("ping\n".getBytes());
+			socket.shutdownOutput();
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			assertEquals("ACK", in.readLine());
+			assertNull(in.readLine());
+		}
+	}
+
+	@Test
+	public void servesClientsConcurrently() throws Exception
+	{
+		// The first client's command blocks until the second one got its answer
+		CountDownLatch secondAnswered = new CountDownLatch(1);
+
+		this.start(8, 60, message -> {
+			if (message.equals("slow"))
+			{
+				try
+				{
+					assertTrue(secondAnswered.await(5, TimeUnit.SECONDS));
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			return message;
+		});
+
+		try (Socket first = this.connect(); Socket second = this.connect())
+		{
+			new PrintWriter(first.getOutputStream(), true).println("slow");
+			new PrintWriter(second.getOutputStream(), true).println("fast");
+
+			assertEquals("fast", new BufferedReader(new InputStreamReader(second.getInputStream())).readLine());
+			secondAnswered.countDown();
+			assertEquals("slow", new BufferedReader(new InputStreamReader(first.getInputStream())).readLine());
+		}
+	}
+
+	@Test
+	public void refusesClientsOverLimit() throws Exception
+	{
+		this.start(1, 60, message -> message);
+
+		try (Socket first = this.connect(); Socket second = this.connect())
+		{
+			new PrintWriter(first.getOutputStream(), true).println("ping");
+			assertEquals("ping", new BufferedReader(new InputStreamReader(first.getInputStream())).readLine());
+
+			assertNull(new BufferedReader(new InputStreamReader(second.getInputStream())).readLine());
+		}
+	}
+
+	@Test
+	public void disconnectsIdleClients() throws Exception
+	{
+		this.start(8, 1, message -> message);
+
+		try (Socket socket = this.connect())
+		{
+			long start = System.currentTimeMillis();
+			assertNull(new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine());
+			assertTrue(System.currentTimeMillis() - start >= 900);
+		}
+	}
+
+	@Test
+	public void answersCommandsLongerThanIdleTimeout() throws Exception
+	{
+		this.start(8, 1, message ->
+		{
+			try
+			{
+				Thread.sleep(1500);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			return "done " + message;
+		});
+
+		try (Socket socket = this.connect())
+		{
+			PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+			writer.println("slow");
+
+			assertEquals("done slow", new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine());
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package be.uantwerpen.fti.ds.sc.common.codec;
+
+import be.uantwerpen.fti.ds.sc.common.*;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares message size and encode/decode time of the JSON and binary codecs for every binary message type.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes:<gson jar> be.uantwerpen.fti.ds.sc.common.codec.TcpCodecBenchmark
+ */
+public class TcpCodecBenchmark
+{
+	private static final int NUM_MESSAGES = 200000;
+	private static final int NUM_ROUNDS = 5;        // The first rounds warm up the JIT
+
+	private static class Message
+	{
+		private final String keyword;
+		private final Object payload;
+		private final Type type;
+
+		public Message(String keyword, Object payload, Type type)
+		{
+			this.keyword = keyword;
+			this.payload = payload;
+			this.type = type;
+		}
+	}
+
+	private static long run(TcpCodec codec, Message message) throws Exception
+	{
+		long start = System.nanoTime();
+		int check = 0;
+
+		for (int i = 0; i < NUM_MESSAGES; ++i)
+		{
+			String encoded = codec.encode(message.keyword, message.payload);
+			TcpMessage decoded = codec.decode(encoded);
+
+			if (decoded.getPayload(message.type) != null)
+			{
+				++check;
+			}
+		}
+
+		long time = System.nanoTime() - start;
+
+		if ((message.payload != null) && (check != NUM_MESSAGES))
+		{
+			throw new IllegalStateException("Payload got lost.");
+		}
+
+		return time;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		TcpCodec json = new TcpCodec();
+		TcpCodec binary = new TcpCodec();
+		binary.negotiate(binary.decode(binary.encodeConnect(TcpMessages.Core.CONNECT)));
+
+		Type pointsType = new TypeToken<ArrayList<Point>>() {}.getType();
+
+		Message[] messages = {
+				new Message(TcpMessages.Simkernel.PERCENTAGE, new Location(3, 12, 47, 65), Location.class),
+				new Message(TcpMessages.Simkernel.COST_TIMING, new Cost(true, 12.5f, 31.75f, 3L), Cost.class),
+				new Message(TcpMessages.Simkernel.ARRIVED_WAYPOINT, null, Object.class),
+				new Message(TcpMessages.Core.NEXT_WAYPOINT, new WayPoint(47, 12.345f, -3.25f, 0.707f, 0.707f), WayPoint.class),
+				new Message(TcpMessages.Core.CURRENT_POSITION, new WayPoint(12, 1.5f, 2.5f, 0.0f, 1.0f), WayPoint.class),
+				new Message(TcpMessages.Core.COST_TIMING, new ArrayList<>(Arrays.asList(new Point(1.5f, 2.5f, 0.0f, 1.0f), new Point(12.345f, -3.25f, 0.707f, 0.707f))), pointsType)
+		};
+
+		for (int round = 0; round < NUM_ROUNDS; ++round)
+		{
+			System.out.println("Round " + round + ":");
+
+			for (Message message: messages)
+			{
+				long jsonTime = run(json, message);
+				long binaryTime = run(binary, message);
+
+				int jsonSize = json.encode(message.keyword, message.payload).length();
+				int binarySize = BinaryCodec.encode(message.keyword, message.payload).length;
+				int lineSize = binary.encode(message.keyword, message.payload).length();
+
+				System.out.printf("  %-16s JSON %4d bytes %7.0f ns | binary %3d bytes (%3d as Base64 line) %6.0f ns%n",
+						message.keyword + ((message.payload instanceof ArrayList) ? "[]" : ""),
+						jsonSize, jsonTime / (double) NUM_MESSAGES,
+						binarySize, lineSize, binaryTime / (double) NUM_MESSAGES);
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package be.uantwerpen.fti.ds.sc.common.codec;
+
+import be.uantwerpen.fti.ds.sc.common.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TcpCodecTest
+{
+	private TcpCodec codec;
+
+	@Before
+	public void setup() throws IOException
+	{
+		this.codec = new TcpCodec();
+		this.codec.negotiate(this.codec.decode(this.codec.encodeConnect(TcpMessages.Core.CONNECT)));
+	}
+
+	@Test
+	public void negotiatesBinary()
+	{
+		assertEquals(BinaryCodec.NAME, this.codec.getName());
+	}
+
+	@Test
+	public void fallsBackToJSON() throws IOException
+	{
+		// Older versions send a connect message without codecs
+		TcpCodec codec = new TcpCodec();
+		codec.negotiate(codec.decode(JSONUtils.keywordToJSONString(TcpMessages.Simkernel.CONNECT)));
+
+		assertEquals(TcpCodec.JSON, codec.getName());
+
+		String encoded = codec.encode(TcpMessages.Simkernel.PERCENTAGE, new Location(1, 2, 3, 45));
+		assertEquals(JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Simkernel.PERCENTAGE, new Location(1, 2, 3, 45)), encoded);
+	}
+
+	@Test
+	public void roundTripsBinaryMessages() throws IOException
+	{
+		Location location = (Location) this.roundTrip(TcpMessages.Simkernel.PERCENTAGE, new Location(7, -1, 300000, 95)).getPayload(Location.class);
+		assertEquals(7, location.getIdVehicle());
+		assertEquals(-1, location.getIdStart());
+		assertEquals(300000, location.getIdEnd());
+		assertEquals(95, location.getPercentage());
+
+		Cost cost = new Cost(true, 1.5f, 42.25f, 12L);
+		assertEquals(cost, this.roundTrip(TcpMessages.Simkernel.COST_TIMING, cost).getPayload(Cost.class));
+
+		WayPoint wayPoint = (WayPoint) this.roundTrip(TcpMessages.Core.NEXT_WAYPOINT, new WayPoint(46, 1.0f, -2.5f, 0.7f, 0.71f)).getPayload(WayPoint.class);
+		assertEquals(46, wayPoint.getID());
+		assertEquals(new Point(1.0f, -2.5f, 0.7f, 0.71f), new Point(wayPoint.getX(), wayPoint.getY(), wayPoint.getZ(), wayPoint.getW()));
+
+		List<Point> points = Arrays.asList(new Point(1, 2, 3, 4), new Point(5, 6, 7, 8));
+		assertEquals(points, this.roundTrip(TcpMessages.Core.COST_TIMING, new ArrayList<>(points)).getPayload(null));
+
+		TcpMessage arrived = this.roundTrip(TcpMessages.Simkernel.ARRIVED_WAYPOINT, null);
+		assertEquals(TcpMessages.Simkernel.ARRIVED_WAYPOINT, arrived.getKeyword());
+	}
+
+	@Test
+	public void sendsMessagesWithoutBinaryLayoutAsJSON() throws IOException
+	{
+		Map map = new Map("V314");
+		String encoded = this.codec.encode(TcpMessages.Core.CURRENT_MAP, map);
+
+		assertTrue(encoded.startsWith("{"));
+		assertEquals("V314", ((Map) this.codec.decode(encoded).getPayload(Map.class)).getName());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsTruncatedMessages() throws IOException
+	{
+		byte[] encoded = BinaryCodec.encode(TcpMessages.Core.NEXT_WAYPOINT, new WayPoint(46, 1, 2, 3, 4));
+		BinaryCodec.decode(Arrays.copyOf(encoded, encoded.length - 1));
+	}
+
+	private TcpMessage roundTrip(String keyword, Object payload) throws IOException
+	{
+		String encoded = this.codec.encode(keyword, payload);
+		assertFalse("Expected a binary message, got " + encoded, encoded.startsWith("{"));
+
+		TcpMessage message = this.codec.decode(encoded);
+		assertEquals(keyword, message.getKeyword());
+		return message;
+	}
+}
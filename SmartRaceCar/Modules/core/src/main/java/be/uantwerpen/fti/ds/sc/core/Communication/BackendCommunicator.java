@@ -1,6 +1,7 @@
 package be.uantwerpen.fti.ds.sc.core.Communication;
 
 import be.uantwerpen.fti.ds.sc.common.JSONUtils;
+import be.uantwerpen.fti.ds.sc.common.MapInfo;
 import be.uantwerpen.fti.ds.sc.common.RESTMessages;
 import be.uantwerpen.fti.ds.sc.common.RESTUtils;
 import be.uantwerpen.fti.ds.sc.common.WayPoint;
@@ -8,6 +9,7 @@ import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.NavStackAspect;
 import be.uantwerpen.fti.ds.sc.common.configuration.RacecarAspect;
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
 import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +18,7 @@ import javax.ws.rs.core.MediaType;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.HashMap;
+import java.util.List;
 
 public class BackendCommunicator implements GeneralBackendCommunicator, MapBackendCommunicator, NavigationBackendCommunication
 {
@@ -29,7 +32,8 @@ public class BackendCommunicator implements GeneralBackendCommunicator, MapBacke
 		this.configuration = configuration;
 
 		RacecarAspect racecarAspect = (RacecarAspect) this.configuration.get(AspectType.RACECAR);
-		this.restUtils = new RESTUtils(racecarAspect.getRacecarServerUrl());
+		RestAspect restAspect = (RestAspect) this.configuration.get(AspectType.REST);
+		this.restUtils = new RESTUtils(racecarAspect.getRacecarServerUrl(), restAspect);
 	}
 
 
@@ -73,6 +77,19 @@ public class BackendCommunicator implements GeneralBackendCommunicator, MapBacke
 		return this.restUtils.get(RESTMessages.Backend.GET_MAP_NAME, MediaType.TEXT_PLAIN_TYPE);
 	}
 
+	@Override
+	public List<MapInfo> getMapCatalog()
+	{
+		Type typeOfList = new TypeToken<List<MapInfo>>()
+		{
+		}.getType();
+
+		List<MapInfo> maps = (List<MapInfo>) JSONUtils.getObjectWithKeyWord(this.restUtils.get(RESTMessages.Backend.GET_MAP_CATALOG, MediaType.APPLICATION_JSON_TYPE), typeOfList);
+		this.log.info("Backend map catalog contains " + maps.size() + " maps.");
+
+		return maps;
+	}
+
 	@Override
 	public void downloadMap(String mapName)
 	{
@@ -1,9 +1,20 @@
 package be.uantwerpen.fti.ds.sc.core.Communication;
 
+import be.uantwerpen.fti.ds.sc.common.codec.TcpMessage;
+
+import java.io.IOException;
 
 public interface GeneralVehicleCommunicator
 {
 	public void start();
 	public void connect();
 	public void disconnect();
+
+	/**
+	 * Decode a message received from the vehicle.
+	 * @param message
+	 * @return
+	 * @throws IOException  If the message is malformed.
+	 */
+	public TcpMessage decode(String message) throws IOException;
 }
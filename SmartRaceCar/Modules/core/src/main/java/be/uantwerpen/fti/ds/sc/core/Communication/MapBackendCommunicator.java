@@ -1,7 +1,12 @@
 package be.uantwerpen.fti.ds.sc.core.Communication;
 
+import be.uantwerpen.fti.ds.sc.common.MapInfo;
+
+import java.util.List;
+
 public interface MapBackendCommunicator
 {
 	public String getMapName();
 	public void downloadMap(String mapName);
+	public List<MapInfo> getMapCatalog();
 }
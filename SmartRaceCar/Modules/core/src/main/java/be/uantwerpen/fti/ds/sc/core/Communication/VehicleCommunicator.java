@@ -1,5 +1,7 @@
 package be.uantwerpen.fti.ds.sc.core.Communication;
 import be.uantwerpen.fti.ds.sc.common.*;
+import be.uantwerpen.fti.ds.sc.common.codec.TcpCodec;
+import be.uantwerpen.fti.ds.sc.common.codec.TcpMessage;
 import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.KernelAspect;
@@ -7,32 +9,50 @@ import be.uantwerpen.fti.ds.sc.core.Drive;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.List;
 
 public class VehicleCommunicator implements GeneralVehicleCommunicator, MapVehicleCommunicator, NavigationVehicleCommunication
 {
 	private Configuration configuration;
 	private Logger log;
-	private TCPUtils tcpUtils;
+	private TCPChannel tcpChannel;
+	private TcpCodec codec;
 
 	public VehicleCommunicator(Configuration configuration, TCPListener listener, int clientPort, int serverPort)
 	{
 		this.log = LoggerFactory.getLogger(VehicleCommunicator.class);
 		this.configuration = configuration;
-		this.tcpUtils = new TCPUtils(clientPort, serverPort, listener);
+		this.tcpChannel = new TCPChannel(clientPort, serverPort, listener);
+		this.codec = new TcpCodec();
 	}
 
 	@Override
 	public void start()
 	{
-		this.tcpUtils.start();
+		this.tcpChannel.start();
+	}
+
+	@Override
+	public TcpMessage decode(String message) throws IOException
+	{
+		TcpMessage tcpMessage = this.codec.decode(message);
+
+		// The kernel tells us which codecs and transports it supports when it connects
+		if (tcpMessage.getKeyword().equals(TcpMessages.Simkernel.CONNECT))
+		{
+			this.codec.negotiate(tcpMessage);
+			this.tcpChannel.setFramed(this.codec.isFramed());
+		}
+
+		return tcpMessage;
 	}
 
 	@Override
 	public void timeRequest(List<Point> points)
 	{
 		this.log.debug("Performing timing request");
-		this.tcpUtils.sendUpdate(JSONUtils.arrayToJSONStringWithKeyWord(TcpMessages.Core.COST_TIMING, points));
+		this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Core.COST_TIMING, points));
 	}
 
 	@Override
@@ -41,7 +61,7 @@ public class VehicleCommunicator implements GeneralVehicleCommunicator, MapVehic
 		KernelAspect kernelAspect = (KernelAspect) this.configuration.get(AspectType.KERNEL);
 		if(!kernelAspect.isDebug())
 		{
-			this.tcpUtils.sendUpdate(JSONUtils.keywordToJSONString(TcpMessages.Core.CONNECT));
+			this.tcpChannel.sendUpdate(this.codec.encodeConnect(TcpMessages.Core.CONNECT));
 		}
 		else
 		{
@@ -56,7 +76,7 @@ public class VehicleCommunicator implements GeneralVehicleCommunicator, MapVehic
 		KernelAspect kernelAspect = (KernelAspect) this.configuration.get(AspectType.KERNEL);
 		if(!kernelAspect.isDebug())
 		{
-			this.tcpUtils.sendUpdate(JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Core.START_POINT, startPoint));
+			this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Core.START_POINT, startPoint));
 		}
 		else
 		{
@@ -67,7 +87,7 @@ public class VehicleCommunicator implements GeneralVehicleCommunicator, MapVehic
 	@Override
 	public void sendCurrentPosition(WayPoint wayPoint)
 	{
-		this.tcpUtils.sendUpdate(JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Core.CURRENT_POSITION, wayPoint));
+		this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Core.CURRENT_POSITION, wayPoint));
 	}
 
 	@Override
@@ -76,7 +96,7 @@ public class VehicleCommunicator implements GeneralVehicleCommunicator, MapVehic
 		KernelAspect kernelAspect = (KernelAspect) this.configuration.get(AspectType.KERNEL);
 		if(!kernelAspect.isDebug())
 		{
-			this.tcpUtils.closeTCP();
+			this.tcpChannel.closeTCP();
 		}
 		else
 		{
@@ -87,9 +107,9 @@ public class VehicleCommunicator implements GeneralVehicleCommunicator, MapVehic
 	@Override
 	public void setMap(Map map)
 	{
-		String json = JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Core.CURRENT_MAP, map);
+		String json = this.codec.encode(TcpMessages.Core.CURRENT_MAP, map);
 		this.log.info("Setting current map on NAVSTACK to " + json);
-		this.tcpUtils.sendUpdate(json);
+		this.tcpChannel.sendUpdate(json);
 	}
 
 	@Override
@@ -99,7 +119,7 @@ public class VehicleCommunicator implements GeneralVehicleCommunicator, MapVehic
 		KernelAspect kernelAspect = (KernelAspect) this.configuration.get(AspectType.KERNEL);
 		if(!kernelAspect.isDebug())
 		{
-			this.tcpUtils.sendUpdate(JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Core.DRIVE, new Drive(steer, throttle)));
+			this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Core.DRIVE, new Drive(steer, throttle)));
 		}
 		else
 		{
@@ -110,6 +130,6 @@ public class VehicleCommunicator implements GeneralVehicleCommunicator, MapVehic
 	@Override
 	public void sendNextWayPoint(WayPoint wayPoint)
 	{
-		this.tcpUtils.sendUpdate(JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Core.NEXT_WAYPOINT, wayPoint));
+		this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Core.NEXT_WAYPOINT, wayPoint));
 	}
 }
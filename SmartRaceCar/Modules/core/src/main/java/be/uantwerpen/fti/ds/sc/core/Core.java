@@ -1,6 +1,7 @@
 package be.uantwerpen.fti.ds.sc.core;
 
 import be.uantwerpen.fti.ds.sc.common.*;
+import be.uantwerpen.fti.ds.sc.common.codec.TcpMessage;
 import be.uantwerpen.fti.ds.sc.common.configuration.*;
 import be.uantwerpen.fti.ds.sc.core.Communication.BackendCommunicator;
 import be.uantwerpen.fti.ds.sc.core.Communication.GeneralBackendCommunicator;
@@ -122,6 +123,7 @@ class Core implements TCPListener
 		this.configuration.add(AspectType.KERNEL);
 		this.configuration.add(AspectType.TCP_CLIENT);
 		this.configuration.add(AspectType.TCP_SERVER);
+		this.configuration.add(AspectType.REST);
 
 		this.configuration.load(propertyPath + CONFIG_NAME);
 	}
@@ -136,35 +138,45 @@ class Core implements TCPListener
 	 */
 	public String parseTCP(String message)
 	{
-		if (JSONUtils.isJSONValid(message))
+		TcpMessage tcpMessage;
+
+		try
+		{
+			tcpMessage = this.vehicleCommunicator.decode(message);
+		}
+		catch (IOException ioe)
 		{
-			//parses keyword to do the correct function call.
-			switch (JSONUtils.getFirst(message))
-			{
-				case TcpMessages.Simkernel.PERCENTAGE:
-					Location location = (Location) JSONUtils.getObjectWithKeyWord(message, Location.class);
-					this.navigator.percentageUpdate(location);
-					break;
-				case TcpMessages.Simkernel.ARRIVED_WAYPOINT:
-					this.navigator.wayPointReached();
-					break;
-				case TcpMessages.Simkernel.CONNECT:
-					this.log.info("Connected to car.");
-					break;
-				case TcpMessages.Simkernel.EXIT:
-					this.exit();
-					break;
-				case TcpMessages.Simkernel.COST:
-					//this.weightManager.costCalculationComplete((Cost) JSONUtils.getObjectWithKeyWord(message, Cost.class));
-					break;
-				case TcpMessages.Simkernel.COST_TIMING:
-					this.navigator.timingCalculationComplete((Cost) JSONUtils.getObjectWithKeyWord(message, Cost.class));
-					break;
-				default:
-					this.log.warn("No matching keyword when parsing JSON from Sockets. Data: " + message);
-					break;
-			}
+			this.log.warn("Failed to decode message from vehicle: " + message, ioe);
+			return null;
 		}
+
+		//parses keyword to do the correct function call.
+		switch (tcpMessage.getKeyword())
+		{
+			case TcpMessages.Simkernel.PERCENTAGE:
+				Location location = (Location) tcpMessage.getPayload(Location.class);
+				this.navigator.percentageUpdate(location);
+				break;
+			case TcpMessages.Simkernel.ARRIVED_WAYPOINT:
+				this.navigator.wayPointReached();
+				break;
+			case TcpMessages.Simkernel.CONNECT:
+				this.log.info("Connected to car.");
+				break;
+			case TcpMessages.Simkernel.EXIT:
+				this.exit();
+				break;
+			case TcpMessages.Simkernel.COST:
+				//this.weightManager.costCalculationComplete((Cost) JSONUtils.getObjectWithKeyWord(message, Cost.class));
+				break;
+			case TcpMessages.Simkernel.COST_TIMING:
+				this.navigator.timingCalculationComplete((Cost) tcpMessage.getPayload(Cost.class));
+				break;
+			default:
+				this.log.warn("No matching keyword when parsing message from Sockets. Data: " + message);
+				break;
+		}
+
 		return null;
 	}
 
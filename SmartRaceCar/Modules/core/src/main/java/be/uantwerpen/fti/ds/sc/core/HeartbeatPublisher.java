@@ -35,7 +35,7 @@ public class HeartbeatPublisher extends Thread implements MQTTListener
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, "HeartbeatPublisher");
 		}
 		catch (MqttException me)
 		{
@@ -62,4 +62,24 @@ public class Job
 	{
 		return this.jobID;
 	}
+
+	/**
+	 * Convert the progress towards the next waypoint into the progress of the whole route.
+	 * Every waypoint of the route counts equally.
+	 *
+	 * @param waypointPercentage Percentage of the way to the next waypoint that has been driven.
+	 * @return The percentage of the route that has been completed.
+	 */
+	public int getProgress(int waypointPercentage)
+	{
+		if (this.routeSize <= 0)
+		{
+			return waypointPercentage;
+		}
+
+		int reached = this.routeSize - this.currentRoute.size();
+		int percentage = Math.round((reached * 100.0f + waypointPercentage) / this.routeSize);
+
+		return Math.max(0, Math.min(100, percentage));
+	}
 }
@@ -5,6 +5,7 @@ import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.KernelAspect;
 import be.uantwerpen.fti.ds.sc.common.configuration.MqttAspect;
+import be.uantwerpen.fti.ds.sc.common.configuration.NavStackAspect;
 import be.uantwerpen.fti.ds.sc.core.Communication.MapBackendCommunicator;
 import be.uantwerpen.fti.ds.sc.core.Communication.MapVehicleCommunicator;
 import org.eclipse.paho.client.mqttv3.MqttException;
@@ -28,6 +29,14 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 
 public class MapManager implements MQTTListener
@@ -52,7 +61,7 @@ public class MapManager implements MQTTListener
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) this.configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, "MapManager");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.CHANGE_MAP);
 		}
 		catch (MqttException me)
@@ -158,8 +167,14 @@ public class MapManager implements MQTTListener
 		if (this.loadedMaps.containsKey(mapName))
 		{
 			contains = true;
-			this.log.info("Current used map '" + mapName + "' found in folder, setting as current map.");
 
+			if (this.isOutdated(mapName))
+			{
+				this.log.info("Current used map '" + mapName + "' changed on the backend, downloading it again.");
+				this.backend.downloadMap(mapName);
+			}
+
+			this.log.info("Current used map '" + mapName + "' found in folder, setting as current map.");
 		}
 		else
 		{
@@ -187,6 +202,87 @@ public class MapManager implements MQTTListener
 		return contains;
 	}
 
+	/**
+	 * Compare the local files of a map with the hashes in the backend's map catalog.
+	 * If the catalog can't be fetched or doesn't list the map, the local copy is kept.
+	 *
+	 * @param mapName name of the map
+	 * @return true if a local file is missing or differs from the backend's file.
+	 */
+	private boolean isOutdated(String mapName)
+	{
+		MapInfo mapInfo = null;
+
+		try
+		{
+			for (MapInfo catalogMap : this.backend.getMapCatalog())
+			{
+				if (catalogMap.getName().equals(mapName))
+				{
+					mapInfo = catalogMap;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			this.log.warn("Failed to fetch map catalog, can't check whether map '" + mapName + "' is up to date.", e);
+			return false;
+		}
+
+		if (mapInfo == null)
+		{
+			this.log.warn("Map '" + mapName + "' isn't in the backend's map catalog, can't check whether it is up to date.");
+			return false;
+		}
+
+		NavStackAspect navStackAspect = (NavStackAspect) this.configuration.get(AspectType.NAVSTACK);
+		Path folder = Paths.get(navStackAspect.getNavStackPath());
+
+		if (!mapInfo.getYamlHash().equals(this.hashFile(folder.resolve(mapName + ".yaml"))))
+		{
+			return true;
+		}
+
+		return mapInfo.hasPgm() && (!mapInfo.getPgmHash().equals(this.hashFile(folder.resolve(mapName + ".pgm"))));
+	}
+
+	/**
+	 * Return the hex encoded SHA-256 hash of a file, the way the backend hashes its map files.
+	 *
+	 * @param file
+	 * @return The hash, or null if the file can't be read.
+	 */
+	private String hashFile(Path file)
+	{
+		MessageDigest digest;
+
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException nsae)
+		{
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException("SHA-256 is not supported.", nsae);
+		}
+
+		try (InputStream stream = new DigestInputStream(Files.newInputStream(file), digest))
+		{
+			byte[] buffer = new byte[8192];
+
+			while (stream.read(buffer) != -1)
+			{
+			}
+
+			return String.format("%064x", new BigInteger(1, digest.digest()));
+		}
+		catch (IOException ioe)
+		{
+			this.log.warn("Failed to hash map file " + file + ".", ioe);
+			return null;
+		}
+	}
+
 	/**
 	 * Writes new map info to maps.xml file.
 	 * @param mapPath path to maps.xml file
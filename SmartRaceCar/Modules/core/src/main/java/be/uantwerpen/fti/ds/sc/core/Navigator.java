@@ -56,7 +56,9 @@ public class Navigator implements MQTTListener
 		{
 
 			MqttAspect mqttAspect = (MqttAspect) this.configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			// Job messages are handled on a separate thread, so waiting for the vehicle doesn't block the MQTT client.
+			MQTTDispatcher dispatcher = new MQTTDispatcher("Navigator", mqttAspect.getDispatchQueueCapacity());
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, dispatcher, "Navigator");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.JOB + "/" + this.ID + "/#");
 		}
 		catch (MqttException me)
@@ -97,7 +99,7 @@ public class Navigator implements MQTTListener
 
 					for (int index = 0; index < wayPointStringValues.length; index++)
 					{
-						wayPointValues[index] = Integer.parseInt(wayPointStringValues[index]);
+						wayPointValues[index] = Long.parseLong(wayPointStringValues[index]);
 					}
 
 					this.jobRequest(wayPointValues, jobID);
@@ -195,22 +197,13 @@ public class Navigator implements MQTTListener
 
 	/**
 	 * When vehicle's RosKernel/SimKernel sends update on route completion it needs to be transformed to the completion amount for the total route.
-	 * To do this it receives a cost calculation from the RosServer that it requested and uses this to determine the size of each waypoint's sub-route.
+	 * Routes can contain many waypoints, so the progress is computed in floating point over the whole route.
 	 *
 	 * @param location Location object containing the current percentage value.
 	 */
 	public void percentageUpdate(Location location)
 	{
-		if (this.currentJob.getRouteSize()== 0)
-		{
-			this.log.info("route size = 0");
-			float weight = (float) this.costStartToEndTiming / (float) (this.costCurrentToStartTiming + this.costStartToEndTiming);
-			location.setPercentage(Math.round((1 - weight) * 100 + location.getPercentage() * weight));
-		}
-
-		int percentage = location.getPercentage()/this.currentJob.getRouteSize() + (this.currentJob.getRouteSize() - this.currentJob.getRemainingRouteSize())*(100/this.currentJob.getRouteSize());	// change percentage from percentage to next waypoint to percentage of route
-
-		location.setPercentage(percentage);
+		location.setPercentage(this.currentJob.getProgress(location.getPercentage()));
 
 		this.log.info("Location Updated. Vehicle has " + location.getPercentage() + "% of route completed");
 		try
@@ -334,8 +327,8 @@ public class Navigator implements MQTTListener
 	}
 
 	/**
-	 * When vehicle has completed cost calculation for the percentageUpdate() function it sets the variables
-	 * costCurrentToStartTiming and costStartToEndTiming of the Core to be used by percentageUpdate().
+	 * When vehicle has completed cost calculation it sets the variables
+	 * costCurrentToStartTiming and costStartToEndTiming of the Core, jobRequest() waits for them before starting a route.
 	 *
 	 * @param cost Cost object containing the weights of the sub-routes.
 	 */
@@ -348,6 +341,8 @@ public class Navigator implements MQTTListener
 
 	/**
 	 * Called by incoming timing calculation requests. Sends the request further to the RosKernel/SimKernel.
+	 * Only the first and last waypoint of the route are used, so the timing is a rough estimate of the whole trip.
+	 * It isn't used to compute route progress, percentageUpdate() uses the waypoints of the route for that.
 	 *
 	 * @param wayPointIDs Array of waypoint ID's to have their timing calculated.
 	 */
@@ -358,7 +353,7 @@ public class Navigator implements MQTTListener
 		List<Point> points = new ArrayList<>();
 		points.add(this.wayPoints.get(wayPointIDs[0]));
 		points.add(this.wayPoints.get(wayPointIDs[0]));
-		points.add(this.wayPoints.get(wayPointIDs[1]));
+		points.add(this.wayPoints.get(wayPointIDs[wayPointIDs.length - 1]));
 
 		KernelAspect kernelAspect = (KernelAspect) this.configuration.get(AspectType.KERNEL);
 		if (!kernelAspect.isDebug())
@@ -0,0 +1,49 @@
+package be.uantwerpen.fti.ds.sc.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JobTest
+{
+	private static Job createJob(int routeSize)
+	{
+		Job job = new Job();
+
+		for (long i = 0; i < routeSize; ++i)
+		{
+			job.add(i);
+		}
+
+		return job;
+	}
+
+	@Test
+	public void progressOfLongRoute()
+	{
+		Job job = createJob(250);
+
+		// Reach 200 of the 250 waypoints, then get halfway to the next one
+		for (int i = 0; i < 200; ++i)
+		{
+			job.poll();
+		}
+
+		assertEquals(80, job.getProgress(50));
+	}
+
+	@Test
+	public void progressReachesEndOfRoute()
+	{
+		Job job = createJob(150);
+
+		assertEquals(0, job.getProgress(0));
+
+		while (job.getRemainingRouteSize() > 1)
+		{
+			job.poll();
+		}
+
+		assertEquals(100, job.getProgress(100));
+	}
+}
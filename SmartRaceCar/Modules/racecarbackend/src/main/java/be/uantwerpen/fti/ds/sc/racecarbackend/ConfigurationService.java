@@ -30,6 +30,7 @@ public class ConfigurationService
         configuration.add(AspectType.ROS);
         configuration.add(AspectType.MQTT);
         configuration.add(AspectType.COST);
+        configuration.add(AspectType.REST);
 
         return configuration.load(DEFAULT_PROPERTIES_FILE);
     }
@@ -41,6 +42,7 @@ public class ConfigurationService
         Configuration configuration = new Configuration();
         configuration.add(AspectType.MQTT);
         configuration.add(AspectType.RACECAR);
+        configuration.add(AspectType.REST);
 
         return configuration.load(DEFAULT_PROPERTIES_FILE);
     }
@@ -72,6 +74,7 @@ public class ConfigurationService
         Configuration configuration = new Configuration();
         configuration.add(AspectType.MQTT);
         configuration.add(AspectType.BACKBONE);
+        configuration.add(AspectType.REST);
 
         return configuration.load(DEFAULT_PROPERTIES_FILE);
     }
@@ -97,6 +100,16 @@ public class ConfigurationService
         return configuration.load(DEFAULT_PROPERTIES_FILE);
     }
 
+    @Bean
+    @Qualifier("travelTimeModel")
+    Configuration travelTimeModelConfiguration()
+    {
+        Configuration configuration = new Configuration();
+        configuration.add(AspectType.COST);
+
+        return configuration.load(DEFAULT_PROPERTIES_FILE);
+    }
+
     @Bean
     @Qualifier("topicParser")
     Configuration topicParserConfiguration()
@@ -128,6 +141,17 @@ public class ConfigurationService
         return configuration.load(DEFAULT_PROPERTIES_FILE);
     }
 
+    @Bean
+    @Qualifier("routePlanner")
+    Configuration routePlannerConfiguration()
+    {
+        Configuration configuration = new Configuration();
+        configuration.add(AspectType.MAP_MANAGER);
+        configuration.add(AspectType.COST);
+
+        return configuration.load(DEFAULT_PROPERTIES_FILE);
+    }
+
     @Bean
     @Qualifier("waypointProvider")
     Configuration waypointProvidorConfiguration()
@@ -22,6 +22,10 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.*;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 @Controller
 public class CostCache implements MQTTListener
@@ -32,10 +36,15 @@ public class CostCache implements MQTTListener
 	private Configuration configuration;
 	private TopicParser topicParser;
 	private MQTTUtils mqttUtils;
-	private Map<Link, Float> costCache;
+	private ResilientRESTUtils rosRESTUtils;
+	private LinkStatistics rosCostPerDistance;          // ROS cost per unit of straight-line distance, used to estimate costs while ROS is down
+	private LinkStatistics rosCostPerSecond;            // ROS cost per second of learned travel time, converts learned travel times into ROS costs
+	private int maxConcurrentRequests;                  // Maximum number of cost requests sent to ROS at the same time
+	private TravelTimeModel travelTimeModel;
+	private Map<String, Map<Link, Float>> costCaches;   // Cached ROS costs per map, dropped when no jobs use the map anymore
 
 	@Autowired
-	public CostCache (@Qualifier("costCache") Configuration configuration, WaypointProvider waypointProvider, TopicParser topicParser)
+	public CostCache (@Qualifier("costCache") Configuration configuration, WaypointProvider waypointProvider, TopicParser topicParser, TravelTimeModel travelTimeModel)
 	{
 		this.log = LoggerFactory.getLogger(CostCache.class);
 		this.random = new Random(System.currentTimeMillis());
@@ -45,7 +54,7 @@ public class CostCache implements MQTTListener
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, "CostCache");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.CHANGE_MAP);
 		}
 		catch (MqttException me)
@@ -55,44 +64,162 @@ public class CostCache implements MQTTListener
 
 		this.configuration = configuration;
 		this.topicParser = topicParser;
+
+		RosAspect rosAspect = (RosAspect) configuration.get(AspectType.ROS);
+		RestAspect restAspect = (RestAspect) configuration.get(AspectType.REST);
+		this.rosRESTUtils = new ResilientRESTUtils(rosAspect.getRosServerUrl(), restAspect);
+		this.rosCostPerDistance = new LinkStatistics(((CostAspect) configuration.get(AspectType.COST)).getLearnedAlpha());
+		this.rosCostPerSecond = new LinkStatistics(((CostAspect) configuration.get(AspectType.COST)).getLearnedAlpha());
+		this.maxConcurrentRequests = restAspect.getPoolSize();
 		this.waypointProvider = waypointProvider;
-		this.costCache = new HashMap<>();
+		this.travelTimeModel = travelTimeModel;
+		this.costCaches = new ConcurrentHashMap<>();
+
+		// Costs of the previous map are still needed by jobs that started before a map change
+		this.waypointProvider.addDrainListener(this::mapDrained);
 
 		this.log.info("Initialized CostCache.");
 	}
 
+	/**
+	 * Calculate the cost of driving from one waypoint to another.
+	 * Depending on the configured cost source, this is the cost calculated by ROS,
+	 * the travel time learned from location updates, or a mix of both.
+	 * Learned travel times are converted into ROS cost units, so all costs can be compared.
+	 * Links that haven't been observed often enough, or as long as the conversion isn't known, use the ROS cost.
+	 * The waypoints of the current map are used.
+	 * @param startId
+	 * @param endId
+	 * @return
+	 * @throws IndexOutOfBoundsException
+	 * @throws IOException
+	 */
 	public float calculateCost (long startId, long endId) throws IndexOutOfBoundsException, IOException
 	{
-		Link link = new Link(startId, endId);
+		return this.calculateCost(this.waypointProvider.getCurrentVersion(), startId, endId);
+	}
+
+	/**
+	 * Calculate the cost of driving from one waypoint to another, using the waypoints of a specific map version.
+	 * @param mapVersion
+	 * @param startId
+	 * @param endId
+	 * @return
+	 * @throws IndexOutOfBoundsException    If the map version or one of the waypoints doesn't exist.
+	 * @throws IOException
+	 */
+	public float calculateCost (long mapVersion, long startId, long endId) throws IndexOutOfBoundsException, IOException
+	{
+		return this.await(this.calculateCostAsync(mapVersion, startId, endId));
+	}
+
+	/**
+	 * Calculate the costs of driving from several waypoints to the same waypoint, using the waypoints of a specific map version.
+	 * Costs that aren't cached yet are requested from ROS concurrently.
+	 * @param mapVersion
+	 * @param startIds
+	 * @param endId
+	 * @return The costs, in the order of the start waypoints.
+	 * @throws IndexOutOfBoundsException    If the map version or one of the waypoints doesn't exist.
+	 * @throws IOException
+	 */
+	public List<Float> calculateCosts (long mapVersion, List<Long> startIds, long endId) throws IndexOutOfBoundsException, IOException
+	{
+		return this.await(RESTUtils.fanOut(startIds, startId -> this.calculateCostAsync(mapVersion, startId, endId), this.maxConcurrentRequests));
+	}
 
+	/**
+	 * Asynchronous variant of calculateCost(mapVersion, startId, endId).
+	 * @param mapVersion
+	 * @param startId
+	 * @param endId
+	 * @return Future completed with the cost, or with an IndexOutOfBoundsException or IOException.
+	 */
+	public CompletableFuture<Float> calculateCostAsync (long mapVersion, long startId, long endId)
+	{
 		if (startId == endId)
 		{
-			return 0;
+			return CompletableFuture.completedFuture(0.0f);
+		}
+
+		CostAspect costAspect = (CostAspect) this.configuration.get(AspectType.COST);
+		Float learnedCost = (costAspect.getSource() == CostSource.ROS) ? null : this.getLearnedCost(mapVersion, startId, endId);
+
+		if (learnedCost == null)
+		{
+			return this.calculateRosCost(mapVersion, startId, endId);
+		}
+
+		switch (costAspect.getSource())
+		{
+			case LEARNED:
+				this.log.info("Using learned cost for link " + new Link(startId, endId));
+				return CompletableFuture.completedFuture(learnedCost);
+
+			case BLENDED:
+				float blendWeight = costAspect.getBlendWeight();
+				return this.calculateRosCost(mapVersion, startId, endId).thenApply(rosCost -> (blendWeight * learnedCost) + ((1.0f - blendWeight) * rosCost));
+
+			default:
+				return this.calculateRosCost(mapVersion, startId, endId);
 		}
+	}
 
-		if (this.costCache.containsKey(link))
+	/**
+	 * Return the learned travel time of a link, converted into ROS cost units.
+	 * @return  The cost, or null if the link wasn't observed often enough or ROS costs can't be related to travel times yet.
+	 */
+	private Float getLearnedCost (long mapVersion, long startId, long endId)
+	{
+		if ((!this.travelTimeModel.hasEstimate(mapVersion, startId, endId)) || (this.rosCostPerSecond.getNumObservations() == 0))
 		{
-			this.log.info("Got cache hit for link " + link);
-			return this.costCache.get(link);
+			return null;
 		}
 
-		this.log.info("Got cache miss for link " + link);
+		return this.travelTimeModel.getEstimate(mapVersion, startId, endId) * this.rosCostPerSecond.getAverage();
+	}
+
+	private CompletableFuture<Float> calculateRosCost (long mapVersion, long startId, long endId)
+	{
+		Link link = new Link(startId, endId);
+		Map<Link, Float> costCache;
+		List<WayPoint> waypoints;
+
+		try
+		{
+			costCache = this.costCaches.computeIfAbsent(this.waypointProvider.getMapName(mapVersion), mapName -> new ConcurrentHashMap<>());
+			Float cachedCost = costCache.get(link);
+
+			if (cachedCost != null)
+			{
+				this.log.info("Got cache hit for link " + link);
+				return CompletableFuture.completedFuture(cachedCost);
+			}
+
+			this.log.info("Got cache miss for link " + link);
+
+			waypoints = this.waypointProvider.get(mapVersion, Arrays.asList(startId, endId));
+		}
+		catch (IndexOutOfBoundsException ioobe)
+		{
+			return failedFuture(ioobe);
+		}
 
-		if (!this.waypointProvider.exists(startId))
+		if (waypoints.get(0) == null)
 		{
 			String errorString = "Requested cost for start waypoint " + startId + ", but waypoint doesn't exist.";
 			this.log.error(errorString);
-			throw new IndexOutOfBoundsException(errorString);
+			return failedFuture(new IndexOutOfBoundsException(errorString));
 		}
 
-		if (!this.waypointProvider.exists(endId))
+		if (waypoints.get(1) == null)
 		{
 			String errorString = "Requested cost for end waypoint " + endId + ", but waypoint doesn't exist.";
 			this.log.error(errorString);
-			throw new IndexOutOfBoundsException(errorString);
+			return failedFuture(new IndexOutOfBoundsException(errorString));
 		}
 
-		float cost = 0;
+		CompletableFuture<Float> cost;
 
 		RosAspect rosAspect = (RosAspect) this.configuration.get(AspectType.ROS);
 		CostAspect costAspect = (CostAspect) this.configuration.get(AspectType.COST);
@@ -100,12 +227,13 @@ public class CostCache implements MQTTListener
 		{
 			if ((costAspect.isIncreasingIds()) && (endId < startId))
 			{
-				cost = Float.MAX_VALUE;
+				costCache.put(link, Float.MAX_VALUE);
+				cost = CompletableFuture.completedFuture(Float.MAX_VALUE);
 			}
 			else
 			{
-				Point startPointTmp = this.waypointProvider.get(startId);
-				Point endPointTmp = this.waypointProvider.get(endId);
+				Point startPointTmp = waypoints.get(0);
+				Point endPointTmp = waypoints.get(1);
 
 				Point startPoint = new Point(startPointTmp.getX(), startPointTmp.getY(), startPointTmp.getZ(), startPointTmp.getW());
 				Point endPoint = new Point(endPointTmp.getX(), endPointTmp.getY(), endPointTmp.getZ(), endPointTmp.getW());
@@ -116,27 +244,46 @@ public class CostCache implements MQTTListener
 				points.add(endPoint);
 
 				String jsonString = JSONUtils.arrayToJSONString(points);
-				String costString = "";
-
-				try
-				{
-					RESTUtils ROSAPI = new RESTUtils(rosAspect.getRosServerUrl());
-					Type costType = new TypeToken<Cost>(){}.getType();
-
-					costString = ROSAPI.post(RESTMessages.RosServer.CALC_WEIGHT, jsonString, MediaType.APPLICATION_JSON_TYPE);
-					Cost costObj = (Cost) JSONUtils.getObjectWithKeyWord(costString, costType);
-
-					cost = costObj.getWeight();
-				}
-				catch (IOException ioe)
-				{
-					this.log.error("An exception was thrown while trying to calculate the cost for " + startId + " -> " + endId, ioe);
-					throw ioe;
-				}
-				catch (NullPointerException npe)
-				{
-					this.log.error("Failed to extract Cost object from cost JSON (\"" + costString + "\")");
-				}
+
+				cost = this.rosRESTUtils.postAsync(RESTMessages.RosServer.CALC_WEIGHT, jsonString, MediaType.APPLICATION_JSON_TYPE).handle((costString, throwable) -> {
+					if (throwable != null)
+					{
+						if (CircuitBreakerOpenException.isCause(throwable))
+						{
+							// Estimated costs aren't cached, so ROS costs replace them once ROS is back
+							return this.estimateCost(mapVersion, costCache, waypoints.get(0), waypoints.get(1));
+						}
+
+						this.log.error("An exception was thrown while trying to calculate the cost for " + startId + " -> " + endId, throwable);
+						throw (throwable instanceof CompletionException) ? (CompletionException) throwable : new CompletionException(throwable);
+					}
+
+					float rosCost = 0;
+
+					try
+					{
+						Type costType = new TypeToken<Cost>(){}.getType();
+						Cost costObj = (Cost) JSONUtils.getObjectWithKeyWord(costString, costType);
+
+						rosCost = costObj.getWeight();
+
+						float distance = distance(waypoints.get(0), waypoints.get(1));
+
+						if (distance > 0)
+						{
+							this.rosCostPerDistance.add(rosCost / distance);
+						}
+
+						this.relateToTravelTime(mapVersion, startId, endId, rosCost);
+					}
+					catch (NullPointerException npe)
+					{
+						this.log.error("Failed to extract Cost object from cost JSON (\"" + costString + "\")");
+					}
+
+					costCache.put(link, rosCost);
+					return rosCost;
+				});
 			}
 		}
 		else
@@ -144,14 +291,130 @@ public class CostCache implements MQTTListener
 			// Generate Random number in [0,100]
 			// See: https://stackoverflow.com/a/363692
 
-			cost = (this.random.nextFloat() * (costAspect.getUpperRange() - costAspect.getLowerRange())) + costAspect.getLowerRange();
+			float randomCost = (this.random.nextFloat() * (costAspect.getUpperRange() - costAspect.getLowerRange())) + costAspect.getLowerRange();
+			costCache.put(link, randomCost);
+			cost = CompletableFuture.completedFuture(randomCost);
 		}
 
-		this.costCache.put(link, cost);
-
 		return cost;
 	}
 
+	/**
+	 * Links with both a ROS cost and a learned travel time relate the two units.
+	 * Only fresh ROS answers are used, cache hits would weigh frequently requested links more than others.
+	 */
+	private void relateToTravelTime (long mapVersion, long startId, long endId, float rosCost)
+	{
+		if ((rosCost == Float.MAX_VALUE) || (!Float.isFinite(rosCost)) || (!this.travelTimeModel.hasEstimate(mapVersion, startId, endId)))
+		{
+			return;
+		}
+
+		float travelTime = this.travelTimeModel.getEstimate(mapVersion, startId, endId);
+
+		if (travelTime > 0)
+		{
+			this.rosCostPerSecond.add(rosCost / travelTime);
+		}
+	}
+
+	/**
+	 * Estimate a cost while ROS can't be reached.
+	 * Uses the cost of the link in the other direction if it's cached, then the learned travel time,
+	 * and finally the straight-line distance, scaled like the costs ROS calculated before.
+	 * @throws CompletionException If no cost could be estimated, because ROS hasn't calculated any cost yet.
+	 */
+	private float estimateCost (long mapVersion, Map<Link, Float> costCache, WayPoint start, WayPoint end) throws CompletionException
+	{
+		Link link = new Link(start.getID(), end.getID());
+		Float reverseCost = costCache.get(new Link(end.getID(), start.getID()));
+
+		// Reverse links are blocked with MAX_VALUE when IDs must be increasing, that's no estimate for this link
+		if ((reverseCost != null) && (reverseCost != Float.MAX_VALUE) && (Float.isFinite(reverseCost)))
+		{
+			this.log.warn("ROS is unavailable, using the cost of the reverse link for " + link);
+			return reverseCost;
+		}
+
+		Float learnedCost = this.getLearnedCost(mapVersion, start.getID(), end.getID());
+
+		if (learnedCost != null)
+		{
+			this.log.warn("ROS is unavailable, using the learned cost for " + link);
+			return learnedCost;
+		}
+
+		if (this.rosCostPerDistance.getNumObservations() == 0)
+		{
+			String errorString = "ROS is unavailable and hasn't calculated any cost yet, can't estimate the cost of " + link + ".";
+			this.log.error(errorString);
+			throw new CompletionException(new IOException(errorString));
+		}
+
+		this.log.warn("ROS is unavailable, estimating the cost of " + link + " from the distance between its waypoints.");
+
+		return distance(start, end) * this.rosCostPerDistance.getAverage();
+	}
+
+	private static float distance (WayPoint start, WayPoint end)
+	{
+		float dx = end.getX() - start.getX();
+		float dy = end.getY() - start.getY();
+
+		return (float) Math.sqrt((dx * dx) + (dy * dy));
+	}
+
+	private static <T> CompletableFuture<T> failedFuture(Throwable throwable)
+	{
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(throwable);
+		return future;
+	}
+
+	/**
+	 * Wait for a cost calculation, throwing the exception it failed with.
+	 */
+	private <T> T await(CompletableFuture<T> future) throws IndexOutOfBoundsException, IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			String errorString = "Interrupted while waiting for a cost calculation.";
+			this.log.error(errorString, ie);
+			throw new IOException(errorString, ie);
+		}
+		catch (ExecutionException ee)
+		{
+			Throwable cause = ee.getCause();
+
+			while ((cause instanceof CompletionException) && (cause.getCause() != null))
+			{
+				cause = cause.getCause();
+			}
+
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			else if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			throw new IOException("Cost calculation failed.", cause);
+		}
+	}
+
+	private void mapDrained(String mapName)
+	{
+		this.log.info("Dropping cached costs of map \"" + mapName + "\", no jobs use it anymore.");
+		this.costCaches.remove(mapName);
+	}
+
 	/**
 	 * REST Endpoint used to check the cost between the two points.
 	 * The cost is calculated on the ROS navstack server (Usually at smartcity.ddns.net:8084)
@@ -192,8 +455,8 @@ public class CostCache implements MQTTListener
 	{
 		if (this.topicParser.isMapChange(topic))
 		{
-			this.log.info("Invalidating CostCache due to map name change. New map is \"" + message + "\".");
-			this.costCache.clear();
+			// Costs of the old map are kept until its last job completes, see mapDrained()
+			this.log.info("Map changed to \"" + message + "\", caching costs for " + this.costCaches.size() + " maps.");
 		}
 	}
 }
@@ -6,6 +6,7 @@ import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.MqttAspect;
 import be.uantwerpen.fti.ds.sc.common.configuration.RacecarAspect;
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,8 +16,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import javax.ws.rs.WebApplicationException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -35,6 +37,7 @@ class HeartbeatChecker implements MQTTListener
 	private Logger log;
 	private Configuration configuration;
 	private RESTUtils restUtils;
+	private int maxConcurrentRequests;          // Maximum number of vehicles removed at the same time
 	private MessageQueueClient messageQueueClient;
 	private MQTTUtils mqttUtils;
 	private TopicParser topicParser;
@@ -58,6 +61,7 @@ class HeartbeatChecker implements MQTTListener
 		this.log.info("Checking the heartbeats of " + this.heartbeats.size() + " vehicles...");
 
 		Date currentTime = new Date();
+		List<Long> expiredVehicles = new ArrayList<>();
 
 		for (long vehicleId : this.heartbeats.keySet())
 		{
@@ -67,18 +71,24 @@ class HeartbeatChecker implements MQTTListener
 
 			if (delta > this.MAX_DELTA) //longer than 90 seconds
 			{
-				try
-				{
-					this.restUtils.delete("delete/" + vehicleId);
-					this.log.warn("Vehicle " + vehicleId + " was removed since it hasn't responded for over 90s");
-				}
-				catch (WebApplicationException wae)
-				{
-					this.log.error("Failed to remove vehicle from backend.");
-				}
+				expiredVehicles.add(vehicleId);
 			}
 		}
 
+		// Remove the vehicles at the same time, a failed removal doesn't stop the others
+		RESTUtils.fanOut(expiredVehicles, vehicleId -> this.restUtils.deleteAsync("delete/" + vehicleId).handle((response, throwable) -> {
+			if (throwable == null)
+			{
+				this.log.warn("Vehicle " + vehicleId + " was removed since it hasn't responded for over 90s");
+			}
+			else
+			{
+				this.log.error("Failed to remove vehicle " + vehicleId + " from backend.", throwable);
+			}
+
+			return throwable == null;
+		}), this.maxConcurrentRequests).join();
+
 		this.log.info("All heartbeats were checked.");
 	}
 
@@ -125,13 +135,15 @@ class HeartbeatChecker implements MQTTListener
 		this.log.debug("Initializing Heartbeat checker...");
 
 		RacecarAspect racecarAspect = (RacecarAspect) configuration.get(AspectType.RACECAR);
-		this.restUtils = new RESTUtils(racecarAspect.getRacecarServerUrl());
+		RestAspect restAspect = (RestAspect) configuration.get(AspectType.REST);
+		this.restUtils = new RESTUtils(racecarAspect.getRacecarServerUrl(), restAspect);
+		this.maxConcurrentRequests = restAspect.getPoolSize();
 
 		// Set up protocol-agnostic message queue client
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.messageQueueClient = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.messageQueueClient = new MQTTUtils(mqttAspect, this, "HeartbeatChecker-Registration");
 			this.messageQueueClient.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.REGISTER + "/#");
 			this.messageQueueClient.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.DELETE + "/#");
 		}
@@ -144,7 +156,7 @@ class HeartbeatChecker implements MQTTListener
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, "HeartbeatChecker");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Core.HEARTBEAT + "/#");
 		}
 		catch (Exception e)
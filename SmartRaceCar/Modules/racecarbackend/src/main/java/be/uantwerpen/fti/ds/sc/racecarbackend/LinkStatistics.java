@@ -0,0 +1,83 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import java.util.Arrays;
+
+/**
+ * Streaming statistics of the travel times observed on a single link.
+ * Keeps an exponentially weighted moving average and a fixed-size window of
+ * recent samples from which percentiles are calculated.
+ */
+public class LinkStatistics
+{
+	private static final int WINDOW_SIZE = 64;      // Number of recent samples kept for percentiles
+
+	private float alpha;            // Smoothing factor of the moving average
+	private int numObservations;
+	private float average;          // Exponentially weighted moving average (in s)
+	private float[] window;         // Most recent samples (in s), used as a ring buffer
+	private int windowHead;
+
+	public LinkStatistics(float alpha)
+	{
+		this.alpha = alpha;
+		this.numObservations = 0;
+		this.average = 0;
+		this.window = new float[WINDOW_SIZE];
+		this.windowHead = 0;
+	}
+
+	/**
+	 * Add an observed travel time.
+	 * @param travelTime    Travel time in seconds.
+	 */
+	public synchronized void add(float travelTime)
+	{
+		if (this.numObservations == 0)
+		{
+			this.average = travelTime;
+		}
+		else
+		{
+			this.average = (this.alpha * travelTime) + ((1.0f - this.alpha) * this.average);
+		}
+
+		++this.numObservations;
+		this.window[this.windowHead] = travelTime;
+		this.windowHead = (this.windowHead + 1) % WINDOW_SIZE;
+	}
+
+	public synchronized int getNumObservations()
+	{
+		return this.numObservations;
+	}
+
+	/**
+	 * Return the exponentially weighted moving average of the observed travel times (in s).
+	 * @return
+	 */
+	public synchronized float getAverage()
+	{
+		return this.average;
+	}
+
+	/**
+	 * Return a percentile of the most recent observed travel times (in s).
+	 * @param percentile    The percentile to calculate, in [0, 100].
+	 * @return
+	 */
+	public synchronized float getPercentile(float percentile)
+	{
+		int numSamples = Math.min(this.numObservations, WINDOW_SIZE);
+
+		if (numSamples == 0)
+		{
+			return 0;
+		}
+
+		float[] samples = Arrays.copyOf(this.window, numSamples);
+		Arrays.sort(samples);
+
+		int index = Math.round((percentile / 100.0f) * (numSamples - 1));
+		return samples[Math.max(0, Math.min(numSamples - 1, index))];
+	}
+}
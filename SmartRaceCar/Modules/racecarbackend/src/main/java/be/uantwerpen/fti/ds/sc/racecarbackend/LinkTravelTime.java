@@ -0,0 +1,69 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+/**
+ * Aggregated travel times observed on a single link.
+ */
+public class LinkTravelTime
+{
+	private Link link;
+	private int numObservations;
+	private long totalTime;     // Sum of all observed travel times (in ms)
+	private long minTime;       // Fastest observed travel time (in ms)
+	private long maxTime;       // Slowest observed travel time (in ms)
+
+	public LinkTravelTime(Link link)
+	{
+		this.link = link;
+		this.numObservations = 0;
+		this.totalTime = 0;
+		this.minTime = Long.MAX_VALUE;
+		this.maxTime = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Add a single observed travel time.
+	 * @param travelTime    The time it took to drive the link (in ms).
+	 */
+	public void add(long travelTime)
+	{
+		++this.numObservations;
+		this.totalTime += travelTime;
+		this.minTime = Math.min(this.minTime, travelTime);
+		this.maxTime = Math.max(this.maxTime, travelTime);
+	}
+
+	public Link getLink()
+	{
+		return this.link;
+	}
+
+	public int getNumObservations()
+	{
+		return this.numObservations;
+	}
+
+	/**
+	 * Return the average travel time (in ms), or 0 if nothing was observed.
+	 * @return
+	 */
+	public double getAverageTime()
+	{
+		return this.numObservations == 0 ? 0 : ((double) this.totalTime / this.numObservations);
+	}
+
+	public long getMinTime()
+	{
+		return this.minTime;
+	}
+
+	public long getMaxTime()
+	{
+		return this.maxTime;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.link + ": " + this.numObservations + " observations, avg " + this.getAverageTime() + "ms";
+	}
+}
@@ -0,0 +1,254 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the most recent location updates of every vehicle.
+ * Every vehicle gets a fixed-size ring buffer of (timestamp, waypoint) pairs,
+ * the number of vehicles that are tracked is capped as well,
+ * so the memory used is at most maxVehicles * capacity * 16 bytes.
+ */
+public class LocationHistory
+{
+	/**
+	 * Ring buffer of location updates for a single vehicle.
+	 * Stored in two primitive arrays to avoid an object per update.
+	 */
+	private static class RingBuffer
+	{
+		private long[] timestamps;
+		private long[] waypointIds;
+		private int head;           // Index where the next update will be written
+		private int size;           // Number of valid entries
+
+		public RingBuffer(int capacity)
+		{
+			this.timestamps = new long[capacity];
+			this.waypointIds = new long[capacity];
+			this.head = 0;
+			this.size = 0;
+		}
+
+		public synchronized void add(long timestamp, long waypointId)
+		{
+			this.timestamps[this.head] = timestamp;
+			this.waypointIds[this.head] = waypointId;
+			this.head = (this.head + 1) % this.timestamps.length;
+
+			if (this.size < this.timestamps.length)
+			{
+				++this.size;
+			}
+		}
+
+		/**
+		 * Return the entry where the vehicle arrived at its current location,
+		 * the oldest of the most recent entries that all have the same waypoint.
+		 * @return  The entry, or null if there are none or the arrival was already overwritten.
+		 */
+		public synchronized LocationRecord getArrival()
+		{
+			if (this.size == 0)
+			{
+				return null;
+			}
+
+			int index = (this.head - 1 + this.timestamps.length) % this.timestamps.length;
+			long waypointId = this.waypointIds[index];
+
+			for (int i = 1; i < this.size; ++i)
+			{
+				int previous = (index - 1 + this.timestamps.length) % this.timestamps.length;
+
+				if (this.waypointIds[previous] != waypointId)
+				{
+					return new LocationRecord(this.timestamps[index], this.waypointIds[index]);
+				}
+
+				index = previous;
+			}
+
+			// Every entry has the same waypoint, the oldest one is only the arrival if nothing was overwritten yet
+			boolean arrivalKnown = this.size < this.timestamps.length;
+			return arrivalKnown ? new LocationRecord(this.timestamps[index], this.waypointIds[index]) : null;
+		}
+
+		/**
+		 * Copy all entries, oldest first, into the given arrays.
+		 * @return  The number of entries copied.
+		 */
+		public synchronized int copy(long[] timestamps, long[] waypointIds)
+		{
+			int start = (this.head - this.size + this.timestamps.length) % this.timestamps.length;
+
+			for (int i = 0; i < this.size; ++i)
+			{
+				int index = (start + i) % this.timestamps.length;
+				timestamps[i] = this.timestamps[index];
+				waypointIds[i] = this.waypointIds[index];
+			}
+
+			return this.size;
+		}
+
+		public int getCapacity()
+		{
+			return this.timestamps.length;
+		}
+	}
+
+	private Logger log;
+	private int capacity;           // Number of updates kept per vehicle
+	private int maxVehicles;        // Maximum number of vehicles we keep a history for
+	private Map<Long, RingBuffer> histories;
+
+	public LocationHistory(int capacity, int maxVehicles)
+	{
+		if ((capacity <= 0) || (maxVehicles <= 0))
+		{
+			throw new IllegalArgumentException("Location history capacity (" + capacity + ") and maximum number of vehicles (" + maxVehicles + ") should be positive.");
+		}
+
+		this.log = LoggerFactory.getLogger(LocationHistory.class);
+		this.capacity = capacity;
+		this.maxVehicles = maxVehicles;
+		this.histories = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Record a location update for a vehicle.
+	 * If the vehicle doesn't have a history yet, one is created, unless the maximum number of vehicles is reached.
+	 * @param vehicleId
+	 * @param timestamp     Time of the update (in ms since epoch)
+	 * @param waypointId
+	 */
+	public void record(long vehicleId, long timestamp, long waypointId)
+	{
+		RingBuffer buffer = this.histories.get(vehicleId);
+
+		if (buffer == null)
+		{
+			synchronized (this.histories)
+			{
+				if (this.histories.size() >= this.maxVehicles && !this.histories.containsKey(vehicleId))
+				{
+					this.log.warn("Not recording location history for vehicle " + vehicleId + ", already tracking " + this.maxVehicles + " vehicles.");
+					return;
+				}
+
+				buffer = this.histories.computeIfAbsent(vehicleId, id -> new RingBuffer(this.capacity));
+			}
+		}
+
+		buffer.add(timestamp, waypointId);
+	}
+
+	/**
+	 * Forget the history of a vehicle.
+	 * @param vehicleId
+	 */
+	public void remove(long vehicleId)
+	{
+		this.histories.remove(vehicleId);
+	}
+
+	/**
+	 * Get the location a vehicle is at, with the time it first reported it.
+	 * Vehicles can report the same location several times, only the first report is the time it arrived.
+	 * @param vehicleId
+	 * @return  The location, or null if there is no history for the vehicle or its arrival was overwritten.
+	 */
+	public LocationRecord getArrival(long vehicleId)
+	{
+		RingBuffer buffer = this.histories.get(vehicleId);
+		return (buffer != null) ? buffer.getArrival() : null;
+	}
+
+	/**
+	 * Get the locations a vehicle reported in the time window [from, to], oldest first.
+	 * @param vehicleId
+	 * @param from          Start of the window (in ms since epoch, inclusive)
+	 * @param to            End of the window (in ms since epoch, inclusive)
+	 * @return
+	 * @throws NoSuchElementException   If there is no history for the vehicle.
+	 */
+	public List<LocationRecord> getPath(long vehicleId, long from, long to) throws NoSuchElementException
+	{
+		RingBuffer buffer = this.histories.get(vehicleId);
+
+		if (buffer == null)
+		{
+			String errorString = "No location history for vehicle " + vehicleId + ".";
+			this.log.error(errorString);
+			throw new NoSuchElementException(errorString);
+		}
+
+		long[] timestamps = new long[buffer.getCapacity()];
+		long[] waypointIds = new long[buffer.getCapacity()];
+		int size = buffer.copy(timestamps, waypointIds);
+
+		List<LocationRecord> path = new ArrayList<>();
+
+		for (int i = 0; i < size; ++i)
+		{
+			if ((timestamps[i] >= from) && (timestamps[i] <= to))
+			{
+				path.add(new LocationRecord(timestamps[i], waypointIds[i]));
+			}
+		}
+
+		return path;
+	}
+
+	/**
+	 * Determine the travel times of every link driven by any vehicle in the time window [from, to].
+	 * A link is driven when a vehicle reports a location different from the previous one.
+	 * The travel time counts from the first report at the previous location, repeated reports don't restart it.
+	 * @param from          Start of the window (in ms since epoch, inclusive)
+	 * @param to            End of the window (in ms since epoch, inclusive)
+	 * @return
+	 */
+	public Map<Link, LinkTravelTime> getLinkTravelTimes(long from, long to)
+	{
+		Map<Link, LinkTravelTime> travelTimes = new HashMap<>();
+		long[] timestamps = new long[this.capacity];
+		long[] waypointIds = new long[this.capacity];
+
+		for (RingBuffer buffer: this.histories.values())
+		{
+			int size = buffer.copy(timestamps, waypointIds);
+			int arrival = 0;        // Index of the first report at the current location
+
+			// If the buffer is full, the first report at the oldest location may have been overwritten
+			boolean arrivalKnown = (size < this.capacity);
+
+			for (int i = 1; i < size; ++i)
+			{
+				if (waypointIds[i] == waypointIds[i - 1])
+				{
+					continue;
+				}
+
+				if (arrivalKnown && (timestamps[arrival] >= from) && (timestamps[i] <= to))
+				{
+					Link link = new Link(waypointIds[arrival], waypointIds[i]);
+					travelTimes.computeIfAbsent(link, LinkTravelTime::new).add(timestamps[i] - timestamps[arrival]);
+				}
+
+				arrival = i;
+				arrivalKnown = true;
+			}
+		}
+
+		return travelTimes;
+	}
+
+	public int getNumVehicles()
+	{
+		return this.histories.size();
+	}
+}
@@ -0,0 +1,32 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+/**
+ * A single location update of a vehicle.
+ */
+public class LocationRecord
+{
+	private long timestamp;     // Time at which the vehicle reported the location (in ms since epoch)
+	private long waypointId;    // The waypoint the vehicle arrived at
+
+	public LocationRecord(long timestamp, long waypointId)
+	{
+		this.timestamp = timestamp;
+		this.waypointId = waypointId;
+	}
+
+	public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+
+	public long getWaypointId()
+	{
+		return this.waypointId;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.waypointId + " @ " + this.timestamp;
+	}
+}
@@ -1,5 +1,7 @@
 package be.uantwerpen.fti.ds.sc.racecarbackend;
 
+import java.util.List;
+
 public interface LocationRepository
 {
 	/**
@@ -16,4 +18,12 @@ public interface LocationRepository
 	 * @param locationId    The new location of the vehicle.
 	 */
 	public void setLocation(long vehicleId, long locationId);
+
+	/**
+	 * Set the route a vehicle was sent on.
+	 * Only links the vehicle drives along its route are used to learn travel times.
+	 * @param vehicleId     The vehicle that was sent on the route.
+	 * @param route         The waypoints the vehicle will visit, in order.
+	 */
+	public void setRoute(long vehicleId, List<Long> route);
 }
@@ -9,15 +9,47 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 // Route Update
 // Cost Answers
 @Service
 public class NavigationManager implements MQTTListener, LocationRepository
 {
+	/**
+	 * A route a vehicle was sent on, with the time it was sent.
+	 */
+	private static class Route
+	{
+		private final List<Long> waypoints;
+		private final long since;           // Time the route was sent (in ms since epoch)
+
+		public Route(List<Long> waypoints, long since)
+		{
+			this.waypoints = waypoints;
+			this.since = since;
+		}
+
+		public boolean contains(long startId, long endId)
+		{
+			for (int i = 1; i < this.waypoints.size(); ++i)
+			{
+				if ((this.waypoints.get(i - 1) == startId) && (this.waypoints.get(i) == endId))
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
 	private Logger log;
 	private Configuration configuration;
 	private TopicParser topicParser;
@@ -26,14 +58,18 @@ public class NavigationManager implements MQTTListener, LocationRepository
 	private java.util.Map<Long, Long> vehicleLocations;
 	// This map keeps track of the location of every vehicle
 	// The key is the vehicleId, the value is the locationId
+	private LocationHistory locationHistory;            // The most recent locations of every vehicle, with the time they were reported.
+	private TravelTimeModel travelTimeModel;            // Learns travel times from the links vehicles drive
+	private java.util.Map<Long, Route> routes;          // The last route every vehicle was sent on
 
 	private void removeVehicle(long vehicleId) throws IndexOutOfBoundsException
 	{
 		this.log.info("Removing vehicle " + vehicleId + " from NavigationManager.");
 
-		if (this.vehicleLocations.containsKey(vehicleId))
+		if (this.vehicleLocations.remove(vehicleId) != null)
 		{
-			this.vehicleLocations.remove(vehicleId);
+			this.locationHistory.remove(vehicleId);
+			this.routes.remove(vehicleId);
 		}
 		else
 		{
@@ -43,18 +79,21 @@ public class NavigationManager implements MQTTListener, LocationRepository
 		}
 	}
 
-	public NavigationManager(@Qualifier("navigationManager") Configuration configuration, TopicParser topicParser)
+	public NavigationManager(@Qualifier("navigationManager") Configuration configuration, TopicParser topicParser, TravelTimeModel travelTimeModel,
+							 @Value("${Racecar.LocationHistory.capacity:256}") int historyCapacity,
+							 @Value("${Racecar.LocationHistory.max_vehicles:128}") int historyMaxVehicles)
 	{
 		this.log = LoggerFactory.getLogger(NavigationManager.class);
 		this.configuration = configuration;
 		this.topicParser = topicParser;
+		this.travelTimeModel = travelTimeModel;
 
 		this.log.info("Initializing Navigation Manager...");
 
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.messageQueueClient = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.messageQueueClient = new MQTTUtils(mqttAspect, this, "NavigationManager-Registration");
 			this.messageQueueClient.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.REGISTER + "/#");
 			this.messageQueueClient.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.DELETE + "/#");
 		}
@@ -66,7 +105,7 @@ public class NavigationManager implements MQTTListener, LocationRepository
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, "NavigationManager");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Core.LOCATION_UPDATE + "/#");
 		}
 		catch (MqttException me)
@@ -74,7 +113,9 @@ public class NavigationManager implements MQTTListener, LocationRepository
 			this.log.error("Failed to set up MQTTUtils for NavigationManager.", me);
 		}
 
-		this.vehicleLocations = new HashMap<>();
+		this.vehicleLocations = new ConcurrentHashMap<>();
+		this.routes = new ConcurrentHashMap<>();
+		this.locationHistory = new LocationHistory(historyCapacity, historyMaxVehicles);
 
 		this.log.info("Initialized Navigation Manager.");
 	}
@@ -83,7 +124,35 @@ public class NavigationManager implements MQTTListener, LocationRepository
 	public void setLocation(long vehicleId, long locationId)
 	{
 		this.log.info("Setting the location of vehicle " + vehicleId + " to " + locationId + ".");
+
+		long timestamp = System.currentTimeMillis();
+		LocationRecord previous = this.locationHistory.getArrival(vehicleId);
+
 		this.vehicleLocations.put(vehicleId, locationId);
+		this.locationHistory.record(vehicleId, timestamp, locationId);
+
+		// Vehicles only report the waypoints they reach, so the time between two reports includes
+		// the time spent waiting for a job. Only links driven along a route are observed,
+		// starting no earlier than the moment the route was sent.
+		if ((previous != null) && (previous.getWaypointId() != locationId))
+		{
+			Route route = this.routes.get(vehicleId);
+
+			if ((route != null) && route.contains(previous.getWaypointId(), locationId))
+			{
+				this.travelTimeModel.observe(previous.getWaypointId(), locationId, Math.max(previous.getTimestamp(), route.since), timestamp);
+			}
+			else
+			{
+				this.log.debug("Not observing link " + new Link(previous.getWaypointId(), locationId) + " of vehicle " + vehicleId + ", it isn't part of its route.");
+			}
+		}
+	}
+
+	@Override
+	public void setRoute(long vehicleId, List<Long> route)
+	{
+		this.routes.put(vehicleId, new Route(new ArrayList<>(route), System.currentTimeMillis()));
 	}
 
 	@Override
@@ -91,7 +160,10 @@ public class NavigationManager implements MQTTListener, LocationRepository
 	{
 		this.log.info("Fetching location for vehicle " + vehicleId + ".");
 
-		if (!this.vehicleLocations.containsKey(vehicleId))
+		// Vehicles are removed concurrently, so look the location up only once
+		Long locationId = this.vehicleLocations.get(vehicleId);
+
+		if (locationId == null)
 		{
 			String errorString = "Vehicle " + vehicleId + " doesn't have a location.";
 			this.log.error(errorString);
@@ -99,7 +171,31 @@ public class NavigationManager implements MQTTListener, LocationRepository
 			throw new IndexOutOfBoundsException (errorString);
 		}
 
-		return this.vehicleLocations.get(vehicleId);
+		return locationId;
+	}
+
+	/**
+	 * Get the locations a vehicle reported in the time window [from, to], oldest first.
+	 * @param vehicleId
+	 * @param from          Start of the window (in ms since epoch)
+	 * @param to            End of the window (in ms since epoch)
+	 * @return
+	 * @throws NoSuchElementException   If there is no history for the vehicle.
+	 */
+	public List<LocationRecord> getPath(long vehicleId, long from, long to) throws NoSuchElementException
+	{
+		return this.locationHistory.getPath(vehicleId, from, to);
+	}
+
+	/**
+	 * Get the observed travel times of every link that was driven in the time window [from, to].
+	 * @param from          Start of the window (in ms since epoch)
+	 * @param to            End of the window (in ms since epoch)
+	 * @return
+	 */
+	public java.util.Map<Link, LinkTravelTime> getLinkTravelTimes(long from, long to)
+	{
+		return this.locationHistory.getLinkTravelTimes(from, to);
 	}
 
 	/*
@@ -131,7 +227,15 @@ public class NavigationManager implements MQTTListener, LocationRepository
 			// So we don't need any special parsing
 			long locationId = Long.parseLong(message);
 
-			this.vehicleLocations.put(vehicleId, locationId);
+			// VehicleManager can publish a registration twice when it retries,
+			// don't move the vehicle back to its start location if it already reported another one.
+			if (this.vehicleLocations.containsKey(vehicleId))
+			{
+				this.log.info("Ignoring repeated registration of vehicle " + vehicleId + ".");
+				return;
+			}
+
+			this.setLocation(vehicleId, locationId);
 			this.log.info("Received location update from vehicle " + vehicleId + ", new location is " + locationId);
 		}
 		else if (this.topicParser.isLocationUpdate(topic))
@@ -140,7 +244,7 @@ public class NavigationManager implements MQTTListener, LocationRepository
 			// So we don't need any special parsing
 			long locationId = Long.parseLong(message);
 
-			this.vehicleLocations.put(vehicleId, locationId);
+			this.setLocation(vehicleId, locationId);
 			this.log.info("Received location update from vehicle " + vehicleId + ", new location is " + locationId);
 		}
 	}
@@ -1,5 +1,7 @@
 package be.uantwerpen.fti.ds.sc.racecarbackend;
 
+import java.util.Collection;
+
 public interface OccupationRepository
 {
 	/**
@@ -10,4 +12,23 @@ public interface OccupationRepository
 	public boolean isOccupied(long vehicleId);
 
 	public void setOccupied(long vehicleId, boolean occupied);
+
+	/**
+	 * Atomically mark an idle vehicle as occupied.
+	 * @param vehicleId
+	 * @return true if the vehicle was idle and is now reserved by the caller, false if it was already occupied or doesn't exist.
+	 */
+	public boolean tryOccupy(long vehicleId);
+
+	/**
+	 * Return the number of vehicles that are not occupied.
+	 * @return
+	 */
+	public int getNumIdleVehicles();
+
+	/**
+	 * Return the IDs of all vehicles that are not occupied.
+	 * @return
+	 */
+	public Collection<Long> getIdleVehicleIds();
 }
@@ -1,13 +1,16 @@
 package be.uantwerpen.fti.ds.sc.racecarbackend;
 
+import be.uantwerpen.fti.ds.sc.racecarbackend.maps.WaypointProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.TreeSet;
 
 @Service
 public class ResourceManager
@@ -17,6 +20,7 @@ public class ResourceManager
 	private VehicleRepository vehicleRepository;
 	private OccupationRepository occupationRepository;
 	private CostCache costCache;
+	private WaypointProvider waypointProvider;
 
 	// Cost object used to sort according to cost, but keep association with ID
 	private class Cost implements Comparable<Cost>
@@ -38,12 +42,12 @@ public class ResourceManager
 		@Override
 		public int compareTo(Cost cost)
 		{
-			return (int)(this.cost - cost.cost);
+			return Float.compare(this.cost, cost.cost);
 		}
 	}
 
 	@Autowired
-	public ResourceManager (CostCache costCache, LocationRepository locationRepository, VehicleRepository vehicleRepository, OccupationRepository occupationRepository)
+	public ResourceManager (CostCache costCache, WaypointProvider waypointProvider, LocationRepository locationRepository, VehicleRepository vehicleRepository, OccupationRepository occupationRepository)
 	{
 		this.log = LoggerFactory.getLogger(ResourceManager.class);
 
@@ -52,6 +56,7 @@ public class ResourceManager
 		this.vehicleRepository = vehicleRepository;
 		this.occupationRepository = occupationRepository;
 		this.costCache = costCache;
+		this.waypointProvider = waypointProvider;
 		this.log.info("Initialized ResourceManager.");
 	}
 
@@ -61,25 +66,69 @@ public class ResourceManager
 	 */
 	public int getNumAvailableCars()
 	{
-		int numAvailableCars = 0;
+		return this.occupationRepository.getNumIdleVehicles();
+	}
+
+	/**
+	 *  Determine which car is closest to (has the lowest cost) to get to a certain point.
+	 *  Only idle cars are considered.
+	 *  Costs are calculated on the current map.
+	 * @param waypointId
+	 * @return
+	 */
+	public long getOptimalCar (long waypointId) throws NoSuchElementException, IOException
+	{
+		return this.getOptimalCar(waypointId, this.waypointProvider.getCurrentVersion());
+	}
 
-		for (long vehicleId: this.vehicleRepository.getVehicleIds())
+	/**
+	 *  Determine which idle car has the lowest cost to get to a certain point, on a specific map version.
+	 *  The car isn't reserved, use reserveOptimalCar() if a job will be assigned to it.
+	 * @param waypointId
+	 * @param mapVersion
+	 * @return
+	 */
+	public long getOptimalCar (long waypointId, long mapVersion) throws NoSuchElementException, IOException
+	{
+		List<Cost> costs = this.getIdleCosts(waypointId, mapVersion);
+
+		if (costs.isEmpty())
 		{
-			if (!this.occupationRepository.isOccupied(vehicleId))
-			{
-				++numAvailableCars;
-			}
+			String errorString = "Requested optimal car, but no cars are not-occupied..";
+			this.log.error(errorString);
+			throw new NoSuchElementException(errorString);
 		}
 
-		return numAvailableCars;
+		return Collections.min(costs).getVehicleId();
 	}
 
 	/**
-	 *  Determine which car is closest to (has the lowest cost) to get to a certain point.
+	 *  Determine which idle car has the lowest cost to get to a certain point and mark it as occupied.
+	 *  Several threads dispatch jobs at the same time, the car is only returned if this call managed to reserve it.
+	 *  If a cheaper car was taken in the meantime, the next cheapest one is tried.
 	 * @param waypointId
+	 * @param mapVersion
 	 * @return
 	 */
-	public long getOptimalCar (long waypointId) throws NoSuchElementException, IOException
+	public long reserveOptimalCar (long waypointId, long mapVersion) throws NoSuchElementException, IOException
+	{
+		List<Cost> costs = this.getIdleCosts(waypointId, mapVersion);
+		Collections.sort(costs);
+
+		for (Cost cost: costs)
+		{
+			if (this.occupationRepository.tryOccupy(cost.getVehicleId()))
+			{
+				return cost.getVehicleId();
+			}
+		}
+
+		String errorString = "Requested optimal car, but all idle cars were reserved by other jobs.";
+		this.log.error(errorString);
+		throw new NoSuchElementException(errorString);
+	}
+
+	private List<Cost> getIdleCosts (long waypointId, long mapVersion) throws NoSuchElementException, IOException
 	{
 		if (this.vehicleRepository.getNumVehicles() == 0)
 		{
@@ -88,31 +137,32 @@ public class ResourceManager
 			throw new NoSuchElementException(errorString);
 		}
 
-		// We use a TreeSet here to keep the cost objects
-		// TreeSet's keep their values in an ordered fashion by default,
-		// This helps us extract the element with the least cost in the end
-		TreeSet<Cost> costSet = new TreeSet<>();
+		List<Long> vehicleIds = new ArrayList<>();
+		List<Long> vehiclePositions = new ArrayList<>();
 
-		for (long vehicleId: this.vehicleRepository.getVehicleIds())
+		for (long vehicleId: this.occupationRepository.getIdleVehicleIds())
 		{
-			if (!this.occupationRepository.isOccupied(vehicleId))
+			try
 			{
-				long vehiclePosition = this.locationRepository.getLocation(vehicleId);
-				float cost = this.costCache.calculateCost(vehiclePosition, waypointId);
-				costSet.add(new Cost(vehicleId, cost));
+				vehiclePositions.add(this.locationRepository.getLocation(vehicleId));
+				vehicleIds.add(vehicleId);
+			}
+			catch (IndexOutOfBoundsException ioobe)
+			{
+				// The vehicle can be deleted while we're iterating, skip it
+				this.log.warn("Skipping vehicle " + vehicleId + " while determining optimal car, its location is unknown.");
 			}
 		}
 
-		if (costSet.size() == 0)
+		// The costs of all vehicles are requested at the same time
+		List<Float> costs = this.costCache.calculateCosts(mapVersion, vehiclePositions, waypointId);
+		List<Cost> vehicleCosts = new ArrayList<>();
+
+		for (int i = 0; i < vehicleIds.size(); ++i)
 		{
-			String errorString = "Requested optimal car, but no cars are not-occupied..";
-			this.log.error(errorString);
-			throw new NoSuchElementException(errorString);
+			vehicleCosts.add(new Cost(vehicleIds.get(i), costs.get(i)));
 		}
 
-		// Retrieve the element with the lowest cost
-		Cost leastCost = costSet.pollFirst();
-
-		return leastCost.getVehicleId();
+		return vehicleCosts;
 	}
 }
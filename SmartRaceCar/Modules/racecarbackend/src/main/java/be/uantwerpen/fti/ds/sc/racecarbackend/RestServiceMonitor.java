@@ -0,0 +1,43 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import be.uantwerpen.fti.ds.sc.common.EndpointMetrics;
+import be.uantwerpen.fti.ds.sc.common.JSONUtils;
+import be.uantwerpen.fti.ds.sc.common.ResilientRESTUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+
+/**
+ * Exposes the state of the REST services the backend depends on (ROS, backbone, ...).
+ */
+@Controller
+public class RestServiceMonitor
+{
+	private Logger log;
+
+	public RestServiceMonitor()
+	{
+		this.log = LoggerFactory.getLogger(RestServiceMonitor.class);
+	}
+
+	/**
+	 * REST Endpoint returning the circuit breaker state, request counts and latencies of every endpoint the backend called.
+	 * @return
+	 */
+	@RequestMapping(value="/carmanager/restmetrics", method=RequestMethod.GET, produces=MediaType.APPLICATION_JSON)
+	public @ResponseBody ResponseEntity<String> getMetrics()
+	{
+		List<EndpointMetrics> metrics = ResilientRESTUtils.getMetrics();
+		this.log.debug("Returning metrics of " + metrics.size() + " REST endpoints.");
+
+		return new ResponseEntity<>(JSONUtils.arrayToJSONString(metrics), HttpStatus.OK);
+	}
+}
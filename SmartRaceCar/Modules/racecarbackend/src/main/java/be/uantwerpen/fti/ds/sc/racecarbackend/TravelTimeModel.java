@@ -0,0 +1,156 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
+import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
+import be.uantwerpen.fti.ds.sc.common.configuration.CostAspect;
+import be.uantwerpen.fti.ds.sc.racecarbackend.maps.WaypointProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns how long it takes to drive between two waypoints.
+ * NavigationManager reports every link a vehicle drove along the route it was sent on,
+ * and the time it took is recorded as an observation of the link.
+ * Waypoint IDs only mean something on a specific map, so travel times are learned per map.
+ * A map's travel times are kept while jobs still use it, they're dropped once WaypointProvider drains it.
+ */
+@Service
+public class TravelTimeModel
+{
+	private Logger log;
+	private Configuration configuration;
+	private WaypointProvider waypointProvider;
+	private Map<String, Map<Link, LinkStatistics>> statistics;  // Statistics of every link, per map name
+
+	@Autowired
+	public TravelTimeModel(@Qualifier("travelTimeModel") Configuration configuration, WaypointProvider waypointProvider)
+	{
+		this.log = LoggerFactory.getLogger(TravelTimeModel.class);
+		this.configuration = configuration;
+		this.waypointProvider = waypointProvider;
+
+		this.log.info("Initializing TravelTimeModel...");
+
+		this.statistics = new ConcurrentHashMap<>();
+
+		// Jobs that started before a map change keep using the old map's travel times
+		this.waypointProvider.addDrainListener(this::mapDrained);
+
+		this.log.info("Initialized TravelTimeModel.");
+	}
+
+	/**
+	 * Record that a vehicle drove a link of the current map.
+	 * Links the vehicle started driving before the last map change are ignored,
+	 * their start waypoint belongs to the previous map.
+	 * @param startId
+	 * @param endId
+	 * @param startTime     Time the vehicle was at the start waypoint (in ms since epoch)
+	 * @param endTime       Time the vehicle reached the end waypoint (in ms since epoch)
+	 */
+	public void observe(long startId, long endId, long startTime, long endTime)
+	{
+		if (startTime < this.waypointProvider.getCurrentVersionSince())
+		{
+			this.log.debug("Ignoring link " + new Link(startId, endId) + ", it was started before the last map change.");
+			return;
+		}
+
+		this.observe(startId, endId, (endTime - startTime) / 1000.0f);
+	}
+
+	/**
+	 * Add an observed travel time for a link of the current map.
+	 * @param startId
+	 * @param endId
+	 * @param travelTime    Travel time in seconds.
+	 */
+	public void observe(long startId, long endId, float travelTime)
+	{
+		CostAspect costAspect = (CostAspect) this.configuration.get(AspectType.COST);
+		String mapName = this.waypointProvider.getMapName(this.waypointProvider.getCurrentVersion());
+		Link link = new Link(startId, endId);
+
+		this.statistics.computeIfAbsent(mapName, name -> new ConcurrentHashMap<>())
+				.computeIfAbsent(link, l -> new LinkStatistics(costAspect.getLearnedAlpha())).add(travelTime);
+		this.log.debug("Observed travel time of " + travelTime + "s for link " + link + " on map \"" + mapName + "\".");
+	}
+
+	/**
+	 * Check if a link has been observed often enough to be estimated, on the map of a specific map version.
+	 * @param mapVersion
+	 * @param startId
+	 * @param endId
+	 * @return
+	 */
+	public boolean hasEstimate(long mapVersion, long startId, long endId)
+	{
+		CostAspect costAspect = (CostAspect) this.configuration.get(AspectType.COST);
+		LinkStatistics linkStatistics = this.findStatistics(mapVersion, new Link(startId, endId));
+
+		return (linkStatistics != null) && (linkStatistics.getNumObservations() >= costAspect.getLearnedMinObservations());
+	}
+
+	/**
+	 * Return the estimated travel time (in s) for a link, on the map of a specific map version.
+	 * hasEstimate() should be checked first.
+	 * @param mapVersion
+	 * @param startId
+	 * @param endId
+	 * @return
+	 * @throws IndexOutOfBoundsException    If the link was never observed.
+	 */
+	public float getEstimate(long mapVersion, long startId, long endId) throws IndexOutOfBoundsException
+	{
+		return this.getStatistics(mapVersion, startId, endId).getAverage();
+	}
+
+	/**
+	 * Return the statistics of a link, on the map of a specific map version.
+	 * @param mapVersion
+	 * @param startId
+	 * @param endId
+	 * @return
+	 * @throws IndexOutOfBoundsException    If the link was never observed, or the map version doesn't exist anymore.
+	 */
+	public LinkStatistics getStatistics(long mapVersion, long startId, long endId) throws IndexOutOfBoundsException
+	{
+		Link link = new Link(startId, endId);
+		LinkStatistics linkStatistics = this.findStatistics(mapVersion, link);
+
+		if (linkStatistics == null)
+		{
+			String errorString = "No travel times were observed for link " + link + " on map version " + mapVersion + ".";
+			this.log.error(errorString);
+			throw new IndexOutOfBoundsException(errorString);
+		}
+
+		return linkStatistics;
+	}
+
+	private LinkStatistics findStatistics(long mapVersion, Link link)
+	{
+		try
+		{
+			Map<Link, LinkStatistics> mapStatistics = this.statistics.get(this.waypointProvider.getMapName(mapVersion));
+			return (mapStatistics != null) ? mapStatistics.get(link) : null;
+		}
+		catch (IndexOutOfBoundsException ioobe)
+		{
+			// The version was drained, so were its statistics
+			return null;
+		}
+	}
+
+	private void mapDrained(String mapName)
+	{
+		this.log.info("Dropping learned travel times of map \"" + mapName + "\", no jobs use it anymore.");
+		this.statistics.remove(mapName);
+	}
+}
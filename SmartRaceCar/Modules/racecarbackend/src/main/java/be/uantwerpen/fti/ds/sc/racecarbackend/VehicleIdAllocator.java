@@ -0,0 +1,101 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out vehicle IDs and takes them back when a vehicle is deleted.
+ * IDs that were released are reused (lowest first) before new IDs are generated.
+ * Both allocate() and release() are safe to call from multiple threads at once.
+ */
+class VehicleIdAllocator
+{
+	private final BitSet freeIds;               // Bit i is set if ID i was handed out once and released since.
+												// Guarded by synchronizing on the BitSet itself.
+	private final AtomicInteger numFreeIds;     // Number of set bits in freeIds, lets allocate() skip the lock when there's nothing to reuse.
+	private final AtomicLong highWaterMark;     // Lowest ID that was never handed out.
+	private int searchStart;                    // No bits below this index are set, guarded by freeIds.
+
+	public VehicleIdAllocator()
+	{
+		this.freeIds = new BitSet();
+		this.numFreeIds = new AtomicInteger(0);
+		this.highWaterMark = new AtomicLong(0);
+		this.searchStart = 0;
+	}
+
+	/**
+	 * Get an ID that is not in use by any other vehicle.
+	 * @return
+	 */
+	public long allocate()
+	{
+		if (this.numFreeIds.get() > 0)
+		{
+			synchronized (this.freeIds)
+			{
+				int id = this.freeIds.nextSetBit(this.searchStart);
+
+				if (id >= 0)
+				{
+					this.freeIds.clear(id);
+					this.numFreeIds.decrementAndGet();
+					this.searchStart = id + 1;
+					return id;
+				}
+			}
+		}
+
+		long id = this.highWaterMark.getAndIncrement();
+
+		if (id > Integer.MAX_VALUE)
+		{
+			throw new IllegalStateException("Ran out of vehicle IDs.");
+		}
+
+		return id;
+	}
+
+	/**
+	 * Return an ID so it can be handed out again.
+	 * @param id
+	 * @return  false if the ID was never handed out or was already released.
+	 */
+	public boolean release(long id)
+	{
+		if ((id < 0) || (id >= this.highWaterMark.get()))
+		{
+			return false;
+		}
+
+		int index = (int) id;
+
+		synchronized (this.freeIds)
+		{
+			if (this.freeIds.get(index))
+			{
+				return false;
+			}
+
+			this.freeIds.set(index);
+			this.numFreeIds.incrementAndGet();
+
+			if (index < this.searchStart)
+			{
+				this.searchStart = index;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return the number of IDs that were released and are waiting to be reused.
+	 * @return
+	 */
+	public int getNumFreeIds()
+	{
+		return this.numFreeIds.get();
+	}
+}
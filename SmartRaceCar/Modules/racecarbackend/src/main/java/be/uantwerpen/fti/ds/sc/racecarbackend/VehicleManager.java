@@ -16,26 +16,32 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import javax.annotation.PreDestroy;
 import javax.ws.rs.core.MediaType;
 import java.util.*;
 import java.util.Map;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Controller
 public class VehicleManager implements MQTTListener, VehicleRepository, OccupationRepository
 {
-	private static final long MQTT_DELIVERY_TIMEOUT = 30;
+	private static final long MQTT_DELIVERY_TIMEOUT = 30;          // Time to wait for delivery of a registration (in s)
+	private static final int MAX_REGISTRATION_ATTEMPTS = 3;         // Number of times we try to publish a registration before giving up
+	private static final long REGISTRATION_RETRY_DELAY = 1000;      // Delay before retrying a failed registration, multiplied by the attempt number (in ms)
 
 	private Logger log;
 	private Configuration configuration;
 	private MessageQueueClient messageQueueClient;
 	private WaypointProvider waypointProvider;
-	private Queue<Long> unusedIds;                      // This set contains all IDs of vehicles that were assigned once and then deleted
-														// its a simple way to reuse IDs.
+	private VehicleIdAllocator idAllocator;             // Hands out new IDs and reuses the IDs of deleted vehicles.
+	private ScheduledExecutorService registrationExecutor;  // Used to time out and retry registrations that weren't delivered.
 
-	private AtomicLong currentId;
+	private AtomicLong registrationCounter;             // Source of registration generations.
+	private Map<Long, Long> registrations;              // Generation of every vehicle's registration, so a stale retry can't act on a vehicle that reused its ID.
 
 	private Map<Long, Boolean> occupation;
+	private Set<Long> idleVehicles;                     // Index of all vehicles that aren't occupied, kept in sync with occupation.
 
 	@Autowired
 	public VehicleManager(@Qualifier("vehicleManager") Configuration configuration, @Autowired WaypointProvider waypointProvider)
@@ -43,14 +49,19 @@ public class VehicleManager implements MQTTListener, VehicleRepository, Occupati
 		this.configuration = configuration;
 		this.log = LoggerFactory.getLogger(this.getClass());
 
-		this.currentId = new AtomicLong(0);
+		this.idAllocator = new VehicleIdAllocator();
+		this.registrationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "VehicleManager - Registration");
+			thread.setDaemon(true);
+			return thread;
+		});
 
 		this.log.info("Initializing Vehicle Manager...");
 
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.messageQueueClient = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.messageQueueClient = new MQTTUtils(mqttAspect, this, "VehicleManager");
 		}
 		catch (MqttException me)
 		{
@@ -59,12 +70,173 @@ public class VehicleManager implements MQTTListener, VehicleRepository, Occupati
 
 		this.waypointProvider = waypointProvider;
 
-		this.occupation = new HashMap<>();
-		this.unusedIds = new LinkedList<>();
+		this.registrationCounter = new AtomicLong(0);
+		this.registrations = new ConcurrentHashMap<>();
+
+		this.occupation = new ConcurrentHashMap<>();
+		this.idleVehicles = ConcurrentHashMap.newKeySet();
 
 		this.log.info("Initialized Vehicle Manager.");
 	}
 
+	/**
+	 * Stop retrying registrations when the application shuts down.
+	 */
+	@PreDestroy
+	public void shutdown()
+	{
+		this.registrationExecutor.shutdownNow();
+	}
+
+	/**
+	 * Remove a vehicle, announce its deletion and make its ID available for reuse.
+	 * @param vehicleId
+	 * @return  false if the vehicle didn't exist.
+	 */
+	private boolean removeVehicle(long vehicleId)
+	{
+		synchronized (this.registrations)
+		{
+			if (this.occupation.remove(vehicleId) == null)
+			{
+				return false;
+			}
+
+			this.registrations.remove(vehicleId);
+		}
+
+		this.vehicleRemoved(vehicleId);
+		return true;
+	}
+
+	/**
+	 * Remove a vehicle, but only if it still is the one that was registered with the given generation.
+	 * @param vehicleId
+	 * @param generation    Generation of the registration.
+	 * @return  false if the vehicle didn't exist or its ID was reused by another vehicle.
+	 */
+	private boolean removeVehicle(long vehicleId, long generation)
+	{
+		synchronized (this.registrations)
+		{
+			if (!this.registrations.remove(vehicleId, generation))
+			{
+				return false;
+			}
+
+			this.occupation.remove(vehicleId);
+		}
+
+		this.vehicleRemoved(vehicleId);
+		return true;
+	}
+
+	private boolean isRegistered(long vehicleId, long generation)
+	{
+		return Long.valueOf(generation).equals(this.registrations.get(vehicleId));
+	}
+
+	private void vehicleRemoved(long vehicleId)
+	{
+		this.idleVehicles.remove(vehicleId);
+
+		try
+		{
+			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
+			this.messageQueueClient.publish(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.DELETE + "/" + vehicleId, "");
+		}
+		catch (Exception e)
+		{
+			this.log.error("Failed to publish vehicle deletion.", e);
+		}
+
+		this.log.info("Removing vehicle " + vehicleId);
+
+		if (!this.idAllocator.release(vehicleId))
+		{
+			this.log.warn("Attempted to remove " + vehicleId + " but the ID was already released.");
+		}
+	}
+
+	/**
+	 * Publish the registration of a vehicle without waiting for it to be delivered.
+	 * Once the registration is delivered, the "registered" message is published.
+	 * If delivery fails or times out, the registration is retried a couple of times before the vehicle is removed again.
+	 * A registration that timed out may still be delivered, so a retry can publish it twice.
+	 * That's harmless: receivers only take the start location of a vehicle they don't know yet,
+	 * and the HeartbeatChecker just resets the vehicle's heartbeat.
+	 * Delivery is handled on the registration executor, the MQTT client's threads mustn't block on publishing.
+	 * @param vehicleId
+	 * @param generation        Generation of the registration, retries are abandoned once the vehicle was removed.
+	 * @param startWaypoint
+	 * @param attempt           The number of this attempt, starting at 1.
+	 */
+	private void publishRegistration(long vehicleId, long generation, long startWaypoint, int attempt)
+	{
+		MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
+		CompletableFuture<MessageToken> delivery;
+
+		try
+		{
+			MessageToken token = this.messageQueueClient.publish(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.REGISTER + "/" + vehicleId, Long.toString(startWaypoint));
+			delivery = token.getDeliveryFuture();
+		}
+		catch (Exception e)
+		{
+			this.registrationFailed(vehicleId, generation, startWaypoint, attempt, e);
+			return;
+		}
+
+		ScheduledFuture<?> timeout = this.registrationExecutor.schedule(() -> delivery.completeExceptionally(new TimeoutException("Registration of vehicle " + vehicleId + " wasn't delivered within " + MQTT_DELIVERY_TIMEOUT + "s.")), MQTT_DELIVERY_TIMEOUT, TimeUnit.SECONDS);
+
+		delivery.whenCompleteAsync((token, throwable) ->
+		{
+			timeout.cancel(false);
+
+			if (throwable != null)
+			{
+				this.registrationFailed(vehicleId, generation, startWaypoint, attempt, throwable);
+				return;
+			}
+
+			if (!this.isRegistered(vehicleId, generation))
+			{
+				this.log.warn("Registration of vehicle " + vehicleId + " was delivered, but the vehicle was already removed.");
+				return;
+			}
+
+			try
+			{
+				this.messageQueueClient.publish(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.REGISTRATION_DONE + "/" + vehicleId, "done");
+				this.log.info("Registration of vehicle " + vehicleId + " was delivered.");
+			}
+			catch (Exception e)
+			{
+				this.log.error("Failed to publish registration completion of vehicle " + vehicleId + ".", e);
+			}
+		}, this.registrationExecutor);
+	}
+
+	private void registrationFailed(long vehicleId, long generation, long startWaypoint, int attempt, Throwable cause)
+	{
+		if (!this.isRegistered(vehicleId, generation))
+		{
+			this.log.warn("Registration of vehicle " + vehicleId + " failed, but the vehicle was already removed.");
+			return;
+		}
+
+		if (attempt < MAX_REGISTRATION_ATTEMPTS)
+		{
+			this.log.warn("Failed to publish registration of vehicle " + vehicleId + " (Attempt " + attempt + "/" + MAX_REGISTRATION_ATTEMPTS + "), retrying.", cause);
+			this.registrationExecutor.schedule(() -> this.publishRegistration(vehicleId, generation, startWaypoint, attempt + 1), REGISTRATION_RETRY_DELAY * attempt, TimeUnit.MILLISECONDS);
+		}
+		else
+		{
+			this.log.error("Failed to publish registration of vehicle " + vehicleId + " after " + attempt + " attempts, removing vehicle.", cause);
+			this.removeVehicle(vehicleId, generation);
+		}
+	}
+
 	@Override
 	public List<Long> getVehicleIds()
 	{
@@ -85,14 +257,47 @@ public class VehicleManager implements MQTTListener, VehicleRepository, Occupati
 	 */
 	public void setOccupied(long vehicleId, boolean occupied) throws NoSuchElementException
 	{
-		if (!this.occupation.containsKey(vehicleId))
+		// The idle index is updated while holding the vehicle's entry,
+		// so concurrent updates for the same vehicle can't leave it out of sync.
+		Boolean newOccupation = this.occupation.computeIfPresent(vehicleId, (id, oldOccupied) ->
+		{
+			if (occupied)
+			{
+				this.idleVehicles.remove(id);
+			}
+			else
+			{
+				this.idleVehicles.add(id);
+			}
+
+			return occupied;
+		});
+
+		if (newOccupation == null)
 		{
 			String errorString = "Tried to set non-existent vehicle's occupation to " + occupied + ", vehicle ID: " + vehicleId;
 			this.log.error(errorString);
 			throw new NoSuchElementException(errorString);
 		}
+	}
 
-		this.occupation.put(vehicleId, occupied);
+	@Override
+	public boolean tryOccupy(long vehicleId)
+	{
+		boolean[] reserved = {false};
+
+		this.occupation.computeIfPresent(vehicleId, (id, oldOccupied) ->
+		{
+			if (!oldOccupied)
+			{
+				this.idleVehicles.remove(id);
+				reserved[0] = true;
+			}
+
+			return true;
+		});
+
+		return reserved[0];
 	}
 
 	@Override
@@ -108,6 +313,18 @@ public class VehicleManager implements MQTTListener, VehicleRepository, Occupati
 		return this.occupation.get(vehicleId);
 	}
 
+	@Override
+	public int getNumIdleVehicles()
+	{
+		return this.idleVehicles.size();
+	}
+
+	@Override
+	public Collection<Long> getIdleVehicleIds()
+	{
+		return Collections.unmodifiableSet(this.idleVehicles);
+	}
+
 	/*
 	 *
 	 *      REST Endpoints
@@ -116,31 +333,8 @@ public class VehicleManager implements MQTTListener, VehicleRepository, Occupati
 	@RequestMapping(value="/carmanager/delete/{vehicleId}", method=RequestMethod.DELETE)
 	public @ResponseBody ResponseEntity<String> delete(@PathVariable long vehicleId)
 	{
-		if (this.occupation.containsKey(vehicleId))
+		if (this.removeVehicle(vehicleId))
 		{
-			this.occupation.remove(vehicleId);
-
-			try
-			{
-				MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-				this.messageQueueClient.publish(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.DELETE + "/" + vehicleId, "");
-			}
-			catch (Exception e)
-			{
-				this.log.error("Failed to publish vehicle deletion.", e);
-			}
-
-			this.log.info("Removing vehicle " + vehicleId);
-
-			if (!this.unusedIds.contains(vehicleId))
-			{
-				this.unusedIds.add(vehicleId);
-			}
-			else
-			{
-				this.log.warn("Attempted to remove " + vehicleId + " but queue of unused IDs already contains the ID.");
-			}
-
 			return new ResponseEntity<>(HttpStatus.OK);
 		}
 		else
@@ -162,31 +356,19 @@ public class VehicleManager implements MQTTListener, VehicleRepository, Occupati
 			return new ResponseEntity<>(errorString, HttpStatus.BAD_REQUEST);
 		}
 
-		long newVehicleId = -1;
+		long newVehicleId = this.idAllocator.allocate();
+		long generation = this.registrationCounter.incrementAndGet();
 
-		if (!this.unusedIds.isEmpty())
-		{
-			newVehicleId = this.unusedIds.remove();
-		}
-		else
-		{
-			newVehicleId = this.currentId.getAndIncrement();
-		}
-
-		try
-		{
-			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			MessageToken token = this.messageQueueClient.publish(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.REGISTER + "/" + newVehicleId, Long.toString(startWaypoint));
-			token.waitForDelivery(MQTT_DELIVERY_TIMEOUT);
-
-			this.messageQueueClient.publish(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.REGISTRATION_DONE + "/" + newVehicleId, "done");
-		}
-		catch (Exception e)
+		// Record the vehicle before publishing, the registration is delivered asynchronously
+		// so we don't tie up a request thread while waiting for the broker.
+		synchronized (this.registrations)
 		{
-			this.log.error("Failed to publish vehicle registration.", e);
+			this.registrations.put(newVehicleId, generation);
+			this.occupation.put(newVehicleId, false);
 		}
 
-		this.occupation.put(newVehicleId, false);
+		this.idleVehicles.add(newVehicleId);
+		this.publishRegistration(newVehicleId, generation, startWaypoint, 1);
 
 		this.log.info("Registered new vehicle (" + newVehicleId + "), Current Waypoint: " + startWaypoint);
 
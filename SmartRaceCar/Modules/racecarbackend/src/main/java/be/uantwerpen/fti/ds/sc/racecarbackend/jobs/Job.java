@@ -9,6 +9,7 @@ class Job
 	private long startId; 	// ID of the start waypoint of the route.
 	private long endId; 	// ID of the end waypoint of the route.
 	private long vehicleId; // ID of the vehicle.
+	private long mapVersion;    // Version of the map the job's waypoints belong to.
 	private int progress;
 	private boolean backboneNotified;	// Whether or not the backbone has been notified about us "almost" completing our job.
 
@@ -21,13 +22,15 @@ class Job
 	 * @param startId   ID of the start waypoint of the route
 	 * @param endId     ID of the end waypoint of the route
 	 * @param vehicleId ID of the vehicle
+	 * @param mapVersion Version of the map the job's waypoints belong to
 	 */
-	public Job(long jobId, long startId, long endId, long vehicleId)
+	public Job(long jobId, long startId, long endId, long vehicleId, long mapVersion)
 	{
 		this.jobId = jobId;
 		this.startId = startId;
 		this.endId = endId;
 		this.vehicleId = vehicleId;
+		this.mapVersion = mapVersion;
 		this.progress = 0;
 		this.backboneNotified = false;
 	}
@@ -72,6 +75,16 @@ class Job
 		this.vehicleId = vehicleId;
 	}
 
+	/**
+	 * Return the version of the map the job's waypoints belong to.
+	 * The job keeps using this version, even if the map changes while it's running.
+	 * @return
+	 */
+	public long getMapVersion()
+	{
+		return this.mapVersion;
+	}
+
 	/**
 	 * Return the progress of this job (As a percentage)
 	 * @return
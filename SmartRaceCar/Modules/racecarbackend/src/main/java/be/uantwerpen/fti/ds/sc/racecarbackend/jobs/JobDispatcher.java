@@ -5,6 +5,7 @@ import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.MqttAspect;
 import be.uantwerpen.fti.ds.sc.racecarbackend.*;
+import be.uantwerpen.fti.ds.sc.racecarbackend.maps.RoutePlanner;
 import be.uantwerpen.fti.ds.sc.racecarbackend.maps.WaypointProvider;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.slf4j.Logger;
@@ -21,6 +22,9 @@ import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.ws.rs.core.MediaType;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 @Controller
@@ -31,57 +35,83 @@ public class JobDispatcher implements MQTTListener
 	private JobTracker jobTracker;
 	private JobQueue jobQueue;
 	private WaypointProvider waypointProvider;
+	private RoutePlanner routePlanner;
 	private OccupationRepository occupationRepository;
 	private LocationRepository locationRepository;
 	private ResourceManager resourceManager;
 	private MQTTUtils mqttUtils;
+	private MQTTDispatcher mqttDispatcher;
 	private TopicParser topicParser;
 	private MessageQueueClient messageQueueClient;
 
+	/**
+	 * Schedule the first queued job, local jobs go first.
+	 * Several dispatch threads can call this at the same time, each queued job is only taken once.
+	 */
 	private void checkJobQueue() throws IOException
 	{
-		if (!this.jobQueue.isEmpty(JobType.LOCAL))
+		JobType type = JobType.LOCAL;
+		Job job = this.jobQueue.poll(type);
+
+		if (job == null)
+		{
+			type = JobType.GLOBAL;
+			job = this.jobQueue.poll(type);
+		}
+
+		if (job == null)
 		{
-			this.scheduleJob(this.jobQueue.dequeue(JobType.LOCAL), JobType.LOCAL);
+			return;
 		}
-		else if (!this.jobQueue.isEmpty(JobType.GLOBAL))
+
+		try
+		{
+			this.scheduleJob(job, type);
+		}
+		catch (NoSuchElementException nsee)
 		{
-			this.scheduleJob(this.jobQueue.dequeue(JobType.GLOBAL), JobType.GLOBAL);
+			// Another thread reserved the last idle vehicle, the job stays first in line
+			this.log.info("No vehicle available for job " + job.getJobId() + ", keeping it queued.");
+			this.jobQueue.requeueFirst(job, type);
+		}
+		catch (IOException ioe)
+		{
+			this.jobQueue.requeueFirst(job, type);
+			throw ioe;
 		}
 	}
 
-	private void scheduleJob(Job job, JobType type) throws IOException
+	/**
+	 * Assign a job to a vehicle and send the vehicle its route.
+	 * If the job has no vehicle yet, the optimal car is reserved for it,
+	 * otherwise the caller must have reserved the job's vehicle already.
+	 */
+	private void scheduleJob(Job job, JobType type) throws NoSuchElementException, IOException
 	{
 		if (job.getVehicleId() == -1)
 		{
-			try
-			{
-				long vehicleId = this.resourceManager.getOptimalCar(job.getStartId());
-				job.setVehicleId(vehicleId);
-			}
-			catch (NoSuchElementException nsee)
-			{
-				this.log.error("Failed to find optimal car for job " + job.getJobId(), nsee);
-			}
+			long vehicleId = this.resourceManager.reserveOptimalCar(job.getStartId(), job.getMapVersion());
+			job.setVehicleId(vehicleId);
 		}
 
-		this.occupationRepository.setOccupied(job.getVehicleId(), true);
-
 		switch (type)
 		{
 			case LOCAL:
-				this.jobTracker.addLocalJob(job.getJobId(), job.getVehicleId(), job.getStartId(), job.getEndId());
+				this.jobTracker.addLocalJob(job.getJobId(), job.getVehicleId(), job.getStartId(), job.getEndId(), job.getMapVersion());
 				break;
 
 			case GLOBAL:
-				this.jobTracker.addGlobalJob(job.getJobId(), job.getVehicleId(), job.getStartId(), job.getEndId());
+				this.jobTracker.addGlobalJob(job.getJobId(), job.getVehicleId(), job.getStartId(), job.getEndId(), job.getMapVersion());
 				break;
 		}
 
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) this.config.get(AspectType.MQTT);
-			this.mqttUtils.publish(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.JOB + "/" + job.getVehicleId() + "/" + job.getJobId(), job.getStartId() + " " + job.getEndId());
+			List<Long> route = this.getRoute(job);
+
+			this.locationRepository.setRoute(job.getVehicleId(), route);
+			this.mqttUtils.publish(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.JOB + "/" + job.getVehicleId() + "/" + job.getJobId(), routeToString(route));
 		}
 		catch (MqttException me)
 		{
@@ -89,8 +119,63 @@ public class JobDispatcher implements MQTTListener
 		}
 	}
 
+	/**
+	 * Undo a reservation made for a job that couldn't be started.
+	 * The vehicle may have been deleted in the meantime, in that case there's nothing to release.
+	 */
+	private void releaseVehicle(long vehicleId)
+	{
+		try
+		{
+			this.occupationRepository.setOccupied(vehicleId, false);
+		}
+		catch (NoSuchElementException nsee)
+		{
+			this.log.warn("Vehicle " + vehicleId + " was deleted before its reservation could be released.");
+		}
+	}
+
+	/**
+	 * Return the waypoints the vehicle has to visit for a job.
+	 * If no route can be planned, only the start and end waypoint are sent, the vehicle will try to drive there directly.
+	 * @param job
+	 * @return
+	 */
+	private List<Long> getRoute(Job job)
+	{
+		try
+		{
+			return this.routePlanner.plan(job.getMapVersion(), job.getStartId(), job.getEndId());
+		}
+		catch (IndexOutOfBoundsException | NoSuchElementException e)
+		{
+			this.log.warn("Failed to plan route for job " + job.getJobId() + ", sending start and end waypoint only.", e);
+			return Arrays.asList(job.getStartId(), job.getEndId());
+		}
+	}
+
+	/**
+	 * Return the waypoints of a route, separated by spaces.
+	 */
+	private static String routeToString(List<Long> route)
+	{
+		StringBuilder builder = new StringBuilder();
+
+		for (long waypointId: route)
+		{
+			if (builder.length() != 0)
+			{
+				builder.append(' ');
+			}
+
+			builder.append(waypointId);
+		}
+
+		return builder.toString();
+	}
+
 	@Autowired
-	public JobDispatcher(@Qualifier("jobDispatcher") Configuration configuration, JobTracker jobTracker, JobQueue jobQueue, WaypointProvider waypointProvider, OccupationRepository occupationRepository, LocationRepository locationRepository, ResourceManager resourceManager, TopicParser topicParser)
+	public JobDispatcher(@Qualifier("jobDispatcher") Configuration configuration, JobTracker jobTracker, JobQueue jobQueue, WaypointProvider waypointProvider, RoutePlanner routePlanner, OccupationRepository occupationRepository, LocationRepository locationRepository, ResourceManager resourceManager, TopicParser topicParser)
 	{
 		this.log = LoggerFactory.getLogger(this.getClass());
 		this.config = configuration;
@@ -98,14 +183,20 @@ public class JobDispatcher implements MQTTListener
 		this.jobQueue = jobQueue;
 		this.jobTracker = jobTracker;
 		this.waypointProvider = waypointProvider;
+		this.routePlanner = routePlanner;
 		this.occupationRepository = occupationRepository;
 		this.locationRepository = locationRepository;
 		this.resourceManager = resourceManager;
 
+		// Dispatching waits for newly registered vehicles, so handle messages on our own threads.
+		// Messages of the same vehicle are handled in order.
+		MqttAspect dispatchAspect = (MqttAspect) configuration.get(AspectType.MQTT);
+		this.mqttDispatcher = new MQTTDispatcher("JobDispatcher", dispatchAspect.getDispatchThreads(), dispatchAspect.getDispatchQueueCapacity(), this.topicParser::getVehicleId);
+
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, this.mqttDispatcher, "JobDispatcher");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Core.ROUTE + "/#");
 		}
 		catch (MqttException me)
@@ -116,7 +207,7 @@ public class JobDispatcher implements MQTTListener
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.messageQueueClient = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.messageQueueClient = new MQTTUtils(mqttAspect, this, this.mqttDispatcher, "JobDispatcher-Registration");
 			this.messageQueueClient.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.REGISTRATION_DONE + "/#");
 		}
 		catch (Exception e)
@@ -125,17 +216,12 @@ public class JobDispatcher implements MQTTListener
 		}
 	}
 
-	/*
-	 *
-	 *  REST Endpoints
-	 *
+	/**
+	 * Start or enqueue a job on the given map version.
+	 * The job takes over the map version, it's released when the job completes.
 	 */
-
-	@RequestMapping(value="/job/execute/{startId}/{endId}/{jobId}", method=RequestMethod.POST, produces=MediaType.TEXT_PLAIN)
-	public @ResponseBody ResponseEntity<String> executeJob(@PathVariable long startId, @PathVariable long endId, @PathVariable long jobId)
+	private ResponseEntity<String> startJob(long startId, long endId, long jobId, long mapVersion)
 	{
-		this.log.info("Received Job request for " + startId + " -> " + endId + " (JobID: " + jobId + ")");
-
 		if (this.jobTracker.exists(jobId))
 		{
 			String errorString = "A job with ID " + jobId + " already exists.";
@@ -146,22 +232,42 @@ public class JobDispatcher implements MQTTListener
 		if (this.resourceManager.getNumAvailableCars() == 0)
 		{
 			this.log.info("There are currently no vehicles available, adding to global queue");
-			this.jobQueue.enqueue(new Job(jobId, startId, endId, -1), JobType.GLOBAL);
+			this.jobQueue.enqueue(new Job(jobId, startId, endId, -1, mapVersion), JobType.GLOBAL);
 			return new ResponseEntity<>("starting", HttpStatus.OK);
 		}
 
 		if (!this.jobQueue.isEmpty(JobType.GLOBAL))
 		{
 			this.log.info("There are already jobs in the global queue, adding to global queue.");
-			this.jobQueue.enqueue(new Job(jobId, startId, endId, -1), JobType.GLOBAL);
+			this.jobQueue.enqueue(new Job(jobId, startId, endId, -1, mapVersion), JobType.GLOBAL);
 			return new ResponseEntity<>("starting", HttpStatus.OK);
 		}
 
+		List<WayPoint> waypoints = this.waypointProvider.get(mapVersion, Arrays.asList(startId, endId));
+
+		// Check if starting waypoint exists
+		if (waypoints.get(0) == null)
+		{
+			String errorString = "Request job with non-existent start waypoint " + startId + ".";
+			this.log.error(errorString);
+
+			return new ResponseEntity<>(errorString, HttpStatus.NOT_FOUND);
+		}
+
+		// Check if end waypoint exists
+		if (waypoints.get(1) == null)
+		{
+			String errorString = "Request job with non-existent end waypoint " + endId + ".";
+			this.log.error(errorString);
+
+			return new ResponseEntity<>(errorString, HttpStatus.NOT_FOUND);
+		}
+
 		long vehicleId = -1;
 
 		try
 		{
-			vehicleId = this.resourceManager.getOptimalCar(startId);
+			vehicleId = this.resourceManager.reserveOptimalCar(startId, mapVersion);
 		}
 		catch (NoSuchElementException nsee)
 		{
@@ -176,25 +282,7 @@ public class JobDispatcher implements MQTTListener
 			return new ResponseEntity<>(errorString, HttpStatus.SERVICE_UNAVAILABLE);
 		}
 
-		// Check if starting waypoint exists
-		if (!this.waypointProvider.exists(startId))
-		{
-			String errorString = "Request job with non-existent start waypoint " + startId + ".";
-			this.log.error(errorString);
-
-			return new ResponseEntity<>(errorString, HttpStatus.NOT_FOUND);
-		}
-
-		// Check if end waypoint exists
-		if (!this.waypointProvider.exists(endId))
-		{
-			String errorString = "Request job with non-existent end waypoint " + endId + ".";
-			this.log.error(errorString);
-
-			return new ResponseEntity<>(errorString, HttpStatus.NOT_FOUND);
-		}
-
-		Job job = new Job(jobId, startId, endId, vehicleId);
+		Job job = new Job(jobId, startId, endId, vehicleId, mapVersion);
 
 		try
 		{
@@ -202,6 +290,7 @@ public class JobDispatcher implements MQTTListener
 		}
 		catch (IOException ioe)
 		{
+			this.releaseVehicle(vehicleId);
 			String errorString = "Failed to schedule global job " + jobId;
 			this.log.error(errorString, ioe);
 			return new ResponseEntity<>(errorString, HttpStatus.SERVICE_UNAVAILABLE);
@@ -210,32 +299,34 @@ public class JobDispatcher implements MQTTListener
 		return new ResponseEntity<>("starting", HttpStatus.OK);
 	}
 
-	@RequestMapping(value="/job/gotopoint/{destId}", method=RequestMethod.POST, produces=MediaType.TEXT_PLAIN)
-	public @ResponseBody ResponseEntity<String> goToPoint (@PathVariable long destId)
+	/**
+	 * Start a go-to command on the given map version.
+	 * The vehicle drives from wherever it is, so the command needs an idle vehicle with a known location right away.
+	 * It's rejected otherwise, instead of being queued without a start waypoint.
+	 * The job takes over the map version, it's released when the job completes.
+	 */
+	private ResponseEntity<String> startGoToPoint(long destId, long mapVersion)
 	{
-		this.log.info("Received GOTO command for waypoint " + destId);
+		if (this.waypointProvider.get(mapVersion, Collections.singletonList(destId)).get(0) == null)
+		{
+			String errorString = "Tried to send vehicle to non-existent waypoint " + destId + ".";
+			this.log.error(errorString);
+			return new ResponseEntity<>(errorString, HttpStatus.BAD_REQUEST);
+		}
 
-		long vehicleId = -1;
-		long vehicleLocation = -1;
+		long vehicleId;
+		long vehicleLocation;
 
 		try
 		{
-			vehicleId = this.resourceManager.getOptimalCar(destId);
-			vehicleLocation = this.locationRepository.getLocation(vehicleId);
+			// Only idle vehicles with a known location are considered
+			vehicleId = this.resourceManager.reserveOptimalCar(destId, mapVersion);
 		}
 		catch (NoSuchElementException nsee)
 		{
-			// If the exception was caused because no cars are available, enqueue the job
-			if (this.resourceManager.getNumAvailableCars() == 0)
-			{
-				this.log.info("There are currently no vehicles available, adding to local queue.");
-				this.jobQueue.enqueue(new Job(this.jobTracker.generateLocalJobId(), vehicleLocation, destId, -1), JobType.LOCAL);
-				return new ResponseEntity<>("starting", HttpStatus.OK);
-			}
-
-			String errorString = "An error occurred while determining the optimal car for a go-to command.";
+			String errorString = "There are currently no vehicles available for a go-to command.";
 			this.log.error(errorString, nsee);
-			return new ResponseEntity<>(errorString, HttpStatus.PRECONDITION_FAILED);
+			return new ResponseEntity<>(errorString, HttpStatus.SERVICE_UNAVAILABLE);
 		}
 		catch (IOException ioe)
 		{
@@ -244,21 +335,20 @@ public class JobDispatcher implements MQTTListener
 			return new ResponseEntity<>(errorString, HttpStatus.SERVICE_UNAVAILABLE);
 		}
 
-		if (!this.jobQueue.isEmpty(JobType.LOCAL))
+		try
 		{
-			this.log.info("There already are jobs in the local queue, adding to local queue.");
-			this.jobQueue.enqueue(new Job(this.jobTracker.generateLocalJobId(), vehicleLocation, destId, -1), JobType.LOCAL);
-			return new ResponseEntity<>("starting", HttpStatus.OK);
+			vehicleLocation = this.locationRepository.getLocation(vehicleId);
 		}
-
-		if (!this.waypointProvider.exists(destId))
+		catch (IndexOutOfBoundsException ioobe)
 		{
-			String errorString = "Tried to send vehicle to non-existent waypoint " + destId + ".";
-			this.log.error(errorString);
-			return new ResponseEntity<>(errorString, HttpStatus.BAD_REQUEST);
+			// The reserved vehicle was deleted before we could look up its location
+			this.releaseVehicle(vehicleId);
+			String errorString = "Failed to find the location of vehicle " + vehicleId + " for a go-to command.";
+			this.log.error(errorString, ioobe);
+			return new ResponseEntity<>(errorString, HttpStatus.SERVICE_UNAVAILABLE);
 		}
 
-		Job job = new Job(this.jobTracker.generateLocalJobId(), vehicleLocation, destId, vehicleId);
+		Job job = new Job(this.jobTracker.generateLocalJobId(), vehicleLocation, destId, vehicleId, mapVersion);
 
 		try
 		{
@@ -266,6 +356,7 @@ public class JobDispatcher implements MQTTListener
 		}
 		catch (IOException ioe)
 		{
+			this.releaseVehicle(vehicleId);
 			String errorString = "Failed to schedule local job " + job.getJobId();
 			this.log.error(errorString, ioe);
 			return new ResponseEntity<>(errorString, HttpStatus.SERVICE_UNAVAILABLE);
@@ -274,6 +365,45 @@ public class JobDispatcher implements MQTTListener
 		return new ResponseEntity<>(HttpStatus.OK);
 	}
 
+	/*
+	 *
+	 *  REST Endpoints
+	 *
+	 */
+
+	@RequestMapping(value="/job/execute/{startId}/{endId}/{jobId}", method=RequestMethod.POST, produces=MediaType.TEXT_PLAIN)
+	public @ResponseBody ResponseEntity<String> executeJob(@PathVariable long startId, @PathVariable long endId, @PathVariable long jobId)
+	{
+		this.log.info("Received Job request for " + startId + " -> " + endId + " (JobID: " + jobId + ")");
+
+		// Bind the job to the current map, it keeps using this map if the map changes before it completes
+		long mapVersion = this.waypointProvider.acquireVersion();
+		ResponseEntity<String> response = this.startJob(startId, endId, jobId, mapVersion);
+
+		if (!response.getStatusCode().is2xxSuccessful())
+		{
+			this.waypointProvider.releaseVersion(mapVersion);
+		}
+
+		return response;
+	}
+
+	@RequestMapping(value="/job/gotopoint/{destId}", method=RequestMethod.POST, produces=MediaType.TEXT_PLAIN)
+	public @ResponseBody ResponseEntity<String> goToPoint (@PathVariable long destId)
+	{
+		this.log.info("Received GOTO command for waypoint " + destId);
+
+		long mapVersion = this.waypointProvider.acquireVersion();
+		ResponseEntity<String> response = this.startGoToPoint(destId, mapVersion);
+
+		if (!response.getStatusCode().is2xxSuccessful())
+		{
+			this.waypointProvider.releaseVersion(mapVersion);
+		}
+
+		return response;
+	}
+
 	/**
 	 * MQTT Parsing method.
 	 * @param topic   received MQTT topic
@@ -314,33 +444,15 @@ public class JobDispatcher implements MQTTListener
 				this.log.error("Failed to wait 500ms before sending job.", ie);
 			}
 
-			if (!this.jobQueue.isEmpty(JobType.LOCAL))
+			try
 			{
-				try
-				{
-					this.log.info("Dispatching a local job to newly registered vehicle (" + vehicleId + ").");
-					Job job = this.jobQueue.dequeue(JobType.LOCAL);
-					this.scheduleJob(job, JobType.LOCAL);
-				}
-				catch (IOException ioe)
-				{
-					String errorString = "Failed to schedule local job for newly registered vehicle (" + vehicleId + ").";
-					this.log.error(errorString, ioe);
-				}
+				this.log.info("Dispatching a queued job to newly registered vehicle (" + vehicleId + ").");
+				this.checkJobQueue();
 			}
-			else if (!this.jobQueue.isEmpty(JobType.GLOBAL))
+			catch (IOException ioe)
 			{
-				try
-				{
-					this.log.info("Dispatching a global job to newly registered vehicle (" + vehicleId + ").");
-					Job job = this.jobQueue.dequeue(JobType.GLOBAL);
-					this.scheduleJob(job, JobType.GLOBAL);
-				}
-				catch (IOException ioe)
-				{
-					String errorString = "Failed to schedule global job for newly registered vehicle (" + vehicleId + ").";
-					this.log.error(errorString, ioe);
-				}
+				String errorString = "Failed to schedule queued job for newly registered vehicle (" + vehicleId + ").";
+				this.log.error(errorString, ioe);
 			}
 		}
 	}
@@ -14,9 +14,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Deque;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 @Service
 public class JobQueue implements MQTTListener
@@ -24,22 +24,22 @@ public class JobQueue implements MQTTListener
 	private Logger log;
 	private TopicParser topicParser;
 	private MessageQueueClient messageQueueClient;
-	private List<Job> localJobs;
-	private List<Job> globalJobs;
+	private Deque<Job> localJobs;                       // Jobs are enqueued and dequeued from several dispatch threads.
+	private Deque<Job> globalJobs;
 
 	public JobQueue(@Qualifier("jobQueue") Configuration configuration, TopicParser topicParser)
 	{
 		this.log = LoggerFactory.getLogger(JobQueue.class);
 		this.topicParser = topicParser;
-		this.localJobs = new LinkedList<>();
-		this.globalJobs = new LinkedList<>();
+		this.localJobs = new ConcurrentLinkedDeque<>();
+		this.globalJobs = new ConcurrentLinkedDeque<>();
 
 		this.log.info("Initializing JobQueue...");
 
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.messageQueueClient = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.messageQueueClient = new MQTTUtils(mqttAspect, this, "JobQueue");
 			this.messageQueueClient.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.DELETE + "/#");
 		}
 		catch (MqttException me)
@@ -131,31 +131,61 @@ public class JobQueue implements MQTTListener
 		}
 	}
 
+	/**
+	 * Put a job back at the front of the queue, e.g. when no vehicle could be found for it.
+	 * @param job
+	 * @param type
+	 */
+	public void requeueFirst(Job job, JobType type) throws NoSuchElementException
+	{
+		this.log.info("Job " + job.getJobId() + " was placed back at the front of the " + type + " job queue.");
+		this.getQueue(type).addFirst(job);
+	}
+
+	/**
+	 * Atomically take the first job from a queue.
+	 * Checking isEmpty() before dequeueing is racy when several threads dispatch jobs, use this instead.
+	 * @param type
+	 * @return The first job, or null if the queue is empty.
+	 */
+	public Job poll(JobType type) throws NoSuchElementException
+	{
+		Job job = this.getQueue(type).pollFirst();
+
+		if (job != null)
+		{
+			this.log.info("Dequeueing job " + job.getJobId() + " from " + type + " queue.");
+		}
+
+		return job;
+	}
+
 	public Job dequeue(JobType type) throws NoSuchElementException
 	{
-		if (this.isEmpty(type))
+		Job job = this.poll(type);
+
+		if (job == null)
 		{
 			String errorString = "Requested job from empty queue.";
 			this.log.error(errorString);
 			throw new NoSuchElementException(errorString);
 		}
 
+		return job;
+	}
+
+	private Deque<Job> getQueue(JobType type) throws NoSuchElementException
+	{
 		switch (type)
 		{
 			case GLOBAL:
-			{
-				this.log.info("Dequeueing job " + this.globalJobs.get(0).getJobId() + " from local queue.");
-				return this.globalJobs.remove(0);
-			}
+				return this.globalJobs;
 
 			case LOCAL:
-			{
-				this.log.info("Dequeueing job " + this.localJobs.get(0).getJobId() + " from local queue.");
-				return this.localJobs.remove(0);
-			}
+				return this.localJobs;
 
 			default:
-				String errorString = "Failed to dequeue job from " + type + " queue.";
+				String errorString = "Unknown job queue " + type + ".";
 				this.log.error(errorString);
 				throw new NoSuchElementException(errorString);
 		}
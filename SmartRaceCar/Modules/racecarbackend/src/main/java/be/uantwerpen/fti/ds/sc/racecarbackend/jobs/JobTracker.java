@@ -5,9 +5,11 @@ import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.BackboneAspect;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.MqttAspect;
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
 import be.uantwerpen.fti.ds.sc.racecarbackend.CheckedIndexOutOfBoundsException;
 import be.uantwerpen.fti.ds.sc.racecarbackend.TopicParser;
 import be.uantwerpen.fti.ds.sc.racecarbackend.VehicleManager;
+import be.uantwerpen.fti.ds.sc.racecarbackend.maps.WaypointProvider;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,12 +23,18 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import javax.annotation.PreDestroy;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 public class JobTracker implements MQTTListener
@@ -35,14 +43,20 @@ public class JobTracker implements MQTTListener
 	// We need to contact the backbone if we're "almost there"
 	// No concrete definition of "almost" has been given, so
 	// I'm choosing one here. It's 80%.
+	private static final long NOTIFICATION_RETRY_DELAY = 1000;      // Delay before redelivering a failed backbone notification, doubled every attempt (in ms)
+	private static final long MAX_NOTIFICATION_RETRY_DELAY = 60000; // Upper bound of the redelivery delay (in ms)
 
 	private Logger log;
 	private Configuration configuration;
 	private TopicParser topicParser;
 	private VehicleManager vehicleManager;
 	private JobQueue jobQueue;
+	private WaypointProvider waypointProvider;
 	private MQTTUtils mqttUtils;
+	private MQTTDispatcher mqttDispatcher;
 	private MessageQueueClient messageQueueClient;
+	private ResilientRESTUtils backboneRESTUtils;
+	private ScheduledExecutorService notificationExecutor;  // Redelivers backbone notifications that failed.
 	private ConcurrentMap<Long, Job> localJobs;         // Map containing local jobs mapped to their IDs
 	// Local jobs are jobs not present in the backbone,
 	// they are tracked locally to send vehicles to the startpoint of jobs etc.
@@ -71,10 +85,10 @@ public class JobTracker implements MQTTListener
 			long jobId = localJobIterator.next();
 			Job job = this.localJobs.get(jobId);
 
-			if (job.getVehicleId() == vehicleId)
+			// Other dispatch threads can remove the job while we iterate, only requeue it if we removed it
+			if ((job != null) && (job.getVehicleId() == vehicleId) && this.localJobs.remove(jobId, job))
 			{
 				this.log.warn("Re-queueing local job " + jobId);
-				this.localJobs.remove(jobId);
 				job.setVehicleId(-1);
 				this.jobQueue.enqueue(job, JobType.LOCAL);
 			}
@@ -87,10 +101,10 @@ public class JobTracker implements MQTTListener
 			long jobId = globalJobIterator.next();
 			Job job = this.globalJobs.get(jobId);
 
-			if (job.getVehicleId() == vehicleId)
+			// Other dispatch threads can remove the job while we iterate, only requeue it if we removed it
+			if ((job != null) && (job.getVehicleId() == vehicleId) && this.globalJobs.remove(jobId, job))
 			{
 				this.log.warn("Re-queueing global job " + jobId);
-				this.globalJobs.remove(jobId);
 				job.setVehicleId(-1);
 				this.jobQueue.enqueue(job, JobType.GLOBAL);
 			}
@@ -166,21 +180,21 @@ public class JobTracker implements MQTTListener
 		throw new CheckedIndexOutOfBoundsException("Tried to find type for job " + jobId + " (Vehicle: " + vehicleId + "), but no job matched the IDs.");
 	}
 
-	private void removeJob(long jobId, long vehicleId) throws CheckedIndexOutOfBoundsException
+	private Job removeJob(long jobId, long vehicleId) throws CheckedIndexOutOfBoundsException
 	{
 		switch (this.findJobType(jobId, vehicleId))
 		{
 			case GLOBAL:
-				this.globalJobs.remove(jobId);
-				break;
+				return this.globalJobs.remove(jobId);
 
 			case LOCAL:
-				this.localJobs.remove(jobId);
-				break;
+				return this.localJobs.remove(jobId);
 		}
+
+		return null;
 	}
 
-	private void completeJob(long jobId, long vehicleId) throws WebApplicationException
+	private void completeJob(long jobId, long vehicleId)
 	{
 		this.log.debug("Completing job, setting vehicle " + vehicleId + " to unoccupied.");
 		this.vehicleManager.setOccupied(vehicleId, false);
@@ -193,41 +207,86 @@ public class JobTracker implements MQTTListener
 			if ((!backboneAspect.isBackboneDebug()) && (this.findJobType(jobId, vehicleId) == JobType.GLOBAL))
 			{
 				Job job = this.getJob(jobId, JobType.GLOBAL);
+				List<String> notifications = new ArrayList<>();
 
-				RESTUtils backboneRESTUtil = new RESTUtils(backboneAspect.getBackboneServerUrl());
-
-				try
-				{
-					if (!job.isBackboneNotified())
-					{
-						this.log.info("Sending last minute \"close-by\" message to backbone.");
-						backboneRESTUtil.post("/jobs/vehiclecloseby/" + jobId);
-					}
-				} catch (WebApplicationException wae)
+				if (!job.isBackboneNotified())
 				{
-					this.log.error("Failed to notify backbone with  \"close-by\" message.");
+					this.log.info("Sending last minute \"close-by\" message to backbone.");
+					notifications.add("/jobs/vehiclecloseby/" + jobId);
 				}
 
 				this.log.debug("Informing Backbone about job completion.");
+				notifications.add("/jobs/complete/" + jobId);
 
-				try
-				{
-					backboneRESTUtil.post("/jobs/complete/" + jobId);
-				} catch (WebApplicationException wae)
-				{
-					this.log.error("Failed to POST completion of job to backbone.", wae);
-					throw wae;
-				}
+				this.notifyBackbone(notifications, 0);
 			}
 		}
 		catch (CheckedIndexOutOfBoundsException cioobe)
 		{
 			this.log.error("Couldn't find job " + jobId + ", Failed to complete job.");
 		}
+		finally
+		{
+			// Even if the backbone couldn't be informed, the job is done and shouldn't keep its map pinned
+			this.releaseJob(jobId, vehicleId);
+		}
+	}
 
+	/**
+	 * POST a list of notifications to the backbone, in order.
+	 * If the backbone can't be reached or fails, the remaining notifications are redelivered later,
+	 * so the backbone never misses that a job was completed.
+	 *
+	 * @param endpoints Backbone endpoints to POST to.
+	 * @param attempt   Number of times delivery was already attempted.
+	 */
+	private void notifyBackbone(List<String> endpoints, int attempt)
+	{
+		for (int i = 0; i < endpoints.size(); ++i)
+		{
+			String endpoint = endpoints.get(i);
+
+			try
+			{
+				this.backboneRESTUtils.post(endpoint);
+			}
+			catch (WebApplicationException wae)
+			{
+				if (wae.getResponse().getStatus() < 500)
+				{
+					// The backbone rejected the notification, sending it again won't change that
+					this.log.error("Backbone rejected notification " + endpoint + ".", wae);
+					continue;
+				}
+
+				this.scheduleNotifications(endpoints.subList(i, endpoints.size()), attempt, wae);
+				return;
+			}
+			catch (ProcessingException pe)
+			{
+				this.scheduleNotifications(endpoints.subList(i, endpoints.size()), attempt, pe);
+				return;
+			}
+		}
+	}
+
+	private void scheduleNotifications(List<String> endpoints, int attempt, Exception cause)
+	{
+		long delay = Math.min(NOTIFICATION_RETRY_DELAY << Math.min(attempt, 16), MAX_NOTIFICATION_RETRY_DELAY);
+		List<String> remaining = new ArrayList<>(endpoints);
+
+		this.log.error("Failed to POST " + remaining + " to backbone (Attempt " + (attempt + 1) + "), retrying in " + delay + "ms.", cause);
+		this.notificationExecutor.schedule(() -> this.notifyBackbone(remaining, attempt + 1), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void releaseJob(long jobId, long vehicleId)
+	{
 		try
 		{
-			this.removeJob(jobId, vehicleId);
+			Job job = this.removeJob(jobId, vehicleId);
+
+			// The job no longer needs its map, so the map can be dropped if it was replaced
+			this.waypointProvider.releaseVersion(job.getMapVersion());
 		}
 		catch (CheckedIndexOutOfBoundsException cioobe)
 		{
@@ -284,11 +343,9 @@ public class JobTracker implements MQTTListener
 		BackboneAspect backboneAspect = (BackboneAspect) this.configuration.get(AspectType.BACKBONE);
 		if ((!backboneAspect.isBackboneDebug()) && (!job.isBackboneNotified()) && (progress >= ALMOST_DONE_PERCENTAGE))
 		{
-			RESTUtils backboneRESTUtil = new RESTUtils(backboneAspect.getBackboneServerUrl());
-
 			try
 			{
-				backboneRESTUtil.post("/jobs/vehiclecloseby/" + jobId);
+				this.backboneRESTUtils.post("/jobs/vehiclecloseby/" + jobId);
 				job.setBackboneNotified(true);
 			}
 			catch (WebApplicationException | ProcessingException e)
@@ -300,20 +357,35 @@ public class JobTracker implements MQTTListener
 	}
 
 	@Autowired
-	public JobTracker(@Qualifier("jobTracker") Configuration configuration, TopicParser topicParser, VehicleManager vehicleManager, JobQueue jobQueue)
+	public JobTracker(@Qualifier("jobTracker") Configuration configuration, TopicParser topicParser, VehicleManager vehicleManager, JobQueue jobQueue, WaypointProvider waypointProvider)
 	{
 		this.log = LoggerFactory.getLogger(JobTracker.class);
 		this.configuration = configuration;
 		this.topicParser = topicParser;
 		this.vehicleManager = vehicleManager;
 		this.jobQueue = jobQueue;
+		this.waypointProvider = waypointProvider;
 
 		this.log.info("Initializing JobTracker...");
 
+		BackboneAspect backboneAspect = (BackboneAspect) configuration.get(AspectType.BACKBONE);
+		RestAspect restAspect = (RestAspect) configuration.get(AspectType.REST);
+		this.backboneRESTUtils = new ResilientRESTUtils(backboneAspect.getBackboneServerUrl(), restAspect);
+		this.notificationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "JobTracker - Backbone notifications");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// Backbone REST calls can take a while, so handle messages on our own threads.
+		// Messages of the same vehicle are handled in order.
+		MqttAspect dispatchAspect = (MqttAspect) configuration.get(AspectType.MQTT);
+		this.mqttDispatcher = new MQTTDispatcher("JobTracker", dispatchAspect.getDispatchThreads(), dispatchAspect.getDispatchQueueCapacity(), this.topicParser::getVehicleId);
+
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, this.mqttDispatcher, "JobTracker");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Core.ROUTE + "/#");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Core.PERCENTAGE + "/#");
 		}
@@ -325,7 +397,7 @@ public class JobTracker implements MQTTListener
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.messageQueueClient = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.messageQueueClient = new MQTTUtils(mqttAspect, this, this.mqttDispatcher, "JobTracker-Deletion");
 			this.messageQueueClient.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.DELETE + "/#");
 		}
 		catch (MqttException me)
@@ -343,17 +415,23 @@ public class JobTracker implements MQTTListener
 		this.log.info("Initialized JobTracker.");
 	}
 
-	public void addGlobalJob(long jobId, long vehicleId, long startId, long endId)
+	@PreDestroy
+	public void shutdown()
+	{
+		this.notificationExecutor.shutdownNow();
+	}
+
+	public void addGlobalJob(long jobId, long vehicleId, long startId, long endId, long mapVersion)
 	{
-		this.log.info("Adding new Global Job for tracking (Job ID: " + jobId + ", " + startId + " -> " + endId + ", Vehicle: " + vehicleId + ").");
-		Job job = new Job(jobId, startId, endId, vehicleId);
+		this.log.info("Adding new Global Job for tracking (Job ID: " + jobId + ", " + startId + " -> " + endId + ", Vehicle: " + vehicleId + ", Map version: " + mapVersion + ").");
+		Job job = new Job(jobId, startId, endId, vehicleId, mapVersion);
 		this.globalJobs.put(jobId, job);
 	}
 
-	public void addLocalJob(long jobId, long vehicleId, long startId, long endId)
+	public void addLocalJob(long jobId, long vehicleId, long startId, long endId, long mapVersion)
 	{
-		this.log.info("Adding new Local Job for tracking (Job ID: " + jobId + ", " + startId + " -> " + endId + ", Vehicle: " + vehicleId + ").");
-		Job job = new Job(jobId, startId, endId, vehicleId);
+		this.log.info("Adding new Local Job for tracking (Job ID: " + jobId + ", " + startId + " -> " + endId + ", Vehicle: " + vehicleId + ", Map version: " + mapVersion + ").");
+		Job job = new Job(jobId, startId, endId, vehicleId, mapVersion);
 		this.localJobs.put(jobId, job);
 	}
 
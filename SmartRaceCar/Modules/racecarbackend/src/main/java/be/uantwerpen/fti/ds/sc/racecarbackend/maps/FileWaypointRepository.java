@@ -0,0 +1,145 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import be.uantwerpen.fti.ds.sc.common.WayPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores the waypoints of a map in a file next to the map's YAML file, so the backend can run without a database.
+ * The file is a header (magic, format version, number of waypoints) followed by one fixed size record per waypoint
+ * (ID, x, y, z, w), all big endian. It's memory-mapped when loaded.
+ */
+class FileWaypointRepository
+{
+	public static final String EXTENSION = ".waypoints";
+
+	private static final int MAGIC = 0x57505453;    // "WPTS"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 3 * Integer.BYTES;
+	private static final int RECORD_SIZE = Long.BYTES + 4 * Float.BYTES;
+
+	private Logger log;
+	private Path mapPath;
+
+	public FileWaypointRepository(Path mapPath)
+	{
+		this.log = LoggerFactory.getLogger(FileWaypointRepository.class);
+		this.mapPath = mapPath;
+	}
+
+	private Path getPath(String mapName)
+	{
+		return this.mapPath.resolve(mapName + EXTENSION);
+	}
+
+	public boolean exists(String mapName)
+	{
+		return Files.isRegularFile(this.getPath(mapName));
+	}
+
+	/**
+	 * Load all waypoints of a map.
+	 * @param mapName
+	 * @return
+	 * @throws NoSuchFileException  If the map has no waypoint file.
+	 * @throws IOException          If the file couldn't be read or is corrupt.
+	 */
+	public List<WayPoint> loadWayPoints(String mapName) throws IOException
+	{
+		Path path = this.getPath(mapName);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			if (size < HEADER_SIZE)
+			{
+				String errorString = "Waypoint file " + path + " is too small (" + size + " bytes).";
+				this.log.error(errorString);
+				throw new IOException(errorString);
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			int magic = buffer.getInt();
+			int formatVersion = buffer.getInt();
+			int numWaypoints = buffer.getInt();
+
+			if ((magic != MAGIC) || (formatVersion != FORMAT_VERSION))
+			{
+				String errorString = "Waypoint file " + path + " has an unsupported format (magic " + Integer.toHexString(magic) + ", version " + formatVersion + ").";
+				this.log.error(errorString);
+				throw new IOException(errorString);
+			}
+
+			if (size != HEADER_SIZE + ((long) numWaypoints * RECORD_SIZE))
+			{
+				String errorString = "Waypoint file " + path + " should contain " + numWaypoints + " waypoints, but is " + size + " bytes.";
+				this.log.error(errorString);
+				throw new IOException(errorString);
+			}
+
+			List<WayPoint> waypoints = new ArrayList<>(numWaypoints);
+
+			for (int i = 0; i < numWaypoints; ++i)
+			{
+				waypoints.add(new WayPoint(buffer.getLong(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat()));
+			}
+
+			this.log.info("Loaded " + numWaypoints + " waypoints from " + path + ".");
+
+			return waypoints;
+		}
+	}
+
+	/**
+	 * Replace the waypoints of a map.
+	 * The file is written next to the old one and then moved into place,
+	 * so a backend loading the file concurrently never sees a partial file.
+	 * @param mapName
+	 * @param waypoints
+	 * @throws IOException
+	 */
+	public void saveWayPoints(String mapName, Collection<WayPoint> waypoints) throws IOException
+	{
+		Path path = this.getPath(mapName);
+		Path temporaryPath = this.mapPath.resolve(mapName + EXTENSION + ".part");
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (waypoints.size() * RECORD_SIZE));
+		buffer.putInt(MAGIC);
+		buffer.putInt(FORMAT_VERSION);
+		buffer.putInt(waypoints.size());
+
+		for (WayPoint waypoint: waypoints)
+		{
+			buffer.putLong(waypoint.getID());
+			buffer.putFloat(waypoint.getX());
+			buffer.putFloat(waypoint.getY());
+			buffer.putFloat(waypoint.getZ());
+			buffer.putFloat(waypoint.getW());
+		}
+
+		buffer.flip();
+
+		try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+		}
+
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		this.log.info("Saved " + waypoints.size() + " waypoints to " + path + ".");
+	}
+}
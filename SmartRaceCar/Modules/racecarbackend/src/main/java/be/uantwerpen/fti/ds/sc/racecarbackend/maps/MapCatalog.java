@@ -0,0 +1,331 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import be.uantwerpen.fti.ds.sc.common.MapInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * List of all maps in the map directory.
+ * The directory is scanned once when the catalog is started and watched for changes afterwards,
+ * maps are added, updated and removed as their files change.
+ * Every map is described by its YAML file, the PGM file with the same name is served alongside it.
+ * While the directory isn't being watched (it couldn't be read at startup, or watching failed),
+ * contains() checks the file system directly instead.
+ */
+class MapCatalog
+{
+	private static final String YAML_EXTENSION = ".yaml";
+	private static final String PGM_EXTENSION = ".pgm";
+	private static final int PGM_HEADER_SIZE = 1024;        // A PGM header should fit in this many bytes
+
+	private Logger log;
+	private Path mapPath;
+	private MapFileStore mapFileStore;
+	private Map<String, MapInfo> maps;
+	private Thread watchThread;
+	private volatile boolean watching;      // True while the catalog is kept up to date with the map directory
+
+	public MapCatalog(Path mapPath, MapFileStore mapFileStore)
+	{
+		this.log = LoggerFactory.getLogger(MapCatalog.class);
+		this.mapPath = mapPath;
+		this.mapFileStore = mapFileStore;
+		this.maps = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Parse the "key: value" pairs of a map's YAML file.
+	 * Map YAML files are flat, so there's no need for a full YAML parser.
+	 */
+	private Map<String, String> parseYaml(MapFileStore.MapFile yamlFile)
+	{
+		Map<String, String> values = new HashMap<>();
+		String yaml = StandardCharsets.UTF_8.decode(yamlFile.getContent(0, yamlFile.getSize())).toString();
+
+		for (String line: yaml.split("\n"))
+		{
+			int separator = line.indexOf(':');
+
+			if (separator > 0)
+			{
+				values.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Read the width and height from the header of a PGM file.
+	 * @return  {width, height}
+	 * @throws IOException  If the header is invalid.
+	 */
+	private int[] parsePgmHeader(MapFileStore.MapFile pgmFile) throws IOException
+	{
+		ByteBuffer header = pgmFile.getContent(0, Math.min(pgmFile.getSize(), PGM_HEADER_SIZE));
+		List<String> tokens = new ArrayList<>();
+		StringBuilder token = new StringBuilder();
+		boolean comment = false;
+
+		// The header consists of the magic number, width, height and maximum value, separated by whitespace.
+		while (header.hasRemaining() && (tokens.size() < 3))
+		{
+			char c = (char) header.get();
+
+			if (comment)
+			{
+				comment = (c != '\n');
+			}
+			else if (c == '#')
+			{
+				comment = true;
+			}
+			else if (Character.isWhitespace(c))
+			{
+				if (token.length() > 0)
+				{
+					tokens.add(token.toString());
+					token.setLength(0);
+				}
+			}
+			else
+			{
+				token.append(c);
+			}
+		}
+
+		if ((tokens.size() < 3) || (!tokens.get(0).startsWith("P")))
+		{
+			throw new IOException("Invalid PGM header.");
+		}
+
+		try
+		{
+			return new int[]{Integer.parseInt(tokens.get(1)), Integer.parseInt(tokens.get(2))};
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new IOException("Invalid PGM dimensions.", nfe);
+		}
+	}
+
+	/**
+	 * (Re)load the catalog entry of a map, or remove it if its YAML file no longer exists.
+	 * @param name
+	 */
+	private void load(String name)
+	{
+		Path yamlPath = this.mapPath.resolve(name + YAML_EXTENSION);
+		Path pgmPath = this.mapPath.resolve(name + PGM_EXTENSION);
+
+		if (!Files.isRegularFile(yamlPath))
+		{
+			this.mapFileStore.remove(yamlPath);
+			this.mapFileStore.remove(pgmPath);
+
+			if (this.maps.remove(name) != null)
+			{
+				this.log.info("Removed map \"" + name + "\" from catalog.");
+			}
+
+			return;
+		}
+
+		try
+		{
+			MapFileStore.MapFile yamlFile = this.mapFileStore.get(yamlPath);
+			Map<String, String> yaml = this.parseYaml(yamlFile);
+			float resolution = 0;
+
+			try
+			{
+				resolution = Float.parseFloat(yaml.getOrDefault("resolution", "0"));
+			}
+			catch (NumberFormatException nfe)
+			{
+				this.log.warn("Map \"" + name + "\" has an invalid resolution: \"" + yaml.get("resolution") + "\".");
+			}
+
+			long pgmSize = 0;
+			String pgmHash = null;
+			int width = 0;
+			int height = 0;
+
+			if (Files.isRegularFile(pgmPath))
+			{
+				MapFileStore.MapFile pgmFile = this.mapFileStore.get(pgmPath);
+				int[] dimensions = this.parsePgmHeader(pgmFile);
+
+				pgmSize = pgmFile.getSize();
+				pgmHash = pgmFile.getHash();
+				width = dimensions[0];
+				height = dimensions[1];
+			}
+
+			MapInfo mapInfo = new MapInfo(name, yaml.get("image"), yamlFile.getSize(), yamlFile.getHash(), pgmSize, pgmHash, width, height, resolution);
+			this.maps.put(name, mapInfo);
+
+			this.log.info("Loaded map \"" + name + "\" into catalog (" + width + "x" + height + ", " + pgmSize + " bytes).");
+		}
+		catch (IOException ioe)
+		{
+			// The file may still be being written, we'll get another event when it's done
+			this.log.warn("Failed to load map \"" + name + "\" into catalog.", ioe);
+			this.maps.remove(name);
+		}
+	}
+
+	private String getMapName(Path file)
+	{
+		String fileName = file.getFileName().toString();
+
+		if (fileName.endsWith(YAML_EXTENSION))
+		{
+			return fileName.substring(0, fileName.length() - YAML_EXTENSION.length());
+		}
+		else if (fileName.endsWith(PGM_EXTENSION))
+		{
+			return fileName.substring(0, fileName.length() - PGM_EXTENSION.length());
+		}
+
+		return null;
+	}
+
+	private void scan() throws IOException
+	{
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.mapPath, "*" + YAML_EXTENSION))
+		{
+			for (Path file: files)
+			{
+				this.load(this.getMapName(file));
+			}
+		}
+
+		this.log.info("Map catalog contains " + this.maps.size() + " maps.");
+	}
+
+	private void watch(WatchService watchService)
+	{
+		try
+		{
+			while (!Thread.currentThread().isInterrupted())
+			{
+				WatchKey key = watchService.take();
+				Set<String> changedMaps = new HashSet<>();
+				boolean overflow = false;
+
+				for (WatchEvent<?> event: key.pollEvents())
+				{
+					if (event.kind() == OVERFLOW)
+					{
+						overflow = true;
+						continue;
+					}
+
+					String name = this.getMapName((Path) event.context());
+
+					if (name != null)
+					{
+						changedMaps.add(name);
+					}
+				}
+
+				if (overflow)
+				{
+					this.log.warn("Missed changes to the map directory, rescanning.");
+					this.maps.clear();
+					this.scan();
+				}
+				else
+				{
+					changedMaps.forEach(this::load);
+				}
+
+				if (!key.reset())
+				{
+					this.log.error("Map directory " + this.mapPath + " is no longer accessible, stopped watching it.");
+					return;
+				}
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException ioe)
+		{
+			this.log.error("Failed to rescan map directory " + this.mapPath + ", stopped watching it.", ioe);
+		}
+		finally
+		{
+			this.watching = false;
+
+			try
+			{
+				watchService.close();
+			}
+			catch (IOException ioe)
+			{
+				this.log.warn("Failed to close WatchService.", ioe);
+			}
+		}
+	}
+
+	/**
+	 * Scan the map directory and start watching it for changes.
+	 * @throws IOException  If the map directory can't be read.
+	 */
+	public void start() throws IOException
+	{
+		WatchService watchService = this.mapPath.getFileSystem().newWatchService();
+
+		// Register before scanning, so changes made during the scan aren't missed
+		this.mapPath.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+		this.scan();
+
+		this.watching = true;
+		this.watchThread = new Thread(() -> this.watch(watchService), "MapCatalogWatcher");
+		this.watchThread.setDaemon(true);
+		this.watchThread.start();
+	}
+
+	/**
+	 * Check whether a map exists.
+	 * If the catalog isn't kept up to date, the map directory is checked for the map's YAML file.
+	 * @param name
+	 * @return
+	 */
+	public boolean contains(String name)
+	{
+		if (this.watching)
+		{
+			return this.maps.containsKey(name);
+		}
+
+		Path yamlPath = this.mapPath.resolve(name + YAML_EXTENSION).normalize();
+
+		// Don't let a map name point outside of the map directory
+		return yamlPath.startsWith(this.mapPath) && Files.isRegularFile(yamlPath);
+	}
+
+	/**
+	 * Return all maps in the catalog, sorted by name.
+	 * @return
+	 */
+	public List<MapInfo> getMaps()
+	{
+		return this.maps.values().stream()
+				.sorted(Comparator.comparing(MapInfo::getName))
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,259 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps map files memory-mapped so they can be served without reading them again for every request.
+ * The SHA-256 hash of every file is calculated once, when it's mapped, and used as its ETag.
+ * Files are also gzipped once, occupancy grids are mostly uniform and compress very well.
+ * A file is mapped again when its size or modification time changes.
+ *
+ * Map files must be replaced by writing a new file and renaming it into place.
+ * Requests that are still being served keep reading the old file, which stays intact until they're done.
+ * Truncating a mapped file while it's read crashes the reader (SIGBUS), so a file that is rewritten in place
+ * (it changed, but it's still the same file) is read into memory instead of being mapped.
+ */
+class MapFileStore
+{
+	/**
+	 * A memory-mapped map file, or a copy of it in memory if it was rewritten in place.
+	 */
+	static class MapFile
+	{
+		private final long lastModified;
+		private final Object fileKey;              // Identifies the file on disk (device and inode), null if the platform can't tell
+		private final ByteBuffer content;
+		private final String eTag;
+		private final byte[] compressedContent;    // Gzipped content, null if compressing doesn't make the file smaller
+
+		private MapFile(long lastModified, Object fileKey, ByteBuffer content, String eTag, byte[] compressedContent)
+		{
+			this.lastModified = lastModified;
+			this.fileKey = fileKey;
+			this.content = content;
+			this.eTag = eTag;
+			this.compressedContent = compressedContent;
+		}
+
+		public long getSize()
+		{
+			return this.content.limit();
+		}
+
+		/**
+		 * Return the hex encoded SHA-256 hash of the file's content.
+		 * @return
+		 */
+		public String getHash()
+		{
+			return this.eTag.substring(1, this.eTag.length() - 1);
+		}
+
+		/**
+		 * Return the strong ETag of the file, including quotes.
+		 * @return
+		 */
+		public String getETag()
+		{
+			return this.eTag;
+		}
+
+		/**
+		 * Return a view on part of the file's content.
+		 * @param start     Offset of the first byte.
+		 * @param length    Number of bytes.
+		 * @return
+		 */
+		public ByteBuffer getContent(long start, long length)
+		{
+			ByteBuffer view = this.content.duplicate();
+			view.position((int) start);
+			view.limit((int) (start + length));
+			return view;
+		}
+
+		public boolean isCompressed()
+		{
+			return this.compressedContent != null;
+		}
+
+		/**
+		 * Return the strong ETag of the gzipped file, including quotes.
+		 * This differs from the ETag of the file itself, as both representations have different content.
+		 * @return
+		 */
+		public String getCompressedETag()
+		{
+			return this.eTag.substring(0, this.eTag.length() - 1) + "-gzip\"";
+		}
+
+		/**
+		 * Return the gzipped content of the file.
+		 * Only available if isCompressed() returns true.
+		 * @return
+		 */
+		public ByteBuffer getCompressedContent()
+		{
+			return ByteBuffer.wrap(this.compressedContent).asReadOnlyBuffer();
+		}
+	}
+
+	private static final int COMPRESSION_CHUNK_SIZE = 64 * 1024;
+
+	private Logger log;
+	private Map<Path, MapFile> files;
+
+	public MapFileStore()
+	{
+		this.log = LoggerFactory.getLogger(MapFileStore.class);
+		this.files = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Map a file, or read it into memory.
+	 * @param path
+	 * @param attributes    Attributes of the file, read before it's opened.
+	 * @param memoryMap     False to copy the file into memory, e.g. because it's rewritten in place.
+	 */
+	private MapFile load(Path path, BasicFileAttributes attributes, boolean memoryMap) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			if (size > Integer.MAX_VALUE)
+			{
+				String errorString = "Map file " + path + " is too large to be served (" + size + " bytes).";
+				this.log.error(errorString);
+				throw new IOException(errorString);
+			}
+
+			ByteBuffer content;
+
+			if (memoryMap)
+			{
+				// The mapping stays valid after the channel is closed
+				content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			else
+			{
+				content = ByteBuffer.allocate((int) size);
+
+				while (content.hasRemaining())
+				{
+					if (channel.read(content) < 0)
+					{
+						// The file was truncated while we were reading it, serve what we got
+						break;
+					}
+				}
+
+				content.flip();
+				content = content.asReadOnlyBuffer();
+			}
+
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(content.duplicate());
+			String eTag = "\"" + String.format("%064x", new BigInteger(1, digest.digest())) + "\"";
+
+			byte[] compressedContent = this.compress(content.duplicate());
+
+			if (compressedContent.length >= content.limit())
+			{
+				compressedContent = null;
+			}
+
+			this.log.info((memoryMap ? "Mapped " : "Read ") + path + " (" + content.limit() + " bytes, " + ((compressedContent != null) ? compressedContent.length + " bytes gzipped" : "not compressed") + "), ETag " + eTag + ".");
+
+			return new MapFile(attributes.lastModifiedTime().toMillis(), attributes.fileKey(), content, eTag, compressedContent);
+		}
+		catch (NoSuchAlgorithmException nsae)
+		{
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException("SHA-256 is not supported.", nsae);
+		}
+	}
+
+	private byte[] compress(ByteBuffer content) throws IOException
+	{
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		byte[] chunk = new byte[COMPRESSION_CHUNK_SIZE];
+
+		try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed, COMPRESSION_CHUNK_SIZE))
+		{
+			while (content.hasRemaining())
+			{
+				int length = Math.min(chunk.length, content.remaining());
+				content.get(chunk, 0, length);
+				gzipStream.write(chunk, 0, length);
+			}
+		}
+
+		return compressed.toByteArray();
+	}
+
+	/**
+	 * Return a map file, mapping it if it wasn't mapped yet or changed since it was mapped.
+	 * @param path
+	 * @return
+	 * @throws NoSuchFileException  If the file doesn't exist.
+	 * @throws IOException          If the file couldn't be read.
+	 */
+	public MapFile get(Path path) throws IOException
+	{
+		if (!Files.isRegularFile(path))
+		{
+			throw new NoSuchFileException(path.toString());
+		}
+
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		MapFile file = this.files.get(path);
+
+		if (file == null)
+		{
+			file = this.load(path, attributes, true);
+			this.files.put(path, file);
+		}
+		else if ((file.lastModified != attributes.lastModifiedTime().toMillis()) || (file.getSize() != attributes.size()))
+		{
+			// A file that was renamed into place is a new file, the old one stays intact for the requests still reading it
+			boolean replaced = (attributes.fileKey() != null) && (!attributes.fileKey().equals(file.fileKey));
+
+			if (!replaced)
+			{
+				this.log.warn("Map file " + path + " was rewritten in place, reading it into memory. Map files should be replaced by renaming a new file into place.");
+			}
+
+			file = this.load(path, attributes, replaced);
+			this.files.put(path, file);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Forget a file, so its mapping can be released.
+	 * @param path
+	 */
+	public void remove(Path path)
+	{
+		this.files.remove(path);
+	}
+}
@@ -11,8 +11,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,12 +18,21 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.ws.rs.core.MediaType;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 @Controller
@@ -39,6 +46,8 @@ public class MapManager implements MQTTListener
 	private MQTTUtils mqttUtils;
 
 	private WaypointProvider waypointProvider;
+	private MapFileStore mapFileStore;
+	private MapCatalog mapCatalog;
 
 	@Autowired
 	public MapManager(@Qualifier("mapManager") Configuration configuration, @Autowired WaypointProvider waypointProvider)
@@ -54,7 +63,7 @@ public class MapManager implements MQTTListener
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, "MapManager");
 		}
 		catch (MqttException me)
 		{
@@ -62,6 +71,17 @@ public class MapManager implements MQTTListener
 		}
 
 		this.waypointProvider = waypointProvider;
+		this.mapFileStore = new MapFileStore();
+		this.mapCatalog = new MapCatalog(Paths.get(mapManagerAspect.getMapPath()).toAbsolutePath().normalize(), this.mapFileStore);
+
+		try
+		{
+			this.mapCatalog.start();
+		}
+		catch (IOException ioe)
+		{
+			this.log.error("Failed to load map catalog from " + mapManagerAspect.getMapPath() + ".", ioe);
+		}
 
 		this.log.info("Initialized Map Manager.");
 	}
@@ -78,63 +98,223 @@ public class MapManager implements MQTTListener
 	}
 
 	/**
-	 * REST GET server service to download a map's PGM file by name.
-	 *
-	 * @param mapName the name of the map
-	 * @return REST response of the type Octet-stream containing the file.
+	 * Parse the value of a Range header.
+	 * Only single byte ranges are supported, for anything else the whole file should be served.
+	 * @param range     Value of the Range header, may be null.
+	 * @param size      Size of the file.
+	 * @return  The first and last byte (inclusive) to serve, or null if the whole file should be served.
+	 * @throws IndexOutOfBoundsException    If the range doesn't overlap with the file.
 	 */
-	@RequestMapping(value="/carmanager/getmappgm/{mapName}", method=RequestMethod.GET, produces=MediaType.APPLICATION_OCTET_STREAM)
-	public @ResponseBody ResponseEntity<Resource> getMapPGM(@PathVariable("mapName") String mapName)
+	private long[] parseRange(String range, long size) throws IndexOutOfBoundsException
 	{
+		if ((range == null) || (!range.startsWith("bytes=")) || (range.contains(",")))
+		{
+			return null;
+		}
+
+		String[] bounds = range.substring("bytes=".length()).trim().split("-", -1);
+
+		if (bounds.length != 2)
+		{
+			return null;
+		}
+
 		try
 		{
-			MapManagerAspect mapManagerAspect = (MapManagerAspect) this.configuration.get(AspectType.MAP_MANAGER);
-			String resourcePath = mapManagerAspect.getMapPath() + "/" + mapName + ".pgm";
+			long start;
+			long end;
 
-			InputStreamResource resource = new InputStreamResource(new FileInputStream(resourcePath));
-			HttpHeaders headers = new HttpHeaders();
-			headers.add("content-disposition", "attachment");
+			if (bounds[0].isEmpty())
+			{
+				// Suffix range, the last N bytes
+				long suffixLength = Long.parseLong(bounds[1]);
+				start = Math.max(0, size - suffixLength);
+				end = size - 1;
 
-			this.log.info("Serving request for " + resourcePath);
+				if (suffixLength == 0)
+				{
+					start = size;
+				}
+			}
+			else
+			{
+				start = Long.parseLong(bounds[0]);
+				end = bounds[1].isEmpty() ? size - 1 : Math.min(Long.parseLong(bounds[1]), size - 1);
+
+				if (end < start)
+				{
+					return null;
+				}
+			}
+
+			if (start >= size)
+			{
+				throw new IndexOutOfBoundsException("Range \"" + range + "\" is outside of the file (" + size + " bytes).");
+			}
 
-			return new ResponseEntity<>(resource, headers, HttpStatus.OK);
+			return new long[]{start, end};
 		}
-		catch(IOException ioe)
+		catch (NumberFormatException nfe)
 		{
-			String errorString = "Error fetching " + mapName + ".pgm.";
-			this.log.error(errorString, ioe);
-			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			return null;
 		}
 	}
 
 	/**
-	 * REST GET server service to download a map's YAML file by name.
+	 * Serve a file from the map directory.
+	 * Files are memory-mapped and written straight from the mapping.
+	 * Responses carry a strong ETag, so clients can revalidate with If-None-Match,
+	 * and single byte ranges are supported, so interrupted downloads can be resumed.
+	 * Clients that accept gzip get the compressed file, unless they request a range.
 	 *
-	 * @param mapName the name of the map
-	 * @return REST response of the type Octet-stream containing the file.
+	 * @param fileName      Name of the file in the map directory.
+	 * @param acceptEncoding    Value of the Accept-Encoding header, may be null.
+	 * @param ifNoneMatch   Value of the If-None-Match header, may be null.
+	 * @param ifRange       Value of the If-Range header, may be null.
+	 * @param range         Value of the Range header, may be null.
+	 * @return
 	 */
-	@RequestMapping(value = "/carmanager/getmapyaml/{mapName}", method = RequestMethod.GET, produces = MediaType.APPLICATION_OCTET_STREAM)
-	public @ResponseBody ResponseEntity<Resource> getMapYAML(@PathVariable("mapName") final String mapName)
+	private ResponseEntity<StreamingResponseBody> serveMapFile(String fileName, String acceptEncoding, String ifNoneMatch, String ifRange, String range)
 	{
-		try
-		{
-			MapManagerAspect mapManagerAspect = (MapManagerAspect) this.configuration.get(AspectType.MAP_MANAGER);
-			String resourcePath = mapManagerAspect.getMapPath() + "/" + mapName + ".yaml";
+		MapManagerAspect mapManagerAspect = (MapManagerAspect) this.configuration.get(AspectType.MAP_MANAGER);
+		Path mapPath = Paths.get(mapManagerAspect.getMapPath()).toAbsolutePath().normalize();
+		Path resourcePath = mapPath.resolve(fileName).normalize();
 
-			InputStreamResource resource = new InputStreamResource(new FileInputStream(resourcePath));
-			HttpHeaders headers = new HttpHeaders();
-			headers.add("content-disposition", "attachment");
+		if (!resourcePath.startsWith(mapPath))
+		{
+			String errorString = "Refusing to serve " + resourcePath + ", it isn't in the map directory.";
+			this.log.warn(errorString);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
 
-			this.log.info("Serving request for " + resourcePath);
+		MapFileStore.MapFile file;
 
-			return new ResponseEntity<>(resource, headers, HttpStatus.OK);
+		try
+		{
+			file = this.mapFileStore.get(resourcePath);
 		}
 		catch (IOException ioe)
 		{
-			String errorString = "Error fetching " + mapName + ".yaml.";
+			String errorString = "Error fetching " + fileName + ".";
 			this.log.error(errorString, ioe);
 			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		}
+
+		boolean compressed = (range == null) && (acceptEncoding != null) && (acceptEncoding.contains("gzip")) && (file.isCompressed());
+		String eTag = compressed ? file.getCompressedETag() : file.getETag();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("content-disposition", "attachment");
+		headers.setETag(eTag);
+		headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+		headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+		if ((ifNoneMatch != null) && ((ifNoneMatch.trim().equals("*")) || (Arrays.asList(ifNoneMatch.split("\\s*,\\s*")).contains(eTag))))
+		{
+			this.log.info("Serving request for " + resourcePath + ", not modified.");
+			return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+		}
+
+		if (compressed)
+		{
+			ByteBuffer content = file.getCompressedContent();
+			headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+			headers.setContentLength(content.remaining());
+
+			this.log.info("Serving request for " + resourcePath + " (" + content.remaining() + " bytes gzipped, " + file.getSize() + " bytes uncompressed)");
+
+			return new ResponseEntity<>(outputStream -> this.write(content, outputStream), headers, HttpStatus.OK);
+		}
+
+		long start = 0;
+		long end = file.getSize() - 1;
+		HttpStatus status = HttpStatus.OK;
+
+		// A range is only served if the client's copy is still the current version of the file
+		if ((ifRange == null) || (ifRange.equals(file.getETag())))
+		{
+			try
+			{
+				long[] bounds = this.parseRange(range, file.getSize());
+
+				if (bounds != null)
+				{
+					start = bounds[0];
+					end = bounds[1];
+					status = HttpStatus.PARTIAL_CONTENT;
+					headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + file.getSize());
+				}
+			}
+			catch (IndexOutOfBoundsException ioobe)
+			{
+				this.log.warn("Unsatisfiable range request for " + resourcePath + ".", ioobe);
+				headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + file.getSize());
+				return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+			}
+		}
+
+		long length = end - start + 1;
+		ByteBuffer content = file.getContent(start, length);
+		headers.setContentLength(length);
+
+		this.log.info("Serving request for " + resourcePath + " (" + length + " bytes, " + status + ")");
+
+		return new ResponseEntity<>(outputStream -> this.write(content, outputStream), headers, status);
+	}
+
+	private void write(ByteBuffer content, OutputStream outputStream) throws IOException
+	{
+		WritableByteChannel channel = Channels.newChannel(outputStream);
+
+		while (content.hasRemaining())
+		{
+			channel.write(content);
+		}
+	}
+
+	/**
+	 * REST GET server service to download a map's PGM file by name.
+	 *
+	 * @param mapName the name of the map
+	 * @return REST response of the type Octet-stream containing the file.
+	 */
+	@RequestMapping(value="/carmanager/getmappgm/{mapName}", method=RequestMethod.GET, produces=MediaType.APPLICATION_OCTET_STREAM)
+	public @ResponseBody ResponseEntity<StreamingResponseBody> getMapPGM(@PathVariable("mapName") String mapName,
+																		 @RequestHeader(value=HttpHeaders.ACCEPT_ENCODING, required=false) String acceptEncoding,
+																		 @RequestHeader(value=HttpHeaders.IF_NONE_MATCH, required=false) String ifNoneMatch,
+																		 @RequestHeader(value=HttpHeaders.IF_RANGE, required=false) String ifRange,
+																		 @RequestHeader(value=HttpHeaders.RANGE, required=false) String range)
+	{
+		return this.serveMapFile(mapName + ".pgm", acceptEncoding, ifNoneMatch, ifRange, range);
+	}
+
+	/**
+	 * REST GET server service to download a map's YAML file by name.
+	 *
+	 * @param mapName the name of the map
+	 * @return REST response of the type Octet-stream containing the file.
+	 */
+	@RequestMapping(value = "/carmanager/getmapyaml/{mapName}", method = RequestMethod.GET, produces = MediaType.APPLICATION_OCTET_STREAM)
+	public @ResponseBody ResponseEntity<StreamingResponseBody> getMapYAML(@PathVariable("mapName") final String mapName,
+																		  @RequestHeader(value=HttpHeaders.ACCEPT_ENCODING, required=false) String acceptEncoding,
+																		  @RequestHeader(value=HttpHeaders.IF_NONE_MATCH, required=false) String ifNoneMatch,
+																		  @RequestHeader(value=HttpHeaders.IF_RANGE, required=false) String ifRange,
+																		  @RequestHeader(value=HttpHeaders.RANGE, required=false) String range)
+	{
+		return this.serveMapFile(mapName + ".yaml", acceptEncoding, ifNoneMatch, ifRange, range);
+	}
+
+	/**
+	 * REST GET server service to get the catalog of all available maps.
+	 * Every map is listed with the size and hash of its files,
+	 * so a Core can check whether its local copy is up to date.
+	 *
+	 * @return REST response of the type JSON containing all maps, sorted by name.
+	 */
+	@RequestMapping(value="/carmanager/getmapcatalog", method=RequestMethod.GET, produces=MediaType.APPLICATION_JSON)
+	public @ResponseBody ResponseEntity<String> getMapCatalog()
+	{
+		return new ResponseEntity<>(JSONUtils.objectToJSONStringWithKeyWord("maps", this.mapCatalog.getMaps()), HttpStatus.OK);
 	}
 
 	/**
@@ -149,6 +329,112 @@ public class MapManager implements MQTTListener
 		return new ResponseEntity<>(JSONUtils.objectToJSONStringWithKeyWord("wayPoints", waypoints), HttpStatus.OK);
 	}
 
+	/**
+	 * REST GET server service to get the waypoints closest to a position.
+	 *
+	 * @param x X coordinate of the position.
+	 * @param y Y coordinate of the position.
+	 * @param k Maximum number of waypoints to return.
+	 * @return REST response of the type JSON containing the waypoints, closest first.
+	 */
+	@RequestMapping(value="/carmanager/getnearestwaypoints", method=RequestMethod.GET, produces=MediaType.APPLICATION_JSON)
+	public @ResponseBody ResponseEntity<String> getNearestWayPoints(@RequestParam("x") float x, @RequestParam("y") float y, @RequestParam(value="k", defaultValue="1") int k)
+	{
+		if ((k <= 0) || (!Float.isFinite(x)) || (!Float.isFinite(y)))
+		{
+			String errorString = "Requested " + k + " nearest waypoints to (" + x + ", " + y + "), k must be positive and the position finite.";
+			this.log.error(errorString);
+			return new ResponseEntity<>(errorString, HttpStatus.BAD_REQUEST);
+		}
+
+		List<WayPoint> waypoints = this.waypointProvider.getNearest(x, y, k);
+		return new ResponseEntity<>(JSONUtils.objectToJSONStringWithKeyWord("wayPoints", waypoints), HttpStatus.OK);
+	}
+
+	/**
+	 * REST GET server service to get all waypoints within a distance of a position.
+	 *
+	 * @param x      X coordinate of the position.
+	 * @param y      Y coordinate of the position.
+	 * @param radius Maximum distance to the position.
+	 * @return REST response of the type JSON containing the waypoints, closest first.
+	 */
+	@RequestMapping(value="/carmanager/getwaypointsinradius", method=RequestMethod.GET, produces=MediaType.APPLICATION_JSON)
+	public @ResponseBody ResponseEntity<String> getWayPointsInRadius(@RequestParam("x") float x, @RequestParam("y") float y, @RequestParam("radius") float radius)
+	{
+		// NaN fails the comparison as well
+		if ((!(radius >= 0)) || (!Float.isFinite(x)) || (!Float.isFinite(y)))
+		{
+			String errorString = "Requested waypoints within " + radius + " of (" + x + ", " + y + "), the radius must be non-negative and the position finite.";
+			this.log.error(errorString);
+			return new ResponseEntity<>(errorString, HttpStatus.BAD_REQUEST);
+		}
+
+		List<WayPoint> waypoints = this.waypointProvider.getWithinRadius(x, y, radius);
+		return new ResponseEntity<>(JSONUtils.objectToJSONStringWithKeyWord("wayPoints", waypoints), HttpStatus.OK);
+	}
+
+	/**
+	 * REST command to reload the waypoints of the current map.
+	 * Should be called after the waypoints in the database were modified.
+	 *
+	 * @param ids IDs of the modified waypoints, all waypoints are reloaded if omitted.
+	 * @return
+	 */
+	@RequestMapping(value="/carmanager/refreshwaypoints", method=RequestMethod.POST, produces=MediaType.TEXT_PLAIN)
+	public @ResponseBody ResponseEntity<String> refreshWayPoints(@RequestParam(value="ids", required=false) List<Long> ids)
+	{
+		try
+		{
+			if (ids == null)
+			{
+				this.waypointProvider.refresh();
+			}
+			else
+			{
+				this.waypointProvider.refresh(ids);
+			}
+
+			return new ResponseEntity<>(HttpStatus.OK);
+		}
+		catch (Exception e)
+		{
+			String errorString = "Failed to refresh waypoints.";
+			this.log.error(errorString, e);
+			return new ResponseEntity<>(errorString, HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * REST command to copy the waypoints of a map from the database into a waypoint file next to the map.
+	 * Once imported, the backend can serve the map's waypoints without a database (Maps.waypoints.source = file).
+	 *
+	 * @param mapName name of the map
+	 * @return REST response containing the number of imported waypoints.
+	 */
+	@RequestMapping(value="/carmanager/importwaypoints/{mapName}", method=RequestMethod.POST, produces=MediaType.TEXT_PLAIN)
+	public @ResponseBody ResponseEntity<String> importWayPoints(@PathVariable("mapName") String mapName)
+	{
+		if (!this.mapCatalog.contains(mapName))
+		{
+			String errorString = "Can't import waypoints of map \"" + mapName + "\", the map doesn't exist.";
+			this.log.warn(errorString);
+			return new ResponseEntity<>(errorString, HttpStatus.NOT_FOUND);
+		}
+
+		try
+		{
+			int numWaypoints = this.waypointProvider.importWaypoints(mapName);
+			return new ResponseEntity<>(Integer.toString(numWaypoints), HttpStatus.OK);
+		}
+		catch (Exception e)
+		{
+			String errorString = "Failed to import waypoints of map \"" + mapName + "\".";
+			this.log.error(errorString, e);
+			return new ResponseEntity<>(errorString, HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
 	/**
 	 * Rest command that can be called to change the map used by the racecars at runtime
 	 *
@@ -158,10 +444,7 @@ public class MapManager implements MQTTListener
 	@RequestMapping(value = "/carmanager/changeMap/{mapName}", method = RequestMethod.GET, produces = MediaType.TEXT_PLAIN)
 	public @ResponseBody ResponseEntity<String> changeMap(@PathVariable("mapName") String mapName)
 	{
-		MapManagerAspect mapManagerAspect = (MapManagerAspect) this.configuration.get(AspectType.MAP_MANAGER);
-		File mapFile = new File(mapManagerAspect.getMapPath() + "/" + mapName + ".yaml");
-
-		if (mapFile.exists() && mapFile.isFile())
+		if (this.mapCatalog.contains(mapName))
 		{
 			this.currentMap = mapName;
 
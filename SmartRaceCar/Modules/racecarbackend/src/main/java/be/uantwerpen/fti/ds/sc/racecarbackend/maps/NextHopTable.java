@@ -0,0 +1,298 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * All-pairs next-hop table of a waypoint graph.
+ * Entry (from, to) holds the waypoint after "from" on the shortest path to "to",
+ * so a route is reconstructed by following next hops, without searching the graph.
+ * Entries are shorts for graphs with up to Short.MAX_VALUE waypoints, ints otherwise.
+ * The table is built with one Dijkstra search per waypoint, spread over a fork-join pool.
+ * Tables can be saved to a file and are memory-mapped when loaded again.
+ */
+class NextHopTable
+{
+	private static final int MAGIC = 0x4E484F50;    // "NHOP"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+	private static final int UNREACHABLE = -1;
+	private static final int SOURCES_PER_TASK = 16;  // Number of searches a fork-join task runs without splitting further
+
+	/**
+	 * Fills the rows of a range of start waypoints.
+	 */
+	private static class BuildTask extends RecursiveAction
+	{
+		private final WaypointGraph graph;
+		private final NextHopTable table;
+		private final int from;
+		private final int to;
+
+		public BuildTask(WaypointGraph graph, NextHopTable table, int from, int to)
+		{
+			this.graph = graph;
+			this.table = table;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (this.to - this.from > SOURCES_PER_TASK)
+			{
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new BuildTask(this.graph, this.table, this.from, middle), new BuildTask(this.graph, this.table, middle, this.to));
+				return;
+			}
+
+			int size = this.graph.size();
+			float[] distances = new float[size];
+			int[] previous = new int[size];
+			int[] order = new int[size];
+			int[] firstHops = new int[size];
+
+			for (int start = this.from; start < this.to; ++start)
+			{
+				for (int end = 0; end < size; ++end)
+				{
+					this.table.set(start, end, UNREACHABLE);
+				}
+
+				int numVisited = this.graph.search(start, -1, distances, previous, order);
+
+				// Waypoints are visited after their previous waypoint, so its first hop is already known
+				for (int i = 0; i < numVisited; ++i)
+				{
+					int end = order[i];
+
+					if (end == start)
+					{
+						firstHops[end] = start;
+					}
+					else if (previous[end] == start)
+					{
+						firstHops[end] = end;
+					}
+					else
+					{
+						firstHops[end] = firstHops[previous[end]];
+					}
+
+					this.table.set(start, end, firstHops[end]);
+				}
+			}
+		}
+	}
+
+	private final int size;
+	private final int entrySize;
+	private final ByteBuffer hops;
+
+	private NextHopTable(int size, ByteBuffer hops)
+	{
+		this.size = size;
+		this.entrySize = getEntrySize(size);
+		this.hops = hops;
+	}
+
+	private static int getEntrySize(int size)
+	{
+		return (size <= Short.MAX_VALUE) ? Short.BYTES : Integer.BYTES;
+	}
+
+	/**
+	 * Return how many bytes the table of a graph would take.
+	 * @param size  Number of waypoints in the graph.
+	 * @return
+	 */
+	public static long getMemoryUsage(int size)
+	{
+		return (long) size * size * getEntrySize(size);
+	}
+
+	/**
+	 * Build the table of a graph.
+	 * @param graph
+	 * @param pool  Pool the searches are run on.
+	 * @return
+	 * @throws IllegalArgumentException If the table would be too large to fit in a single buffer.
+	 */
+	public static NextHopTable build(WaypointGraph graph, ForkJoinPool pool) throws IllegalArgumentException
+	{
+		long memoryUsage = getMemoryUsage(graph.size());
+
+		if (memoryUsage > Integer.MAX_VALUE - HEADER_SIZE)
+		{
+			throw new IllegalArgumentException("A next-hop table of " + graph.size() + " waypoints would take " + memoryUsage + " bytes.");
+		}
+
+		NextHopTable table = new NextHopTable(graph.size(), ByteBuffer.allocate((int) memoryUsage));
+		pool.invoke(new BuildTask(graph, table, 0, graph.size()));
+		return table;
+	}
+
+	/**
+	 * Load a table that was saved by save().
+	 * @param path
+	 * @param graph The graph the table should belong to.
+	 * @return  The table, or null if the file belongs to another graph.
+	 * @throws IOException  If the file couldn't be read or is corrupt.
+	 */
+	public static NextHopTable load(Path path, WaypointGraph graph) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			if (size < HEADER_SIZE)
+			{
+				throw new IOException("Next-hop table " + path + " is too small (" + size + " bytes).");
+			}
+
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			if ((buffer.getInt() != MAGIC) || (buffer.getInt() != FORMAT_VERSION))
+			{
+				throw new IOException("Next-hop table " + path + " has an unsupported format.");
+			}
+
+			int numWaypoints = buffer.getInt();
+			long fingerprint = buffer.getLong();
+
+			if ((numWaypoints != graph.size()) || (fingerprint != graph.getFingerprint()))
+			{
+				return null;
+			}
+
+			if (size != HEADER_SIZE + getMemoryUsage(numWaypoints))
+			{
+				throw new IOException("Next-hop table " + path + " should contain " + numWaypoints + " waypoints, but is " + size + " bytes.");
+			}
+
+			return new NextHopTable(numWaypoints, buffer.slice());
+		}
+	}
+
+	/**
+	 * Save the table to a file.
+	 * The file is written next to the old one and then moved into place.
+	 * @param path
+	 * @param graph The graph the table belongs to.
+	 * @throws IOException
+	 */
+	public void save(Path path, WaypointGraph graph) throws IOException
+	{
+		Path temporaryPath = path.resolveSibling(path.getFileName() + ".part");
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.putInt(this.size);
+		header.putLong(graph.getFingerprint());
+		header.flip();
+
+		ByteBuffer hops = this.hops.duplicate();
+		hops.clear();
+
+		try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (header.hasRemaining())
+			{
+				channel.write(header);
+			}
+
+			while (hops.hasRemaining())
+			{
+				channel.write(hops);
+			}
+		}
+
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void set(int from, int to, int hop)
+	{
+		int index = ((from * this.size) + to) * this.entrySize;
+
+		if (this.entrySize == Short.BYTES)
+		{
+			this.hops.putShort(index, (short) hop);
+		}
+		else
+		{
+			this.hops.putInt(index, hop);
+		}
+	}
+
+	/**
+	 * Return the waypoint after "from" on the shortest path to "to".
+	 * @param from
+	 * @param to
+	 * @return  The next waypoint, "to" itself if from == to, or -1 if "to" can't be reached.
+	 */
+	public int getNextHop(int from, int to)
+	{
+		int index = ((from * this.size) + to) * this.entrySize;
+
+		if (this.entrySize == Short.BYTES)
+		{
+			return this.hops.getShort(index);
+		}
+		else
+		{
+			return this.hops.getInt(index);
+		}
+	}
+
+	/**
+	 * Reconstruct the shortest path between two waypoints.
+	 * @param start
+	 * @param end
+	 * @return  Indices of the waypoints on the path, including start and end, or null if end can't be reached.
+	 */
+	public int[] getPath(int start, int end)
+	{
+		if (this.getNextHop(start, end) == UNREACHABLE)
+		{
+			return null;
+		}
+
+		int length = 1;
+
+		for (int waypoint = start; waypoint != end; waypoint = this.getNextHop(waypoint, end))
+		{
+			++length;
+		}
+
+		int[] path = new int[length];
+		path[0] = start;
+
+		for (int i = 1; i < length; ++i)
+		{
+			path[i] = this.getNextHop(path[i - 1], end);
+		}
+
+		return path;
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	public long getMemoryUsage()
+	{
+		return this.hops.capacity();
+	}
+}
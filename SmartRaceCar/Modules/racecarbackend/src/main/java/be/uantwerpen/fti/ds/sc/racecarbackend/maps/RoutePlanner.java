@@ -0,0 +1,250 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
+import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
+import be.uantwerpen.fti.ds.sc.common.configuration.CostAspect;
+import be.uantwerpen.fti.ds.sc.common.configuration.MapManagerAspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plans routes over the waypoint graph of a map.
+ * Graphs are built when the waypoints of a map are loaded. For maps that aren't too large,
+ * a next-hop table is built (or loaded from the map directory) in the background, after which routes are looked up without searching.
+ * Until then, routes are searched and cached per graph.
+ * Everything is dropped together with the waypoints it was built from.
+ */
+@Service
+public class RoutePlanner
+{
+	public static final String TABLE_EXTENSION = ".routes";
+
+	private static final int MAX_CACHED_ROUTES = 65536;     // Per graph, the cache is cleared once it grows beyond this
+
+	/**
+	 * Graph of a map and the routes that were planned on it.
+	 */
+	private static class Routes
+	{
+		private final WaypointGraph graph;
+		private final Map<Long, int[]> paths;   // Keyed by start index (upper 32 bits) and end index (lower 32 bits)
+		private volatile NextHopTable table;    // Null until it's built
+
+		public Routes(WaypointGraph graph)
+		{
+			this.graph = graph;
+			this.paths = new ConcurrentHashMap<>();
+			this.table = null;
+		}
+	}
+
+	private Logger log;
+	private Configuration configuration;
+	private WaypointProvider waypointProvider;
+	private Map<WaypointCache, Routes> routes;     // Weak keys, so routes disappear when the waypoints they were built from are dropped
+	private ForkJoinPool pool;
+
+	@Autowired
+	public RoutePlanner(@Qualifier("routePlanner") Configuration configuration, WaypointProvider waypointProvider)
+	{
+		this.log = LoggerFactory.getLogger(RoutePlanner.class);
+		this.configuration = configuration;
+		this.waypointProvider = waypointProvider;
+		this.routes = Collections.synchronizedMap(new WeakHashMap<>());
+		this.pool = ForkJoinPool.commonPool();
+
+		// Loading waypoints shouldn't wait for the graph, so prepare it in the background
+		this.waypointProvider.addLoadListener(cache -> this.pool.execute(() -> this.getRoutes(cache)));
+	}
+
+	/**
+	 * Load the next-hop table of a graph from the map directory, or build and save it if there is no valid table yet.
+	 * @param mapName
+	 * @param routes
+	 */
+	private void prepareTable(String mapName, Routes routes)
+	{
+		MapManagerAspect mapManagerAspect = (MapManagerAspect) this.configuration.get(AspectType.MAP_MANAGER);
+		int size = routes.graph.size();
+
+		if (size > mapManagerAspect.getGraphMaxTableSize())
+		{
+			this.log.info("Map \"" + mapName + "\" has " + size + " waypoints, a next-hop table would take " + (NextHopTable.getMemoryUsage(size) / (1024 * 1024)) + "MB. Searching routes instead.");
+			return;
+		}
+
+		Path path = Paths.get(mapManagerAspect.getMapPath()).resolve(mapName + TABLE_EXTENSION);
+		NextHopTable table = null;
+
+		try
+		{
+			if (Files.isRegularFile(path))
+			{
+				table = NextHopTable.load(path, routes.graph);
+
+				if (table == null)
+				{
+					this.log.info("Next-hop table " + path + " was built for other waypoints, rebuilding it.");
+				}
+			}
+		}
+		catch (IOException ioe)
+		{
+			this.log.warn("Failed to load next-hop table " + path + ", rebuilding it.", ioe);
+		}
+
+		if (table == null)
+		{
+			long buildStart = System.nanoTime();
+
+			try
+			{
+				table = NextHopTable.build(routes.graph, this.pool);
+			}
+			catch (IllegalArgumentException iae)
+			{
+				this.log.warn("Can't build a next-hop table for map \"" + mapName + "\", searching routes instead.", iae);
+				return;
+			}
+
+			long buildTime = System.nanoTime() - buildStart;
+
+			this.log.info("Built next-hop table of map \"" + mapName + "\" in " + (buildTime / 1000000) + "ms on " + this.pool.getParallelism() + " threads.");
+
+			try
+			{
+				table.save(path, routes.graph);
+			}
+			catch (IOException ioe)
+			{
+				this.log.warn("Failed to save next-hop table " + path + ".", ioe);
+			}
+		}
+
+		routes.table = table;
+		routes.paths.clear();
+
+		this.log.info("Next-hop table of map \"" + mapName + "\" (" + size + " waypoints) uses " + (table.getMemoryUsage() / 1024) + "KB.");
+	}
+
+	private Routes getRoutes(WaypointCache cache)
+	{
+		// Building a graph takes a while for large maps, don't hold the lock of the other maps in the mean time
+		Routes routes = this.routes.get(cache);
+
+		if (routes == null)
+		{
+			synchronized (cache)
+			{
+				routes = this.routes.get(cache);
+
+				if (routes == null)
+				{
+					MapManagerAspect mapManagerAspect = (MapManagerAspect) this.configuration.get(AspectType.MAP_MANAGER);
+					CostAspect costAspect = (CostAspect) this.configuration.get(AspectType.COST);
+
+					long buildStart = System.nanoTime();
+					routes = new Routes(cache.buildGraph(mapManagerAspect.getGraphNeighbours(), costAspect.isIncreasingIds()));
+					long buildTime = System.nanoTime() - buildStart;
+
+					this.log.info("Built waypoint graph of map \"" + cache.getMapName() + "\" (" + routes.graph.size() + " waypoints, " + routes.graph.getNumLinks() + " links) in " + (buildTime / 1000000) + "ms.");
+					this.routes.put(cache, routes);
+
+					Routes newRoutes = routes;
+					this.pool.execute(() -> this.prepareTable(cache.getMapName(), newRoutes));
+				}
+			}
+		}
+
+		return routes;
+	}
+
+	/**
+	 * Search the shortest path between two waypoints, or return it from the cache if it was searched before.
+	 * @return  The path, or null if end can't be reached.
+	 */
+	private int[] search(Routes routes, int start, int end)
+	{
+		long key = ((long) start << 32) | end;
+		int[] path = routes.paths.get(key);
+
+		if (path == null)
+		{
+			path = routes.graph.shortestPath(start, end);
+
+			if (path == null)
+			{
+				return null;
+			}
+
+			if (routes.paths.size() >= MAX_CACHED_ROUTES)
+			{
+				routes.paths.clear();
+			}
+
+			routes.paths.put(key, path);
+		}
+
+		return path;
+	}
+
+	/**
+	 * Plan the shortest route between two waypoints of a map version.
+	 * @param mapVersion
+	 * @param startId
+	 * @param endId
+	 * @return  IDs of all waypoints on the route, including the start and end waypoint.
+	 * @throws IndexOutOfBoundsException    If the map version or one of the waypoints doesn't exist.
+	 * @throws NoSuchElementException       If the end waypoint can't be reached from the start waypoint.
+	 */
+	public List<Long> plan(long mapVersion, long startId, long endId) throws IndexOutOfBoundsException, NoSuchElementException
+	{
+		Routes routes = this.getRoutes(this.waypointProvider.getCache(mapVersion));
+		int start = routes.graph.indexOf(startId);
+		int end = routes.graph.indexOf(endId);
+
+		if (start < 0)
+		{
+			String errorString = "Requested route from waypoint " + startId + ", but waypoint doesn't exist.";
+			this.log.error(errorString);
+			throw new IndexOutOfBoundsException(errorString);
+		}
+
+		if (end < 0)
+		{
+			String errorString = "Requested route to waypoint " + endId + ", but waypoint doesn't exist.";
+			this.log.error(errorString);
+			throw new IndexOutOfBoundsException(errorString);
+		}
+
+		NextHopTable table = routes.table;
+		int[] path = (table != null) ? table.getPath(start, end) : this.search(routes, start, end);
+
+		if (path == null)
+		{
+			String errorString = "Waypoint " + endId + " can't be reached from waypoint " + startId + ".";
+			this.log.error(errorString);
+			throw new NoSuchElementException(errorString);
+		}
+
+		List<Long> route = new ArrayList<>(path.length);
+
+		for (int waypoint: path)
+		{
+			route.add(routes.graph.getId(waypoint));
+		}
+
+		return route;
+	}
+}
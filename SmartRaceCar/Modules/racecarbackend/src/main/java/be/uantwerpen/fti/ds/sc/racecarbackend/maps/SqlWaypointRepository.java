@@ -2,6 +2,8 @@ package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
 
 import org.springframework.data.repository.CrudRepository;
 
+import java.util.Collection;
+
 public interface SqlWaypointRepository extends CrudRepository<Waypoint, Long>
 {
 	public Waypoint findByIdAndMapName(long id, String mapName);
@@ -9,4 +11,12 @@ public interface SqlWaypointRepository extends CrudRepository<Waypoint, Long>
 	public Iterable<Waypoint> findAllByMapName(String mapName);
 
 	public boolean existsByIdAndMapName(long id, String mapName);
+
+	/**
+	 * Find all waypoints of a map with any of the given IDs, in a single query.
+	 * @param mapName
+	 * @param ids
+	 * @return
+	 */
+	public Iterable<Waypoint> findAllByMapNameAndIdIn(String mapName, Collection<Long> ids);
 }
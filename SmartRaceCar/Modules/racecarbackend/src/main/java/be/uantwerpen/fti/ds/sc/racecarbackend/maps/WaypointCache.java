@@ -0,0 +1,169 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import be.uantwerpen.fti.ds.sc.common.WayPoint;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of the waypoints of a single map.
+ * IDs are kept in a sorted array, the coordinates in parallel arrays,
+ * so a lookup is a binary search without touching the database.
+ * A k-d tree over the coordinates answers nearest-waypoint and radius queries.
+ */
+class WaypointCache
+{
+	private final String mapName;
+	private final long[] ids;       // Sorted in ascending order
+	private final float[] x;
+	private final float[] y;
+	private final float[] z;
+	private final float[] w;
+	private final WaypointIndex index;
+
+	public WaypointCache(String mapName, Collection<WayPoint> waypoints)
+	{
+		this.mapName = mapName;
+
+		List<WayPoint> sorted = new ArrayList<>(waypoints);
+		sorted.sort(Comparator.comparingLong(WayPoint::getID));
+
+		int size = sorted.size();
+		this.ids = new long[size];
+		this.x = new float[size];
+		this.y = new float[size];
+		this.z = new float[size];
+		this.w = new float[size];
+
+		for (int i = 0; i < size; ++i)
+		{
+			WayPoint waypoint = sorted.get(i);
+			this.ids[i] = waypoint.getID();
+			this.x[i] = waypoint.getX();
+			this.y[i] = waypoint.getY();
+			this.z[i] = waypoint.getZ();
+			this.w[i] = waypoint.getW();
+		}
+
+		this.index = new WaypointIndex(this.x, this.y);
+	}
+
+	public String getMapName()
+	{
+		return this.mapName;
+	}
+
+	public int size()
+	{
+		return this.ids.length;
+	}
+
+	public boolean contains(long id)
+	{
+		return Arrays.binarySearch(this.ids, id) >= 0;
+	}
+
+	/**
+	 * Return the waypoint with the given ID.
+	 * @param id
+	 * @return  The waypoint, or null if the map doesn't contain it.
+	 */
+	public WayPoint get(long id)
+	{
+		int index = Arrays.binarySearch(this.ids, id);
+
+		if (index < 0)
+		{
+			return null;
+		}
+
+		return this.get(index, id);
+	}
+
+	/**
+	 * Return all waypoints, mapped by their ID.
+	 * @return
+	 */
+	public Map<Long, WayPoint> getAll()
+	{
+		Map<Long, WayPoint> waypoints = new HashMap<>();
+
+		for (int i = 0; i < this.ids.length; ++i)
+		{
+			waypoints.put(this.ids[i], this.get(i, this.ids[i]));
+		}
+
+		return waypoints;
+	}
+
+	/**
+	 * Create a copy of this cache in which some waypoints were replaced.
+	 * @param ids           IDs of the waypoints to replace, waypoints that aren't in updatedWaypoints are removed.
+	 * @param updatedWaypoints  New versions of the waypoints.
+	 * @return
+	 */
+	public WaypointCache update(Collection<Long> ids, Collection<WayPoint> updatedWaypoints)
+	{
+		Map<Long, WayPoint> waypoints = this.getAll();
+		waypoints.keySet().removeAll(ids);
+
+		for (WayPoint waypoint: updatedWaypoints)
+		{
+			waypoints.put(waypoint.getID(), waypoint);
+		}
+
+		return new WaypointCache(this.mapName, waypoints.values());
+	}
+
+	/**
+	 * Return the k waypoints closest to (x, y), closest first.
+	 * @param x
+	 * @param y
+	 * @param k
+	 * @return
+	 */
+	public List<WayPoint> getNearest(float x, float y, int k)
+	{
+		return this.toWaypoints(this.index.nearest(x, y, k));
+	}
+
+	/**
+	 * Return all waypoints within a distance of (x, y), closest first.
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @return
+	 */
+	public List<WayPoint> getWithinRadius(float x, float y, float radius)
+	{
+		return this.toWaypoints(this.index.withinRadius(x, y, radius));
+	}
+
+	/**
+	 * Build the graph of connections between the waypoints.
+	 * @param neighbours    Number of nearest waypoints every waypoint is linked to.
+	 * @param increasingIds Whether waypoints can only be linked to waypoints with a higher ID.
+	 * @return
+	 */
+	public WaypointGraph buildGraph(int neighbours, boolean increasingIds)
+	{
+		return new WaypointGraph(this.ids, this.x, this.y, this.index, neighbours, increasingIds);
+	}
+
+	private List<WayPoint> toWaypoints(List<Integer> indices)
+	{
+		List<WayPoint> waypoints = new ArrayList<>(indices.size());
+
+		for (int index: indices)
+		{
+			waypoints.add(this.get(index, this.ids[index]));
+		}
+
+		return waypoints;
+	}
+
+	// A new object is handed out every time, so callers can't modify the cached data.
+	private WayPoint get(int index, long id)
+	{
+		return new WayPoint(id, this.x[index], this.y[index], this.z[index], this.w[index]);
+	}
+}
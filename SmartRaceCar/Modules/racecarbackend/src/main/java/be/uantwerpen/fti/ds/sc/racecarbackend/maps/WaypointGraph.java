@@ -0,0 +1,309 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Directed graph of the waypoints of a map, stored as adjacency arrays (compressed sparse rows).
+ * The database doesn't store which waypoints are connected, so every waypoint is connected to its nearest neighbours.
+ * If IDs have to be increasing (Cost.increasing_ids), only links to higher IDs are kept,
+ * and every waypoint is linked to the next ID so the track stays connected.
+ * Links are weighted by the distance between the waypoints.
+ * Waypoints are identified by their index in the map's sorted ID array.
+ */
+class WaypointGraph
+{
+	private final long[] ids;       // Sorted in ascending order, shared with the WaypointCache
+	private final int[] offsets;    // Links of waypoint i are at [offsets[i], offsets[i + 1])
+	private final int[] targets;
+	private final float[] weights;
+
+	public WaypointGraph(long[] ids, float[] x, float[] y, WaypointIndex index, int neighbours, boolean increasingIds)
+	{
+		this.ids = ids;
+
+		int size = ids.length;
+		List<Set<Integer>> links = new ArrayList<>(size);
+
+		for (int i = 0; i < size; ++i)
+		{
+			links.add(new HashSet<>());
+		}
+
+		for (int i = 0; i < size; ++i)
+		{
+			// The waypoint itself is always the closest result
+			for (int j: index.nearest(x[i], y[i], neighbours + 1))
+			{
+				if (j == i)
+				{
+					continue;
+				}
+
+				// Being close works both ways, so add the link in both directions
+				if ((!increasingIds) || (i < j))
+				{
+					links.get(i).add(j);
+				}
+
+				if ((!increasingIds) || (j < i))
+				{
+					links.get(j).add(i);
+				}
+			}
+
+			if ((increasingIds) && (i + 1 < size))
+			{
+				links.get(i).add(i + 1);
+			}
+		}
+
+		this.offsets = new int[size + 1];
+
+		for (int i = 0; i < size; ++i)
+		{
+			this.offsets[i + 1] = this.offsets[i] + links.get(i).size();
+		}
+
+		this.targets = new int[this.offsets[size]];
+		this.weights = new float[this.offsets[size]];
+
+		for (int i = 0; i < size; ++i)
+		{
+			int link = this.offsets[i];
+
+			for (int j: links.get(i))
+			{
+				float dx = x[j] - x[i];
+				float dy = y[j] - y[i];
+
+				this.targets[link] = j;
+				this.weights[link] = (float) Math.sqrt((dx * dx) + (dy * dy));
+				++link;
+			}
+		}
+	}
+
+	public int size()
+	{
+		return this.ids.length;
+	}
+
+	public int getNumLinks()
+	{
+		return this.targets.length;
+	}
+
+	public long getId(int waypoint)
+	{
+		return this.ids[waypoint];
+	}
+
+	/**
+	 * Return the index of a waypoint.
+	 * @param id
+	 * @return  The index, or a negative number if the waypoint isn't part of the graph.
+	 */
+	public int indexOf(long id)
+	{
+		return Arrays.binarySearch(this.ids, id);
+	}
+
+	/**
+	 * Run Dijkstra's algorithm from a waypoint.
+	 * @param start     Index of the start waypoint.
+	 * @param end       Index of the waypoint to stop at, or -1 to visit every reachable waypoint.
+	 * @param distances Receives the distance to every reached waypoint, infinity for the others.
+	 * @param previous  Receives the previous waypoint on the shortest path to every reached waypoint.
+	 * @param order     Receives the visited waypoints in the order they were visited, so every waypoint comes after its previous waypoint.
+	 * @return  The number of visited waypoints.
+	 */
+	int search(int start, int end, float[] distances, int[] previous, int[] order)
+	{
+		Arrays.fill(distances, Float.POSITIVE_INFINITY);
+		Arrays.fill(previous, -1);
+		distances[start] = 0.0f;
+
+		boolean[] visited = new boolean[this.size()];
+		int numVisited = 0;
+
+		Heap heap = new Heap(this.size());
+		heap.push(0.0f, start);
+
+		while (!heap.isEmpty())
+		{
+			int waypoint = heap.pop();
+
+			if (visited[waypoint])
+			{
+				continue;
+			}
+
+			visited[waypoint] = true;
+			order[numVisited++] = waypoint;
+
+			if (waypoint == end)
+			{
+				break;
+			}
+
+			for (int link = this.offsets[waypoint]; link < this.offsets[waypoint + 1]; ++link)
+			{
+				int target = this.targets[link];
+				float distance = distances[waypoint] + this.weights[link];
+
+				if (distance < distances[target])
+				{
+					distances[target] = distance;
+					previous[target] = waypoint;
+					heap.push(distance, target);
+				}
+			}
+		}
+
+		return numVisited;
+	}
+
+	/**
+	 * Find the shortest path between two waypoints with Dijkstra's algorithm.
+	 * @param start Index of the start waypoint.
+	 * @param end   Index of the end waypoint.
+	 * @return  Indices of the waypoints on the path, including start and end, or null if end can't be reached.
+	 */
+	public int[] shortestPath(int start, int end)
+	{
+		int size = this.size();
+		float[] distances = new float[size];
+		int[] previous = new int[size];
+
+		this.search(start, end, distances, previous, new int[size]);
+
+		if (distances[end] == Float.POSITIVE_INFINITY)
+		{
+			return null;
+		}
+
+		int length = 1;
+
+		for (int waypoint = end; waypoint != start; waypoint = previous[waypoint])
+		{
+			++length;
+		}
+
+		int[] path = new int[length];
+
+		for (int waypoint = end, i = length - 1; i >= 0; waypoint = previous[waypoint], --i)
+		{
+			path[i] = waypoint;
+		}
+
+		return path;
+	}
+
+	/**
+	 * Return a checksum of the graph, used to check whether data derived from the graph is still valid.
+	 * @return
+	 */
+	public long getFingerprint()
+	{
+		CRC32 checksum = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+
+		for (long id: this.ids)
+		{
+			buffer.clear();
+			buffer.putLong(id);
+			checksum.update(buffer.array());
+		}
+
+		for (int link = 0; link < this.targets.length; ++link)
+		{
+			buffer.clear();
+			buffer.putInt(this.targets[link]);
+			buffer.putFloat(this.weights[link]);
+			checksum.update(buffer.array());
+		}
+
+		for (int offset: this.offsets)
+		{
+			buffer.clear();
+			buffer.putInt(offset);
+			checksum.update(buffer.array(), 0, Integer.BYTES);
+		}
+
+		return checksum.getValue();
+	}
+
+	/**
+	 * Binary min-heap of waypoints, ordered by distance.
+	 * Both are packed into a long, distances are non-negative so their bits sort like the floats themselves.
+	 */
+	private static class Heap
+	{
+		private long[] entries;
+		private int size;
+
+		public Heap(int capacity)
+		{
+			this.entries = new long[Math.max(capacity, 1)];
+			this.size = 0;
+		}
+
+		public boolean isEmpty()
+		{
+			return this.size == 0;
+		}
+
+		public void push(float distance, int waypoint)
+		{
+			if (this.size == this.entries.length)
+			{
+				this.entries = Arrays.copyOf(this.entries, this.entries.length * 2);
+			}
+
+			long entry = ((long) Float.floatToIntBits(distance) << 32) | waypoint;
+			int i = this.size++;
+
+			while ((i > 0) && (this.entries[(i - 1) / 2] > entry))
+			{
+				this.entries[i] = this.entries[(i - 1) / 2];
+				i = (i - 1) / 2;
+			}
+
+			this.entries[i] = entry;
+		}
+
+		public int pop()
+		{
+			int waypoint = (int) this.entries[0];
+			long last = this.entries[--this.size];
+			int i = 0;
+
+			while (2 * i + 1 < this.size)
+			{
+				int child = 2 * i + 1;
+
+				if ((child + 1 < this.size) && (this.entries[child + 1] < this.entries[child]))
+				{
+					++child;
+				}
+
+				if (this.entries[child] >= last)
+				{
+					break;
+				}
+
+				this.entries[i] = this.entries[child];
+				i = child;
+			}
+
+			this.entries[i] = last;
+			return waypoint;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 2D k-d tree over the (x, y) coordinates of a set of points.
+ * The tree is stored implicitly in a single array of point indices:
+ * the node of a range [lo, hi) is at its middle, its children are the two halves.
+ * Points are referred to by their index in the coordinate arrays that were passed to the constructor.
+ */
+class WaypointIndex
+{
+	private final float[] x;
+	private final float[] y;
+	private final int[] tree;       // Point indices, ordered as an implicit k-d tree
+
+	public WaypointIndex(float[] x, float[] y)
+	{
+		if (x.length != y.length)
+		{
+			throw new IllegalArgumentException("Got " + x.length + " x coordinates, but " + y.length + " y coordinates.");
+		}
+
+		this.x = x;
+		this.y = y;
+		this.tree = new int[x.length];
+
+		for (int i = 0; i < this.tree.length; ++i)
+		{
+			this.tree[i] = i;
+		}
+
+		this.build(0, this.tree.length, 0);
+	}
+
+	private float coordinate(int point, int axis)
+	{
+		return (axis == 0) ? this.x[point] : this.y[point];
+	}
+
+	private float distanceSquared(int point, float x, float y)
+	{
+		float dx = this.x[point] - x;
+		float dy = this.y[point] - y;
+		return (dx * dx) + (dy * dy);
+	}
+
+	private void build(int lo, int hi, int axis)
+	{
+		if ((hi - lo) <= 1)
+		{
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		this.select(lo, hi - 1, mid, axis);
+		this.build(lo, mid, 1 - axis);
+		this.build(mid + 1, hi, 1 - axis);
+	}
+
+	/**
+	 * Partially sort tree[lo..hi] (inclusive) so that the element at index k is the one that would be there if the range was sorted on the given axis.
+	 */
+	private void select(int lo, int hi, int k, int axis)
+	{
+		while (lo < hi)
+		{
+			float pivot = this.coordinate(this.tree[(lo + hi) >>> 1], axis);
+			int i = lo;
+			int j = hi;
+
+			while (i <= j)
+			{
+				while (this.coordinate(this.tree[i], axis) < pivot)
+				{
+					++i;
+				}
+
+				while (this.coordinate(this.tree[j], axis) > pivot)
+				{
+					--j;
+				}
+
+				if (i <= j)
+				{
+					int tmp = this.tree[i];
+					this.tree[i] = this.tree[j];
+					this.tree[j] = tmp;
+					++i;
+					--j;
+				}
+			}
+
+			if (k <= j)
+			{
+				hi = j;
+			}
+			else if (k >= i)
+			{
+				lo = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	public int size()
+	{
+		return this.tree.length;
+	}
+
+	/**
+	 * Find the k points closest to (x, y).
+	 * @param x
+	 * @param y
+	 * @param k
+	 * @return  Indices of the points, closest first.
+	 */
+	public List<Integer> nearest(float x, float y, int k)
+	{
+		List<Integer> result = new ArrayList<>();
+
+		if ((k <= 0) || (this.tree.length == 0))
+		{
+			return result;
+		}
+
+		// k comes from REST requests, there are never more candidates than points
+		k = Math.min(k, this.tree.length);
+
+		// Max-heap on distance, so the farthest of the current candidates can be replaced
+		PriorityQueue<Integer> candidates = new PriorityQueue<>(k, (a, b) -> Float.compare(this.distanceSquared(b, x, y), this.distanceSquared(a, x, y)));
+		this.nearest(0, this.tree.length, 0, x, y, k, candidates);
+
+		while (!candidates.isEmpty())
+		{
+			result.add(candidates.poll());
+		}
+
+		// The heap hands out the farthest point first
+		Collections.reverse(result);
+
+		return result;
+	}
+
+	private void nearest(int lo, int hi, int axis, float x, float y, int k, PriorityQueue<Integer> candidates)
+	{
+		if (lo >= hi)
+		{
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		int point = this.tree[mid];
+
+		if (candidates.size() < k)
+		{
+			candidates.add(point);
+		}
+		else if (this.distanceSquared(point, x, y) < this.distanceSquared(candidates.peek(), x, y))
+		{
+			candidates.poll();
+			candidates.add(point);
+		}
+
+		float delta = ((axis == 0) ? x : y) - this.coordinate(point, axis);
+
+		// Search the side the query point is on first, it's most likely to contain the nearest points
+		if (delta < 0)
+		{
+			this.nearest(lo, mid, 1 - axis, x, y, k, candidates);
+		}
+		else
+		{
+			this.nearest(mid + 1, hi, 1 - axis, x, y, k, candidates);
+		}
+
+		// Only search the other side if it could contain a point closer than the current farthest candidate
+		if ((candidates.size() < k) || ((delta * delta) < this.distanceSquared(candidates.peek(), x, y)))
+		{
+			if (delta < 0)
+			{
+				this.nearest(mid + 1, hi, 1 - axis, x, y, k, candidates);
+			}
+			else
+			{
+				this.nearest(lo, mid, 1 - axis, x, y, k, candidates);
+			}
+		}
+	}
+
+	/**
+	 * Find all points within a distance of (x, y).
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @return  Indices of the points, closest first.
+	 */
+	public List<Integer> withinRadius(float x, float y, float radius)
+	{
+		List<Integer> result = new ArrayList<>();
+
+		if (radius >= 0)
+		{
+			this.withinRadius(0, this.tree.length, 0, x, y, radius * radius, result);
+			result.sort((a, b) -> Float.compare(this.distanceSquared(a, x, y), this.distanceSquared(b, x, y)));
+		}
+
+		return result;
+	}
+
+	private void withinRadius(int lo, int hi, int axis, float x, float y, float radiusSquared, List<Integer> result)
+	{
+		if (lo >= hi)
+		{
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		int point = this.tree[mid];
+
+		if (this.distanceSquared(point, x, y) <= radiusSquared)
+		{
+			result.add(point);
+		}
+
+		float delta = ((axis == 0) ? x : y) - this.coordinate(point, axis);
+
+		if ((delta < 0) || ((delta * delta) <= radiusSquared))
+		{
+			this.withinRadius(lo, mid, 1 - axis, x, y, radiusSquared, result);
+		}
+
+		if ((delta >= 0) || ((delta * delta) <= radiusSquared))
+		{
+			this.withinRadius(mid + 1, hi, 1 - axis, x, y, radiusSquared, result);
+		}
+	}
+}
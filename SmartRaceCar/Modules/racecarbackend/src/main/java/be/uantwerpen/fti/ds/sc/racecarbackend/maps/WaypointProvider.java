@@ -8,6 +8,7 @@ import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.MapManagerAspect;
 import be.uantwerpen.fti.ds.sc.common.configuration.MqttAspect;
+import be.uantwerpen.fti.ds.sc.common.configuration.WaypointSource;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,22 +16,63 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 
+/**
+ * Provides the waypoints of the current map.
+ * Every map change creates a new map version. Jobs acquire the version that was current when they were created
+ * and keep using its waypoints until they release it, even if the map changed in the meantime.
+ * Old versions are dropped once no jobs use them anymore.
+ */
 @Service
 public class WaypointProvider implements MQTTListener
 {
+	private static final int BATCH_SIZE = 500;      // Maximum number of IDs in a single database query
+
+	/**
+	 * A map, as it was used from one map change until the next.
+	 */
+	private static class MapVersion
+	{
+		private final long number;
+		private final String mapName;
+		private volatile WaypointCache cache;       // Waypoints of the map, replaced as a whole when they're refreshed
+		private int references;                     // Number of jobs using this version, guarded by WaypointProvider.versions
+		private volatile long since;                // When the version became current (in ms since epoch)
+
+		public MapVersion(long number, String mapName)
+		{
+			this.number = number;
+			this.mapName = mapName;
+			this.cache = null;
+			this.references = 0;
+			this.since = System.currentTimeMillis();
+		}
+	}
+
 	private Logger log;
 	private Configuration configuration;
 
-	private String currentMap;
+	private Map<Long, MapVersion> versions;         // All versions that are current or still in use
+	private volatile MapVersion currentVersion;
+	private long nextVersion;                       // Guarded by versions
+	private List<Consumer<String>> drainListeners;  // Called with a map's name when no versions of that map are in use anymore
+	private List<Consumer<WaypointCache>> loadListeners;   // Called whenever waypoints are (re)loaded
 
 	private MQTTUtils mqttUtils;
 
 	private SqlWaypointRepository SQLRepository;
 	private DebugWaypointRepository debugWaypointRepository;
+	private FileWaypointRepository fileWaypointRepository;
 
 	private boolean isMapChange(String topic)
 	{
@@ -39,10 +81,10 @@ public class WaypointProvider implements MQTTListener
 		return topic.startsWith(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.CHANGE_MAP);
 	}
 
-	private boolean isDebug()
+	private WaypointSource getSource()
 	{
 		MapManagerAspect mapManagerAspect = (MapManagerAspect) this.configuration.get(AspectType.MAP_MANAGER);
-		return mapManagerAspect.isDatabaseDebug();
+		return mapManagerAspect.getWaypointSource();
 	}
 
 	public WaypointProvider(@Qualifier("waypointProvider") Configuration configuration, @Autowired SqlWaypointRepository SQLRepository, @Autowired DebugWaypointRepository debugWaypointRepository)
@@ -51,12 +93,16 @@ public class WaypointProvider implements MQTTListener
 		this.configuration = configuration;
 
 		MapManagerAspect mapManagerAspect = (MapManagerAspect) this.configuration.get(AspectType.MAP_MANAGER);
-		this.currentMap = mapManagerAspect.getCurrentMap();
+		this.versions = new ConcurrentHashMap<>();
+		this.nextVersion = 0;
+		this.drainListeners = new CopyOnWriteArrayList<>();
+		this.loadListeners = new CopyOnWriteArrayList<>();
+		this.currentVersion = this.createVersion(mapManagerAspect.getCurrentMap());
 
 		try
 		{
 			MqttAspect mqttAspect = (MqttAspect) this.configuration.get(AspectType.MQTT);
-			this.mqttUtils = new MQTTUtils(mqttAspect.getBroker(), mqttAspect.getUsername(), mqttAspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(mqttAspect, this, "WaypointProvider");
 			this.mqttUtils.subscribe(mqttAspect.getTopic() + "/" + MqttMessages.Topics.Backend.CHANGE_MAP);
 		}
 		catch (MqttException mqtte)
@@ -66,49 +112,398 @@ public class WaypointProvider implements MQTTListener
 
 		this.SQLRepository = SQLRepository;
 		this.debugWaypointRepository = debugWaypointRepository;
+		this.fileWaypointRepository = new FileWaypointRepository(Paths.get(mapManagerAspect.getMapPath()).toAbsolutePath().normalize());
 	}
 
-	public Map<Long, WayPoint> getAll()
+	private MapVersion createVersion(String mapName)
+	{
+		synchronized (this.versions)
+		{
+			MapVersion version = new MapVersion(this.nextVersion++, mapName);
+			this.versions.put(version.number, version);
+			return version;
+		}
+	}
+
+	/**
+	 * Drop a version that is no longer current and no longer in use.
+	 * Should be called while holding the versions lock.
+	 * @param version
+	 */
+	private void retire(MapVersion version)
+	{
+		this.versions.remove(version.number);
+		this.log.info("Map version " + version.number + " (\"" + version.mapName + "\") was drained, dropping it.");
+
+		for (MapVersion other: this.versions.values())
+		{
+			if (other.mapName.equals(version.mapName))
+			{
+				return;
+			}
+		}
+
+		for (Consumer<String> listener: this.drainListeners)
+		{
+			listener.accept(version.mapName);
+		}
+	}
+
+	private WaypointCache loaded(WaypointCache cache)
 	{
-		if(this.isDebug())
+		for (Consumer<WaypointCache> listener: this.loadListeners)
 		{
-			return this.debugWaypointRepository.loadWayPoints(this.currentMap);
+			listener.accept(cache);
 		}
-		else
+
+		return cache;
+	}
+
+	private MapVersion getVersion(long versionNumber) throws IndexOutOfBoundsException
+	{
+		MapVersion version = this.versions.get(versionNumber);
+
+		if (version == null)
 		{
-			Map<Long, WayPoint> wayPointMap = new HashMap<>();
+			String errorString = "Map version " + versionNumber + " doesn't exist or was already drained.";
+			this.log.error(errorString);
+			throw new IndexOutOfBoundsException(errorString);
+		}
+
+		return version;
+	}
+
+	private List<WayPoint> loadFromDatabase(String mapName)
+	{
+		List<WayPoint> waypoints = new ArrayList<>();
 
-			for(Waypoint waypoint: this.SQLRepository.findAllByMapName(this.currentMap))
+		for (Waypoint waypoint: this.SQLRepository.findAllByMapName(mapName))
+		{
+			waypoints.add(new WayPoint(waypoint.getId(), waypoint.getX(), waypoint.getY(), waypoint.getZ(), waypoint.getW()));
+		}
+
+		return waypoints;
+	}
+
+	/**
+	 * Load the waypoints of a map from the configured waypoint source.
+	 * @param mapName
+	 * @return
+	 */
+	private WaypointCache load(String mapName)
+	{
+		WaypointSource source = this.getSource();
+
+		this.log.info("Loading waypoints of map \"" + mapName + "\" from " + source + " into cache.");
+
+		switch (source)
+		{
+			case DEBUG:
+				return this.loaded(new WaypointCache(mapName, this.debugWaypointRepository.loadWayPoints(mapName).values()));
+
+			case FILE:
+				try
+				{
+					return this.loaded(new WaypointCache(mapName, this.fileWaypointRepository.loadWayPoints(mapName)));
+				}
+				catch (IOException ioe)
+				{
+					// Lookups will report the waypoints as missing, until the file is imported and the cache is refreshed
+					this.log.error("Failed to load waypoint file of map \"" + mapName + "\", map has no waypoints.", ioe);
+					return new WaypointCache(mapName, new ArrayList<>());
+				}
+
+			default:
+				return this.loaded(new WaypointCache(mapName, this.loadFromDatabase(mapName)));
+		}
+	}
+
+	/**
+	 * Copy the waypoints of a map from the database into its waypoint file.
+	 * The waypoints are reloaded if the file is used for the current map.
+	 * @param mapName
+	 * @return  The number of imported waypoints.
+	 * @throws IOException  If the waypoint file couldn't be written.
+	 */
+	public int importWaypoints(String mapName) throws IOException
+	{
+		List<WayPoint> waypoints = this.loadFromDatabase(mapName);
+		this.fileWaypointRepository.saveWayPoints(mapName, waypoints);
+
+		if ((this.getSource() == WaypointSource.FILE) && (this.currentVersion.mapName.equals(mapName)))
+		{
+			this.refresh();
+		}
+
+		return waypoints.size();
+	}
+
+	/**
+	 * Return the cached waypoints of a map version, loading them if they aren't cached yet.
+	 * @return
+	 */
+	private WaypointCache getCache(MapVersion version)
+	{
+		WaypointCache cache = version.cache;
+
+		if (cache == null)
+		{
+			synchronized (version)
 			{
-				wayPointMap.put(waypoint.getId(), new WayPoint(waypoint.getId(), waypoint.getX(), waypoint.getY(), waypoint.getZ(), waypoint.getW()));
+				cache = version.cache;
+
+				if (cache == null)
+				{
+					cache = this.load(version.mapName);
+					version.cache = cache;
+				}
 			}
-			return  wayPointMap;
 		}
+
+		return cache;
 	}
 
-	public WayPoint get(long id)
+	private WaypointCache getCache()
+	{
+		return this.getCache(this.currentVersion);
+	}
+
+	/**
+	 * Return the cached waypoints of a map version.
+	 * @param versionNumber
+	 * @return
+	 * @throws IndexOutOfBoundsException    If the version doesn't exist anymore.
+	 */
+	WaypointCache getCache(long versionNumber) throws IndexOutOfBoundsException
+	{
+		return this.getCache(this.getVersion(versionNumber));
+	}
+
+	/**
+	 * Register a callback that is called with a map's name once no version of that map is current or in use anymore.
+	 * Can be used to drop data that was cached for the map.
+	 * @param listener
+	 */
+	public void addDrainListener(Consumer<String> listener)
+	{
+		this.drainListeners.add(listener);
+	}
+
+	/**
+	 * Register a callback that is called whenever the waypoints of a map are loaded or refreshed.
+	 * Callbacks should return quickly, as lookups wait for the waypoints to be loaded.
+	 * @param listener
+	 */
+	void addLoadListener(Consumer<WaypointCache> listener)
+	{
+		this.loadListeners.add(listener);
+	}
+
+	/**
+	 * Return the number of the current map version.
+	 * @return
+	 */
+	public long getCurrentVersion()
+	{
+		return this.currentVersion.number;
+	}
+
+	/**
+	 * Return when the current map version became current.
+	 * Locations reported before this time belong to a previous map.
+	 * @return  Time of the last map change (in ms since epoch).
+	 */
+	public long getCurrentVersionSince()
+	{
+		return this.currentVersion.since;
+	}
+
+	/**
+	 * Return the name of the map of a version.
+	 * @param versionNumber
+	 * @return
+	 * @throws IndexOutOfBoundsException    If the version doesn't exist anymore.
+	 */
+	public String getMapName(long versionNumber) throws IndexOutOfBoundsException
+	{
+		return this.getVersion(versionNumber).mapName;
+	}
+
+	/**
+	 * Start using the current map version.
+	 * The version and its waypoints are kept until releaseVersion() is called, even if the map changes.
+	 * @return  The number of the acquired version.
+	 */
+	public long acquireVersion()
 	{
-		if(this.isDebug())
+		synchronized (this.versions)
 		{
-			return this.debugWaypointRepository.loadWayPoints(this.currentMap).get(id);
+			MapVersion version = this.currentVersion;
+			++version.references;
+			return version.number;
 		}
-		else
+	}
+
+	/**
+	 * Stop using a map version.
+	 * If the version is no longer current and nobody else uses it, it's dropped.
+	 * @param versionNumber
+	 */
+	public void releaseVersion(long versionNumber)
+	{
+		synchronized (this.versions)
 		{
-			Waypoint waypoint = this.SQLRepository.findByIdAndMapName(id, this.currentMap);
-			return new WayPoint(waypoint.getId(), waypoint.getX(), waypoint.getY(), waypoint.getZ(), waypoint.getW());
+			MapVersion version = this.versions.get(versionNumber);
+
+			if ((version == null) || (version.references == 0))
+			{
+				this.log.warn("Tried to release map version " + versionNumber + ", but it's not in use.");
+				return;
+			}
+
+			--version.references;
+
+			if ((version.references == 0) && (version != this.currentVersion))
+			{
+				this.retire(version);
+			}
 		}
 	}
 
-	public boolean exists(long id)
+	/**
+	 * Reload the waypoints of the current map.
+	 * Should be called whenever the waypoints in the database change.
+	 * Lookups keep using the old waypoints until the new ones are loaded.
+	 */
+	public void refresh()
+	{
+		MapVersion version = this.currentVersion;
+		WaypointCache cache = this.load(version.mapName);
+
+		synchronized (version)
+		{
+			version.cache = cache;
+		}
+
+		this.log.info("Refreshed waypoint cache, map \"" + cache.getMapName() + "\" has " + cache.size() + " waypoints.");
+	}
+
+	/**
+	 * Reload some waypoints of the current map.
+	 * Should be called whenever these waypoints were added, modified or removed in the database.
+	 * The waypoints are fetched with one query per BATCH_SIZE IDs, instead of reloading the entire map.
+	 * @param ids
+	 */
+	public void refresh(Collection<Long> ids)
 	{
-		if(this.isDebug())
+		// Only the database can be queried for individual waypoints
+		if (this.getSource() != WaypointSource.DATABASE)
 		{
-			return this.debugWaypointRepository.loadWayPoints(this.currentMap).containsKey(id);
+			this.refresh();
+			return;
 		}
-		else
+
+		MapVersion version = this.currentVersion;
+		WaypointCache cache = this.getCache(version);
+		List<Long> idList = new ArrayList<>(ids);
+		List<WayPoint> waypoints = new ArrayList<>();
+
+		for (int i = 0; i < idList.size(); i += BATCH_SIZE)
 		{
-			return this.SQLRepository.existsByIdAndMapName(id, this.currentMap);
+			List<Long> batch = idList.subList(i, Math.min(idList.size(), i + BATCH_SIZE));
+
+			for (Waypoint waypoint: this.SQLRepository.findAllByMapNameAndIdIn(cache.getMapName(), batch))
+			{
+				waypoints.add(new WayPoint(waypoint.getId(), waypoint.getX(), waypoint.getY(), waypoint.getZ(), waypoint.getW()));
+			}
 		}
+
+		WaypointCache updatedCache = this.loaded(cache.update(idList, waypoints));
+
+		synchronized (version)
+		{
+			// Don't overwrite the cache if it was refreshed while we were loading
+			if (version.cache == cache)
+			{
+				version.cache = updatedCache;
+			}
+		}
+
+		this.log.info("Refreshed " + idList.size() + " waypoints, map \"" + updatedCache.getMapName() + "\" has " + updatedCache.size() + " waypoints.");
+	}
+
+	public Map<Long, WayPoint> getAll()
+	{
+		return this.getCache().getAll();
+	}
+
+	/**
+	 * Return the waypoint with the given ID.
+	 * @param id
+	 * @return  The waypoint, or null if it doesn't exist on the current map.
+	 */
+	public WayPoint get(long id)
+	{
+		return this.getCache().get(id);
+	}
+
+	/**
+	 * Return the k waypoints of the current map closest to (x, y), closest first.
+	 * @param x
+	 * @param y
+	 * @param k
+	 * @return
+	 */
+	public List<WayPoint> getNearest(float x, float y, int k)
+	{
+		return this.getCache().getNearest(x, y, k);
+	}
+
+	/**
+	 * Return all waypoints of the current map within a distance of (x, y), closest first.
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @return
+	 */
+	public List<WayPoint> getWithinRadius(float x, float y, float radius)
+	{
+		return this.getCache().getWithinRadius(x, y, radius);
+	}
+
+	/**
+	 * Return the waypoints with the given IDs.
+	 * @param ids
+	 * @return  A list with the waypoint for every ID, in the same order, null for IDs that don't exist on the current map.
+	 */
+	public List<WayPoint> get(List<Long> ids)
+	{
+		return this.get(this.getCurrentVersion(), ids);
+	}
+
+	/**
+	 * Return the waypoints with the given IDs, as they were in a specific map version.
+	 * @param versionNumber
+	 * @param ids
+	 * @return  A list with the waypoint for every ID, in the same order, null for IDs that don't exist in the map version.
+	 * @throws IndexOutOfBoundsException    If the version doesn't exist anymore.
+	 */
+	public List<WayPoint> get(long versionNumber, List<Long> ids) throws IndexOutOfBoundsException
+	{
+		WaypointCache cache = this.getCache(this.getVersion(versionNumber));
+		List<WayPoint> waypoints = new ArrayList<>(ids.size());
+
+		for (long id: ids)
+		{
+			waypoints.add(cache.get(id));
+		}
+
+		return waypoints;
+	}
+
+	public boolean exists(long id)
+	{
+		return this.getCache().contains(id);
 	}
 
 	@Override
@@ -116,8 +511,32 @@ public class WaypointProvider implements MQTTListener
 	{
 		if (this.isMapChange(topic))
 		{
-			this.log.info("Changing current map to \"" + message + "\".");
-			this.currentMap = message;
+			MapVersion newVersion = this.createVersion(message);
+
+			try
+			{
+				// Load the new map before switching, so lookups never wait for the database
+				this.getCache(newVersion);
+			}
+			catch (Exception e)
+			{
+				// The cache will be loaded again on the next lookup
+				this.log.error("Failed to load waypoints of map \"" + message + "\".", e);
+			}
+
+			synchronized (this.versions)
+			{
+				MapVersion oldVersion = this.currentVersion;
+				newVersion.since = System.currentTimeMillis();
+				this.currentVersion = newVersion;
+
+				this.log.info("Changed current map to \"" + message + "\" (version " + newVersion.number + "), " + oldVersion.references + " jobs still use version " + oldVersion.number + ".");
+
+				if (oldVersion.references == 0)
+				{
+					this.retire(oldVersion);
+				}
+			}
 		}
 	}
 }
@@ -0,0 +1,42 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LinkStatisticsTest
+{
+	@Test
+	public void movingAverage()
+	{
+		LinkStatistics statistics = new LinkStatistics(0.5f);
+
+		statistics.add(10.0f);
+		assertEquals(10.0f, statistics.getAverage(), 0.001f);
+
+		statistics.add(20.0f);
+		assertEquals(15.0f, statistics.getAverage(), 0.001f);
+
+		statistics.add(5.0f);
+		assertEquals(10.0f, statistics.getAverage(), 0.001f);
+		assertEquals(3, statistics.getNumObservations());
+	}
+
+	@Test
+	public void percentiles()
+	{
+		LinkStatistics statistics = new LinkStatistics(0.2f);
+
+		assertEquals(0.0f, statistics.getPercentile(50), 0.001f);
+
+		for (int i = 100; i >= 0; --i)
+		{
+			statistics.add(i);
+		}
+
+		// Only the 64 most recent samples (63 down to 0) are kept
+		assertEquals(0.0f, statistics.getPercentile(0), 0.001f);
+		assertEquals(32.0f, statistics.getPercentile(50), 0.001f);
+		assertEquals(63.0f, statistics.getPercentile(100), 0.001f);
+	}
+}
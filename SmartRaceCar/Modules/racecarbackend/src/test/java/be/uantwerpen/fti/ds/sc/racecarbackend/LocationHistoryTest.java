@@ -0,0 +1,131 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+public class LocationHistoryTest
+{
+	private static final int CAPACITY = 4;
+	private static final int MAX_VEHICLES = 2;
+
+	private LocationHistory history;
+
+	@Before
+	public void setup()
+	{
+		this.history = new LocationHistory(CAPACITY, MAX_VEHICLES);
+	}
+
+	@Test
+	public void pathInWindow()
+	{
+		this.history.record(0, 100, 1);
+		this.history.record(0, 200, 2);
+		this.history.record(0, 300, 3);
+
+		List<LocationRecord> path = this.history.getPath(0, 150, 300);
+
+		assertEquals(2, path.size());
+		assertEquals(2, path.get(0).getWaypointId());
+		assertEquals(3, path.get(1).getWaypointId());
+	}
+
+	@Test
+	public void oldestEntriesAreOverwritten()
+	{
+		for (int i = 0; i < CAPACITY + 2; ++i)
+		{
+			this.history.record(0, i * 100, i);
+		}
+
+		List<LocationRecord> path = this.history.getPath(0, 0, Long.MAX_VALUE);
+
+		assertEquals(CAPACITY, path.size());
+		assertEquals(2, path.get(0).getWaypointId());
+		assertEquals(CAPACITY + 1, path.get(CAPACITY - 1).getWaypointId());
+	}
+
+	@Test
+	public void vehicleLimit()
+	{
+		this.history.record(0, 100, 1);
+		this.history.record(1, 100, 1);
+		this.history.record(2, 100, 1);
+
+		assertEquals(MAX_VEHICLES, this.history.getNumVehicles());
+
+		this.history.remove(0);
+		this.history.record(2, 100, 1);
+
+		assertEquals(1, this.history.getPath(2, 0, 200).size());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void unknownVehicle()
+	{
+		this.history.getPath(5, 0, 100);
+	}
+
+	@Test
+	public void linkTravelTimes()
+	{
+		this.history.record(0, 1000, 1);
+		this.history.record(0, 3000, 2);
+		this.history.record(0, 3500, 2);    // Repeated location, not a link
+		this.history.record(1, 0, 1);
+		this.history.record(1, 4000, 2);
+
+		Map<Link, LinkTravelTime> travelTimes = this.history.getLinkTravelTimes(0, Long.MAX_VALUE);
+
+		assertEquals(1, travelTimes.size());
+
+		LinkTravelTime travelTime = travelTimes.get(new Link(1, 2));
+		assertEquals(2, travelTime.getNumObservations());
+		assertEquals(3000.0, travelTime.getAverageTime(), 0.001);
+		assertEquals(2000, travelTime.getMinTime());
+		assertEquals(4000, travelTime.getMaxTime());
+	}
+
+	@Test
+	public void linkTimedFromFirstArrival()
+	{
+		this.history.record(0, 1000, 1);
+		this.history.record(0, 2000, 1);    // Still waiting at waypoint 1
+		this.history.record(0, 3000, 2);
+
+		LinkTravelTime travelTime = this.history.getLinkTravelTimes(0, Long.MAX_VALUE).get(new Link(1, 2));
+
+		assertEquals(1, travelTime.getNumObservations());
+		assertEquals(2000, travelTime.getMinTime());
+
+		this.history.record(0, 3500, 2);
+
+		LocationRecord arrival = this.history.getArrival(0);
+		assertEquals(2, arrival.getWaypointId());
+		assertEquals(3000, arrival.getTimestamp());
+	}
+
+	@Test
+	public void arrivalUnknownWhenOverwritten()
+	{
+		this.history.record(0, 1000, 1);
+		this.history.record(0, 2000, 2);
+
+		for (int i = 1; i < CAPACITY - 1; ++i)
+		{
+			this.history.record(0, 2000 + i * 1000, 2);
+		}
+
+		assertEquals(2000, this.history.getArrival(0).getTimestamp());
+
+		// Now the buffer only holds waypoint 2, the arrival at it was overwritten
+		this.history.record(0, 2000 + (CAPACITY - 1) * 1000, 2);
+		assertNull(this.history.getArrival(0));
+	}
+}
@@ -0,0 +1,91 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import be.uantwerpen.fti.ds.sc.common.MQTTListener;
+import be.uantwerpen.fti.ds.sc.common.MQTTUtils;
+import be.uantwerpen.fti.ds.sc.common.MessageToken;
+import be.uantwerpen.fti.ds.sc.common.MqttMessages;
+import be.uantwerpen.fti.ds.sc.common.configuration.MqttAspect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of progress updates, as sent by a vehicle to the JobTracker, at QoS 0 and QoS 2.
+ * Needs an MQTT broker, by default one on localhost.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes be.uantwerpen.fti.ds.sc.racecarbackend.PercentageQoSBenchmark [broker URL]
+ */
+public class PercentageQoSBenchmark
+{
+	private static final int NUM_MESSAGES = 100000;
+	private static final long RECEIVE_TIMEOUT = 5000000000L;    // Nanoseconds without messages after which the subscriber gives up
+	private static final int NUM_ROUNDS = 3;                    // The first round warms up the JIT
+
+	private static class Counter implements MQTTListener
+	{
+		private AtomicLong received = new AtomicLong(0);
+		private volatile long lastReceived = System.nanoTime();
+
+		@Override
+		public void parseMQTT(String topic, String message)
+		{
+			this.received.incrementAndGet();
+			this.lastReceived = System.nanoTime();
+		}
+	}
+
+	private static void run(MqttAspect mqttAspect, int qos) throws Exception
+	{
+		String topic = "benchmark/" + MqttMessages.Topics.Core.PERCENTAGE + "/1/1";
+
+		Counter counter = new Counter();
+		MQTTUtils subscriber = new MQTTUtils(mqttAspect, counter);
+		MQTTUtils publisher = new MQTTUtils(mqttAspect, (t, m) -> {});
+		subscriber.subscribe(topic, qos);
+
+		// Publishing doesn't wait for delivery, so every message is published before the first one is acknowledged
+		List<MessageToken> tokens = new ArrayList<>(NUM_MESSAGES);
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_MESSAGES; ++i)
+		{
+			tokens.add(publisher.publish(topic, Integer.toString(i % 101), qos));
+		}
+
+		long queued = System.nanoTime() - start;
+
+		for (MessageToken token: tokens)
+		{
+			token.waitForDelivery(60);
+		}
+
+		long published = System.nanoTime() - start;
+
+		while ((counter.received.get() < NUM_MESSAGES) && (System.nanoTime() - counter.lastReceived < RECEIVE_TIMEOUT))
+		{
+			Thread.sleep(1);
+		}
+
+		long received = counter.lastReceived - start;
+
+		System.out.println("QoS " + qos + ": queued " + NUM_MESSAGES + " in " + (queued / 1000000) + "ms, published in " + (published / 1000000) + "ms ("
+				+ (NUM_MESSAGES * 1000000000L / published) + " msg/s), received " + counter.received.get()
+				+ " in " + (received / 1000000) + "ms (" + (counter.received.get() * 1000000000L / Math.max(received, 1)) + " msg/s)");
+
+		publisher.closeMQTT();
+		subscriber.closeMQTT();
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		String broker = (args.length > 0) ? args[0] : "tcp://localhost:1883";
+		MqttAspect mqttAspect = new MqttAspect(broker, "", "", "benchmark");
+
+		for (int round = 0; round < NUM_ROUNDS; ++round)
+		{
+			run(mqttAspect, 0);
+			run(mqttAspect, 2);
+		}
+	}
+}
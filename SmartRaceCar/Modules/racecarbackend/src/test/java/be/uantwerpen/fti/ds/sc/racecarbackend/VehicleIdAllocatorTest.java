@@ -0,0 +1,122 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class VehicleIdAllocatorTest
+{
+	private static final int NUM_THREADS = 16;
+	private static final int VEHICLES_PER_THREAD = 1000;
+
+	private VehicleIdAllocator allocator;
+
+	@Before
+	public void setup()
+	{
+		this.allocator = new VehicleIdAllocator();
+	}
+
+	@Test
+	public void allocateSequential()
+	{
+		assertEquals(0, this.allocator.allocate());
+		assertEquals(1, this.allocator.allocate());
+		assertEquals(2, this.allocator.allocate());
+	}
+
+	@Test
+	public void reuseReleasedIds()
+	{
+		for (int i = 0; i < 5; ++i)
+		{
+			this.allocator.allocate();
+		}
+
+		assertTrue(this.allocator.release(3));
+		assertTrue(this.allocator.release(1));
+		assertEquals(2, this.allocator.getNumFreeIds());
+
+		assertEquals(1, this.allocator.allocate());
+		assertEquals(3, this.allocator.allocate());
+		assertEquals(5, this.allocator.allocate());
+		assertEquals(0, this.allocator.getNumFreeIds());
+	}
+
+	@Test
+	public void releaseInvalidIds()
+	{
+		this.allocator.allocate();
+
+		assertFalse(this.allocator.release(-1));
+		assertFalse(this.allocator.release(1));
+		assertTrue(this.allocator.release(0));
+		assertFalse(this.allocator.release(0));
+	}
+
+	@Test
+	public void concurrentRegisterAndDelete() throws InterruptedException, ExecutionException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		Set<Long> liveIds = ConcurrentHashMap.newKeySet();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (int thread = 0; thread < NUM_THREADS; ++thread)
+		{
+			futures.add(executor.submit(() ->
+			{
+				start.await();
+				List<Long> ownIds = new ArrayList<>();
+
+				for (int i = 0; i < VEHICLES_PER_THREAD; ++i)
+				{
+					long id = this.allocator.allocate();
+
+					// No other vehicle can be using this ID
+					assertTrue("ID " + id + " was handed out twice.", liveIds.add(id));
+					ownIds.add(id);
+
+					// Delete every other vehicle again, so IDs get reused while others are registering
+					if ((i % 2) == 1)
+					{
+						long deletedId = ownIds.remove(0);
+						liveIds.remove(deletedId);
+						assertTrue(this.allocator.release(deletedId));
+					}
+				}
+
+				return null;
+			}));
+		}
+
+		start.countDown();
+
+		for (Future<?> future: futures)
+		{
+			future.get();
+		}
+
+		executor.shutdown();
+
+		int expectedLive = NUM_THREADS * (VEHICLES_PER_THREAD / 2);
+		assertEquals(expectedLive, liveIds.size());
+
+		// Every ID below the high water mark is either live or free, so the next
+		// allocations should fill the gaps before any new ID is generated.
+		int numFree = this.allocator.getNumFreeIds();
+
+		for (int i = 0; i < numFree; ++i)
+		{
+			assertTrue(liveIds.add(this.allocator.allocate()));
+		}
+
+		assertEquals(liveIds.size(), this.allocator.allocate());
+	}
+}
@@ -0,0 +1,69 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import be.uantwerpen.fti.ds.sc.common.WayPoint;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FileWaypointRepositoryTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileWaypointRepository repository;
+
+	@Before
+	public void setUp()
+	{
+		this.repository = new FileWaypointRepository(this.folder.getRoot().toPath());
+	}
+
+	@Test
+	public void saveAndLoad() throws IOException
+	{
+		List<WayPoint> waypoints = Arrays.asList(new WayPoint(46, 0.5f, 0.0f, -1.0f, 0.02f), new WayPoint(47, -13.4f, -0.53f, 0.71f, 0.71f));
+
+		this.repository.saveWayPoints("V314", waypoints);
+		List<WayPoint> loaded = this.repository.loadWayPoints("V314");
+
+		assertTrue(this.repository.exists("V314"));
+		assertEquals(2, loaded.size());
+
+		for (int i = 0; i < waypoints.size(); ++i)
+		{
+			assertEquals(waypoints.get(i).getID(), loaded.get(i).getID());
+			assertEquals(waypoints.get(i).getX(), loaded.get(i).getX(), 0.0f);
+			assertEquals(waypoints.get(i).getY(), loaded.get(i).getY(), 0.0f);
+			assertEquals(waypoints.get(i).getZ(), loaded.get(i).getZ(), 0.0f);
+			assertEquals(waypoints.get(i).getW(), loaded.get(i).getW(), 0.0f);
+		}
+	}
+
+	@Test(expected = NoSuchFileException.class)
+	public void missingFile() throws IOException
+	{
+		this.repository.loadWayPoints("U014");
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedFile() throws IOException
+	{
+		this.repository.saveWayPoints("V314", Arrays.asList(new WayPoint(46, 0.5f, 0.0f, -1.0f, 0.02f)));
+
+		Path path = this.folder.getRoot().toPath().resolve("V314" + FileWaypointRepository.EXTENSION);
+		byte[] content = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(content, content.length - 1));
+
+		this.repository.loadWayPoints("V314");
+	}
+}
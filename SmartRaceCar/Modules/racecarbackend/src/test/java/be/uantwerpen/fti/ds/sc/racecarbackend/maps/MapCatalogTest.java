@@ -0,0 +1,102 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import be.uantwerpen.fti.ds.sc.common.MapInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MapCatalogTest
+{
+	private static final long WATCH_TIMEOUT = 10000;    // Time to wait for the catalog to pick up a change (in ms)
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path mapPath;
+	private MapCatalog catalog;
+
+	private void writeMap(String name, int width, int height) throws IOException
+	{
+		Files.write(this.mapPath.resolve(name + ".yaml"), ("image: " + name + ".pgm\nresolution: 0.05\n").getBytes(StandardCharsets.UTF_8));
+		Files.write(this.mapPath.resolve(name + ".pgm"), ("P5\n# Test map\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static String hash(Path file) throws Exception
+	{
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		return String.format("%064x", new BigInteger(1, digest.digest(Files.readAllBytes(file))));
+	}
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.mapPath = this.folder.newFolder("maps").toPath().toAbsolutePath().normalize();
+		this.catalog = new MapCatalog(this.mapPath, new MapFileStore());
+	}
+
+	@Test
+	public void scan() throws Exception
+	{
+		this.writeMap("zbuilding", 200, 100);
+		this.writeMap("gangV", 1024, 768);
+
+		this.catalog.start();
+
+		List<MapInfo> maps = this.catalog.getMaps();
+		assertEquals(2, maps.size());
+		assertEquals("gangV", maps.get(0).getName());
+		assertEquals("zbuilding", maps.get(1).getName());
+
+		MapInfo map = maps.get(0);
+		assertEquals(1024, map.getWidth());
+		assertEquals(768, map.getHeight());
+		assertEquals(0.05f, map.getResolution(), 0.0f);
+		assertEquals(hash(this.mapPath.resolve("gangV.yaml")), map.getYamlHash());
+		assertEquals(hash(this.mapPath.resolve("gangV.pgm")), map.getPgmHash());
+
+		assertTrue(this.catalog.contains("gangV"));
+		assertFalse(this.catalog.contains("V314"));
+	}
+
+	@Test
+	public void watchAddedMap() throws Exception
+	{
+		this.catalog.start();
+		assertFalse(this.catalog.contains("gangV"));
+
+		this.writeMap("gangV", 1024, 768);
+
+		long deadline = System.currentTimeMillis() + WATCH_TIMEOUT;
+
+		while ((!this.catalog.contains("gangV")) && (System.currentTimeMillis() < deadline))
+		{
+			Thread.sleep(50);
+		}
+
+		assertTrue(this.catalog.contains("gangV"));
+	}
+
+	@Test
+	public void containsFallsBackToFileSystem() throws Exception
+	{
+		// Without start(), the catalog is empty and has to check the map directory itself
+		this.writeMap("gangV", 1024, 768);
+		Files.write(this.folder.getRoot().toPath().resolve("outside.yaml"), new byte[0]);
+
+		assertTrue(this.catalog.contains("gangV"));
+		assertFalse(this.catalog.contains("V314"));
+		assertFalse(this.catalog.contains("../outside"));
+		assertTrue(this.catalog.getMaps().isEmpty());
+	}
+}
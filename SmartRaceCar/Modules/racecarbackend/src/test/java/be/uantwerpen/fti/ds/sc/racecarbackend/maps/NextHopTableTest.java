@@ -0,0 +1,118 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class NextHopTableTest
+{
+	private static final int NUM_POINTS = 500;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private float[] x;
+	private float[] y;
+	private WaypointGraph graph;
+
+	private WaypointGraph createGraph(long firstId)
+	{
+		long[] ids = new long[NUM_POINTS];
+
+		for (int i = 0; i < NUM_POINTS; ++i)
+		{
+			ids[i] = firstId + i;
+		}
+
+		return new WaypointGraph(ids, this.x, this.y, new WaypointIndex(this.x, this.y), 4, false);
+	}
+
+	private float length(int[] path)
+	{
+		float length = 0.0f;
+
+		for (int i = 1; i < path.length; ++i)
+		{
+			float dx = this.x[path[i]] - this.x[path[i - 1]];
+			float dy = this.y[path[i]] - this.y[path[i - 1]];
+			length += (float) Math.sqrt((dx * dx) + (dy * dy));
+		}
+
+		return length;
+	}
+
+	@Before
+	public void setUp()
+	{
+		Random random = new Random(42);
+		this.x = new float[NUM_POINTS];
+		this.y = new float[NUM_POINTS];
+
+		for (int i = 0; i < NUM_POINTS; ++i)
+		{
+			this.x[i] = random.nextFloat() * 100.0f;
+			this.y[i] = random.nextFloat() * 100.0f;
+		}
+
+		this.graph = this.createGraph(0);
+	}
+
+	@Test
+	public void matchesSearch()
+	{
+		NextHopTable table = NextHopTable.build(this.graph, ForkJoinPool.commonPool());
+
+		assertEquals(NUM_POINTS * NUM_POINTS * Short.BYTES, table.getMemoryUsage());
+
+		for (int start = 0; start < NUM_POINTS; start += 7)
+		{
+			for (int end = 0; end < NUM_POINTS; end += 11)
+			{
+				int[] expected = this.graph.shortestPath(start, end);
+				int[] path = table.getPath(start, end);
+
+				if (expected == null)
+				{
+					assertNull(path);
+				}
+				else
+				{
+					assertEquals(start, path[0]);
+					assertEquals(end, path[path.length - 1]);
+					assertEquals(this.length(expected), this.length(path), 1e-3f);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void saveAndLoad() throws IOException
+	{
+		Path path = this.folder.getRoot().toPath().resolve("V314" + RoutePlanner.TABLE_EXTENSION);
+		NextHopTable table = NextHopTable.build(this.graph, ForkJoinPool.commonPool());
+		table.save(path, this.graph);
+
+		NextHopTable loaded = NextHopTable.load(path, this.graph);
+
+		assertNotNull(loaded);
+
+		for (int start = 0; start < NUM_POINTS; start += 13)
+		{
+			for (int end = 0; end < NUM_POINTS; ++end)
+			{
+				assertEquals(table.getNextHop(start, end), loaded.getNextHop(start, end));
+			}
+		}
+
+		// A table of other waypoints isn't used
+		assertNull(NextHopTable.load(path, this.createGraph(1000)));
+	}
+}
@@ -0,0 +1,86 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.generate_statistics=true"
+})
+public class SqlWaypointRepositoryTest
+{
+	private static final int NUM_WAYPOINTS = 50;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private SqlWaypointRepository repository;
+
+	private List<Long> ids;
+
+	private Statistics getStatistics()
+	{
+		return this.entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@Before
+	public void setup()
+	{
+		this.ids = new ArrayList<>();
+
+		for (int i = 0; i < NUM_WAYPOINTS; ++i)
+		{
+			this.ids.add(this.entityManager.persistAndGetId(new Waypoint(i, i, 0, 1, "map"), Long.class));
+			this.entityManager.persist(new Waypoint(i, i, 0, 1, "otherMap"));
+		}
+
+		this.entityManager.flush();
+		this.entityManager.clear();
+		this.getStatistics().clear();
+	}
+
+	@Test
+	public void batchLookupIsSingleQuery()
+	{
+		List<Long> requested = new ArrayList<>(this.ids.subList(0, NUM_WAYPOINTS / 2));
+		requested.add(-1L);     // Doesn't exist
+
+		Set<Long> found = new HashSet<>();
+
+		for (Waypoint waypoint: this.repository.findAllByMapNameAndIdIn("map", requested))
+		{
+			assertEquals("map", waypoint.getMapName());
+			found.add(waypoint.getId());
+		}
+
+		assertEquals(new HashSet<>(this.ids.subList(0, NUM_WAYPOINTS / 2)), found);
+		assertEquals(1, this.getStatistics().getPrepareStatementCount());
+	}
+
+	@Test
+	public void singleLookupsAreOneQueryEach()
+	{
+		for (long id: this.ids)
+		{
+			assertNotNull(this.repository.findByIdAndMapName(id, "map"));
+		}
+
+		assertEquals(NUM_WAYPOINTS, this.getStatistics().getPrepareStatementCount());
+	}
+}
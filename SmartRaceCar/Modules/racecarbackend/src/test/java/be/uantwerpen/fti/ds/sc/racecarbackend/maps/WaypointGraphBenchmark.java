@@ -0,0 +1,99 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how long it takes to build the waypoint graph and plan routes on it,
+ * both by searching and with a next-hop table.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes be.uantwerpen.fti.ds.sc.racecarbackend.maps.WaypointGraphBenchmark
+ */
+public class WaypointGraphBenchmark
+{
+	private static final int[] SIZES = {1000, 5000, 20000};
+	private static final int NEIGHBOURS = 4;
+	private static final int NUM_QUERIES = 200;
+	private static final int NUM_ROUNDS = 5;        // The first rounds warm up the JIT
+	private static final int MAX_TABLE_SIZE = 5000; // Tables of larger maps take too much memory to benchmark comfortably
+
+	private static void benchmarkTable(WaypointGraph graph, Random random)
+	{
+		int size = graph.size();
+		ForkJoinPool singleThread = new ForkJoinPool(1);
+
+		long sequentialStart = System.nanoTime();
+		NextHopTable.build(graph, singleThread);
+		long sequentialTime = System.nanoTime() - sequentialStart;
+		singleThread.shutdown();
+
+		long parallelStart = System.nanoTime();
+		NextHopTable table = NextHopTable.build(graph, ForkJoinPool.commonPool());
+		long parallelTime = System.nanoTime() - parallelStart;
+
+		long lookupStart = System.nanoTime();
+
+		for (int query = 0; query < NUM_QUERIES; ++query)
+		{
+			table.getPath(random.nextInt(size), random.nextInt(size));
+		}
+
+		long lookupTime = System.nanoTime() - lookupStart;
+
+		System.out.println(String.format("%7d waypoints: table %7.1fMB, build %8.1fms on 1 thread, %8.1fms on %d threads, route %6.2fus/query",
+				size, table.getMemoryUsage() / (1024.0 * 1024.0), sequentialTime / 1e6, parallelTime / 1e6, ForkJoinPool.commonPool().getParallelism(), lookupTime / 1e3 / NUM_QUERIES));
+	}
+
+	public static void main(String[] args)
+	{
+		Random random = new Random(42);
+
+		for (int size: SIZES)
+		{
+			long[] ids = new long[size];
+			float[] x = new float[size];
+			float[] y = new float[size];
+
+			for (int i = 0; i < size; ++i)
+			{
+				ids[i] = i;
+				x[i] = random.nextFloat() * 1000.0f;
+				y[i] = random.nextFloat() * 1000.0f;
+			}
+
+			WaypointIndex index = new WaypointIndex(x, y);
+
+			for (int round = 0; round < NUM_ROUNDS; ++round)
+			{
+				long buildStart = System.nanoTime();
+				WaypointGraph graph = new WaypointGraph(ids, x, y, index, NEIGHBOURS, false);
+				long buildTime = System.nanoTime() - buildStart;
+
+				int found = 0;
+				long totalLength = 0;
+				long queryStart = System.nanoTime();
+
+				for (int query = 0; query < NUM_QUERIES; ++query)
+				{
+					int[] path = graph.shortestPath(random.nextInt(size), random.nextInt(size));
+
+					if (path != null)
+					{
+						++found;
+						totalLength += path.length;
+					}
+				}
+
+				long queryTime = System.nanoTime() - queryStart;
+
+				System.out.println(String.format("%7d waypoints, %7d links: build %7.2fms, route %8.1fus/query (%d/%d found, %.1f waypoints per route)",
+						size, graph.getNumLinks(), buildTime / 1e6, queryTime / 1e3 / NUM_QUERIES, found, NUM_QUERIES, (found > 0) ? (double) totalLength / found : 0.0));
+
+				if (size <= MAX_TABLE_SIZE)
+				{
+					benchmarkTable(graph, random);
+				}
+			}
+		}
+	}
+}
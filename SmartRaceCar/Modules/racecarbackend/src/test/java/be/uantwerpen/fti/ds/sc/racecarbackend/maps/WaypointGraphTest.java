@@ -0,0 +1,105 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WaypointGraphTest
+{
+	private static final int NUM_POINTS = 2000;
+	private static final int NUM_QUERIES = 20;
+
+	private WaypointGraph createGraph(float[] x, float[] y, int neighbours, boolean increasingIds)
+	{
+		long[] ids = new long[x.length];
+
+		for (int i = 0; i < ids.length; ++i)
+		{
+			ids[i] = 10 * i;
+		}
+
+		return new WaypointGraph(ids, x, y, new WaypointIndex(x, y), neighbours, increasingIds);
+	}
+
+	private float length(int[] path, float[] x, float[] y)
+	{
+		float length = 0.0f;
+
+		for (int i = 1; i < path.length; ++i)
+		{
+			float dx = x[path[i]] - x[path[i - 1]];
+			float dy = y[path[i]] - y[path[i - 1]];
+			length += (float) Math.sqrt((dx * dx) + (dy * dy));
+		}
+
+		return length;
+	}
+
+	@Test
+	public void line()
+	{
+		// Waypoints on a line with growing gaps, every waypoint is only linked to its direct neighbours
+		float[] x = {0.0f, 1.0f, 3.0f, 6.0f, 10.0f};
+		float[] y = new float[5];
+		WaypointGraph graph = this.createGraph(x, y, 1, false);
+
+		assertArrayEquals(new int[]{0, 1, 2, 3, 4}, graph.shortestPath(0, 4));
+		assertArrayEquals(new int[]{4, 3, 2, 1, 0}, graph.shortestPath(4, 0));
+		assertArrayEquals(new int[]{2}, graph.shortestPath(2, 2));
+		assertEquals(20, graph.getId(2));
+		assertEquals(3, graph.indexOf(30));
+		assertTrue(graph.indexOf(31) < 0);
+	}
+
+	@Test
+	public void increasingIds()
+	{
+		float[] x = {0.0f, 1.0f, 3.0f, 6.0f, 10.0f};
+		float[] y = new float[5];
+		WaypointGraph graph = this.createGraph(x, y, 1, true);
+
+		assertArrayEquals(new int[]{0, 1, 2, 3, 4}, graph.shortestPath(0, 4));
+		assertNull(graph.shortestPath(4, 0));
+	}
+
+	@Test
+	public void shortestPaths()
+	{
+		Random random = new Random(42);
+		float[] x = new float[NUM_POINTS];
+		float[] y = new float[NUM_POINTS];
+
+		for (int i = 0; i < NUM_POINTS; ++i)
+		{
+			x[i] = random.nextFloat() * 100.0f;
+			y[i] = random.nextFloat() * 100.0f;
+		}
+
+		WaypointGraph graph = this.createGraph(x, y, 6, false);
+
+		for (int query = 0; query < NUM_QUERIES; ++query)
+		{
+			int start = random.nextInt(NUM_POINTS);
+			int end = random.nextInt(NUM_POINTS);
+			int[] path = graph.shortestPath(start, end);
+
+			if (path == null)
+			{
+				continue;
+			}
+
+			assertEquals(start, path[0]);
+			assertEquals(end, path[path.length - 1]);
+
+			// Every part of a shortest path is a shortest path itself
+			for (int i = 1; i < path.length - 1; ++i)
+			{
+				int[] subPath = graph.shortestPath(start, path[i]);
+				assertEquals(this.length(subPath, x, y), this.length(Arrays.copyOf(path, i + 1), x, y), 1e-3f);
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import java.util.Random;
+
+/**
+ * Compares nearest-waypoint queries on the k-d tree with a linear scan.
+ * Not part of the test suite, run it by hand after "mvn test-compile":
+ *      java -cp target/classes:target/test-classes be.uantwerpen.fti.ds.sc.racecarbackend.maps.WaypointIndexBenchmark
+ */
+public class WaypointIndexBenchmark
+{
+	private static final int[] SIZES = {10000, 1000000};
+	private static final int NUM_QUERIES = 1000;
+	private static final int NUM_ROUNDS = 5;        // The first rounds warm up the JIT
+
+	private static int linearNearest(float[] x, float[] y, float qx, float qy)
+	{
+		int best = -1;
+		float bestDistance = Float.MAX_VALUE;
+
+		for (int i = 0; i < x.length; ++i)
+		{
+			float dx = x[i] - qx;
+			float dy = y[i] - qy;
+			float distance = (dx * dx) + (dy * dy);
+
+			if (distance < bestDistance)
+			{
+				bestDistance = distance;
+				best = i;
+			}
+		}
+
+		return best;
+	}
+
+	public static void main(String[] args)
+	{
+		Random random = new Random(42);
+
+		for (int size: SIZES)
+		{
+			float[] x = new float[size];
+			float[] y = new float[size];
+
+			for (int i = 0; i < size; ++i)
+			{
+				x[i] = random.nextFloat() * 1000.0f;
+				y[i] = random.nextFloat() * 1000.0f;
+			}
+
+			long buildStart = System.nanoTime();
+			WaypointIndex index = new WaypointIndex(x, y);
+			long buildTime = System.nanoTime() - buildStart;
+
+			float[] qx = new float[NUM_QUERIES];
+			float[] qy = new float[NUM_QUERIES];
+
+			for (int i = 0; i < NUM_QUERIES; ++i)
+			{
+				qx[i] = random.nextFloat() * 1000.0f;
+				qy[i] = random.nextFloat() * 1000.0f;
+			}
+
+			long indexTime = 0;
+			long linearTime = 0;
+			long checksum = 0;      // Keeps the JIT from removing the queries
+
+			for (int round = 0; round < NUM_ROUNDS; ++round)
+			{
+				long start = System.nanoTime();
+
+				for (int i = 0; i < NUM_QUERIES; ++i)
+				{
+					checksum += index.nearest(qx[i], qy[i], 1).get(0);
+				}
+
+				indexTime = System.nanoTime() - start;
+				start = System.nanoTime();
+
+				for (int i = 0; i < NUM_QUERIES; ++i)
+				{
+					checksum -= linearNearest(x, y, qx[i], qy[i]);
+				}
+
+				linearTime = System.nanoTime() - start;
+			}
+
+			System.out.println(size + " waypoints: build " + (buildTime / 1000000) + "ms, "
+					+ "k-d tree " + (indexTime / NUM_QUERIES) + "ns/query, "
+					+ "linear scan " + (linearTime / NUM_QUERIES) + "ns/query "
+					+ "(checksum " + checksum + ")");
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package be.uantwerpen.fti.ds.sc.racecarbackend.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WaypointIndexTest
+{
+	private static final int NUM_POINTS = 10000;
+	private static final int NUM_QUERIES = 50;
+	private static final float MAP_SIZE = 100.0f;
+
+	private Random random;
+	private float[] x;
+	private float[] y;
+	private WaypointIndex index;
+
+	// Brute force reference: indices of all points sorted by distance
+	private List<Integer> linearScan(float qx, float qy)
+	{
+		List<Integer> points = new ArrayList<>();
+
+		for (int i = 0; i < this.x.length; ++i)
+		{
+			points.add(i);
+		}
+
+		points.sort((a, b) -> Float.compare(this.distanceSquared(a, qx, qy), this.distanceSquared(b, qx, qy)));
+		return points;
+	}
+
+	private float distanceSquared(int point, float qx, float qy)
+	{
+		float dx = this.x[point] - qx;
+		float dy = this.y[point] - qy;
+		return (dx * dx) + (dy * dy);
+	}
+
+	@Before
+	public void setup()
+	{
+		this.random = new Random(42);
+		this.x = new float[NUM_POINTS];
+		this.y = new float[NUM_POINTS];
+
+		for (int i = 0; i < NUM_POINTS; ++i)
+		{
+			// Round coordinates so there are plenty of duplicates on both axes
+			this.x[i] = Math.round(this.random.nextFloat() * MAP_SIZE);
+			this.y[i] = this.random.nextFloat() * MAP_SIZE;
+		}
+
+		this.index = new WaypointIndex(this.x, this.y);
+	}
+
+	@Test
+	public void nearestMatchesLinearScan()
+	{
+		for (int query = 0; query < NUM_QUERIES; ++query)
+		{
+			float qx = this.random.nextFloat() * MAP_SIZE;
+			float qy = this.random.nextFloat() * MAP_SIZE;
+			int k = 1 + this.random.nextInt(10);
+
+			List<Integer> expected = this.linearScan(qx, qy);
+			List<Integer> actual = this.index.nearest(qx, qy, k);
+
+			assertEquals(k, actual.size());
+
+			for (int i = 0; i < k; ++i)
+			{
+				// Compare distances, points at the same distance may come in any order
+				assertEquals(this.distanceSquared(expected.get(i), qx, qy), this.distanceSquared(actual.get(i), qx, qy), 0.0f);
+			}
+		}
+	}
+
+	@Test
+	public void radiusMatchesLinearScan()
+	{
+		for (int query = 0; query < NUM_QUERIES; ++query)
+		{
+			float qx = this.random.nextFloat() * MAP_SIZE;
+			float qy = this.random.nextFloat() * MAP_SIZE;
+			float radius = this.random.nextFloat() * 5.0f;
+
+			int expected = 0;
+
+			for (int point: this.linearScan(qx, qy))
+			{
+				if (this.distanceSquared(point, qx, qy) <= (radius * radius))
+				{
+					++expected;
+				}
+			}
+
+			List<Integer> actual = this.index.withinRadius(qx, qy, radius);
+			assertEquals(expected, actual.size());
+
+			for (int i = 1; i < actual.size(); ++i)
+			{
+				assertTrue(this.distanceSquared(actual.get(i - 1), qx, qy) <= this.distanceSquared(actual.get(i), qx, qy));
+			}
+		}
+	}
+
+	@Test
+	public void emptyIndex()
+	{
+		WaypointIndex empty = new WaypointIndex(new float[0], new float[0]);
+
+		assertTrue(empty.nearest(0, 0, 3).isEmpty());
+		assertTrue(empty.withinRadius(0, 0, 10).isEmpty());
+	}
+
+	@Test
+	public void fewerPointsThanRequested()
+	{
+		WaypointIndex small = new WaypointIndex(new float[] {0.0f, 5.0f}, new float[] {0.0f, 0.0f});
+		List<Integer> nearest = small.nearest(4.0f, 0.0f, 5);
+
+		assertEquals(2, nearest.size());
+		assertEquals(1, (int) nearest.get(0));
+		assertEquals(0, (int) nearest.get(1));
+	}
+
+	@Test
+	public void hugeK()
+	{
+		List<Integer> nearest = this.index.nearest(0.0f, 0.0f, Integer.MAX_VALUE);
+
+		assertEquals(this.index.size(), nearest.size());
+	}
+}
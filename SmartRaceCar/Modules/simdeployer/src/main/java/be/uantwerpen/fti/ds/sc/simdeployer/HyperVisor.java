@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import javax.naming.InvalidNameException;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class HyperVisor
 {
@@ -20,7 +21,7 @@ public class HyperVisor
 	{
 		this.log = LoggerFactory.getLogger(HyperVisor.class);
 		this.configuration = configuration;
-		this.virtualMachines = new HashMap<>();
+		this.virtualMachines = new ConcurrentHashMap<>();
 	}
 
 	public void launch(long simulationId, long startpoint) throws IOException, InvalidNameException
@@ -2,7 +2,7 @@ package be.uantwerpen.fti.ds.sc.simdeployer;
 
 import be.uantwerpen.fti.ds.sc.common.commands.*;
 import be.uantwerpen.fti.ds.sc.common.TCPListener;
-import be.uantwerpen.fti.ds.sc.common.TCPUtils;
+import be.uantwerpen.fti.ds.sc.common.TCPServer;
 import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.TcpServerAspect;
@@ -12,13 +12,14 @@ import org.slf4j.LoggerFactory;
 import javax.naming.InvalidNameException;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SimDeployer implements TCPListener
 {
 	private static final String DEFAULT_CONFIG_FILE = "./SimDeployer.properties";
 
 	private Logger log;
-	private TCPUtils simulationFrontend;
+	private TCPServer simulationFrontend;
 	private Map<Long, Long> startPoints;
 	private HyperVisor hyperVisor;
 
@@ -211,10 +212,11 @@ public class SimDeployer implements TCPListener
 	{
 		this.log = LoggerFactory.getLogger(SimDeployer.class);
 		TcpServerAspect tcpServerAspect = (TcpServerAspect) configuration.get(AspectType.TCP_SERVER);
-		this.simulationFrontend = new TCPUtils(tcpServerAspect.getServerPort(), this);
-		this.simulationFrontend.start();
-		this.startPoints = new HashMap<>();
+		// Commands of different clients are handled concurrently
+		this.startPoints = new ConcurrentHashMap<>();
 		this.hyperVisor = new HyperVisor(configuration);
+		this.simulationFrontend = new TCPServer(tcpServerAspect, this);
+		this.simulationFrontend.start();
 	}
 
 	@Override
@@ -1,6 +1,8 @@
 package be.uantwerpen.fti.ds.sc.simkernel.Communication;
 
 import be.uantwerpen.fti.ds.sc.common.*;
+import be.uantwerpen.fti.ds.sc.common.codec.TcpCodec;
+import be.uantwerpen.fti.ds.sc.common.codec.TcpMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,41 +11,62 @@ import java.io.IOException;
 public class CoreCommunicator implements TCPListener, CoreCommunication
 {
 	private Logger log;
-	private TCPUtils tcpUtils;
+	private TCPChannel tcpChannel;
 	private MessageListener listener;
+	private TcpCodec codec;
 
 	public CoreCommunicator(int serverport, int clientport, MessageListener listener)
 	{
 		this.log = LoggerFactory.getLogger(CoreCommunicator.class);
-		this.tcpUtils = new TCPUtils(clientport, serverport, this);
+		this.tcpChannel = new TCPChannel(clientport, serverport, this);
 		this.log.info("Startup parameters: TCP Server Port:" + serverport + " | TCP Client Port:" + clientport);
 
 		this.listener = listener;
+		this.codec = new TcpCodec();
 	}
 
 	@Override
 	public String parseTCP(String message) throws IOException
 	{
-		this.listener.notify(message);
+		TcpMessage tcpMessage;
+
+		try
+		{
+			tcpMessage = this.codec.decode(message);
+		}
+		catch (IOException ioe)
+		{
+			this.log.warn("Failed to decode message from Core: " + message, ioe);
+			return null;
+		}
+
+		// The Core tells us which codecs and transports it supports when it connects
+		if (tcpMessage.getKeyword().equals(TcpMessages.Core.CONNECT))
+		{
+			this.codec.negotiate(tcpMessage);
+			this.tcpChannel.setFramed(this.codec.isFramed());
+		}
+
+		this.listener.notify(tcpMessage);
 		return null;
 	}
 
 	@Override
 	public void start()
 	{
-		this.tcpUtils.start();
+		this.tcpChannel.start();
 	}
 
 	@Override
 	public void connect()
 	{
-		this.tcpUtils.sendUpdate(JSONUtils.keywordToJSONString(TcpMessages.Simkernel.CONNECT));
+		this.tcpChannel.sendUpdate(this.codec.encodeConnect(TcpMessages.Simkernel.CONNECT));
 	}
 
 	@Override
 	public void wayPointReached()
 	{
-		this.tcpUtils.sendUpdate(JSONUtils.keywordToJSONString(TcpMessages.Simkernel.ARRIVED_WAYPOINT));
+		this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Simkernel.ARRIVED_WAYPOINT, null));
 		this.log.info("Arrived at waypoint. Waiting for next order.");
 	}
 
@@ -56,7 +79,7 @@ public class CoreCommunicator implements TCPListener, CoreCommunication
 			{
 				Thread.sleep((long)((cost.getWeight() * 1000.0f) / 20.0f));
 				Location location = new Location(0, 0, 0, i * 5);
-				this.tcpUtils.sendUpdate(JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Simkernel.PERCENTAGE, location));
+				this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Simkernel.PERCENTAGE, location));
 				this.log.info("travelled " + i * 5 + "% of total route.");
 			}
 			catch (InterruptedException e)
@@ -69,18 +92,18 @@ public class CoreCommunicator implements TCPListener, CoreCommunication
 	@Override
 	public void sendTiming(Cost cost)
 	{
-		this.tcpUtils.sendUpdate(JSONUtils.objectToJSONStringWithKeyWord(TcpMessages.Simkernel.COST_TIMING, cost));
+		this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Simkernel.COST_TIMING, cost));
 	}
 
 	@Override
 	public void disconnect()
 	{
-		this.tcpUtils.closeTCP();
+		this.tcpChannel.closeTCP();
 	}
 
 	@Override
 	public void exit()
 	{
-		this.tcpUtils.sendUpdate(JSONUtils.keywordToJSONString(TcpMessages.Simkernel.EXIT));
+		this.tcpChannel.sendUpdate(this.codec.encode(TcpMessages.Simkernel.EXIT, null));
 	}
 }
@@ -1,6 +1,8 @@
 package be.uantwerpen.fti.ds.sc.simkernel.Communication;
 
+import be.uantwerpen.fti.ds.sc.common.codec.TcpMessage;
+
 public interface MessageListener
 {
-	public void notify(String message);
+	public void notify(TcpMessage message);
 }
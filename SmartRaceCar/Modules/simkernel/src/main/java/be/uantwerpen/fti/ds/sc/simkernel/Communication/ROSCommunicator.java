@@ -3,6 +3,7 @@ package be.uantwerpen.fti.ds.sc.simkernel.Communication;
 import be.uantwerpen.fti.ds.sc.common.*;
 import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
+import be.uantwerpen.fti.ds.sc.common.configuration.RestAspect;
 import be.uantwerpen.fti.ds.sc.common.configuration.RosAspect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,14 +16,15 @@ import java.util.List;
 public class ROSCommunicator implements ROSCommunication
 {
 	private Logger log;
-	private RESTUtils restUtils;
+	private ResilientRESTUtils restUtils;
 
 	public ROSCommunicator(Configuration configuration)
 	{
 		this.log = LoggerFactory.getLogger(ROSCommunicator.class);
 
 		RosAspect aspect = (RosAspect) configuration.get(AspectType.ROS);
-		this.restUtils = new RESTUtils((aspect.getRosServerUrl()));
+		RestAspect restAspect = (RestAspect) configuration.get(AspectType.REST);
+		this.restUtils = new ResilientRESTUtils(aspect.getRosServerUrl(), restAspect);
 	}
 
 	@Override
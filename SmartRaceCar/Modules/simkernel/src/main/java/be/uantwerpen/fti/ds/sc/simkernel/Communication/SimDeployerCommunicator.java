@@ -1,8 +1,8 @@
 package be.uantwerpen.fti.ds.sc.simkernel.Communication;
 
-import be.uantwerpen.fti.ds.sc.common.JSONUtils;
 import be.uantwerpen.fti.ds.sc.common.MQTTListener;
 import be.uantwerpen.fti.ds.sc.common.MQTTUtils;
+import be.uantwerpen.fti.ds.sc.common.codec.TcpMessage;
 import be.uantwerpen.fti.ds.sc.common.configuration.AspectType;
 import be.uantwerpen.fti.ds.sc.common.configuration.Configuration;
 import be.uantwerpen.fti.ds.sc.common.configuration.MqttAspect;
@@ -26,7 +26,7 @@ public class SimDeployerCommunicator implements MQTTListener, SimDeployerCommuni
 
 		try
 		{
-			this.mqttUtils = new MQTTUtils(aspect.getBroker(), aspect.getUsername(), aspect.getPassword(), this);
+			this.mqttUtils = new MQTTUtils(aspect, this, "SimDeployerCommunicator");
 			this.mqttUtils.subscribe(aspect.getTopic() + "/simdeployer/#");
 		}
 		catch (MqttException me)
@@ -49,9 +49,7 @@ public class SimDeployerCommunicator implements MQTTListener, SimDeployerCommuni
 
 			String last = split[split.length-2];
 
-			String m = JSONUtils.objectToJSONStringWithKeyWord(last, last);
-
-			this.listener.notify(m);
+			this.listener.notify(new TcpMessage(last, last));
 		}
 	}
 }
@@ -1,6 +1,7 @@
 package be.uantwerpen.fti.ds.sc.simkernel;
 
 import be.uantwerpen.fti.ds.sc.common.*;
+import be.uantwerpen.fti.ds.sc.common.codec.TcpMessage;
 import be.uantwerpen.fti.ds.sc.common.configuration.*;
 import be.uantwerpen.fti.ds.sc.simkernel.Communication.*;
 import com.google.gson.reflect.TypeToken;
@@ -73,6 +74,7 @@ class SimKernel implements MessageListener
 		this.configuration.add(AspectType.ROS);
 		this.configuration.add(AspectType.TCP_SERVER);
 		this.configuration.add(AspectType.TCP_CLIENT);
+		this.configuration.add(AspectType.REST);
 		this.configuration.load(propertyPath + SimKernel.CONFIG_NAME);
 	}
 
@@ -81,63 +83,60 @@ class SimKernel implements MessageListener
 	 * Used for messages about cost and timing requests, initial startup connection, the startpoint and current map
 	 * settings, new job request information (next waypoint) or an mandatory update on the current position.
 	 *
-	 * @param message Received TCP socket message string
+	 * @param message Received TCP socket message
 	 */
 	@Override
-	public void notify(String message)
+	public void notify(TcpMessage message)
 	{
 		this.log.debug("Received message: " + message);
-		if (JSONUtils.isJSONValid(message))
+		//parses keyword to do the correct function call.
+		switch (message.getKeyword())
 		{
-			//parses keyword to do the correct function call.
-			switch (JSONUtils.getFirst(message))
-			{
-				case TcpMessages.Core.COST_TIMING:
-					Type typeOfPoints = new TypeToken<ArrayList<Point>>()
-					{
-					}.getType();
-					this.log.debug("Cost request: " + message);
-					calculateTiming((ArrayList<Point>) JSONUtils.getObjectWithKeyWord(message, typeOfPoints));
-					break;
-
-				case TcpMessages.Core.CONNECT:
-					this.connectReceive();
-					break;
-
-				case TcpMessages.Core.START_POINT:
-					this.startPoint = (WayPoint) JSONUtils.getObjectWithKeyWord(message, WayPoint.class);
-					this.log.info("Startpoint set to " + this.startPoint.getX() + "," + this.startPoint.getY() + "," + this.startPoint.getZ() + "," + this.startPoint.getW() + ".");
-					this.currentPosition = new Point(this.startPoint.getX(), this.startPoint.getY(), this.startPoint.getZ(), this.startPoint.getW());
-					break;
-
-				case TcpMessages.Core.CURRENT_MAP:
-					this.map = (Map) JSONUtils.getObjectWithKeyWord(message, Map.class);
-					this.calculatedCosts.clear();
-					this.log.info("Map set to '" + this.map.getName() + "'.");
-					break;
-
-				case TcpMessages.Core.NEXT_WAYPOINT:
-					Type typeOfWayPoint = new TypeToken<WayPoint>()
-					{
-					}.getType();
-					jobRequest((WayPoint) JSONUtils.getObjectWithKeyWord(message, typeOfWayPoint));
-					break;
+			case TcpMessages.Core.COST_TIMING:
+				Type typeOfPoints = new TypeToken<ArrayList<Point>>()
+				{
+				}.getType();
+				this.log.debug("Cost request: " + message);
+				calculateTiming((ArrayList<Point>) message.getPayload(typeOfPoints));
+				break;
+
+			case TcpMessages.Core.CONNECT:
+				this.connectReceive();
+				break;
+
+			case TcpMessages.Core.START_POINT:
+				this.startPoint = (WayPoint) message.getPayload(WayPoint.class);
+				this.log.info("Startpoint set to " + this.startPoint.getX() + "," + this.startPoint.getY() + "," + this.startPoint.getZ() + "," + this.startPoint.getW() + ".");
+				this.currentPosition = new Point(this.startPoint.getX(), this.startPoint.getY(), this.startPoint.getZ(), this.startPoint.getW());
+				break;
+
+			case TcpMessages.Core.CURRENT_MAP:
+				this.map = (Map) message.getPayload(Map.class);
+				this.calculatedCosts.clear();
+				this.log.info("Map set to '" + this.map.getName() + "'.");
+				break;
+
+			case TcpMessages.Core.NEXT_WAYPOINT:
+				Type typeOfWayPoint = new TypeToken<WayPoint>()
+				{
+				}.getType();
+				jobRequest((WayPoint) message.getPayload(typeOfWayPoint));
+				break;
 
-				case TcpMessages.Core.CURRENT_POSITION:
-					Type typeOfWayPoint2 = new TypeToken<WayPoint>()
-					{
-					}.getType();
-					this.currentPosition = (WayPoint) JSONUtils.getObjectWithKeyWord(message, typeOfWayPoint2);
-					this.log.info("Current position set to " + currentPosition.getX() + "," + currentPosition.getY() + "," + currentPosition.getZ() + "," + currentPosition.getW() + ".");
-					break;
+			case TcpMessages.Core.CURRENT_POSITION:
+				Type typeOfWayPoint2 = new TypeToken<WayPoint>()
+				{
+				}.getType();
+				this.currentPosition = (WayPoint) message.getPayload(typeOfWayPoint2);
+				this.log.info("Current position set to " + currentPosition.getX() + "," + currentPosition.getY() + "," + currentPosition.getZ() + "," + currentPosition.getW() + ".");
+				break;
 
-				case MqttMessages.Topics.SimDeployer.KILL:
-					this.exit();
+			case MqttMessages.Topics.SimDeployer.KILL:
+				this.exit();
 
-				default:
-					this.log.warn("No matching keyword when parsing JSON from Sockets. Data: " + message);
-					break;
-			}
+			default:
+				this.log.warn("No matching keyword when parsing message from Sockets. Data: " + message);
+				break;
 		}
 	}
 